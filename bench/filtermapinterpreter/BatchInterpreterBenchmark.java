@@ -0,0 +1,58 @@
+package filtermapinterpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scalability benchmark of {@code BatchInterpreter}. Prints number of interpreted chains per second
+ * on pools with number of threads from 1 to the number of available processors.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class BatchInterpreterBenchmark {
+
+    private static final int CHAINS = 200000; // Number of chains in the batch
+    private static final int WARMUP = 3; // Number of runs before measuring
+    private static final int RUNS = 5; // Number of measured runs
+
+    private static long sink = 0; // Consumes results, so that JIT could not eliminate interpretation
+
+    public static void main(String[] args) {
+        List<String> sources = new ArrayList<>(CHAINS);
+        for (int i = 0; i < CHAINS; i++)
+            sources.add(String.format("map{(element+%d)}%%>%%filter{((element>%d)&(element<%d))}%%>%%map{(element*element)}",
+                    i, i % 100, i));
+        double sequential = 0;
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try (BatchInterpreter interpreter = new BatchInterpreter(executor, threads * 16, false)) {
+                double throughput = measure(interpreter, sources);
+                if (threads == 1)
+                    sequential = throughput;
+                System.out.printf("    %3d threads %10.0f chains/s, speedup %.2fx%n",
+                        threads, throughput, throughput / sequential);
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Measures throughput of the batch interpreter
+     *
+     * @param interpreter interpreter to measure
+     * @param sources     interpreted chains
+     * @return number of interpreted chains per second
+     */
+    private static double measure(BatchInterpreter interpreter, List<String> sources) {
+        for (int i = 0; i < WARMUP; i++)
+            sink += interpreter.interpret(sources).size();
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            sink += interpreter.interpret(sources).size();
+        long time = System.nanoTime() - start;
+        return (double) sources.size() * RUNS / time * 1e9;
+    }
+}
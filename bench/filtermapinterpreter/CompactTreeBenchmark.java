@@ -0,0 +1,172 @@
+package filtermapinterpreter;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Memory and traversal benchmark of {@code CompactTree} against the {@code ASTNode} object graph.
+ * Parses many calls and keeps them, prints retained and allocated bytes per node, then prints
+ * number of visited nodes per second for printing and for evaluation of each element.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class CompactTreeBenchmark {
+
+    private static final int CALLS = 4000; // Number of parsed calls
+    private static final int DEPTH = 9; // Depth of balanced expression of each call
+    private static final int ELEMENTS = 64; // Number of elements evaluated by each call
+    private static final int WARMUP = 5; // Number of runs before measuring
+    private static final int RUNS = 10; // Number of measured runs
+
+    private static long sink = 0; // Consumes results, so that JIT could not eliminate traversal
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(42);
+        List<String> sources = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++)
+            sources.add("map{" + expression(random, DEPTH) + "}");
+        long nodes = (long) CALLS * ((2 << DEPTH) - 1);
+
+        for (int i = 0; i < WARMUP; i++) {
+            parseObjects(sources);
+            parseCompact(sources);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long used = retained();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        List<ASTree> trees = parseObjects(sources);
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        used = retained() - used;
+        System.out.printf("ASTNode      %6.1f retained bytes per node, %6.1f allocated bytes per node%n",
+                (double) used / nodes, (double) allocated / nodes);
+        trees.clear();
+
+        used = retained();
+        allocated = threads.getCurrentThreadAllocatedBytes();
+        List<CompactTree> compact = parseCompact(sources);
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        used = retained() - used;
+        System.out.printf("CompactTree  %6.1f retained bytes per node, %6.1f allocated bytes per node%n",
+                (double) used / nodes, (double) allocated / nodes);
+        trees = parseObjects(sources);
+
+        List<ASTree> objects = trees;
+        measure("print", "ASTNode", nodes, () -> {
+            for (ASTree tree : objects)
+                sink += tree.toString().length();
+        });
+        measure("print", "CompactTree", nodes, () -> {
+            for (CompactTree tree : compact)
+                sink += tree.toString().length();
+        });
+        measure("evaluate", "ASTNode", nodes * ELEMENTS, () -> {
+            for (ASTree tree : objects) {
+                for (int element = 0; element < ELEMENTS; element++)
+                    sink += evaluate(tree.getRoot(), element);
+            }
+        });
+        int[] registers = new int[(2 << DEPTH) - 1];
+        measure("evaluate", "CompactTree", nodes * ELEMENTS, () -> {
+            for (CompactTree tree : compact) {
+                for (int element = 0; element < ELEMENTS; element++)
+                    sink += tree.evaluate(element, registers);
+            }
+        });
+    }
+
+    /**
+     * Measures number of visited nodes per second
+     *
+     * @param name     name of the traversal
+     * @param encoding name of the encoding
+     * @param nodes    number of nodes visited by one run
+     * @param run      one run of the traversal
+     */
+    private static void measure(String name, String encoding, long nodes, Runnable run) {
+        for (int i = 0; i < WARMUP; i++)
+            run.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            run.run();
+        long time = System.nanoTime() - start;
+        System.out.printf("%-9s %-12s %8.1f M nodes/s%n", name, encoding, (double) nodes * RUNS / time * 1000);
+    }
+
+    /**
+     * Evaluates object tree by recursive walk over children
+     *
+     * @param node    root of the expression
+     * @param element value of the element
+     * @return value of the expression, 1 or 0 for boolean expression
+     */
+    private static int evaluate(ASTNode node, int element) {
+        if (node.type == NodeType.ELEMENT)
+            return element;
+        if (node.type == NodeType.NUMBER)
+            return Integer.parseInt(node.value);
+        int first = evaluate(node.getChild(0), element);
+        int second = evaluate(node.getChild(1), element);
+        switch (node.value) {
+            case "+":
+                return first + second;
+            case "-":
+                return first - second;
+            default:
+                return first * second;
+        }
+    }
+
+    /**
+     * Parses calls to object trees
+     *
+     * @param sources calls to parse
+     * @return trees of the calls
+     * @throws Exception if call has syntax or type error
+     */
+    private static List<ASTree> parseObjects(List<String> sources) throws Exception {
+        List<ASTree> trees = new ArrayList<>(sources.size());
+        for (String source : sources)
+            trees.add(new ASTreeBuilder(source).build());
+        return trees;
+    }
+
+    /**
+     * Parses calls to flat trees
+     *
+     * @param sources calls to parse
+     * @return trees of the calls
+     * @throws Exception if call has syntax or type error
+     */
+    private static List<CompactTree> parseCompact(List<String> sources) throws Exception {
+        List<CompactTree> trees = new ArrayList<>(sources.size());
+        for (String source : sources)
+            trees.add(CompactTree.parse(source));
+        return trees;
+    }
+
+    /**
+     * Getter of used heap after garbage collection
+     *
+     * @return number of used bytes of heap
+     */
+    private static long retained() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    /**
+     * Generates balanced arithmetic expression
+     *
+     * @param random generator of constants and operators
+     * @param depth  depth of the expression
+     * @return text of expression with 2^(depth+1)-1 nodes
+     */
+    private static String expression(Random random, int depth) {
+        if (depth == 0)
+            return random.nextBoolean() ? "element" : String.valueOf(random.nextInt(2000) - 1000);
+        return "(" + expression(random, depth - 1) + "+-*".charAt(random.nextInt(3)) + expression(random, depth - 1) + ")";
+    }
+}
@@ -0,0 +1,58 @@
+package filtermapinterpreter;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Scalability benchmark of {@code ParallelPipeline}. Prints throughput of compiled pipeline
+ * on fork/join pools with parallelism from 1 to the number of available processors.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class ParallelPipelineBenchmark {
+
+    private static final int SIZE = 1 << 25; // Number of elements in the input array
+    private static final int WARMUP = 5; // Number of runs before measuring
+    private static final int RUNS = 10; // Number of measured runs
+
+    private static long sink = 0; // Consumes results, so that JIT could not eliminate evaluation
+
+    private static final String CHAIN =
+            "map{((element*3)+(element*element))}%>%map{((element-7)*(element+7))}%>%filter{((element>10)|(element<-10))}";
+
+    public static void main(String[] args) throws Exception {
+        int[] input = new Random(42).ints(SIZE, -1000, 1000).toArray();
+        int[] output = new int[SIZE];
+        Pipeline pipeline = Pipeline.compile(CHAIN, ExecutionMode.COMPILED);
+        System.out.println(pipeline);
+        double sequential = 0;
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            ParallelPipeline parallel = new ParallelPipeline(pipeline, pool, ParallelPipeline.DEFAULT_CHUNK_SIZE);
+            double throughput = measure(parallel, input, output);
+            if (threads == 1)
+                sequential = throughput;
+            System.out.printf("    %3d threads %8.1f M elements/s, speedup %.2fx%n",
+                    threads, throughput, throughput / sequential);
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Measures throughput of the parallel pipeline
+     *
+     * @param pipeline pipeline to measure
+     * @param input    source elements
+     * @param output   array for results
+     * @return millions of processed elements per second
+     */
+    private static double measure(ParallelPipeline pipeline, int[] input, int[] output) {
+        for (int i = 0; i < WARMUP; i++)
+            sink += pipeline.apply(input, 0, input.length, output, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            sink += pipeline.apply(input, 0, input.length, output, 0);
+        long time = System.nanoTime() - start;
+        return (double) input.length * RUNS / time * 1000;
+    }
+}
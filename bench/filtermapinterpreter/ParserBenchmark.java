@@ -0,0 +1,78 @@
+package filtermapinterpreter;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Throughput benchmark of {@code ASTreeBuilder}. Builds call-chains of several megabytes,
+ * shallow and deeply nested, and prints number of parsed megabytes per second and
+ * allocated bytes per parsed char.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class ParserBenchmark {
+
+    private static final int CALLS = 40000; // Number of calls in the shallow chain
+    private static final int DEEP_CALLS = 300; // Number of calls in the deep chain
+    private static final int DEPTH = 2000; // Nesting depth of calls in the deep chain
+    private static final int WARMUP = 5; // Number of runs before measuring
+    private static final int RUNS = 10; // Number of measured runs
+
+    private static long sink = 0; // Consumes results, so that JIT could not eliminate parsing
+
+    public static void main(String[] args) throws Exception {
+        List<String> calls = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            calls.add(i % 2 == 0
+                    ? String.format("map{(((element*%d)+(element*element))-(-%d*(element+1234567)))}", i, i)
+                    : String.format("filter{(((element>%d)&(element<%d))|((element*element)=(%d-element)))}", -i, i, i));
+        }
+        measure("shallow", calls);
+
+        List<String> deepCalls = new ArrayList<>(DEEP_CALLS);
+        String left = String.join("", Collections.nCopies(DEPTH, "(")) + "element"
+                + String.join("", Collections.nCopies(DEPTH, "*3)"));
+        String right = String.join("", Collections.nCopies(DEPTH, "(7-")) + "element"
+                + String.join("", Collections.nCopies(DEPTH, ")"));
+        for (int i = 0; i < DEEP_CALLS; i++)
+            deepCalls.add("map{" + (i % 2 == 0 ? left : right) + "}");
+        measure("deep", deepCalls);
+    }
+
+    /**
+     * Measures throughput of parsing
+     *
+     * @param name  name of the chain
+     * @param calls calls of the chain
+     * @throws Exception if call has syntax or type error
+     */
+    private static void measure(String name, List<String> calls) throws Exception {
+        long chars = 0;
+        for (String call : calls)
+            chars += call.length();
+        for (int i = 0; i < WARMUP; i++)
+            parse(calls);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            parse(calls);
+        long time = System.nanoTime() - start;
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        System.out.printf("%-8s %5.1f MB %8.1f MB/s, %.2f allocated bytes per char%n", name, chars / 1e6,
+                (double) chars * RUNS / time * 1000, (double) allocated / chars / RUNS);
+    }
+
+    /**
+     * Parses each call of the chain and prints its tree
+     *
+     * @param calls calls of the chain
+     * @throws Exception if call has syntax or type error
+     */
+    private static void parse(List<String> calls) throws Exception {
+        for (String call : calls)
+            sink += new ASTreeBuilder(call).build().toString().length();
+    }
+}
@@ -0,0 +1,58 @@
+package filtermapinterpreter;
+
+import java.util.Random;
+
+/**
+ * Throughput benchmark of {@code Pipeline} evaluation over integer array.
+ * Prints number of processed elements per second for each chain in every {@code ExecutionMode}.
+ * Vectorized mode needs JVM option {@code --add-modules jdk.incubator.vector}.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class PipelineBenchmark {
+
+    private static final int SIZE = 1 << 24; // Number of elements in the input array
+    private static final int WARMUP = 10; // Number of runs before measuring
+    private static final int RUNS = 20; // Number of measured runs
+
+    private static long sink = 0; // Consumes results, so that JIT could not eliminate evaluation
+
+    private static final String[] CHAINS = {
+            "filter{(element>0)}",
+            "map{(element+4)}%>%filter{(element<1000)}%>%map{(element*3)}",
+            "filter{((element>-500)&(element<500))}%>%map{((element*element)-(element*2))}",
+            "map{((element*3)+(element*element))}%>%map{((element-7)*(element+7))}%>%filter{((element>10)|(element<-10))}"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int[] input = new Random(42).ints(SIZE, -1000, 1000).toArray();
+        int[] output = new int[SIZE];
+        for (String chain : CHAINS) {
+            System.out.println(Pipeline.compile(chain));
+            double interpreted = measure(Pipeline.compile(chain, ExecutionMode.INTERPRETED), input, output);
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                double throughput = measure(Pipeline.compile(chain, mode), input, output);
+                System.out.printf("    %-12s %8.1f M elements/s, speedup %.2fx%n",
+                        mode, throughput, throughput / interpreted);
+            }
+        }
+    }
+
+    /**
+     * Measures throughput of the pipeline
+     *
+     * @param pipeline pipeline to measure
+     * @param input    source elements
+     * @param output   array for results
+     * @return millions of processed elements per second
+     */
+    private static double measure(Pipeline pipeline, int[] input, int[] output) {
+        for (int i = 0; i < WARMUP; i++)
+            sink += pipeline.apply(input, 0, input.length, output, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            sink += pipeline.apply(input, 0, input.length, output, 0);
+        long time = System.nanoTime() - start;
+        return (double) input.length * RUNS / time * 1000;
+    }
+}
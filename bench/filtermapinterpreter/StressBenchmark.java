@@ -0,0 +1,109 @@
+package filtermapinterpreter;
+
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scale benchmark of the interpreter on chains and datasets of {@code WorkloadGenerator}.
+ * Chains grow by 4 times from 1 KB to the given number of chars: each call is parsed by
+ * {@code ASTreeBuilder.build}, calls are merged by {@code ASTree.mergeTo}, the whole chain is
+ * parsed as stream by {@code ChainParser} and printed by {@code ChainPrinter} while output fits
+ * to the limit. Datasets grow by 4 times from 1 MB to the given number of bytes: they are written
+ * to a temporary file and evaluated by {@code FilePipeline}.
+ * Arguments: maximum chain length in chars (16M by default), maximum dataset size in bytes (256M by default).
+ *
+ * @author Taimuraz Tibilov
+ */
+public class StressBenchmark {
+
+    private static final long SEED = 42; // Seed of chains and datasets
+    private static final long PRINT_LIMIT = 1L << 28; // Maximum number of printed chars of the chain
+
+    private static long sink = 0; // Consumes results, so that JIT could not eliminate work
+
+    public static void main(String[] args) throws Exception {
+        long maxChain = args.length > 0 ? Long.parseLong(args[0]) : 1L << 24;
+        long maxDataset = args.length > 1 ? Long.parseLong(args[1]) : 1L << 28;
+        System.out.println("chars      calls      build ms   merge ms   stream ms  printed chars   print ms");
+        for (long chars = 1 << 10; chars <= maxChain; chars *= 4)
+            chain(chars);
+        System.out.println("bytes          write MB/s   apply MB/s   results");
+        for (long bytes = 1 << 20; bytes <= maxDataset; bytes *= 4)
+            dataset(bytes);
+    }
+
+    /**
+     * Measures parsing, merging and printing of the chain of about given length
+     *
+     * @param chars length of the chain in chars
+     * @throws Exception if chain cannot be interpreted or printed
+     */
+    private static void chain(long chars) throws Exception {
+        // Length of the chain is estimated by its first 100 calls
+        long sample = WorkloadGenerator.builder(SEED).calls(100).depth(3).build().chain().length();
+        int calls = (int) Math.max(1, chars * 100 / sample);
+        WorkloadGenerator generator = WorkloadGenerator.builder(SEED).calls(calls).depth(3).build();
+        List<String> sources = generator.calls();
+
+        long start = System.nanoTime();
+        ArrayList<ASTree> trees = new ArrayList<>(calls);
+        for (String source : sources)
+            trees.add(new ASTreeBuilder(source).build());
+        long build = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        sink += ASTreeBuilder.rebuildToFilterMap(trees).size();
+        long merge = System.nanoTime() - start;
+        trees = null;
+
+        String source = String.join("%>%", sources);
+        sources = null;
+        start = System.nanoTime();
+        NormalizedChain chain = ChainParser.parse(new StringReader(source));
+        long stream = System.nanoTime() - start;
+
+        long printed = ChainPrinter.length(chain);
+        String print = "skipped";
+        if (printed <= PRINT_LIMIT) {
+            start = System.nanoTime();
+            sink += ChainPrinter.print(chain, Writer.nullWriter(), PRINT_LIMIT);
+            print = String.format("%.1f", (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("%-10d %-10d %-10.1f %-10.1f %-10.1f %-15d %s%n", source.length(), calls,
+                build / 1e6, merge / 1e6, stream / 1e6, printed, print);
+    }
+
+    /**
+     * Measures writing and evaluation of the dataset file
+     *
+     * @param bytes size of the dataset in bytes
+     * @throws Exception if files cannot be written
+     */
+    private static void dataset(long bytes) throws Exception {
+        WorkloadGenerator generator = WorkloadGenerator.builder(SEED).calls(8).depth(2).constants(-3, 3).build();
+        Pipeline pipeline = Pipeline.compile(generator.chain());
+        Path input = Files.createTempFile("stress", ".in");
+        Path output = Files.createTempFile("stress", ".out");
+        try {
+            long start = System.nanoTime();
+            try (FileChannel channel = FileChannel.open(input, StandardOpenOption.WRITE)) {
+                generator.writeElements(channel, bytes / Integer.BYTES);
+            }
+            long write = System.nanoTime() - start;
+            start = System.nanoTime();
+            long results = FilePipeline.apply(pipeline, input, output);
+            long apply = System.nanoTime() - start;
+            sink += results;
+            System.out.printf("%-14d %-12.1f %-12.1f %d%n", bytes, bytes / (write / 1e3), bytes / (apply / 1e3), results);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+}
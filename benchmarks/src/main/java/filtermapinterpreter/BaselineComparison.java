@@ -0,0 +1,209 @@
+package filtermapinterpreter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH results in JSON format ({@code -rf json}), e.g. recorded baseline and
+ * results of the current commit. Prints change of the score of each benchmark with parameters
+ * and exits with status 1 if any benchmark is slower than the baseline by more than threshold.
+ * <p>
+ * Usage: {@code BaselineComparison baseline.json current.json [threshold percent, 10 by default]}
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class BaselineComparison {
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BaselineComparison baseline.json current.json [threshold percent]");
+            return;
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, Score> baseline = read(args[0]);
+        Map<String, Score> current = read(args[1]);
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                System.out.printf("%-80s %12s %12.3f %s%n", entry.getKey(), "-", after.value, after.unit);
+                continue;
+            }
+            // Positive change is an improvement: less time or more operations
+            double change = after.higherIsBetter()
+                    ? (after.value - before.value) / before.value * 100
+                    : (before.value - after.value) / before.value * 100;
+            boolean regression = change < -threshold;
+            if (regression)
+                regressions++;
+            System.out.printf("%-80s %12.3f %12.3f %s %+7.1f%%%s%n", entry.getKey(), before.value, after.value,
+                    after.unit, change, regression ? " REGRESSION" : "");
+        }
+        System.out.printf("%d of %d benchmarks are slower by more than %.1f%%%n", regressions, current.size(), threshold);
+        if (regressions > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Reads scores of JMH results
+     *
+     * @param file path of JSON file with JMH results
+     * @return scores by benchmark name with parameters
+     * @throws IOException if file cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Score> read(String file) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        Map<String, Score> scores = new TreeMap<>();
+        for (Object result : (List<Object>) new JsonReader(json).read()) {
+            Map<String, Object> benchmark = (Map<String, Object>) result;
+            StringBuilder key = new StringBuilder((String) benchmark.get("benchmark"));
+            key.replace(0, key.lastIndexOf(".", key.lastIndexOf(".") - 1) + 1, "");
+            Object params = benchmark.get("params");
+            if (params != null) {
+                for (Map.Entry<String, Object> param : new TreeMap<>((Map<String, Object>) params).entrySet())
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue());
+            }
+            Map<String, Object> metric = (Map<String, Object>) benchmark.get("primaryMetric");
+            scores.put(key.toString(), new Score(((Number) metric.get("score")).doubleValue(), (String) metric.get("scoreUnit")));
+        }
+        return scores;
+    }
+
+    /**
+     * Score of benchmark
+     */
+    private static final class Score {
+
+        private final double value; // Score
+        private final String unit; // Unit of the score, e.g. "us/op" or "ops/s"
+
+        /**
+         * Constructor
+         *
+         * @param value score
+         * @param unit  unit of the score
+         */
+        private Score(double value, String unit) {
+            this.value = value;
+            this.unit = unit;
+        }
+
+        /**
+         * Shows is score a throughput
+         *
+         * @return true if unit is operations per time, false if it is time per operation
+         */
+        private boolean higherIsBetter() {
+            return unit.startsWith("ops/");
+        }
+    }
+
+    /**
+     * Minimal reader of JSON written by JMH: objects, arrays, strings, numbers and literals
+     */
+    private static final class JsonReader {
+
+        private final String json; // Text to read
+        private int position = 0; // Index of the next char
+
+        /**
+         * Constructor
+         *
+         * @param json text to read
+         */
+        private JsonReader(String json) {
+            this.json = json;
+        }
+
+        /**
+         * Reads the next value
+         *
+         * @return Map for object, List for array, String, Double, Boolean or null
+         */
+        private Object read() {
+            skipSpaces();
+            char c = json.charAt(position);
+            switch (c) {
+                case '{':
+                    Map<String, Object> object = new LinkedHashMap<>();
+                    position++;
+                    while (!consume('}')) {
+                        consume(',');
+                        String name = (String) read();
+                        consume(':');
+                        object.put(name, read());
+                    }
+                    return object;
+                case '[':
+                    List<Object> array = new ArrayList<>();
+                    position++;
+                    while (!consume(']')) {
+                        consume(',');
+                        array.add(read());
+                    }
+                    return array;
+                case '"':
+                    StringBuilder string = new StringBuilder();
+                    position++;
+                    while ((c = json.charAt(position++)) != '"') {
+                        if (c == '\\') {
+                            c = json.charAt(position++);
+                            if (c == 'u') {
+                                c = (char) Integer.parseInt(json.substring(position, position + 4), 16);
+                                position += 4;
+                            } else if (c == 'n')
+                                c = '\n';
+                            else if (c == 't')
+                                c = '\t';
+                        }
+                        string.append(c);
+                    }
+                    return string.toString();
+                default:
+                    int start = position;
+                    while (position < json.length() && ",]} \t\r\n".indexOf(json.charAt(position)) < 0)
+                        position++;
+                    String literal = json.substring(start, position);
+                    if (literal.equals("null"))
+                        return null;
+                    if (literal.equals("true") || literal.equals("false"))
+                        return Boolean.valueOf(literal);
+                    return literal.equals("NaN") ? Double.NaN : Double.valueOf(literal);
+            }
+        }
+
+        /**
+         * Skips whitespaces and the expected char if it is the next one
+         *
+         * @param expected expected char
+         * @return true if char is skipped
+         */
+        private boolean consume(char expected) {
+            skipSpaces();
+            if (json.charAt(position) != expected)
+                return false;
+            position++;
+            return true;
+        }
+
+        /**
+         * Skips whitespaces
+         */
+        private void skipSpaces() {
+            while (Character.isWhitespace(json.charAt(position)))
+                position++;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package filtermapinterpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of {@code Pipeline} evaluation over integer array in each {@code ExecutionMode}.
+ *
+ * @author Taimuraz Tibilov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class EvaluateBenchmark {
+
+    @Param({"4", "64"})
+    public int calls; // Number of calls in the chain
+
+    @Param({"4"})
+    public int depth; // Nesting depth of each call
+
+    @Param({"1024", "1048576"})
+    public int elements; // Number of elements in the input array
+
+    @Param({"INTERPRETED", "COMPILED", "VECTORIZED"})
+    public ExecutionMode mode; // Execution mode of the pipeline
+
+    private Pipeline pipeline; // Pipeline of the chain
+    private int[] input; // Source elements
+    private int[] output; // Array for results
+
+    @Setup
+    public void setUp() throws Exception {
+        pipeline = Pipeline.compile(Workload.chain(calls, depth, 42), mode);
+        input = Workload.elements(elements, 7);
+        output = new int[elements];
+    }
+
+    @Benchmark
+    public int apply() {
+        return pipeline.apply(input, 0, input.length, output, 0);
+    }
+}
@@ -0,0 +1,84 @@
+package filtermapinterpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * JMH benchmark of {@code FilterOptimizer} on skewed elements: expensive filter that never fails
+ * goes before cheap filter that fails for most of elements. Pipeline is evaluated with filters
+ * in chain order and reordered by the first 1024 elements. Compiled filters and register plans
+ * of interpreted arrays evaluate each conjunct, so reordering is expected to matter only for
+ * short-circuit predicates of {@code Pipeline.getFilter}, which interpreted streams are filtered by:
+ * {@code apply} measures arrays, {@code applyStream} and {@code filter} measure the predicate.
+ *
+ * @author Taimuraz Tibilov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class FilterOrderBenchmark {
+
+    private static final String CHAIN = "filter{((((element*element)+(element*3))-(element*7))>-100)}"
+            + "%>%filter{(((element*element)-(element*5))>-10)}%>%filter{(element<10)}%>%map{(element*2)}";
+
+    @Param({"false", "true"})
+    public boolean reordered; // Are filters reordered by FilterOptimizer
+
+    @Param({"50", "95"})
+    public int skew; // Percent of elements that fail the cheap filter
+
+    @Param({"INTERPRETED", "COMPILED"})
+    public ExecutionMode mode; // Execution mode of the pipeline
+
+    private Pipeline pipeline; // Pipeline of the chain
+    private int[] input; // Source elements
+    private int[] output; // Array for results
+
+    @Setup
+    public void setUp() throws Exception {
+        input = Workload.skewedElements(1 << 16, skew, 7);
+        output = new int[input.length];
+        NormalizedChain chain = FilterMapInterpreter.normalize(CHAIN);
+        if (reordered)
+            chain = FilterOptimizer.reorder(chain, Arrays.copyOf(input, 1024));
+        pipeline = new Pipeline(chain, mode);
+    }
+
+    @Benchmark
+    public int apply() {
+        return pipeline.apply(input, 0, input.length, output, 0);
+    }
+
+    @Benchmark
+    public int applyStream() {
+        return pipeline.apply(IntStream.of(input)).sum();
+    }
+
+    @Benchmark
+    public int filter() {
+        IntPredicate filter = pipeline.getFilter();
+        int count = 0;
+        for (int element : input) {
+            if (filter.test(element))
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,79 @@
+package filtermapinterpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of merging parsed calls: {@code ASTreeBuilder.rebuildToFilterMap} and
+ * {@code NormalizedChain.of}. Rebuilding modifies trees, so they are parsed again
+ * before each invocation, and that is not measured.
+ *
+ * @author Taimuraz Tibilov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class MergeBenchmark {
+
+    @Param({"16", "256"})
+    public int calls; // Number of calls in the chain
+
+    @Param({"2", "16"})
+    public int depth; // Nesting depth of each call
+
+    private List<String> sources; // Sources of calls
+    private ArrayList<ASTree> trees; // Parsed calls, rebuilt by the benchmark
+    private List<ASTree> parsed; // Parsed calls, not modified
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        sources = Workload.calls(calls, depth, 42);
+        parsed = parse(sources);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws Exception {
+        trees = parse(sources);
+    }
+
+    @Benchmark
+    public ArrayList<ASTree> rebuildToFilterMap() throws Exception {
+        return ASTreeBuilder.rebuildToFilterMap(trees);
+    }
+
+    @Benchmark
+    public NormalizedChain normalize() throws Exception {
+        return NormalizedChain.of(parsed);
+    }
+
+    /**
+     * Parses calls
+     *
+     * @param sources sources of calls
+     * @return trees of calls
+     * @throws Exception if call has syntax or type error
+     */
+    private static ArrayList<ASTree> parse(List<String> sources) throws Exception {
+        ArrayList<ASTree> result = new ArrayList<>(sources.size());
+        for (String source : sources)
+            result.add(new ASTreeBuilder(source).build());
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package filtermapinterpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of parsing: {@code ASTreeBuilder.build} of each call and the whole
+ * {@code FilterMapInterpreter.interpret} of the chain.
+ *
+ * @author Taimuraz Tibilov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ParseBenchmark {
+
+    @Param({"1", "16", "256"})
+    public int calls; // Number of calls in the chain
+
+    @Param({"2", "16", "256"})
+    public int depth; // Nesting depth of each call
+
+    private List<String> sources; // Sources of calls
+    private String chain; // Source of the chain
+
+    @Setup
+    public void setUp() {
+        sources = Workload.calls(calls, depth, 42);
+        chain = String.join("%>%", sources);
+    }
+
+    @Benchmark
+    public void build(Blackhole blackhole) throws Exception {
+        for (String source : sources)
+            blackhole.consume(new ASTreeBuilder(source).build());
+    }
+
+    @Benchmark
+    public String interpret() {
+        return FilterMapInterpreter.interpret(chain);
+    }
+}
@@ -0,0 +1,80 @@
+package filtermapinterpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of known chain on restart: parsing and merging by {@code FilterMapInterpreter.normalize}
+ * against reading of its plan from {@code PlanStore}, and opening of the store with 1000 chains.
+ *
+ * @author Taimuraz Tibilov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class PlanStoreBenchmark {
+
+    private static final int CHAINS = 1000; // Number of other chains in the store
+
+    @Param({"16", "256"})
+    public int calls; // Number of calls in the chain
+
+    @Param({"2", "16"})
+    public int depth; // Nesting depth of each call
+
+    private String chain; // Source of the chain
+    private Path path; // File of the store
+    private PlanStore store; // Opened store that contains the chain
+
+    @Setup
+    public void setUp() throws Exception {
+        chain = String.join("%>%", Workload.calls(calls, depth, 42));
+        path = Files.createTempFile("plans", ".bin");
+        Files.delete(path);
+        store = PlanStore.open(path);
+        for (int i = 0; i < CHAINS; i++)
+            store.normalize(String.join("%>%", Workload.calls(16, 2, i)));
+        store.normalize(chain);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public NormalizedChain parse() throws Exception {
+        return FilterMapInterpreter.normalize(chain);
+    }
+
+    @Benchmark
+    public NormalizedChain load() throws Exception {
+        return store.get(chain);
+    }
+
+    @Benchmark
+    public int open() throws Exception {
+        try (PlanStore plans = PlanStore.open(path)) {
+            return plans.size();
+        }
+    }
+}
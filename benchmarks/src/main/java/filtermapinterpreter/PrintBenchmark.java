@@ -0,0 +1,63 @@
+package filtermapinterpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of printing merged call-chain: {@code ASTree.toString} of rebuilt
+ * filter- and map-calls and {@code NormalizedChain.toString}.
+ *
+ * @author Taimuraz Tibilov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class PrintBenchmark {
+
+    @Param({"16", "256"})
+    public int calls; // Number of calls in the chain
+
+    @Param({"2", "16"})
+    public int depth; // Nesting depth of each call
+
+    private ASTree filter; // Rebuilt filter-call
+    private ASTree map; // Rebuilt map-call
+    private NormalizedChain chain; // Normalized call-chain
+
+    @Setup
+    public void setUp() throws Exception {
+        ArrayList<ASTree> trees = new ArrayList<>();
+        for (String source : Workload.calls(calls, depth, 42))
+            trees.add(new ASTreeBuilder(source).build());
+        chain = NormalizedChain.of(trees);
+        List<ASTree> rebuilt = ASTreeBuilder.rebuildToFilterMap(trees);
+        filter = rebuilt.get(0) == null ? ASTreeBuilder.buildDefaultFilter() : rebuilt.get(0);
+        map = rebuilt.get(1) == null ? ASTreeBuilder.buildDefaultMap() : rebuilt.get(1);
+    }
+
+    @Benchmark
+    public String astree() {
+        return filter.toString() + "%>%" + map.toString();
+    }
+
+    @Benchmark
+    public String normalizedChain() {
+        return chain.toString();
+    }
+}
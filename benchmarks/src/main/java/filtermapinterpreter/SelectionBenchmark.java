@@ -0,0 +1,65 @@
+package filtermapinterpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the filter stage alone: selection vector and bitmap of passed elements
+ * against the whole pipeline, which evaluates map of each element as well.
+ *
+ * @author Taimuraz Tibilov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SelectionBenchmark {
+
+    private static final String CHAIN = "filter{((element>-500)&(element<500))}"
+            + "%>%map{(((element*element)+(element*3))-7)}%>%map{((element*element)-(element*5))}";
+
+    @Param({"INTERPRETED", "COMPILED"})
+    public ExecutionMode mode; // Execution mode of the pipeline
+
+    private Pipeline pipeline; // Pipeline of the chain
+    private int[] input; // Source elements
+    private int[] output; // Array for results and indexes
+    private long[] words; // Bitmap of passed elements
+
+    @Setup
+    public void setUp() throws Exception {
+        input = Workload.elements(1 << 16, 7);
+        output = new int[input.length];
+        words = new long[input.length / 64];
+        pipeline = Pipeline.compile(CHAIN, mode);
+    }
+
+    @Benchmark
+    public int apply() {
+        return pipeline.apply(input, 0, input.length, output, 0);
+    }
+
+    @Benchmark
+    public int select() {
+        return pipeline.select(input, 0, input.length, output, 0);
+    }
+
+    @Benchmark
+    public long[] bitmap() {
+        pipeline.bitmap(input, 0, input.length, words);
+        return words;
+    }
+}
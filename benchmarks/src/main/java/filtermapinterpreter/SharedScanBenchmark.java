@@ -0,0 +1,67 @@
+package filtermapinterpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of {@code SharedScan} against separate evaluation of each compiled {@code Pipeline}.
+ * Each query is a prefix of the same generated chain, as chains of one application usually
+ * extend each other, so merged expressions of queries share subexpressions.
+ *
+ * @author Taimuraz Tibilov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SharedScanBenchmark {
+
+    @Param({"8", "32"})
+    public int queries; // Number of evaluated chains
+
+    private SharedScan scan; // All chains in one scan
+    private Pipeline[] pipelines; // Each chain compiled separately
+    private int[] input; // Source elements
+    private int[][] outputs; // Arrays for results by chain
+
+    @Setup
+    public void setUp() throws Exception {
+        List<String> calls = Workload.calls(queries + 1, 3, 42);
+        scan = new SharedScan();
+        pipelines = new Pipeline[queries];
+        for (int q = 0; q < queries; q++) {
+            String source = String.join("%>%", calls.subList(0, q + 2));
+            scan.add(source);
+            pipelines[q] = Pipeline.compile(source, ExecutionMode.COMPILED);
+        }
+        input = Workload.elements(1 << 16, 7);
+        outputs = new int[queries][input.length];
+    }
+
+    @Benchmark
+    public int separate() {
+        int count = 0;
+        for (int q = 0; q < queries; q++)
+            count += pipelines[q].apply(input, 0, input.length, outputs[q], 0);
+        return count;
+    }
+
+    @Benchmark
+    public int[] shared() {
+        return scan.apply(input, 0, input.length, outputs);
+    }
+}
@@ -0,0 +1,88 @@
+package filtermapinterpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of call-chains for benchmarks. Chains alternate map- and filter-calls, each call is
+ * nested to the given depth and uses element once, so merged and printed chains grow linearly
+ * with number of calls and depth. Chains are the same for the same seed. Shapes are fixed,
+ * so that results stay comparable with recorded baselines; chains and datasets of other shapes
+ * and sizes are generated by {@code WorkloadGenerator}.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class Workload {
+
+    private static final String INT_OPERATORS = "+-*"; // Operators of nested map expressions
+
+    private Workload() {
+    }
+
+    /**
+     * Generates calls of the chain
+     *
+     * @param calls number of calls
+     * @param depth nesting depth of each call
+     * @param seed  seed of constants and operators
+     * @return sources of calls in order of the chain
+     */
+    public static List<String> calls(int calls, int depth, long seed) {
+        Random random = new Random(seed);
+        List<String> result = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            StringBuilder expression = new StringBuilder("element");
+            for (int j = i % 2 == 0 ? 0 : 1; j < depth; j++) {
+                char operator = INT_OPERATORS.charAt(random.nextInt(INT_OPERATORS.length()));
+                // Multiplier is never 0, otherwise the rest of chain would be folded to constants
+                int constant = operator == '*' ? random.nextInt(9) + 1 : random.nextInt(200) - 100;
+                expression.insert(0, '(').append(operator).append(constant).append(')');
+            }
+            if (i % 2 == 0)
+                result.add("map{" + expression + "}");
+            else
+                result.add("filter{(" + expression + (random.nextBoolean() ? '>' : '<') + (random.nextInt(200) - 100) + ")}");
+        }
+        return result;
+    }
+
+    /**
+     * Generates the chain
+     *
+     * @param calls number of calls
+     * @param depth nesting depth of each call
+     * @param seed  seed of constants and operators
+     * @return source of the chain
+     */
+    public static String chain(int calls, int depth, long seed) {
+        return String.join("%>%", calls(calls, depth, seed));
+    }
+
+    /**
+     * Generates elements of the input array
+     *
+     * @param size number of elements
+     * @param seed seed of elements
+     * @return elements in range [-1000, 1000)
+     */
+    public static int[] elements(int size, long seed) {
+        return new Random(seed).ints(size, -1000, 1000).toArray();
+    }
+
+    /**
+     * Generates skewed elements of the input array: most of them are large and positive
+     *
+     * @param size    number of elements
+     * @param percent percent of elements in range [100, 1000), the rest are in range [-1000, 100)
+     * @param seed    seed of elements
+     * @return elements in range [-1000, 1000)
+     */
+    public static int[] skewedElements(int size, int percent, long seed) {
+        Random random = new Random(seed);
+        int[] elements = new int[size];
+        for (int i = 0; i < size; i++)
+            elements[i] = random.nextInt(100) < percent ? 100 + random.nextInt(900) : random.nextInt(1100) - 1000;
+        return elements;
+    }
+}
@@ -1,7 +1,11 @@
 package filtermapinterpreter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Class that represents node of abstract syntax tree (AST).
@@ -72,13 +76,84 @@ public class ASTNode {
     public String toString() {
         if (type != NodeType.OPERATION)
             return value;
-        if (childrenCount() != 2)
-            return "UNKNOWN ERROR - there are not 2 operands in binary operation!";
-        return "(" +
-                children.get(0) +
-                value +
-                children.get(1) +
-                ")";
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Appends description of the node to the builder. Tree is traversed by explicit stack,
+     * so depth of the tree is limited only by heap
+     *
+     * @param builder builder to append description to
+     */
+    public void appendTo(StringBuilder builder) {
+        ASTNode[] nodes = new ASTNode[16]; // Stack of operations that are printed now
+        boolean[] printedLeft = new boolean[16]; // Is left operand of each operation of the stack printed
+        int size = 0;
+        ASTNode node = this;
+        while (true) {
+            // Opens operations down to the leaf
+            while (node.type == NodeType.OPERATION && node.childrenCount() == 2) {
+                if (size == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, size * 2);
+                    printedLeft = Arrays.copyOf(printedLeft, size * 2);
+                }
+                builder.append('(');
+                nodes[size] = node;
+                printedLeft[size++] = false;
+                node = node.children.get(0);
+            }
+            if (node.type == NodeType.OPERATION)
+                builder.append("UNKNOWN ERROR - there are not 2 operands in binary operation!");
+            else
+                builder.append(node.value);
+            // Closes operations with both printed operands
+            while (size > 0 && printedLeft[size - 1]) {
+                size--;
+                builder.append(')');
+            }
+            if (size == 0)
+                return;
+            printedLeft[size - 1] = true;
+            builder.append(nodes[size - 1].value);
+            node = nodes[size - 1].children.get(1);
+        }
+    }
+
+    /**
+     * Lists distinct nodes of the tree in post-order: children before their parent, left child
+     * before right one. Nodes shared by merged trees are listed once. Tree is traversed by
+     * explicit stack, so depth of the tree is limited only by heap
+     *
+     * @return nodes of the tree in post-order
+     */
+    public List<ASTNode> postOrder() {
+        ArrayList<ASTNode> order = new ArrayList<>();
+        Set<ASTNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayList<ASTNode> stack = new ArrayList<>(); // Path from this node to the current one
+        ArrayList<Integer> next = new ArrayList<>(); // Index of the next child to visit for each node of path
+        stack.add(this);
+        next.add(0);
+        visited.add(this);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            ASTNode node = stack.get(top);
+            int index = next.get(top);
+            if (index == node.children.size()) {
+                order.add(node);
+                stack.remove(top);
+                next.remove(top);
+                continue;
+            }
+            next.set(top, index + 1);
+            ASTNode child = node.children.get(index);
+            if (visited.add(child)) {
+                stack.add(child);
+                next.add(0);
+            }
+        }
+        return order;
     }
 
     /**
@@ -109,6 +184,18 @@ public class ASTNode {
         }
     }
 
+    /**
+     * Getter of the child by its index
+     *
+     * @param index index of the child (0 - left operand, 1 - right operand)
+     * @return child node or NIL if there is no child with given index
+     */
+    public ASTNode getChild(int index) {
+        if (index < 0 || index >= children.size())
+            return NIL;
+        return children.get(index);
+    }
+
     /**
      * Getter of children number
      *
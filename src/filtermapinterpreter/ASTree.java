@@ -71,6 +71,15 @@ public class ASTree {
         return builder.toString();
     }
 
+    /**
+     * Getter of the root node
+     *
+     * @return root node of the expression
+     */
+    public ASTNode getRoot() {
+        return root;
+    }
+
     /**
      * Getter of the root type
      *
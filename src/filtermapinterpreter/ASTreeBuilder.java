@@ -3,6 +3,7 @@ package filtermapinterpreter;
 import com.sun.jdi.InvalidTypeException;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 /**
@@ -24,7 +25,7 @@ public class ASTreeBuilder extends AbstractParser {
      *
      * @param source call expression to parse. If got null or empty - do nothing.
      */
-    public ASTreeBuilder(String source) {
+    public ASTreeBuilder(CharSequence source) {
         super(source);
     }
 
@@ -96,28 +97,44 @@ public class ASTreeBuilder extends AbstractParser {
 
     /**
      * Parse, build and check expressions - element, number or binary. Main builder of this class.
+     * Parser is iterative: each open bracket pushes a frame of binary expression to the stack,
+     * so nesting depth is limited only by heap. Errors are found in the same order as by recursive descent.
      *
      * @return root node of the AST (expression inside call)
      * @throws InvalidSyntaxException if cannot parse expected expression (source has syntax error)
      * @throws InvalidTypeException   if cannot match output types between operators and operands
      */
     private ASTNode getExpression() throws InvalidSyntaxException, InvalidTypeException {
-        if (isMatchesTo(NodeType.ELEMENT))
-            return getElement();
-        if (isMatchesTo(NodeType.NUMBER))
-            return getNumber();
-        if (!matchTo('('))
-            throw new InvalidSyntaxException("Expected expression!");
-        ASTNode leftExpression = getExpression();
-        ASTNode operator = getOperation();
-        ASTNode rightExpression = getExpression();
-        if (!checkOperands(leftExpression, rightExpression, operator))
-            throw new InvalidTypeException("Wrong type of operands!");
-        if (!matchTo(')'))
-            throw new InvalidSyntaxException("Expected closing bracket ')'!");
-        operator.addChild(leftExpression);
-        operator.addChild(rightExpression);
-        return operator;
+        ArrayList<ASTNode> lefts = new ArrayList<>(); // Left operands of open expressions, null if not parsed yet
+        ArrayList<ASTNode> operators = new ArrayList<>(); // Operators of open expressions
+        while (true) {
+            while (!isMatchesTo(NodeType.ELEMENT) && !isMatchesTo(NodeType.NUMBER)) {
+                if (!matchTo('('))
+                    throw new InvalidSyntaxException("Expected expression!");
+                lefts.add(null);
+                operators.add(null);
+            }
+            ASTNode node = isMatchesTo(NodeType.ELEMENT) ? getElement() : getNumber();
+            while (true) {
+                int top = lefts.size() - 1;
+                if (top < 0)
+                    return node;
+                if (lefts.get(top) == null) {
+                    lefts.set(top, node);
+                    operators.set(top, getOperation());
+                    break;
+                }
+                ASTNode leftExpression = lefts.remove(top);
+                ASTNode operator = operators.remove(top);
+                if (!checkOperands(leftExpression, node, operator))
+                    throw new InvalidTypeException("Wrong type of operands!");
+                if (!matchTo(')'))
+                    throw new InvalidSyntaxException("Expected closing bracket ')'!");
+                operator.addChild(leftExpression);
+                operator.addChild(node);
+                node = operator;
+            }
+        }
     }
 
     /**
@@ -129,8 +146,37 @@ public class ASTreeBuilder extends AbstractParser {
      *                                output type of expression does not match to the call-type
      */
     public ASTree build() throws InvalidSyntaxException, InvalidTypeException {
-        if (isMatchesTo(NodeType.MAP_EXPRESSION)) {
-            matchTo(NodeType.MAP_EXPRESSION);
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        long start = Metrics.start();
+        ASTree tree = null;
+        try {
+            tree = buildCall();
+            return tree;
+        } finally {
+            Metrics.stop(Metrics.PARSE_TIME, start);
+            Metrics.add(Metrics.PARSE_ERRORS, tree == null ? 1 : 0);
+            if (event.shouldCommit() || Metrics.isEnabled()) {
+                int nodes = tree == null ? 0 : tree.getRoot().postOrder().size();
+                if (tree != null)
+                    Metrics.record(Metrics.PARSE_NODES, nodes);
+                event.callType = tree == null ? null : tree.getRootType() == NodeType.MAP_EXPRESSION ? "map" : "filter";
+                event.nodes = nodes;
+                event.error = tree == null;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Parses filter-call or map-call expression, body of {@link #build()} without instrumentation
+     *
+     * @return abstract syntax tree of filter-call or map-call
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    private ASTree buildCall() throws InvalidSyntaxException, InvalidTypeException {
+        if (!matchTo(NodeType.MAP_EXPRESSION).isEmpty()) {
             if (!matchTo('{'))
                 throw new InvalidSyntaxException("Expected opening bracket '{'!");
             ASTNode root = getExpression();
@@ -142,8 +188,7 @@ public class ASTreeBuilder extends AbstractParser {
                 throw new InvalidTypeException("Expected integer output type!");
             return new ASTree(root, elements, NodeType.MAP_EXPRESSION);
         } else {
-            if (isMatchesTo(NodeType.FILTER_EXPRESSION)) {
-                matchTo(NodeType.FILTER_EXPRESSION);
+            if (!matchTo(NodeType.FILTER_EXPRESSION).isEmpty()) {
                 if (!matchTo('{'))
                     throw new InvalidSyntaxException("Expected opening bracket '{'!");
                 ASTNode root = getExpression();
@@ -193,6 +238,9 @@ public class ASTreeBuilder extends AbstractParser {
      * @throws InvalidTypeException if got not map- or filter-call AST
      */
     public static ArrayList<ASTree> rebuildToFilterMap(ArrayList<ASTree> calls) throws InvalidTypeException {
+        MergeEvent event = new MergeEvent();
+        event.begin();
+        long start = Metrics.start();
         ASTree map = null;
         ASTree filter = null;
         for (ASTree call : calls) {
@@ -211,9 +259,74 @@ public class ASTreeBuilder extends AbstractParser {
                     throw new InvalidTypeException("Expected map or filter call!");
             }
         }
+        event.end();
+        Metrics.stop(Metrics.MERGE_TIME, start);
+        if (event.shouldCommit() || Metrics.isEnabled()) {
+            IdentityHashMap<ASTNode, Long> sizes = new IdentityHashMap<>();
+            long expanded = 0;
+            for (ASTree tree : new ASTree[]{filter, map}) {
+                if (tree != null)
+                    expanded = saturatedAdd(expanded, treeSize(tree.getRoot(), sizes));
+            }
+            long nodes = Math.max(sizes.size(), 1);
+            Metrics.record(Metrics.MERGE_NODES, nodes);
+            Metrics.record(Metrics.MERGE_EXPANSION, Math.round(100.0 * expanded / nodes));
+            event.calls = calls.size();
+            event.nodes = nodes;
+            event.expandedNodes = expanded;
+            event.expansionRatio = (double) expanded / nodes;
+            event.commit();
+        }
         ArrayList<ASTree> result = new ArrayList<>();
         result.add(filter);
         result.add(map);
         return result;
     }
+
+    /**
+     * Counts nodes of expression as a tree, visiting each shared node once.
+     * Merged calls share nodes instead of copying them, so the tree could be exponentially large
+     *
+     * @param root  root of the expression
+     * @param sizes tree sizes of already visited nodes, visited nodes are added to it
+     * @return number of nodes of the expression as a tree, saturated at {@code Long.MAX_VALUE}
+     */
+    private static long treeSize(ASTNode root, IdentityHashMap<ASTNode, Long> sizes) {
+        ArrayList<ASTNode> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            ASTNode node = stack.get(stack.size() - 1);
+            if (sizes.containsKey(node)) {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+            boolean ready = true;
+            for (int i = 0; i < node.childrenCount(); i++) {
+                if (!sizes.containsKey(node.getChild(i))) {
+                    stack.add(node.getChild(i));
+                    ready = false;
+                }
+            }
+            if (ready) {
+                long size = 1;
+                for (int i = 0; i < node.childrenCount(); i++)
+                    size = saturatedAdd(size, sizes.get(node.getChild(i)));
+                sizes.put(node, size);
+                stack.remove(stack.size() - 1);
+            }
+        }
+        return sizes.get(root);
+    }
+
+    /**
+     * Helper function, adds non-negative numbers without overflow
+     *
+     * @param first  1st number
+     * @param second 2nd number
+     * @return sum of numbers or {@code Long.MAX_VALUE} if it overflows
+     */
+    private static long saturatedAdd(long first, long second) {
+        long sum = first + second;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
 }
@@ -3,6 +3,8 @@ package filtermapinterpreter;
 /**
  * Abstract class for parsing call-expressions and their parts.
  * It has methods to match or check matching for each type of expression member.
+ * Source is split to tokens by {@code Lexer}, so checks of matching do not scan
+ * the source again and matching allocates nothing except texts of long numbers.
  *
  * @author Taimuraz Tibilov
  */
@@ -11,17 +13,24 @@ public abstract class AbstractParser {
     public static final String OPERATORS = "+-*<>=&|"; // Binary operators
     public static final String BRACKETS = "(){}"; // Brackets of expressions
 
-    private String source = "\0"; // String to parse
-    private int pos = 0; // Pointer on current position
+    private final Lexer lexer; // Lexer of the source, holds current token
 
     /**
      * Constructor
      *
      * @param source call expression to parse. If got null or empty - do nothing.
      */
-    public AbstractParser(String source) {
-        if (source != null && source.length() > 0)
-            this.source = source;
+    public AbstractParser(CharSequence source) {
+        lexer = new Lexer(source);
+    }
+
+    /**
+     * Getter of the lexer
+     *
+     * @return lexer of the source, its current token is the next one to match
+     */
+    protected Lexer getLexer() {
+        return lexer;
     }
 
     /**
@@ -30,120 +39,70 @@ public abstract class AbstractParser {
      * @return is pointer reached end of source
      */
     public boolean end() {
-        return pos >= source.length();
+        return lexer.type() == TokenType.END;
     }
 
     /**
-     * Increment position pointer
+     * Moves pointer to the next token
      */
     public void next() {
-        if (!end())
-            pos++;
+        lexer.next();
     }
 
     /**
-     * Returns current character of source string or null-char if end
+     * Returns first character of current token or null-char if end
      *
-     * @return current character of source string or null-char if end
+     * @return first character of current token or null-char if end
      */
     public char current() {
-        if (end())
-            return '\0';
-        return source.charAt(pos);
+        return lexer.current();
     }
 
     /**
      * Method skips whitespaces (isn't used in this realization)
      */
     public void skipSpaces() {
-        while (!end() && Character.isWhitespace(current()))
+        while (lexer.type() == TokenType.UNKNOWN && Character.isWhitespace(current()))
             next();
     }
 
     /**
-     * Shows, does current prefix of the source string from position matches to given type of expression
+     * Shows, does current token of the source matches to given type of expression
      *
      * @param type grammatical type of expression to match to
-     * @return true if prefix of the source matches to the given type, false otherwise
+     * @return true if current token matches to the given type, false otherwise
      */
     public boolean isMatchesTo(NodeType type) {
         if (type == null)
             return false;
-        int previousPos = this.pos;
-        boolean match = false;
         switch (type) {
             case NUMBER:
-                match = !matchTo(NodeType.NUMBER).isEmpty();
-                break;
+                return lexer.type() == TokenType.NUMBER;
             case ELEMENT:
-                match = !matchTo(NodeType.ELEMENT).isEmpty();
-                break;
+                return lexer.type() == TokenType.ELEMENT;
             case OPERATION:
-                match = !matchTo(NodeType.OPERATION).isEmpty();
-                break;
+                return lexer.type() == TokenType.OPERATOR;
             case FILTER_EXPRESSION:
-                match = !matchTo(NodeType.FILTER_EXPRESSION).isEmpty();
-                break;
+                return lexer.type() == TokenType.FILTER;
             case MAP_EXPRESSION:
-                match = !matchTo(NodeType.MAP_EXPRESSION).isEmpty();
-                break;
+                return lexer.type() == TokenType.MAP;
             default: // this matcher works only with elementary or primitive types
-                break;
+                return false;
         }
-        this.pos = previousPos;
-        return match;
     }
 
     /**
-     * Try to match prefix of the source from current position to given type.
+     * Try to match current token to given type.
      *
      * @param type grammatical type of expression to match to
-     * @return value if prefix of the source matches to the given type, empty string otherwise
+     * @return value if current token matches to the given type, empty string otherwise
      */
     protected String matchTo(NodeType type) {
-        if (type == null)
-            return "";
-//        skipSpaces(); // Uses if needed
-        StringBuilder builder = new StringBuilder();
-        switch (type) {
-            case NUMBER:
-                if (current() == '-') {
-                    builder.append(current());
-                    next();
-                }
-                if (Character.isDigit(current())) {
-                    do {
-                        builder.append(current());
-                        next();
-                    } while (!end() && Character.isDigit(current()));
-                    return builder.toString();
-                }
-                break;
-            case ELEMENT:
-                if (source.startsWith("element", pos)) {
-                    pos += 7;
-                    return "element";
-                }
-                break;
-            case OPERATION:
-                if (OPERATORS.indexOf(current()) > -1)
-                    return String.valueOf(source.charAt(pos++));
-                break;
-            case FILTER_EXPRESSION:
-                if (source.startsWith("filter", pos)) {
-                    pos += 6;
-                    return "filter";
-                }
-            case MAP_EXPRESSION:
-                if (source.startsWith("map", pos)) {
-                    pos += 3;
-                    return "map";
-                }
-                break;
-            default: // this matcher works only with elementary or primitive types
-                break;
-        }
-        return ""; // if no matches are found
+        if (!isMatchesTo(type))
+            return ""; // if no matches are found
+        String value = lexer.text();
+        lexer.next();
+        return value;
     }
 
     /**
@@ -153,14 +112,21 @@ public abstract class AbstractParser {
      * @return true if bracket matches to expected bracket, false otherwise
      */
     protected boolean matchTo(char bracket) {
-//        skipSpaces(); // Uses if needed
         if (end())
             return false;
         if (BRACKETS.indexOf(bracket) == -1)
             return false;
-        char curr = current();
-        next();
-//        skipSpaces(); // Uses if needed
-        return curr == bracket;
+        TokenType type = lexer.type();
+        lexer.next();
+        switch (bracket) {
+            case '(':
+                return type == TokenType.LEFT_PARENTHESIS;
+            case ')':
+                return type == TokenType.RIGHT_PARENTHESIS;
+            case '{':
+                return type == TokenType.LEFT_BRACE;
+            default:
+                return type == TokenType.RIGHT_BRACE;
+        }
     }
 }
@@ -0,0 +1,165 @@
+package filtermapinterpreter;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Class of concurrent interpretation of many call-chains. Chains are interpreted by
+ * {@code FilterMapInterpreter.interpret} on the executor, results are returned in order of
+ * sources, errors are reported by the same strings. Number of chains in flight is bounded
+ * by the window, so streams of any length are interpreted in bounded memory.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class BatchInterpreter implements AutoCloseable {
+
+    private final ExecutorService executor; // Executor of interpretation tasks
+    private final boolean owned; // Is executor created by this interpreter and must be shut down by it
+    private final int window; // Maximum number of chains in flight
+    private final boolean optimize; // Simplify expressions by Simplifier
+    private final PlanStore plans; // Store of normalized call-chains or null
+
+    /**
+     * Constructor, uses pool with thread per available processor
+     *
+     * @param optimize simplify expressions by {@code Simplifier}
+     */
+    public BatchInterpreter(boolean optimize) {
+        this(optimize, null);
+    }
+
+    /**
+     * Constructor, uses pool with thread per available processor. Store is not closed by {@link #close()}
+     *
+     * @param optimize simplify expressions by {@code Simplifier}
+     * @param plans    store of normalized call-chains, so that known chains are not parsed again, or null
+     */
+    public BatchInterpreter(boolean optimize, PlanStore plans) {
+        this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()), true,
+                Runtime.getRuntime().availableProcessors() * 16, optimize, plans);
+    }
+
+    /**
+     * Constructor, given executor is not shut down by {@link #close()}. It could be
+     * any bounded pool or executor that starts virtual thread per task
+     *
+     * @param executor executor of interpretation tasks
+     * @param window   maximum number of chains in flight
+     * @param optimize simplify expressions by {@code Simplifier}
+     */
+    public BatchInterpreter(ExecutorService executor, int window, boolean optimize) {
+        this(executor, false, window, optimize, null);
+    }
+
+    /**
+     * Constructor, given executor and store are not closed by {@link #close()}
+     *
+     * @param executor executor of interpretation tasks
+     * @param window   maximum number of chains in flight
+     * @param optimize simplify expressions by {@code Simplifier}
+     * @param plans    store of normalized call-chains, so that known chains are not parsed again, or null
+     */
+    public BatchInterpreter(ExecutorService executor, int window, boolean optimize, PlanStore plans) {
+        this(executor, false, window, optimize, plans);
+    }
+
+    private BatchInterpreter(ExecutorService executor, boolean owned, int window, boolean optimize, PlanStore plans) {
+        if (executor == null)
+            throw new InvalidParameterException("Null pointer on executor!");
+        if (window <= 0)
+            throw new InvalidParameterException("Size of window must be positive!");
+        this.executor = executor;
+        this.owned = owned;
+        this.window = window;
+        this.optimize = optimize;
+        this.plans = plans;
+    }
+
+    /**
+     * Interprets given call-chains
+     *
+     * @param sources strings that contain expressions built by test case grammar
+     * @return results of {@code FilterMapInterpreter.interpret} in order of sources
+     */
+    public List<String> interpret(Collection<String> sources) {
+        if (sources == null)
+            throw new InvalidParameterException("Null pointer on sources!");
+        List<String> results = new ArrayList<>(sources.size());
+        interpret(sources.iterator(), results::add);
+        return results;
+    }
+
+    /**
+     * Interprets given call-chains and passes results to the consumer in order of sources.
+     * Consumer is called on the caller's thread
+     *
+     * @param sources strings that contain expressions built by test case grammar
+     * @param results consumer of results of {@code FilterMapInterpreter.interpret}
+     */
+    public void interpret(Stream<String> sources, Consumer<String> results) {
+        if (sources == null || results == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        interpret(sources.iterator(), results);
+    }
+
+    /**
+     * Submits chains keeping at most window of them in flight and takes results in order of submission
+     *
+     * @param sources iterator of sources
+     * @param results consumer of results
+     */
+    private void interpret(Iterator<String> sources, Consumer<String> results) {
+        ArrayDeque<Future<String>> inFlight = new ArrayDeque<>();
+        try {
+            while (sources.hasNext()) {
+                if (inFlight.size() == window)
+                    results.accept(take(inFlight.poll()));
+                String source = sources.next();
+                inFlight.add(executor.submit(() -> FilterMapInterpreter.interpret(source, optimize, plans)));
+            }
+            while (!inFlight.isEmpty())
+                results.accept(take(inFlight.poll()));
+        } finally {
+            for (Future<String> future : inFlight)
+                future.cancel(true);
+        }
+    }
+
+    /**
+     * Waits for the result of the task
+     *
+     * @param future interpretation task
+     * @return result of {@code FilterMapInterpreter.interpret}
+     */
+    private static String take(Future<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for interpretation!", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Shuts down executor if it was created by this interpreter
+     */
+    @Override
+    public void close() {
+        if (owned)
+            executor.shutdown();
+    }
+}
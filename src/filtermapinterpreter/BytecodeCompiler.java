@@ -0,0 +1,792 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Class that compiles abstract syntax trees of filter- and map-calls to JVM bytecode.
+ * Each call becomes a hidden class implementing {@code IntPredicate} or {@code IntUnaryOperator}
+ * with the whole expression in one method, so the JIT could inline it. The pipeline loop over arrays
+ * is compiled to its own hidden class too, otherwise the call site in the loop would be shared by
+ * all pipelines and become megamorphic. Expressions have no branches: comparisons are computed
+ * arithmetically as 0 or 1. Subexpressions used more than once are computed at their first
+ * occurrence and stored to local variables. Compilation could be disabled by system property
+ * {@code filtermapinterpreter.compile=false}.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class BytecodeCompiler {
+
+    public static final boolean ENABLED =
+            !"false".equalsIgnoreCase(System.getProperty("filtermapinterpreter.compile")); // Is compilation enabled
+
+    private static final int MAX_CODE_LENGTH = 65535; // Limit of JVM method code size
+    private static final int MAX_JUMP = Short.MAX_VALUE; // Limit of 16-bit offset of jump instructions, goto_w is not emitted
+    private static final String CLASS_NAME = "filtermapinterpreter/CompiledExpression"; // Name of generated classes
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * Compiles filter-call expression to the predicate
+     *
+     * @param filter filter-call AST
+     * @return predicate that is true for elements passing the filter
+     * @throws InvalidTypeException          if tree is not a filter-call or has constant out of integer range
+     * @throws UnsupportedOperationException if expression is too large for one method or class cannot be defined
+     */
+    public static IntPredicate compileFilter(ASTree filter) throws InvalidTypeException {
+        checkType(filter, NodeType.FILTER_EXPRESSION);
+        return compileFilter(new ExpressionGraph().intern(filter.getRoot()));
+    }
+
+    /**
+     * Compiles filter expression to the predicate
+     *
+     * @param filter root of the expression with boolean output
+     * @return predicate that is true for elements passing the filter
+     * @throws InvalidTypeException          if expression is not boolean or has constant out of integer range
+     * @throws UnsupportedOperationException if expression is too large for one method or class cannot be defined
+     */
+    public static IntPredicate compileFilter(DagNode filter) throws InvalidTypeException {
+        checkType(filter, OutputType.BOOLEAN);
+        ClassFile classFile = new ClassFile("java/util/function/IntPredicate");
+        Code code = classFile.newCode(2, filter);
+        code.emit(filter, 1);
+        code.op(0xAC, -1); // ireturn
+        classFile.addMethod("test", "(I)Z", code, null);
+        return (IntPredicate) classFile.define();
+    }
+
+    /**
+     * Compiles map-call expression to the function
+     *
+     * @param map map-call AST
+     * @return function that maps element to the new value
+     * @throws InvalidTypeException          if tree is not a map-call or has constant out of integer range
+     * @throws UnsupportedOperationException if expression is too large for one method or class cannot be defined
+     */
+    public static IntUnaryOperator compileMap(ASTree map) throws InvalidTypeException {
+        checkType(map, NodeType.MAP_EXPRESSION);
+        return compileMap(new ExpressionGraph().intern(map.getRoot()));
+    }
+
+    /**
+     * Compiles map expression to the function
+     *
+     * @param map root of the expression with integer output
+     * @return function that maps element to the new value
+     * @throws InvalidTypeException          if expression is not integer or has constant out of integer range
+     * @throws UnsupportedOperationException if expression is too large for one method or class cannot be defined
+     */
+    public static IntUnaryOperator compileMap(DagNode map) throws InvalidTypeException {
+        checkType(map, OutputType.INT);
+        ClassFile classFile = new ClassFile("java/util/function/IntUnaryOperator");
+        Code code = classFile.newCode(2, map);
+        code.emit(map, 1);
+        code.op(0xAC, -1); // ireturn
+        classFile.addMethod("applyAsInt", "(I)I", code, null);
+        return (IntUnaryOperator) classFile.define();
+    }
+
+    /**
+     * Compiles loop of the pipeline over array with inlined filter- and map-call expressions.
+     * Loop has no branches except its condition: mapped value is always written to the next
+     * free place of output and number of results is increased by the filter value (0 or 1)
+     *
+     * @param filter root of the filter expression
+     * @param map    root of the map expression
+     * @return evaluation loop of the pipeline
+     * @throws InvalidTypeException          if expressions have wrong types or constant out of integer range
+     * @throws UnsupportedOperationException if expressions are too large for one method or loop or class cannot be defined
+     */
+    static PipelineKernel compileKernel(DagNode filter, DagNode map) throws InvalidTypeException {
+        checkType(filter, OutputType.BOOLEAN);
+        checkType(map, OutputType.INT);
+        // Locals: 0 this, 1 input, 2 from, 3 to, 4 output, 5 offset, 6 index, 7 count, 8 element, 9... shared nodes
+        ClassFile classFile = new ClassFile("filtermapinterpreter/PipelineKernel");
+        Code code = classFile.newCode(9, map, filter);
+        code.op(0x1C, 1); // iload_2
+        code.local(0x36, 6, -1); // istore 6
+        code.local(0x15, 5, 1); // iload 5
+        code.local(0x36, 7, -1); // istore 7
+        int loop = code.position();
+        code.local(0x15, 6, 1); // iload 6
+        code.op(0x1D, 1); // iload_3
+        int exitJump = code.jump(0xA2, -2); // if_icmpge
+        code.op(0x2B, 1); // aload_1
+        code.local(0x15, 6, 1); // iload 6
+        code.op(0x2E, -1); // iaload
+        code.local(0x36, 8, -1); // istore 8
+        code.local(0x19, 4, 1); // aload 4
+        code.local(0x15, 7, 1); // iload 7
+        code.emit(map, 8);
+        code.op(0x4F, -3); // iastore
+        code.local(0x15, 7, 1); // iload 7
+        code.emit(filter, 8);
+        code.op(0x60, -1); // iadd
+        code.local(0x36, 7, -1); // istore 7
+        code.increment(6); // iinc 6 1
+        code.patch(code.jump(0xA7, 0), loop); // goto
+        int exit = code.position();
+        code.local(0x15, 7, 1); // iload 7
+        code.local(0x15, 5, 1); // iload 5
+        code.op(0x64, -1); // isub
+        code.op(0xAC, -1); // ireturn
+        code.patch(exitJump, exit);
+
+        int array = classFile.pool.classRef("[I");
+        int[] locals = {-classFile.thisClass, -array, 1, 1, -array, 1, 1, 1};
+        StackMap frames = new StackMap();
+        frames.fullFrame(loop, locals);
+        frames.fullFrame(exit, locals);
+        classFile.addMethod("apply", "([III[II)I", code, frames);
+        return (PipelineKernel) classFile.define();
+    }
+
+    /**
+     * Compiles loops of the filter stage to the selection vector and to the bitmap, and loop of
+     * the map stage over selected positions. Like the pipeline loop, they have no branches except
+     * their conditions: index is always written and number of indexes is increased by the filter value,
+     * filter value is shifted to its bit and or-ed to the word
+     *
+     * @param filter root of the filter expression
+     * @param map    root of the map expression
+     * @return evaluation loops of the pipeline stages
+     * @throws InvalidTypeException          if expressions have wrong types or constant out of integer range
+     * @throws UnsupportedOperationException if expressions are too large for one method or loop or class cannot be defined
+     */
+    static SelectionKernel compileSelectionKernel(DagNode filter, DagNode map) throws InvalidTypeException {
+        checkType(filter, OutputType.BOOLEAN);
+        checkType(map, OutputType.INT);
+        ClassFile classFile = new ClassFile("filtermapinterpreter/SelectionKernel");
+        int array = classFile.pool.classRef("[I");
+
+        // Locals: 0 this, 1 input, 2 from, 3 to, 4 selection, 5 offset, 6 index, 7 count, 8 element, 9... shared nodes
+        Code code = classFile.newCode(9, filter);
+        code.op(0x1C, 1); // iload_2
+        code.local(0x36, 6, -1); // istore 6
+        code.local(0x15, 5, 1); // iload 5
+        code.local(0x36, 7, -1); // istore 7
+        int loop = code.position();
+        code.local(0x15, 6, 1); // iload 6
+        code.op(0x1D, 1); // iload_3
+        int exitJump = code.jump(0xA2, -2); // if_icmpge
+        code.op(0x2B, 1); // aload_1
+        code.local(0x15, 6, 1); // iload 6
+        code.op(0x2E, -1); // iaload
+        code.local(0x36, 8, -1); // istore 8
+        code.local(0x19, 4, 1); // aload 4
+        code.local(0x15, 7, 1); // iload 7
+        code.local(0x15, 6, 1); // iload 6
+        code.op(0x4F, -3); // iastore
+        code.local(0x15, 7, 1); // iload 7
+        code.emit(filter, 8);
+        code.op(0x60, -1); // iadd
+        code.local(0x36, 7, -1); // istore 7
+        code.increment(6); // iinc 6 1
+        code.patch(code.jump(0xA7, 0), loop); // goto
+        int exit = code.position();
+        code.local(0x15, 7, 1); // iload 7
+        code.local(0x15, 5, 1); // iload 5
+        code.op(0x64, -1); // isub
+        code.op(0xAC, -1); // ireturn
+        code.patch(exitJump, exit);
+        int[] locals = {-classFile.thisClass, -array, 1, 1, -array, 1, 1, 1};
+        StackMap frames = new StackMap();
+        frames.fullFrame(loop, locals);
+        frames.fullFrame(exit, locals);
+        classFile.addMethod("select", "([III[II)I", code, frames);
+
+        // Locals: 0 this, 1 input, 2 from, 3 to, 4 words, 5 bit, 6 element, 7... shared nodes
+        code = classFile.newCode(7, filter);
+        code.op(0x03, 1); // iconst_0
+        code.local(0x36, 5, -1); // istore 5
+        loop = code.position();
+        code.local(0x15, 5, 1); // iload 5
+        code.op(0x1D, 1); // iload_3
+        code.op(0x1C, 1); // iload_2
+        code.op(0x64, -1); // isub
+        exitJump = code.jump(0xA2, -2); // if_icmpge
+        code.op(0x2B, 1); // aload_1
+        code.op(0x1C, 1); // iload_2
+        code.local(0x15, 5, 1); // iload 5
+        code.op(0x60, -1); // iadd
+        code.op(0x2E, -1); // iaload
+        code.local(0x36, 6, -1); // istore 6
+        code.local(0x19, 4, 1); // aload 4
+        code.local(0x15, 5, 1); // iload 5
+        code.pushConstant(6);
+        code.op(0x7C, -1); // iushr
+        code.op(0x5C, 2); // dup2
+        code.op(0x2F, 0); // laload
+        code.emit(filter, 6);
+        code.op(0x85, 1); // i2l
+        code.local(0x15, 5, 1); // iload 5
+        code.op(0x79, -1); // lshl, shift by the low 6 bits of the bit index
+        code.op(0x81, -2); // lor
+        code.op(0x50, -4); // lastore
+        code.increment(5); // iinc 5 1
+        code.patch(code.jump(0xA7, 0), loop); // goto
+        exit = code.position();
+        code.op(0xB1, 0); // return
+        code.patch(exitJump, exit);
+        locals = new int[]{-classFile.thisClass, -array, 1, 1, -classFile.pool.classRef("[J"), 1};
+        frames = new StackMap();
+        frames.fullFrame(loop, locals);
+        frames.fullFrame(exit, locals);
+        classFile.addMethod("bitmap", "([III[J)V", code, frames);
+
+        // Locals: 0 this, 1 input, 2 selection, 3 from, 4 to, 5 output, 6 offset, 7 index, 8 count, 9 element, 10... shared nodes
+        code = classFile.newCode(10, map);
+        code.op(0x1D, 1); // iload_3
+        code.local(0x36, 7, -1); // istore 7
+        code.local(0x15, 6, 1); // iload 6
+        code.local(0x36, 8, -1); // istore 8
+        loop = code.position();
+        code.local(0x15, 7, 1); // iload 7
+        code.local(0x15, 4, 1); // iload 4
+        exitJump = code.jump(0xA2, -2); // if_icmpge
+        code.op(0x2B, 1); // aload_1
+        code.op(0x2C, 1); // aload_2
+        code.local(0x15, 7, 1); // iload 7
+        code.op(0x2E, -1); // iaload
+        code.op(0x2E, -1); // iaload
+        code.local(0x36, 9, -1); // istore 9
+        code.local(0x19, 5, 1); // aload 5
+        code.local(0x15, 8, 1); // iload 8
+        code.emit(map, 9);
+        code.op(0x4F, -3); // iastore
+        code.increment(8); // iinc 8 1
+        code.increment(7); // iinc 7 1
+        code.patch(code.jump(0xA7, 0), loop); // goto
+        exit = code.position();
+        code.local(0x15, 8, 1); // iload 8
+        code.local(0x15, 6, 1); // iload 6
+        code.op(0x64, -1); // isub
+        code.op(0xAC, -1); // ireturn
+        code.patch(exitJump, exit);
+        locals = new int[]{-classFile.thisClass, -array, -array, 1, 1, -array, 1, 1, 1};
+        frames = new StackMap();
+        frames.fullFrame(loop, locals);
+        frames.fullFrame(exit, locals);
+        classFile.addMethod("gather", "([I[III[II)I", code, frames);
+        return (SelectionKernel) classFile.define();
+    }
+
+    /**
+     * Checks type of the call tree
+     *
+     * @param tree call AST
+     * @param type expected root type
+     * @throws InvalidTypeException if tree has another type
+     */
+    private static void checkType(ASTree tree, NodeType type) throws InvalidTypeException {
+        if (tree == null)
+            throw new InvalidParameterException("Null pointer on tree!");
+        if (tree.getRootType() != type)
+            throw new InvalidTypeException(type == NodeType.MAP_EXPRESSION ? "Expected map call!" : "Expected filter call!");
+    }
+
+    /**
+     * Checks output type of the expression
+     *
+     * @param root root of the expression
+     * @param type expected output type
+     * @throws InvalidTypeException if expression has another output type
+     */
+    private static void checkType(DagNode root, OutputType type) throws InvalidTypeException {
+        if (root == null)
+            throw new InvalidParameterException("Null pointer on expression!");
+        if (root.outputType != type)
+            throw new InvalidTypeException(type == OutputType.INT ? "Expected integer expression!" : "Expected boolean expression!");
+    }
+
+    /**
+     * Helper class, constant pool of the generated class
+     */
+    private static class ConstantPool {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(); // Constant pool entries
+        private final DataOutputStream out = new DataOutputStream(bytes); // Writer of constant pool
+        private final Map<String, Integer> indexes = new HashMap<>(); // Indexes of added entries
+        private int size = 1; // Index of the next constant pool entry
+
+        /**
+         * Adds entry to the constant pool if it was not added before
+         *
+         * @param key    unique key of the entry
+         * @param tag    tag of the entry
+         * @param first  first field (UTF8 string, integer value or index)
+         * @param second second index or -1 if entry has one field
+         * @return index of the entry
+         */
+        private int add(String key, int tag, Object first, int second) {
+            Integer index = indexes.get(key);
+            if (index != null)
+                return index;
+            try {
+                out.writeByte(tag);
+                if (first instanceof String)
+                    out.writeUTF((String) first);
+                else if (tag == 3)
+                    out.writeInt((Integer) first);
+                else
+                    out.writeShort((Integer) first);
+                if (second >= 0)
+                    out.writeShort(second);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            indexes.put(key, size);
+            return size++;
+        }
+
+        private int utf8(String value) {
+            return add("U" + value, 1, value, -1);
+        }
+
+        private int integer(int value) {
+            return add("I" + value, 3, value, -1);
+        }
+
+        private int classRef(String name) {
+            return add("C" + name, 7, utf8(name), -1);
+        }
+
+        private int methodRef(String owner, String name, String descriptor) {
+            int nameAndType = add("N" + name + descriptor, 12, utf8(name), utf8(descriptor));
+            return add("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType);
+        }
+    }
+
+    /**
+     * Helper class, code of one method with tracking of the operand stack depth
+     */
+    private static class Code {
+
+        private final ConstantPool pool; // Constant pool of the class
+        private final Map<DagNode, Integer> uses = new HashMap<>(); // Number of uses of each operation node
+        private final Map<DagNode, Integer> slots = new HashMap<>(); // Local variables of computed shared nodes
+        private byte[] bytes = new byte[64]; // Bytes of the code
+        private int length = 0; // Length of the code
+        private int depth = 0; // Current depth of operand stack in words
+        private int maxDepth = 0; // Maximal depth of operand stack in words
+        private int maxLocals; // Number of local variables
+
+        /**
+         * Constructor, counts uses of operation nodes of expressions that will be emitted
+         *
+         * @param pool   constant pool of the class
+         * @param locals number of local variables before ones of shared nodes
+         * @param roots  roots of expressions that will be emitted
+         */
+        private Code(ConstantPool pool, int locals, DagNode... roots) {
+            this.pool = pool;
+            maxLocals = locals;
+            for (DagNode root : roots)
+                uses.merge(root, 1, Integer::sum);
+            for (DagNode node : ExpressionGraph.topologicalOrder(roots)) {
+                if (node.isOperation()) {
+                    uses.merge(node.left, 1, Integer::sum);
+                    uses.merge(node.right, 1, Integer::sum);
+                }
+            }
+        }
+
+        /**
+         * Getter of the current position of the code
+         *
+         * @return offset of the next instruction
+         */
+        private int position() {
+            return length;
+        }
+
+        /**
+         * Writes one byte
+         *
+         * @param value byte to write
+         */
+        private void write(int value) {
+            if (length == MAX_CODE_LENGTH)
+                throw new UnsupportedOperationException("Expression is too large to compile!");
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            bytes[length++] = (byte) value;
+        }
+
+        /**
+         * Writes instruction and changes stack depth
+         *
+         * @param opcode instruction code
+         * @param change change of the stack depth in words
+         */
+        private void op(int opcode, int change) {
+            write(opcode);
+            depth += change;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * Writes instruction with local variable index
+         *
+         * @param opcode instruction code
+         * @param index  index of the local variable
+         * @param change change of the stack depth in words
+         */
+        private void local(int opcode, int index, int change) {
+            if (index > 255) {
+                write(0xC4); // wide
+                op(opcode, change);
+                write(index >> 8);
+            } else
+                op(opcode, change);
+            write(index);
+        }
+
+        /**
+         * Writes instruction that increments local variable by 1
+         *
+         * @param index index of the local variable
+         */
+        private void increment(int index) {
+            op(0x84, 0);
+            write(index);
+            write(1);
+        }
+
+        /**
+         * Writes jump instruction with unknown target
+         *
+         * @param opcode instruction code
+         * @param change change of the stack depth in words
+         * @return offset of the instruction, needed to patch target
+         */
+        private int jump(int opcode, int change) {
+            int at = position();
+            op(opcode, change);
+            write(0);
+            write(0);
+            return at;
+        }
+
+        /**
+         * Sets target of the jump instruction
+         *
+         * @param at     offset of the jump instruction
+         * @param target offset of the target instruction
+         * @throws UnsupportedOperationException if target is farther than 16-bit offset, i.e. loop body is too large
+         */
+        private void patch(int at, int target) {
+            int delta = target - at;
+            if (Math.abs(delta) > MAX_JUMP)
+                throw new UnsupportedOperationException("Loop is too large to compile!");
+            bytes[at + 1] = (byte) (delta >> 8);
+            bytes[at + 2] = (byte) delta;
+        }
+
+        /**
+         * Writes instructions that push constant to the stack
+         *
+         * @param value integer constant
+         */
+        private void pushConstant(int value) {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value, 1); // iconst_<value>
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(0x10, 1); // bipush
+                write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(0x11, 1); // sipush
+                write(value >> 8);
+                write(value);
+            } else {
+                int index = pool.integer(value);
+                op(0x13, 1); // ldc_w
+                write(index >> 8);
+                write(index);
+            }
+        }
+
+        /**
+         * Writes instructions that push value of the expression to the stack.
+         * Boolean values are represented as integer 0 or 1. Operation used more than
+         * once is stored to local variable at first occurrence and loaded after that.
+         *
+         * @param node    root of the expression
+         * @param element index of local variable with the element
+         * @throws InvalidTypeException if expression has constant out of integer range
+         */
+        private void emit(DagNode node, int element) throws InvalidTypeException {
+            Integer slot = slots.get(node);
+            if (slot != null) {
+                local(0x15, slot, 1); // iload
+                return;
+            }
+            emitOperation(node, element);
+            if (node.isOperation() && uses.getOrDefault(node, 0) > 1) {
+                slot = maxLocals++;
+                slots.put(node, slot);
+                op(0x59, 1); // dup
+                local(0x36, slot, -1); // istore
+            }
+        }
+
+        /**
+         * Writes instructions that compute value of the expression
+         *
+         * @param node    root of the expression
+         * @param element index of local variable with the element
+         * @throws InvalidTypeException if expression has constant out of integer range
+         */
+        private void emitOperation(DagNode node, int element) throws InvalidTypeException {
+            switch (node.type) {
+                case ELEMENT:
+                    local(0x15, element, 1); // iload
+                    return;
+                case NUMBER:
+                    pushConstant(Evaluator.parseConstant(node));
+                    return;
+                case OPERATION:
+                    break;
+                default:
+                    throw new InvalidTypeException("Unexpected node in expression!");
+            }
+            DagNode left = node.left;
+            DagNode right = node.right;
+            switch (node.value) {
+                case "+":
+                    emitBinary(left, right, element, 0x60); // iadd
+                    break;
+                case "-":
+                    emitBinary(left, right, element, 0x64); // isub
+                    break;
+                case "*":
+                    emitBinary(left, right, element, 0x68); // imul
+                    break;
+                case "&":
+                    emitBinary(left, right, element, 0x7E); // iand
+                    break;
+                case "|":
+                    emitBinary(left, right, element, 0x80); // ior
+                    break;
+                case "<": // sign bit of ((long) left - right)
+                    emitLess(left, right, element);
+                    break;
+                case ">": // sign bit of ((long) right - left)
+                    emitLess(right, left, element);
+                    break;
+                case "=": // x = left ^ right; ((x | -x) >>> 31) ^ 1
+                    emitBinary(left, right, element, 0x82); // ixor
+                    op(0x59, 1); // dup
+                    op(0x74, 0); // ineg
+                    op(0x80, -1); // ior
+                    pushConstant(31);
+                    op(0x7C, -1); // iushr
+                    pushConstant(1);
+                    op(0x82, -1); // ixor
+                    break;
+                default:
+                    throw new InvalidTypeException("Unknown operator " + node.value);
+            }
+        }
+
+        /**
+         * Writes instructions of both operands and binary integer instruction
+         *
+         * @param left    left operand
+         * @param right   right operand
+         * @param element index of local variable with the element
+         * @param opcode  instruction code
+         * @throws InvalidTypeException if expression has constant out of integer range
+         */
+        private void emitBinary(DagNode left, DagNode right, int element, int opcode) throws InvalidTypeException {
+            emit(left, element);
+            emit(right, element);
+            op(opcode, -1);
+        }
+
+        /**
+         * Writes instructions that push 1 if first operand is less than second, 0 otherwise
+         *
+         * @param first   first operand
+         * @param second  second operand
+         * @param element index of local variable with the element
+         * @throws InvalidTypeException if expression has constant out of integer range
+         */
+        private void emitLess(DagNode first, DagNode second, int element) throws InvalidTypeException {
+            emit(first, element);
+            op(0x85, 1); // i2l
+            emit(second, element);
+            op(0x85, 1); // i2l
+            op(0x65, -2); // lsub
+            pushConstant(63);
+            op(0x7D, -1); // lushr
+            op(0x88, -1); // l2i
+        }
+    }
+
+    /**
+     * Helper class, StackMapTable attribute of the method with branches
+     */
+    private static class StackMap {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(); // Frames of the table
+        private final DataOutputStream out = new DataOutputStream(bytes); // Writer of frames
+        private int count = 0; // Number of frames
+        private int previous = -1; // Offset of the previous frame
+
+        /**
+         * Adds full frame with empty stack. Frames must be added in order of offsets.
+         *
+         * @param offset offset of the frame in code
+         * @param locals types of local variables: 1 for integer, negative class index for objects
+         */
+        private void fullFrame(int offset, int[] locals) {
+            try {
+                out.writeByte(255);
+                out.writeShort(offset - previous - 1);
+                out.writeShort(locals.length);
+                for (int local : locals) {
+                    if (local < 0) {
+                        out.writeByte(7);
+                        out.writeShort(-local);
+                    } else
+                        out.writeByte(local);
+                }
+                out.writeShort(0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            previous = offset;
+            count++;
+        }
+    }
+
+    /**
+     * Helper class, builds class file that implements one interface with public
+     * constructor and defines it as hidden class
+     */
+    private static class ClassFile {
+
+        private final ConstantPool pool = new ConstantPool(); // Constant pool of the class
+        private final ByteArrayOutputStream methods = new ByteArrayOutputStream(); // Methods of the class
+        private final DataOutputStream methodsOut = new DataOutputStream(methods); // Writer of methods
+        private final int thisClass; // Index of this class entry
+        private final int superClass; // Index of Object class entry
+        private final int interfaceClass; // Index of implemented interface entry
+        private int methodsCount = 0; // Number of methods
+
+        /**
+         * Constructor, adds public constructor to the methods
+         *
+         * @param interfaceName internal name of implemented interface
+         */
+        private ClassFile(String interfaceName) {
+            thisClass = pool.classRef(CLASS_NAME);
+            superClass = pool.classRef("java/lang/Object");
+            interfaceClass = pool.classRef(interfaceName);
+            Code init = newCode(1);
+            init.op(0x2A, 1); // aload_0
+            init.op(0xB7, -1); // invokespecial Object.<init>
+            int superInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+            init.write(superInit >> 8);
+            init.write(superInit);
+            init.op(0xB1, 0); // return
+            addMethod("<init>", "()V", init, null);
+        }
+
+        /**
+         * Creates code of the new method
+         *
+         * @param locals number of local variables before ones of shared nodes
+         * @param roots  roots of expressions that will be emitted
+         * @return empty code
+         */
+        private Code newCode(int locals, DagNode... roots) {
+            return new Code(pool, locals, roots);
+        }
+
+        /**
+         * Adds public method with Code attribute
+         *
+         * @param name       name of the method
+         * @param descriptor descriptor of the method
+         * @param code       code of the method
+         * @param frames     stack map frames or null if method has no branches
+         */
+        private void addMethod(String name, String descriptor, Code code, StackMap frames) {
+            try {
+                int codeName = pool.utf8("Code");
+                int stackMapName = pool.utf8("StackMapTable");
+                methodsOut.writeShort(0x0001); // ACC_PUBLIC
+                methodsOut.writeShort(pool.utf8(name));
+                methodsOut.writeShort(pool.utf8(descriptor));
+                methodsOut.writeShort(1);
+                methodsOut.writeShort(codeName);
+                int framesLength = frames == null ? 0 : 8 + frames.bytes.size();
+                methodsOut.writeInt(12 + code.length + framesLength);
+                methodsOut.writeShort(code.maxDepth);
+                methodsOut.writeShort(code.maxLocals);
+                methodsOut.writeInt(code.length);
+                methodsOut.write(code.bytes, 0, code.length);
+                methodsOut.writeShort(0); // exception table
+                if (frames == null) {
+                    methodsOut.writeShort(0); // attributes
+                } else {
+                    methodsOut.writeShort(1);
+                    methodsOut.writeShort(stackMapName);
+                    methodsOut.writeInt(2 + frames.bytes.size());
+                    methodsOut.writeShort(frames.count);
+                    frames.bytes.writeTo(methodsOut);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            methodsCount++;
+        }
+
+        /**
+         * Defines hidden class and creates its instance
+         *
+         * @return instance of the generated class
+         * @throws UnsupportedOperationException if class cannot be defined
+         */
+        private Object define() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0); // minor version
+                out.writeShort(52); // major version
+                out.writeShort(pool.size);
+                pool.bytes.writeTo(out);
+                out.writeShort(0x0031); // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(interfaceClass);
+                out.writeShort(0); // fields
+                out.writeShort(methodsCount);
+                methods.writeTo(out);
+                out.writeShort(0); // attributes
+                MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes.toByteArray(), true);
+                return lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+            } catch (Throwable e) {
+                throw new UnsupportedOperationException("Cannot define compiled expression: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class of compact binary format of normalized call-chains. Plan is the expression graph of the
+ * chain, not its text, so its size is linear in the number of distinct nodes even if the printed
+ * chain is exponentially long. Format of version 1:
+ * <pre>
+ * "FMP" version:byte nodes:varint node* filter:varint map:varint
+ * node = 0                                  ELEMENT
+ *      | 1 value:zigzag-varint              NUMBER in canonical form, e.g. "-7"
+ *      | 2 length:varint utf8-byte*         NUMBER in other form, e.g. "007", non-ASCII digits or out of long range
+ *      | 3+k left:varint right:varint       OPERATION with operator k of "+-*&amp;|&lt;&gt;="
+ * </pre>
+ * Nodes are written in topological order, operands are referred by distance back from the
+ * operation, and filter and map by index. Decoded chain is built in a new graph and checked
+ * like a parsed one, so corrupted plan could not give ill-typed chain.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class ChainCodec {
+
+    public static final int VERSION = 1; // Version of written plans
+    private static final byte[] MAGIC = {'F', 'M', 'P'}; // First bytes of each plan
+    private static final String OPERATORS = "+-*&|<>="; // Operators by tag - OPERATION
+    private static final int ELEMENT = 0; // Tag of ELEMENT node
+    private static final int NUMBER = 1; // Tag of canonical NUMBER node
+    private static final int TEXT = 2; // Tag of NUMBER node that is written as text
+    private static final int OPERATION = 3; // Tag of the first operator
+
+    private ChainCodec() {
+    }
+
+    /**
+     * Encodes normalized call-chain
+     *
+     * @param chain normalized call-chain
+     * @return plan of the chain
+     */
+    public static byte[] encode(NormalizedChain chain) {
+        if (chain == null)
+            throw new InvalidParameterException("Null pointer on chain!");
+        List<DagNode> order = ExpressionGraph.topologicalOrder(chain.getFilter(), chain.getMap());
+        int[] indexes = new int[order.get(order.size() - 1).id + 1]; // Index in order by node id
+        Output output = new Output();
+        output.bytes(MAGIC);
+        output.write(VERSION);
+        output.varint(order.size());
+        for (int i = 0; i < order.size(); i++) {
+            DagNode node = order.get(i);
+            indexes[node.id] = i;
+            switch (node.type) {
+                case ELEMENT:
+                    output.write(ELEMENT);
+                    break;
+                case NUMBER:
+                    Long value = canonical(node.value);
+                    if (value != null) {
+                        output.write(NUMBER);
+                        output.varint((value << 1) ^ (value >> 63));
+                    } else {
+                        byte[] text = node.value.getBytes(StandardCharsets.UTF_8);
+                        output.write(TEXT);
+                        output.varint(text.length);
+                        output.bytes(text);
+                    }
+                    break;
+                default:
+                    output.write(OPERATION + OPERATORS.indexOf(node.value.charAt(0)));
+                    output.varint(i - indexes[node.left.id]);
+                    output.varint(i - indexes[node.right.id]);
+            }
+        }
+        output.varint(indexes[chain.getFilter().id]);
+        output.varint(indexes[chain.getMap().id]);
+        return Arrays.copyOf(output.bytes, output.size);
+    }
+
+    /**
+     * Decodes normalized call-chain from the position of the buffer, position is moved after the plan
+     *
+     * @param buffer buffer with the plan
+     * @return normalized call-chain in the new graph
+     * @throws PlanFormatException if plan has other version or is corrupted
+     */
+    public static NormalizedChain decode(ByteBuffer buffer) throws PlanFormatException {
+        if (buffer == null)
+            throw new InvalidParameterException("Null pointer on buffer!");
+        try {
+            for (byte b : MAGIC) {
+                if (buffer.get() != b)
+                    throw new PlanFormatException("Not a plan!");
+            }
+            int version = buffer.get();
+            if (version != VERSION)
+                throw new PlanFormatException(String.format("Unsupported plan version %d!", version));
+            int size = index(buffer, Integer.MAX_VALUE);
+            if (size == 0 || size > buffer.remaining())
+                throw new PlanFormatException("Corrupted plan!");
+            ExpressionGraph graph = new ExpressionGraph();
+            DagNode[] nodes = new DagNode[size];
+            for (int i = 0; i < size; i++) {
+                int tag = buffer.get() & 0xFF;
+                if (tag == ELEMENT)
+                    nodes[i] = graph.element();
+                else if (tag == NUMBER) {
+                    long value = varint(buffer);
+                    nodes[i] = graph.number(String.valueOf((value >>> 1) ^ -(value & 1)));
+                } else if (tag == TEXT) {
+                    byte[] text = new byte[index(buffer, buffer.remaining() + 1)];
+                    buffer.get(text);
+                    String value = new String(text, StandardCharsets.UTF_8);
+                    if (!isNumber(value))
+                        throw new PlanFormatException("Corrupted plan!");
+                    nodes[i] = graph.number(value);
+                } else if (tag < OPERATION + OPERATORS.length()) {
+                    DagNode left = nodes[i - distance(buffer, i)];
+                    DagNode right = nodes[i - distance(buffer, i)];
+                    nodes[i] = graph.operation(String.valueOf(OPERATORS.charAt(tag - OPERATION)), left, right);
+                } else
+                    throw new PlanFormatException("Corrupted plan!");
+            }
+            DagNode filter = nodes[index(buffer, size)];
+            DagNode map = nodes[index(buffer, size)];
+            if (filter.outputType != OutputType.BOOLEAN || map.outputType != OutputType.INT)
+                throw new PlanFormatException("Corrupted plan!");
+            return new NormalizedChain(graph, filter, map);
+        } catch (BufferUnderflowException | InvalidTypeException e) {
+            throw new PlanFormatException("Corrupted plan!");
+        }
+    }
+
+    /**
+     * Helper function, parses number in canonical form
+     *
+     * @param value value of NUMBER node
+     * @return number or null if value is not the canonical form of long
+     */
+    private static Long canonical(String value) {
+        try {
+            long number = Long.parseLong(value);
+            return String.valueOf(number).equals(value) ? number : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper function, checks text of NUMBER node: optional minus and digits, like the grammar accepts
+     *
+     * @param value decoded text
+     * @return is text a number
+     */
+    private static boolean isNumber(String value) {
+        int start = value.startsWith("-") ? 1 : 0;
+        if (value.length() == start)
+            return false;
+        for (int i = start; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads unsigned varint
+     *
+     * @param buffer buffer with the plan
+     * @return value of varint
+     * @throws PlanFormatException if varint is longer than 10 bytes
+     */
+    private static long varint(ByteBuffer buffer) throws PlanFormatException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new PlanFormatException("Corrupted plan!");
+    }
+
+    /**
+     * Reads varint that is an index
+     *
+     * @param buffer buffer with the plan
+     * @param bound  upper bound of the index (exclusive)
+     * @return index
+     * @throws PlanFormatException if index is out of bound
+     */
+    private static int index(ByteBuffer buffer, int bound) throws PlanFormatException {
+        long value = varint(buffer);
+        if (value < 0 || value >= bound)
+            throw new PlanFormatException("Corrupted plan!");
+        return (int) value;
+    }
+
+    /**
+     * Reads distance back from the node to its operand
+     *
+     * @param buffer   buffer with the plan
+     * @param position index of the node
+     * @return distance in [1, position]
+     * @throws PlanFormatException if distance is out of range
+     */
+    private static int distance(ByteBuffer buffer, int position) throws PlanFormatException {
+        int distance = index(buffer, position + 1);
+        if (distance == 0)
+            throw new PlanFormatException("Corrupted plan!");
+        return distance;
+    }
+
+    /**
+     * Growable array of written bytes
+     */
+    private static final class Output {
+
+        private byte[] bytes = new byte[64]; // Written bytes
+        private int size = 0; // Number of written bytes
+
+        /**
+         * Writes byte
+         *
+         * @param b byte to write
+         */
+        private void write(int b) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = (byte) b;
+        }
+
+        /**
+         * Writes bytes
+         *
+         * @param values bytes to write
+         */
+        private void bytes(byte[] values) {
+            for (byte b : values)
+                write(b);
+        }
+
+        /**
+         * Writes unsigned varint: 7 bits per byte, high bit is set in each byte except the last one
+         *
+         * @param value value to write
+         */
+        private void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+
+/**
+ * Class of single-pass parser of call-chains. Source is appended by parts, "%>%" separators are
+ * recognized inline and each call is parsed and folded into the normalized call-chain as soon as
+ * it ends. So only the current call and the merged result are kept in memory, not the whole source.
+ * Blocks are numbered and checked like by {@code source.split("%>%")}: empty blocks at the end are
+ * ignored, blank source without separators is an empty chain.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class ChainParser {
+
+    private static final int BUFFER_SIZE = 8192; // Number of chars read from the source at once
+
+    private final NormalizedChain.Builder chain = new NormalizedChain.Builder(); // Folded calls
+    private final StringBuilder block = new StringBuilder(); // Text of the current call
+    private int blocks = 0; // Number of ended blocks
+    private int emptyBlocks = 0; // Number of empty blocks after the last non-empty one
+    private InvalidTypeException foldError = null; // The first error of folding, thrown after parsing
+    private boolean finished = false; // Is the end of source reached
+
+    /**
+     * Parses call-chain from the reader, reader is not closed
+     *
+     * @param reader source of the call-chain
+     * @return normalized call-chain
+     * @throws IOException            if reader fails
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public static NormalizedChain parse(Reader reader) throws IOException, InvalidSyntaxException, InvalidTypeException {
+        if (reader == null)
+            throw new InvalidParameterException("Null pointer on reader!");
+        ChainParser parser = new ChainParser();
+        char[] buffer = new char[BUFFER_SIZE];
+        int length;
+        while ((length = reader.read(buffer)) >= 0)
+            parser.append(buffer, 0, length);
+        return parser.finish();
+    }
+
+    /**
+     * Parses call-chain in UTF-8 from the channel, channel is not closed
+     *
+     * @param channel source of the call-chain
+     * @return normalized call-chain
+     * @throws IOException            if channel fails
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public static NormalizedChain parse(ReadableByteChannel channel)
+            throws IOException, InvalidSyntaxException, InvalidTypeException {
+        if (channel == null)
+            throw new InvalidParameterException("Null pointer on channel!");
+        return parse(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends the next part of the source
+     *
+     * @param chars part of the source
+     * @return this parser
+     * @throws InvalidSyntaxException if ended call has syntax error
+     * @throws InvalidTypeException   if ended call has type error
+     */
+    public ChainParser append(CharSequence chars) throws InvalidSyntaxException, InvalidTypeException {
+        if (chars == null)
+            throw new InvalidParameterException("Null pointer on chars!");
+        for (int i = 0; i < chars.length(); i++)
+            append(chars.charAt(i));
+        return this;
+    }
+
+    /**
+     * Appends the next part of the source
+     *
+     * @param chars  array with part of the source
+     * @param offset index of the first char of the part
+     * @param length number of chars in the part
+     * @return this parser
+     * @throws InvalidSyntaxException if ended call has syntax error
+     * @throws InvalidTypeException   if ended call has type error
+     */
+    public ChainParser append(char[] chars, int offset, int length) throws InvalidSyntaxException, InvalidTypeException {
+        if (chars == null)
+            throw new InvalidParameterException("Null pointer on chars!");
+        for (int i = offset; i < offset + length; i++)
+            append(chars[i]);
+        return this;
+    }
+
+    /**
+     * Ends the source and parses the last call
+     *
+     * @return normalized call-chain
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public NormalizedChain finish() throws InvalidSyntaxException, InvalidTypeException {
+        if (finished)
+            throw new IllegalStateException("Source is already finished!");
+        finished = true;
+        if (blocks > 0 || !block.codePoints().allMatch(Character::isWhitespace))
+            endBlock();
+        if (foldError != null)
+            throw new InvalidTypeException(String.format("TYPE ERROR: cannot rebuild calls, %s", foldError.getMessage()));
+        try {
+            return chain.build();
+        } catch (InvalidTypeException e) {
+            throw new InvalidTypeException(String.format("TYPE ERROR: cannot rebuild calls, %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Appends char to the current call, ends the call if it is followed by "%>%"
+     *
+     * @param c the next char of the source
+     * @throws InvalidSyntaxException if ended call has syntax error
+     * @throws InvalidTypeException   if ended call has type error
+     */
+    private void append(char c) throws InvalidSyntaxException, InvalidTypeException {
+        if (finished)
+            throw new IllegalStateException("Source is already finished!");
+        block.append(c);
+        int length = block.length();
+        if (c == '%' && length >= 3 && block.charAt(length - 2) == '>' && block.charAt(length - 3) == '%') {
+            block.setLength(length - 3);
+            blocks++;
+            endBlock();
+        }
+    }
+
+    /**
+     * Parses and folds the current call. Empty calls are postponed: they are errors
+     * only if they are followed by a non-empty call
+     *
+     * @throws InvalidSyntaxException if call has syntax error
+     * @throws InvalidTypeException   if call has type error
+     */
+    private void endBlock() throws InvalidSyntaxException, InvalidTypeException {
+        int number = finished ? blocks + 1 : blocks;
+        if (block.length() == 0) {
+            emptyBlocks++;
+            return;
+        }
+        if (emptyBlocks > 0)
+            parse("", number - emptyBlocks);
+        ASTree call = parse(block, number);
+        block.setLength(0);
+        if (foldError != null)
+            return;
+        try {
+            chain.add(call);
+        } catch (InvalidTypeException e) {
+            foldError = e;
+        }
+    }
+
+    /**
+     * Parses the call
+     *
+     * @param source text of the call
+     * @param number number of the call in the chain
+     * @return AST of the call
+     * @throws InvalidSyntaxException if call has syntax error
+     * @throws InvalidTypeException   if call has type error
+     */
+    private static ASTree parse(CharSequence source, int number) throws InvalidSyntaxException, InvalidTypeException {
+        try {
+            return new ASTreeBuilder(source).build();
+        } catch (InvalidSyntaxException e) {
+            throw new InvalidSyntaxException(String.format("SYNTAX ERROR in %d block: %s", number, e.getMessage()));
+        } catch (InvalidTypeException e) {
+            throw new InvalidTypeException(String.format("TYPE ERROR in %d block: %s", number, e.getMessage()));
+        }
+    }
+}
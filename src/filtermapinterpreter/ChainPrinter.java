@@ -0,0 +1,325 @@
+package filtermapinterpreter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.WritableByteChannel;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+/**
+ * Class of streaming printer of normalized call-chains. Output "filter{expression}%>%map{expression}"
+ * is written in one traversal through a fixed-size buffer, so it is never held in memory as a whole
+ * and could be longer than any {@code String}. Shared subexpression is written at each its use.
+ * Length of output is counted over the expression graph before writing, so output that exceeds
+ * the budget is rejected at once, without traversal.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class ChainPrinter {
+
+    private static final int BUFFER_SIZE = 8192; // Number of chars written to output at once
+
+    private ChainPrinter() {
+    }
+
+    /**
+     * Counts length of the printed call-chain
+     *
+     * @param chain normalized call-chain
+     * @return number of chars of output, {@code Long.MAX_VALUE} if it overflows long
+     */
+    public static long length(NormalizedChain chain) {
+        if (chain == null)
+            throw new InvalidParameterException("Null pointer on chain!");
+        long length = "filter{}%>%map{}".length();
+        length = add(length, length(chain.getFilter()));
+        return add(length, length(chain.getMap()));
+    }
+
+    /**
+     * Counts length of the printed expression: each operation adds its brackets and operator
+     * to the text of operands, shared operands are counted at each use
+     *
+     * @param root root of the expression
+     * @return number of chars of output, {@code Long.MAX_VALUE} if it overflows long
+     */
+    public static long length(DagNode root) {
+        if (root == null)
+            throw new InvalidParameterException("Null pointer on root!");
+        long[] lengths = new long[root.id + 1];
+        for (DagNode node : ExpressionGraph.topologicalOrder(root)) {
+            if (node.isOperation())
+                lengths[node.id] = add(add(lengths[node.left.id], lengths[node.right.id]), node.value.length() + 2);
+            else
+                lengths[node.id] = node.value.length();
+        }
+        return lengths[root.id];
+    }
+
+    /**
+     * Writes the call-chain to the output
+     *
+     * @param chain  normalized call-chain
+     * @param output output to append text to, {@code Writer} is written by arrays of chars
+     * @param budget maximum number of chars to write
+     * @return number of written chars
+     * @throws OutputLimitException if output is longer than budget, nothing is written then
+     * @throws IOException          if output fails
+     */
+    public static long print(NormalizedChain chain, Appendable output, long budget) throws IOException {
+        if (output == null)
+            throw new InvalidParameterException("Null pointer on output!");
+        long length = check(chain, budget);
+        Buffer buffer = output instanceof Writer ? new WriterBuffer((Writer) output) : new AppendableBuffer(output);
+        print(chain, buffer, length);
+        return length;
+    }
+
+    /**
+     * Writes the call-chain to the channel in UTF-8. Output is ASCII except numbers with non-ASCII
+     * digits that the grammar accepts, so bytes could be more than chars
+     *
+     * @param chain   normalized call-chain
+     * @param channel channel to write bytes to, it is not closed
+     * @param budget  maximum number of chars to write
+     * @return number of written bytes
+     * @throws OutputLimitException if output is longer than budget, nothing is written then
+     * @throws IOException          if channel fails
+     */
+    public static long print(NormalizedChain chain, WritableByteChannel channel, long budget) throws IOException {
+        if (channel == null)
+            throw new InvalidParameterException("Null pointer on channel!");
+        long length = check(chain, budget);
+        ChannelBuffer buffer = new ChannelBuffer(channel);
+        print(chain, buffer, length);
+        return buffer.written;
+    }
+
+    /**
+     * Helper function, checks length of output against budget
+     *
+     * @param chain  normalized call-chain
+     * @param budget maximum number of chars to write
+     * @return length of output
+     * @throws OutputLimitException if output is longer than budget
+     */
+    private static long check(NormalizedChain chain, long budget) throws OutputLimitException {
+        if (budget < 0)
+            throw new InvalidParameterException("Budget cannot be negative!");
+        long length = length(chain);
+        if (length > budget)
+            throw new OutputLimitException(length, budget);
+        return length;
+    }
+
+    /**
+     * Writes the call-chain through the buffer and flushes it
+     *
+     * @param chain  normalized call-chain
+     * @param buffer buffer of the output
+     * @param length length of output
+     * @throws IOException if output fails
+     */
+    private static void print(NormalizedChain chain, Buffer buffer, long length) throws IOException {
+        PrintEvent event = new PrintEvent();
+        event.begin();
+        long start = Metrics.start();
+        buffer.append("filter{");
+        print(chain.getFilter(), buffer);
+        buffer.append("}%>%map{");
+        print(chain.getMap(), buffer);
+        buffer.append("}");
+        buffer.flush();
+        Metrics.stop(Metrics.PRINT_TIME, start);
+        if (event.shouldCommit()) {
+            event.outputLength = length;
+            event.commit();
+        }
+    }
+
+    /**
+     * Writes expression by case grammar rules, walks the expression as a tree
+     *
+     * @param root   root of the expression
+     * @param buffer buffer of the output
+     * @throws IOException if output fails
+     */
+    private static void print(DagNode root, Buffer buffer) throws IOException {
+        DagNode[] nodes = new DagNode[16]; // Stack of nodes that are printed now
+        boolean[] printedLeft = new boolean[16]; // Is left operand of each node of the stack printed
+        int size = 0;
+        DagNode node = root;
+        while (true) {
+            // Opens nodes down to the leaf
+            while (node.isOperation()) {
+                if (size == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, size * 2);
+                    printedLeft = Arrays.copyOf(printedLeft, size * 2);
+                }
+                buffer.append('(');
+                nodes[size] = node;
+                printedLeft[size++] = false;
+                node = node.left;
+            }
+            buffer.append(node.value);
+            // Closes nodes with both printed operands
+            while (size > 0 && printedLeft[size - 1]) {
+                size--;
+                buffer.append(')');
+            }
+            if (size == 0)
+                return;
+            printedLeft[size - 1] = true;
+            buffer.append(nodes[size - 1].value);
+            node = nodes[size - 1].right;
+        }
+    }
+
+    /**
+     * Helper function, adds non-negative numbers without overflow
+     *
+     * @param first  1st number
+     * @param second 2nd number
+     * @return sum of numbers or {@code Long.MAX_VALUE} if it overflows
+     */
+    private static long add(long first, long second) {
+        long sum = first + second;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * Buffer of chars that are written to the output when it is full
+     */
+    private abstract static class Buffer {
+
+        protected final char[] chars = new char[BUFFER_SIZE]; // Buffered chars
+        protected int size = 0; // Number of buffered chars
+
+        /**
+         * Appends char to the buffer
+         *
+         * @param c char to append
+         * @throws IOException if output fails
+         */
+        private void append(char c) throws IOException {
+            if (size == chars.length)
+                flush();
+            chars[size++] = c;
+        }
+
+        /**
+         * Appends string to the buffer
+         *
+         * @param string string to append
+         * @throws IOException if output fails
+         */
+        private void append(String string) throws IOException {
+            int length = string.length();
+            if (size + length > chars.length)
+                flush();
+            if (length > chars.length) {
+                for (int i = 0; i < length; i++)
+                    append(string.charAt(i));
+                return;
+            }
+            string.getChars(0, length, chars, size);
+            size += length;
+        }
+
+        /**
+         * Writes buffered chars to the output and empties buffer
+         *
+         * @throws IOException if output fails
+         */
+        protected abstract void flush() throws IOException;
+    }
+
+    /**
+     * Buffer of {@code Appendable}
+     */
+    private static final class AppendableBuffer extends Buffer {
+
+        private final Appendable output; // Output to append text to
+
+        /**
+         * Constructor
+         *
+         * @param output output to append text to
+         */
+        private AppendableBuffer(Appendable output) {
+            this.output = output;
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            output.append(CharBuffer.wrap(chars, 0, size));
+            size = 0;
+        }
+    }
+
+    /**
+     * Buffer of {@code Writer}, the writer is not flushed
+     */
+    private static final class WriterBuffer extends Buffer {
+
+        private final Writer output; // Output to write text to
+
+        /**
+         * Constructor
+         *
+         * @param output output to write text to
+         */
+        private WriterBuffer(Writer output) {
+            this.output = output;
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            output.write(chars, 0, size);
+            size = 0;
+        }
+    }
+
+    /**
+     * Buffer of {@code WritableByteChannel}, encodes chars to UTF-8
+     */
+    private static final class ChannelBuffer extends Buffer {
+
+        private final WritableByteChannel channel; // Channel to write bytes to
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE); // Encoded chars
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder(); // Encoder that reports malformed chars
+        private long written = 0; // Number of written bytes
+
+        /**
+         * Constructor
+         *
+         * @param channel channel to write bytes to
+         */
+        private ChannelBuffer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            // Output has no surrogate pairs, so buffered chars are encoded as a whole
+            CharBuffer input = CharBuffer.wrap(chars, 0, size);
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(input, bytes, true);
+                if (result.isError())
+                    result.throwException();
+                bytes.flip();
+                while (bytes.hasRemaining())
+                    written += channel.write(bytes);
+                bytes.clear();
+            } while (result.isOverflow());
+            size = 0;
+        }
+    }
+}
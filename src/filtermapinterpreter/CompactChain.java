@@ -0,0 +1,118 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class of call-chain rebuilt to the form "filter{expression}%>%map{expression}" in the flat
+ * encoding of {@code CompactTree}. Calls are merged by rules of {@code NormalizedChain.of}:
+ * ELEMENT of each call is replaced by the index of the current map, so the map is stored once
+ * however many calls use it. Filter and map share arrays of one builder.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class CompactChain {
+
+    private final CompactTree filter; // Expression of the filter-call
+    private final CompactTree map; // Expression of the map-call
+
+    /**
+     * Constructor
+     *
+     * @param filter expression of the filter-call
+     * @param map    expression of the map-call
+     */
+    private CompactChain(CompactTree filter, CompactTree map) {
+        this.filter = filter;
+        this.map = map;
+    }
+
+    /**
+     * Rebuilds given map- and filter-calls to the form "filter{expression}%>%map{expression}".
+     * If there are no filters, filter is "(1=1)", if there are no maps, map is "element"
+     *
+     * @param calls map- and filter-calls in order of the chain
+     * @return normalized call-chain
+     * @throws InvalidTypeException if got not map- or filter-call
+     */
+    public static CompactChain of(List<CompactTree> calls) throws InvalidTypeException {
+        if (calls == null)
+            throw new InvalidParameterException("Null pointer on calls!");
+        CompactTree.Builder builder = new CompactTree.Builder();
+        int map = builder.element();
+        int filter = -1;
+        for (CompactTree call : calls) {
+            int expression = builder.copy(call, map);
+            switch (call.getRootType()) {
+                case MAP_EXPRESSION:
+                    map = expression;
+                    break;
+                case FILTER_EXPRESSION:
+                    filter = filter < 0 ? expression : builder.operation(CompactTree.AND, filter, expression);
+                    break;
+                default:
+                    throw new InvalidTypeException("Expected map or filter call!");
+            }
+        }
+        if (filter < 0)
+            filter = builder.operation(CompactTree.EQUAL, builder.number(1, null), builder.number(1, null));
+        return new CompactChain(builder.build(filter, NodeType.FILTER_EXPRESSION), builder.build(map, NodeType.MAP_EXPRESSION));
+    }
+
+    /**
+     * Getter of the filter expression
+     *
+     * @return expression of the filter-call
+     */
+    public CompactTree getFilter() {
+        return filter;
+    }
+
+    /**
+     * Getter of the map expression
+     *
+     * @return expression of the map-call
+     */
+    public CompactTree getMap() {
+        return map;
+    }
+
+    /**
+     * Applies call-chain to the input: keeps elements that satisfy the filter and maps them
+     *
+     * @param input elements to filter and map
+     * @return mapped elements that satisfy the filter, in order of input
+     * @throws InvalidTypeException if expressions have constants out of integer range
+     */
+    public int[] apply(int[] input) throws InvalidTypeException {
+        if (input == null)
+            throw new InvalidParameterException("Null pointer on input!");
+        filter.checkConstants();
+        map.checkConstants();
+        int[] registers = new int[Math.max(filter.size(), map.size())];
+        int[] output = new int[input.length];
+        int count = 0;
+        for (int element : input) {
+            if (filter.evaluate(element, registers) != 0)
+                output[count++] = map.evaluate(element, registers);
+        }
+        return Arrays.copyOf(output, count);
+    }
+
+    /**
+     * Override method. Builds normalized call-chain
+     *
+     * @return string formatted like "filter{expression}%>%map{expression}"
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("filter{");
+        filter.appendExpression(builder);
+        builder.append("}%>%map{");
+        map.appendExpression(builder);
+        return builder.append('}').toString();
+    }
+}
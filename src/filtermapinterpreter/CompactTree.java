@@ -0,0 +1,393 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+/**
+ * Class of flat encoding of call-expression: struct of primitive arrays instead of {@code ASTNode} objects.
+ * Node is an index: {@code opcodes[i]} is its kind, {@code left[i]} and {@code right[i]} are indices
+ * of operands. NUMBER node keeps its value in {@code left[i]} and index of its text in {@code right[i]}
+ * (-1 if text is the decimal string of value, so not for "007" or numbers out of integer range).
+ * Operands always have smaller indices than operations, so nodes in order of indices are evaluated
+ * in one pass without stack. Operands could be shared, e.g. there is one ELEMENT node per expression,
+ * so merged expressions take linear space.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class CompactTree {
+
+    static final byte ELEMENT = 0; // "element"
+    static final byte NUMBER = 1; // integer constant
+    static final byte ADD = 2; // "+"
+    static final byte SUBTRACT = 3; // "-"
+    static final byte MULTIPLY = 4; // "*"
+    static final byte LESS = 5; // "<"
+    static final byte GREATER = 6; // ">"
+    static final byte EQUAL = 7; // "="
+    static final byte AND = 8; // "&"
+    static final byte OR = 9; // "|"
+    static final byte NONE = 10; // missed operator, expression of this node has no type
+
+    private static final String SYMBOLS = "??+-*<>=&|"; // Operators by opcode
+
+    private final byte[] opcodes; // Kind of each node
+    private final int[] left; // Left operand of each operation, value of each NUMBER
+    private final int[] right; // Right operand of each operation, index of text of each NUMBER or -1
+    private final String[] texts; // Texts of numbers that are not decimal strings of int values
+    private final int root; // Index of the root node
+    private final NodeType rootType; // MAP_EXPRESSION or FILTER_EXPRESSION
+    private final boolean shared; // Could operation be an operand of several operations
+
+    /**
+     * Constructor, arrays are not copied
+     *
+     * @param opcodes  kind of each node
+     * @param left     left operand of each operation, value of each NUMBER
+     * @param right    right operand of each operation, index of text of each NUMBER or -1
+     * @param texts    texts of numbers that are not decimal strings of int values
+     * @param root     index of the root node
+     * @param rootType MAP_EXPRESSION or FILTER_EXPRESSION
+     * @param shared   could operation be an operand of several operations
+     */
+    private CompactTree(byte[] opcodes, int[] left, int[] right, String[] texts, int root, NodeType rootType,
+                        boolean shared) {
+        this.opcodes = opcodes;
+        this.left = left;
+        this.right = right;
+        this.texts = texts;
+        this.root = root;
+        this.rootType = rootType;
+        this.shared = shared;
+    }
+
+    /**
+     * Parses map- or filter-call directly to the flat encoding
+     *
+     * @param call source of the call
+     * @return flat tree of the call
+     * @throws InvalidSyntaxException if call has syntax error
+     * @throws InvalidTypeException   if call has type error
+     */
+    public static CompactTree parse(CharSequence call) throws InvalidSyntaxException, InvalidTypeException {
+        return new CompactTreeBuilder(call).build();
+    }
+
+    /**
+     * Getter of the root type
+     *
+     * @return MAP_EXPRESSION or FILTER_EXPRESSION
+     */
+    public NodeType getRootType() {
+        return rootType;
+    }
+
+    /**
+     * Getter of the number of nodes
+     *
+     * @return number of nodes evaluated by this tree, including the root
+     */
+    public int size() {
+        return root + 1;
+    }
+
+    /**
+     * Evaluates expression for the element. Each node is evaluated once in order of indices
+     *
+     * @param element   value of the element
+     * @param registers array for values of nodes, at least {@link #size()} long
+     * @return value of the expression, 1 or 0 for boolean expression
+     */
+    public int evaluate(int element, int[] registers) {
+        byte[] opcodes = this.opcodes;
+        int[] left = this.left;
+        int[] right = this.right;
+        for (int i = 0; i <= root; i++) {
+            int value;
+            switch (opcodes[i]) {
+                case ELEMENT:
+                    value = element;
+                    break;
+                case NUMBER:
+                    value = left[i];
+                    break;
+                case ADD:
+                    value = registers[left[i]] + registers[right[i]];
+                    break;
+                case SUBTRACT:
+                    value = registers[left[i]] - registers[right[i]];
+                    break;
+                case MULTIPLY:
+                    value = registers[left[i]] * registers[right[i]];
+                    break;
+                case LESS:
+                    value = registers[left[i]] < registers[right[i]] ? 1 : 0;
+                    break;
+                case GREATER:
+                    value = registers[left[i]] > registers[right[i]] ? 1 : 0;
+                    break;
+                case EQUAL:
+                    value = registers[left[i]] == registers[right[i]] ? 1 : 0;
+                    break;
+                case AND:
+                    value = registers[left[i]] & registers[right[i]];
+                    break;
+                default:
+                    value = registers[left[i]] | registers[right[i]];
+                    break;
+            }
+            registers[i] = value;
+        }
+        return registers[root];
+    }
+
+    /**
+     * Checks that expression could be evaluated: all constants reachable from the root fit to integer.
+     * Operands have smaller indices, so reachable nodes are marked in one backward pass
+     *
+     * @throws InvalidTypeException if expression has constant out of integer range
+     */
+    public void checkConstants() throws InvalidTypeException {
+        boolean[] reachable = new boolean[root + 1];
+        reachable[root] = true;
+        for (int i = root; i >= 0; i--) {
+            if (!reachable[i])
+                continue;
+            if (opcodes[i] > NUMBER) {
+                reachable[left[i]] = true;
+                reachable[right[i]] = true;
+            } else if (opcodes[i] == NUMBER && right[i] >= 0) {
+                try {
+                    Integer.parseInt(texts[right[i]]);
+                } catch (NumberFormatException e) {
+                    throw new InvalidTypeException(String.format("Constant %s is out of integer range!", texts[right[i]]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends expression to the builder. Shared operations are printed once and copied after that
+     *
+     * @param builder builder to append expression to
+     */
+    public void appendExpression(StringBuilder builder) {
+        if (builder == null)
+            throw new InvalidParameterException("Null pointer on builder!");
+        int[] start = shared ? new int[root + 1] : null; // Start of printed operations
+        int[] end = shared ? new int[root + 1] : null; // End of printed operations, 0 if it is not printed yet
+        int[] stack = new int[16]; // Operations that are printed now, index * 2 + 1 if left operand is printed
+        int size = 0;
+        int node = root;
+        while (true) {
+            // Opens operations down to the leaf or already printed node
+            while (opcodes[node] > NUMBER && (end == null || end[node] == 0)) {
+                if (size == stack.length)
+                    stack = Arrays.copyOf(stack, size * 2);
+                if (start != null)
+                    start[node] = builder.length();
+                builder.append('(');
+                stack[size++] = node * 2;
+                node = left[node];
+            }
+            if (opcodes[node] > NUMBER)
+                builder.append(builder, start[node], end[node]);
+            else
+                appendLeaf(node, builder);
+            // Closes operations with both printed operands
+            while (size > 0 && (stack[size - 1] & 1) == 1) {
+                int closed = stack[--size] >> 1;
+                builder.append(')');
+                if (end != null)
+                    end[closed] = builder.length();
+            }
+            if (size == 0)
+                return;
+            int parent = stack[size - 1] >> 1;
+            stack[size - 1] |= 1;
+            if (opcodes[parent] != NONE)
+                builder.append(SYMBOLS.charAt(opcodes[parent]));
+            node = right[parent];
+        }
+    }
+
+    /**
+     * Override method. Build description of call-expression by grammar rules of the case
+     *
+     * @return string formatted like "filter{expression}" or "map{expression}"
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(rootType == NodeType.MAP_EXPRESSION ? "map{" : "filter{");
+        appendExpression(builder);
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Appends ELEMENT or NUMBER node to the builder
+     *
+     * @param node    index of the leaf
+     * @param builder builder to append leaf to
+     */
+    private void appendLeaf(int node, StringBuilder builder) {
+        if (opcodes[node] == ELEMENT)
+            builder.append("element");
+        else if (right[node] >= 0)
+            builder.append(texts[right[node]]);
+        else
+            builder.append(Lexer.numberText(left[node]));
+    }
+
+    /**
+     * Shows output type of the operator
+     *
+     * @param opcode kind of node
+     * @return INT for arithmetic, BOOLEAN for comparisons and logic, NONE for missed operator
+     */
+    static OutputType outputType(byte opcode) {
+        if (opcode <= MULTIPLY)
+            return OutputType.INT;
+        return opcode == NONE ? OutputType.NONE : OutputType.BOOLEAN;
+    }
+
+    /**
+     * Getter of the opcode of the operator
+     *
+     * @param operator one of {@code AbstractParser.OPERATORS} or empty string for missed operator
+     * @return opcode of the operator
+     */
+    static byte opcode(String operator) {
+        if (operator.isEmpty())
+            return NONE;
+        return (byte) SYMBOLS.indexOf(operator.charAt(0), ADD);
+    }
+
+    /**
+     * Builder of the flat trees. Nodes are appended to the growing arrays, trees built
+     * by the same builder share arrays, so the builder must not be used after that
+     */
+    static final class Builder {
+
+        private byte[] opcodes = new byte[16]; // Kind of each node
+        private int[] left = new int[16]; // Left operand of each operation, value of each NUMBER
+        private int[] right = new int[16]; // Right operand of each operation, index of text of each NUMBER or -1
+        private String[] texts = new String[0]; // Texts of numbers that are not decimal strings of int values
+        private int size = 0; // Number of nodes
+        private int textCount = 0; // Number of texts
+        private int element = -1; // Index of the ELEMENT node, -1 if there is no one
+        private boolean shared = false; // Could operation be an operand of several operations
+        private boolean built = false; // Are arrays trimmed and shared by built trees
+
+        /**
+         * Getter of the ELEMENT node, it is created once
+         *
+         * @return index of the ELEMENT node
+         */
+        int element() {
+            if (element < 0)
+                element = add(ELEMENT, 0, 0);
+            return element;
+        }
+
+        /**
+         * Adds NUMBER node
+         *
+         * @param value value of the number, valid only if text is null or is in integer range
+         * @param text  text of the number, null if it is decimal string of value
+         * @return index of the node
+         */
+        int number(int value, String text) {
+            if (text == null)
+                return add(NUMBER, value, -1);
+            if (textCount == texts.length)
+                texts = Arrays.copyOf(texts, Math.max(4, textCount * 2));
+            texts[textCount] = text;
+            return add(NUMBER, value, textCount++);
+        }
+
+        /**
+         * Adds operation node
+         *
+         * @param opcode kind of the operation
+         * @param first  index of the left operand
+         * @param second index of the right operand
+         * @return index of the node
+         */
+        int operation(byte opcode, int first, int second) {
+            return add(opcode, first, second);
+        }
+
+        /**
+         * Copies nodes of the tree, ELEMENT of the tree is replaced by the given node
+         *
+         * @param tree        tree to copy
+         * @param replacement index of the node that replaces ELEMENT of the tree
+         * @return index of the copied root
+         */
+        int copy(CompactTree tree, int replacement) {
+            shared |= tree.shared || opcodes[replacement] > NUMBER;
+            int[] copies = new int[tree.root + 1];
+            for (int i = 0; i <= tree.root; i++) {
+                byte opcode = tree.opcodes[i];
+                if (opcode == ELEMENT)
+                    copies[i] = replacement;
+                else if (opcode == NUMBER)
+                    copies[i] = number(tree.left[i], tree.right[i] < 0 ? null : tree.texts[tree.right[i]]);
+                else
+                    copies[i] = add(opcode, copies[tree.left[i]], copies[tree.right[i]]);
+            }
+            return copies[tree.root];
+        }
+
+        /**
+         * Getter of the output type of the node
+         *
+         * @param node index of the node
+         * @return output type of the node expression
+         */
+        OutputType outputType(int node) {
+            return CompactTree.outputType(opcodes[node]);
+        }
+
+        /**
+         * Builds tree with the given root, all trees of this builder share arrays
+         *
+         * @param root     index of the root node
+         * @param rootType MAP_EXPRESSION or FILTER_EXPRESSION
+         * @return flat tree
+         */
+        CompactTree build(int root, NodeType rootType) {
+            if (!built) {
+                opcodes = Arrays.copyOf(opcodes, size);
+                left = Arrays.copyOf(left, size);
+                right = Arrays.copyOf(right, size);
+                texts = Arrays.copyOf(texts, textCount);
+                built = true;
+            }
+            return new CompactTree(opcodes, left, right, texts, root, rootType, shared);
+        }
+
+        /**
+         * Appends node to the arrays
+         *
+         * @param opcode kind of the node
+         * @param first  left operand or value
+         * @param second right operand or index of text
+         * @return index of the node
+         */
+        private int add(byte opcode, int first, int second) {
+            if (built)
+                throw new IllegalStateException("Trees are already built!");
+            if (size == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, size * 2);
+                left = Arrays.copyOf(left, size * 2);
+                right = Arrays.copyOf(right, size * 2);
+            }
+            opcodes[size] = opcode;
+            left[size] = first;
+            right[size] = second;
+            return size++;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.util.Arrays;
+
+/**
+ * Class - builder of the flat call-expression {@code CompactTree} by grammar rules given in the case.
+ * It parses like {@code ASTreeBuilder} and reports the same errors, but nodes are appended
+ * directly to primitive arrays, so no node objects and no texts of canonical numbers are created.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class CompactTreeBuilder extends AbstractParser {
+
+    private final CompactTree.Builder nodes = new CompactTree.Builder(); // Nodes of the tree
+
+    /**
+     * Constructor
+     *
+     * @param source call expression to parse. If got null or empty - do nothing.
+     */
+    public CompactTreeBuilder(CharSequence source) {
+        super(source);
+    }
+
+    /**
+     * Parses the leaf: appends ELEMENT or NUMBER node
+     *
+     * @return index of the leaf node
+     */
+    private int getLeaf() {
+        Lexer lexer = getLexer();
+        int node;
+        if (lexer.type() == TokenType.ELEMENT)
+            node = nodes.element();
+        else
+            node = nodes.number(lexer.intValue(), lexer.isCanonical() && lexer.isInt() ? null : lexer.text());
+        lexer.next();
+        return node;
+    }
+
+    /**
+     * Parse, build and check expressions - element, number or binary. Parser is iterative,
+     * errors are found in the same order as by {@code ASTreeBuilder}
+     *
+     * @return index of the root node of the expression
+     * @throws InvalidSyntaxException if cannot parse expected expression (source has syntax error)
+     * @throws InvalidTypeException   if cannot match output types between operators and operands
+     */
+    private int getExpression() throws InvalidSyntaxException, InvalidTypeException {
+        int[] lefts = new int[16]; // Left operands of open expressions, -1 if not parsed yet
+        byte[] operators = new byte[16]; // Operators of open expressions
+        int size = 0;
+        while (true) {
+            while (!isMatchesTo(NodeType.ELEMENT) && !isMatchesTo(NodeType.NUMBER)) {
+                if (!matchTo('('))
+                    throw new InvalidSyntaxException("Expected expression!");
+                if (size == lefts.length) {
+                    lefts = Arrays.copyOf(lefts, size * 2);
+                    operators = Arrays.copyOf(operators, size * 2);
+                }
+                lefts[size++] = -1;
+            }
+            int node = getLeaf();
+            while (true) {
+                if (size == 0)
+                    return node;
+                if (lefts[size - 1] < 0) {
+                    lefts[size - 1] = node;
+                    operators[size - 1] = CompactTree.opcode(matchTo(NodeType.OPERATION));
+                    break;
+                }
+                int leftExpression = lefts[--size];
+                byte operator = operators[size];
+                if (!checkOperands(leftExpression, node, operator))
+                    throw new InvalidTypeException("Wrong type of operands!");
+                if (!matchTo(')'))
+                    throw new InvalidSyntaxException("Expected closing bracket ')'!");
+                node = nodes.operation(operator, leftExpression, node);
+            }
+        }
+    }
+
+    /**
+     * Helper function, check each operands type to operation type. Missed operator
+     * takes integer operands like {@code ASTreeBuilder} does
+     *
+     * @param first    index of the 1st operand
+     * @param second   index of the 2nd operand
+     * @param operator opcode of binary operator
+     * @return true if type of each operand matches to operator, false otherwise
+     */
+    private boolean checkOperands(int first, int second, byte operator) {
+        OutputType expected = operator == CompactTree.AND || operator == CompactTree.OR ? OutputType.BOOLEAN : OutputType.INT;
+        return nodes.outputType(first) == expected && nodes.outputType(second) == expected;
+    }
+
+    /**
+     * Build flat tree of filter-call or map-call expression by grammar in test case
+     *
+     * @return flat tree of filter-call or map-call
+     * @throws InvalidSyntaxException if cannot parse expected expression (source has syntax error)
+     * @throws InvalidTypeException   if cannot match output types between operators and operands or
+     *                                output type of expression does not match to the call-type
+     */
+    public CompactTree build() throws InvalidSyntaxException, InvalidTypeException {
+        NodeType type;
+        OutputType expected;
+        if (!matchTo(NodeType.MAP_EXPRESSION).isEmpty()) {
+            type = NodeType.MAP_EXPRESSION;
+            expected = OutputType.INT;
+        } else if (!matchTo(NodeType.FILTER_EXPRESSION).isEmpty()) {
+            type = NodeType.FILTER_EXPRESSION;
+            expected = OutputType.BOOLEAN;
+        } else
+            throw new InvalidSyntaxException("Cannot match to any call-expression!");
+        if (!matchTo('{'))
+            throw new InvalidSyntaxException("Expected opening bracket '{'!");
+        int root = getExpression();
+        if (!matchTo('}'))
+            throw new InvalidSyntaxException("Expected closing bracket '}'!");
+        if (!end())
+            throw new InvalidSyntaxException("Unexpected symbols after closing bracket '}'!");
+        if (nodes.outputType(root) != expected)
+            throw new InvalidTypeException("Expected integer output type!");
+        return nodes.build(root, type);
+    }
+}
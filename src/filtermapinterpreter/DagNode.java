@@ -0,0 +1,68 @@
+package filtermapinterpreter;
+
+/**
+ * Class that represents immutable node of hash-consed expression graph.
+ * Nodes are created only by {@code ExpressionGraph}, so structurally equal
+ * subexpressions of one graph are the same object with the same id.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class DagNode {
+
+    public final int id; // Stable index of the node in its graph, children always have smaller ids
+    public final NodeType type; // Type of the node (ELEMENT, NUMBER or OPERATION)
+    public final OutputType outputType; // Output type of node expression
+    public final String value; // String value: "element", number or operator
+    public final DagNode left; // Left operand or null if node is not an OPERATION
+    public final DagNode right; // Right operand or null if node is not an OPERATION
+
+    /**
+     * Constructor
+     *
+     * @param id         stable index of the node in its graph
+     * @param type       type of the node
+     * @param outputType output type of node expression
+     * @param value      string value: "element", number or operator
+     * @param left       left operand or null
+     * @param right      right operand or null
+     */
+    DagNode(int id, NodeType type, OutputType outputType, String value, DagNode left, DagNode right) {
+        this.id = id;
+        this.type = type;
+        this.outputType = outputType;
+        this.value = value;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Shows is node a binary operation
+     *
+     * @return true if node has operands
+     */
+    public boolean isOperation() {
+        return type == NodeType.OPERATION;
+    }
+
+    /**
+     * Override method. Nodes are unique in graph, so id is enough
+     *
+     * @return id of the node
+     */
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    /**
+     * Override method. Builds description formed as "(statement operator statement)" or "statement"
+     *
+     * @return description of node by case grammar rules
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        ExpressionGraph.print(this, builder);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package filtermapinterpreter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of {@code Pipeline} evaluation over the part of integer array.
+ *
+ * @author Taimuraz Tibilov
+ */
+@Name("filtermapinterpreter.Evaluate")
+@Label("Evaluate Pipeline")
+@Category("Filter-Map Interpreter")
+@Description("Filtering and mapping of integer array by normalized call-chain")
+final class EvaluateEvent extends jdk.jfr.Event {
+
+    @Label("Mode")
+    String mode; // Execution mode of the pipeline
+
+    @Label("Elements")
+    int elements; // Number of input elements
+
+    @Label("Results")
+    int results; // Number of elements that passed the filter
+}
@@ -0,0 +1,432 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Class that turns expressions of filter- and map-calls into primitive functions
+ * over {@code int} elements. All constants are parsed once while building, so evaluation
+ * neither boxes values nor touches {@code value} strings. Each distinct node of
+ * expression graph is built once and the function is shared by all its occurrences.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class Evaluator {
+
+    private Evaluator() {
+    }
+
+    /**
+     * Builds predicate of filter-call expression
+     *
+     * @param filter filter-call AST
+     * @return predicate that is true for elements passing the filter
+     * @throws InvalidTypeException if tree is not a filter-call or has constant out of integer range
+     */
+    public static IntPredicate compileFilter(ASTree filter) throws InvalidTypeException {
+        if (filter == null)
+            throw new InvalidParameterException("Null pointer on filter tree!");
+        if (filter.getRootType() != NodeType.FILTER_EXPRESSION)
+            throw new InvalidTypeException("Expected filter call!");
+        return compileFilter(new ExpressionGraph().intern(filter.getRoot()));
+    }
+
+    /**
+     * Builds predicate of filter expression
+     *
+     * @param filter root of the expression with boolean output
+     * @return predicate that is true for elements passing the filter
+     * @throws InvalidTypeException if expression is not boolean or has constant out of integer range
+     */
+    public static IntPredicate compileFilter(DagNode filter) throws InvalidTypeException {
+        if (filter == null)
+            throw new InvalidParameterException("Null pointer on filter expression!");
+        return compileBoolean(filter, new HashMap<>());
+    }
+
+    /**
+     * Builds function of map-call expression
+     *
+     * @param map map-call AST
+     * @return function that maps element to the new value
+     * @throws InvalidTypeException if tree is not a map-call or has constant out of integer range
+     */
+    public static IntUnaryOperator compileMap(ASTree map) throws InvalidTypeException {
+        if (map == null)
+            throw new InvalidParameterException("Null pointer on map tree!");
+        if (map.getRootType() != NodeType.MAP_EXPRESSION)
+            throw new InvalidTypeException("Expected map call!");
+        return compileMap(new ExpressionGraph().intern(map.getRoot()));
+    }
+
+    /**
+     * Builds function of map expression
+     *
+     * @param map root of the expression with integer output
+     * @return function that maps element to the new value
+     * @throws InvalidTypeException if expression is not integer or has constant out of integer range
+     */
+    public static IntUnaryOperator compileMap(DagNode map) throws InvalidTypeException {
+        if (map == null)
+            throw new InvalidParameterException("Null pointer on map expression!");
+        return compileInt(map, new HashMap<>());
+    }
+
+    /**
+     * Builds predicate of filter expression that compares exact values of integer operands,
+     * as if arithmetic did not overflow. Arithmetic of each subexpression is selected by
+     * {@code RangeAnalysis}: {@code int}, {@code long} or checked one
+     *
+     * @param filter root of the expression with boolean output
+     * @param ranges analysis of the expression
+     * @return predicate that is true for elements passing the filter,
+     * it throws {@code ArithmeticException} if exact value of operand overflows long
+     * @throws InvalidTypeException if expression is not boolean or has constant out of integer range
+     */
+    public static IntPredicate compileCheckedFilter(DagNode filter, RangeAnalysis ranges) throws InvalidTypeException {
+        if (filter == null || ranges == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        return new Checked(ranges).compileBoolean(filter);
+    }
+
+    /**
+     * Builds function of map expression that either returns exact value or throws
+     * {@code ArithmeticException}, instead of wrapping around on overflow. Arithmetic of each
+     * subexpression is selected by {@code RangeAnalysis}: {@code int}, {@code long} or checked one
+     *
+     * @param map    root of the expression with integer output
+     * @param ranges analysis of the expression
+     * @return function that maps element to the new value,
+     * it throws {@code ArithmeticException} if exact value does not fit to integer
+     * @throws InvalidTypeException if expression is not integer or has constant out of integer range
+     */
+    public static IntUnaryOperator compileCheckedMap(DagNode map, RangeAnalysis ranges) throws InvalidTypeException {
+        if (map == null || ranges == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        Checked checked = new Checked(ranges);
+        if (ranges.arithmetic(map) == RangeAnalysis.Arithmetic.INT)
+            return checked.compileInt(map);
+        LongUnaryOperator function = checked.compileLong(map);
+        return x -> Math.toIntExact(function.applyAsLong(x));
+    }
+
+    /**
+     * Parses value of NUMBER node
+     *
+     * @param node NUMBER node
+     * @return integer value of the node
+     * @throws InvalidTypeException if value does not fit to integer
+     */
+    static int parseConstant(DagNode node) throws InvalidTypeException {
+        try {
+            return Integer.parseInt(node.value);
+        } catch (NumberFormatException e) {
+            throw new InvalidTypeException(String.format("Constant %s is out of integer range!", node.value));
+        }
+    }
+
+    /**
+     * Builds function of expression with integer output
+     *
+     * @param node     root of the expression
+     * @param compiled functions of already built nodes
+     * @return function of the element
+     * @throws InvalidTypeException if output type of node is not integer
+     */
+    private static IntUnaryOperator compileInt(DagNode node, Map<DagNode, Object> compiled)
+            throws InvalidTypeException {
+        if (node.outputType != OutputType.INT)
+            throw new InvalidTypeException("Expected integer expression!");
+        IntUnaryOperator result = (IntUnaryOperator) compiled.get(node);
+        if (result != null)
+            return result;
+        switch (node.type) {
+            case ELEMENT:
+                result = IntUnaryOperator.identity();
+                break;
+            case NUMBER:
+                int constant = parseConstant(node);
+                result = x -> constant;
+                break;
+            case OPERATION:
+                result = compileArithmetic(node, compiled);
+                break;
+            default:
+                throw new InvalidTypeException("Unexpected node in expression!");
+        }
+        compiled.put(node, result);
+        return result;
+    }
+
+    /**
+     * Builds function of binary operation with integer output. Operations with
+     * constant operand are specialized, so that constant is not evaluated by call
+     *
+     * @param node     OPERATION node with operator "+", "-" or "*"
+     * @param compiled functions of already built nodes
+     * @return function of the element
+     * @throws InvalidTypeException if operands are not integer expressions
+     */
+    private static IntUnaryOperator compileArithmetic(DagNode node, Map<DagNode, Object> compiled)
+            throws InvalidTypeException {
+        DagNode rightNode = node.right;
+        IntUnaryOperator left = compileInt(node.left, compiled);
+        if (rightNode.type == NodeType.NUMBER) {
+            int c = parseConstant(rightNode);
+            switch (node.value) {
+                case "+":
+                    return x -> left.applyAsInt(x) + c;
+                case "-":
+                    return x -> left.applyAsInt(x) - c;
+                case "*":
+                    return x -> left.applyAsInt(x) * c;
+                default:
+                    throw new InvalidTypeException("Unknown integer operator " + node.value);
+            }
+        }
+        IntUnaryOperator right = compileInt(rightNode, compiled);
+        switch (node.value) {
+            case "+":
+                return x -> left.applyAsInt(x) + right.applyAsInt(x);
+            case "-":
+                return x -> left.applyAsInt(x) - right.applyAsInt(x);
+            case "*":
+                return x -> left.applyAsInt(x) * right.applyAsInt(x);
+            default:
+                throw new InvalidTypeException("Unknown integer operator " + node.value);
+        }
+    }
+
+    /**
+     * Builds predicate of expression with boolean output. Logical operators are short-circuit
+     *
+     * @param node     root of the expression
+     * @param compiled functions of already built nodes
+     * @return predicate of the element
+     * @throws InvalidTypeException if output type of node is not boolean
+     */
+    private static IntPredicate compileBoolean(DagNode node, Map<DagNode, Object> compiled)
+            throws InvalidTypeException {
+        if (node.outputType != OutputType.BOOLEAN || node.type != NodeType.OPERATION)
+            throw new InvalidTypeException("Expected boolean expression!");
+        IntPredicate result = (IntPredicate) compiled.get(node);
+        if (result != null)
+            return result;
+        switch (node.value) {
+            case "&": {
+                IntPredicate left = compileBoolean(node.left, compiled);
+                IntPredicate right = compileBoolean(node.right, compiled);
+                result = x -> left.test(x) && right.test(x);
+                break;
+            }
+            case "|": {
+                IntPredicate left = compileBoolean(node.left, compiled);
+                IntPredicate right = compileBoolean(node.right, compiled);
+                result = x -> left.test(x) || right.test(x);
+                break;
+            }
+            default:
+                result = compileComparison(node, compiled);
+        }
+        compiled.put(node, result);
+        return result;
+    }
+
+    /**
+     * Builds predicate of comparison. Comparisons with constant operand are specialized
+     *
+     * @param node     OPERATION node with operator "<", ">" or "="
+     * @param compiled functions of already built nodes
+     * @return predicate of the element
+     * @throws InvalidTypeException if operands are not integer expressions
+     */
+    private static IntPredicate compileComparison(DagNode node, Map<DagNode, Object> compiled)
+            throws InvalidTypeException {
+        DagNode rightNode = node.right;
+        IntUnaryOperator left = compileInt(node.left, compiled);
+        if (rightNode.type == NodeType.NUMBER) {
+            int c = parseConstant(rightNode);
+            switch (node.value) {
+                case "<":
+                    return x -> left.applyAsInt(x) < c;
+                case ">":
+                    return x -> left.applyAsInt(x) > c;
+                case "=":
+                    return x -> left.applyAsInt(x) == c;
+                default:
+                    throw new InvalidTypeException("Unknown comparison operator " + node.value);
+            }
+        }
+        IntUnaryOperator right = compileInt(rightNode, compiled);
+        switch (node.value) {
+            case "<":
+                return x -> left.applyAsInt(x) < right.applyAsInt(x);
+            case ">":
+                return x -> left.applyAsInt(x) > right.applyAsInt(x);
+            case "=":
+                return x -> left.applyAsInt(x) == right.applyAsInt(x);
+            default:
+                throw new InvalidTypeException("Unknown comparison operator " + node.value);
+        }
+    }
+
+    /**
+     * Builder of functions that evaluate expressions without overflow
+     */
+    private static final class Checked {
+
+        private final RangeAnalysis ranges; // Analysis of the expressions
+        private final Map<DagNode, Object> compiled = new HashMap<>(); // Wrapping int functions of built nodes
+        private final Map<DagNode, LongUnaryOperator> wrapping = new HashMap<>(); // Wrapping long functions of built nodes
+        private final Map<DagNode, LongUnaryOperator> exact = new HashMap<>(); // Exact long functions of built nodes
+
+        /**
+         * Constructor
+         *
+         * @param ranges analysis of the expressions
+         */
+        private Checked(RangeAnalysis ranges) {
+            this.ranges = ranges;
+        }
+
+        /**
+         * Builds predicate with exact comparisons. Logical operators are short-circuit
+         *
+         * @param node root of the expression with boolean output
+         * @return predicate of the element
+         * @throws InvalidTypeException if output type of node is not boolean
+         */
+        private IntPredicate compileBoolean(DagNode node) throws InvalidTypeException {
+            if (node.outputType != OutputType.BOOLEAN || node.type != NodeType.OPERATION)
+                throw new InvalidTypeException("Expected boolean expression!");
+            IntPredicate result = (IntPredicate) compiled.get(node);
+            if (result != null)
+                return result;
+            if (node.value.equals("&") || node.value.equals("|")) {
+                IntPredicate left = compileBoolean(node.left);
+                IntPredicate right = compileBoolean(node.right);
+                result = node.value.equals("&") ? x -> left.test(x) && right.test(x) : x -> left.test(x) || right.test(x);
+            } else if (ranges.arithmetic(node.left) == RangeAnalysis.Arithmetic.INT
+                    && ranges.arithmetic(node.right) == RangeAnalysis.Arithmetic.INT)
+                result = compileComparison(node, compiled);
+            else {
+                LongUnaryOperator left = compileLong(node.left);
+                LongUnaryOperator right = compileLong(node.right);
+                switch (node.value) {
+                    case "<":
+                        result = x -> left.applyAsLong(x) < right.applyAsLong(x);
+                        break;
+                    case ">":
+                        result = x -> left.applyAsLong(x) > right.applyAsLong(x);
+                        break;
+                    case "=":
+                        result = x -> left.applyAsLong(x) == right.applyAsLong(x);
+                        break;
+                    default:
+                        throw new InvalidTypeException("Unknown comparison operator " + node.value);
+                }
+            }
+            compiled.put(node, result);
+            return result;
+        }
+
+        /**
+         * Builds function with wrapping int arithmetic, it is exact for node that fits to int
+         *
+         * @param node root of the expression with integer output
+         * @return function of the element
+         * @throws InvalidTypeException if output type of node is not integer
+         */
+        private IntUnaryOperator compileInt(DagNode node) throws InvalidTypeException {
+            return Evaluator.compileInt(node, compiled);
+        }
+
+        /**
+         * Builds function of exact value by the arithmetic selected for the node
+         *
+         * @param node root of the expression with integer output
+         * @return function of the element, it throws {@code ArithmeticException} if value overflows long
+         * @throws InvalidTypeException if output type of node is not integer
+         */
+        private LongUnaryOperator compileLong(DagNode node) throws InvalidTypeException {
+            switch (ranges.arithmetic(node)) {
+                case INT:
+                    IntUnaryOperator function = compileInt(node);
+                    return x -> function.applyAsInt((int) x);
+                case LONG:
+                    return compileWrapping(node);
+                default:
+                    return compileExact(node);
+            }
+        }
+
+        /**
+         * Builds function with wrapping long arithmetic, it is exact for node that fits to long,
+         * even if its operands overflow
+         *
+         * @param node root of the expression with integer output
+         * @return function of the element
+         * @throws InvalidTypeException if output type of node is not integer
+         */
+        private LongUnaryOperator compileWrapping(DagNode node) throws InvalidTypeException {
+            if (ranges.arithmetic(node) == RangeAnalysis.Arithmetic.INT)
+                return compileLong(node);
+            LongUnaryOperator result = wrapping.get(node);
+            if (result != null)
+                return result;
+            LongUnaryOperator left = compileWrapping(node.left);
+            LongUnaryOperator right = compileWrapping(node.right);
+            switch (node.value) {
+                case "+":
+                    result = x -> left.applyAsLong(x) + right.applyAsLong(x);
+                    break;
+                case "-":
+                    result = x -> left.applyAsLong(x) - right.applyAsLong(x);
+                    break;
+                case "*":
+                    result = x -> left.applyAsLong(x) * right.applyAsLong(x);
+                    break;
+                default:
+                    throw new InvalidTypeException("Unknown integer operator " + node.value);
+            }
+            wrapping.put(node, result);
+            return result;
+        }
+
+        /**
+         * Builds function with checked long arithmetic for node that could overflow long
+         *
+         * @param node OPERATION node with integer output
+         * @return function of the element, it throws {@code ArithmeticException} if value overflows long
+         * @throws InvalidTypeException if output type of node is not integer
+         */
+        private LongUnaryOperator compileExact(DagNode node) throws InvalidTypeException {
+            LongUnaryOperator result = exact.get(node);
+            if (result != null)
+                return result;
+            LongUnaryOperator left = compileLong(node.left);
+            LongUnaryOperator right = compileLong(node.right);
+            switch (node.value) {
+                case "+":
+                    result = x -> Math.addExact(left.applyAsLong(x), right.applyAsLong(x));
+                    break;
+                case "-":
+                    result = x -> Math.subtractExact(left.applyAsLong(x), right.applyAsLong(x));
+                    break;
+                case "*":
+                    result = x -> Math.multiplyExact(left.applyAsLong(x), right.applyAsLong(x));
+                    break;
+                default:
+                    throw new InvalidTypeException("Unknown integer operator " + node.value);
+            }
+            exact.put(node, result);
+            return result;
+        }
+    }
+}
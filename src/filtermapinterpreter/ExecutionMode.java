@@ -0,0 +1,12 @@
+package filtermapinterpreter;
+
+/**
+ * Represents ways to evaluate pipeline over integer arrays
+ *
+ * @author Taimuraz Tibilov
+ */
+public enum ExecutionMode {
+    INTERPRETED, // arrays and buffers by RegisterPlan, streams by Evaluator closures
+    COMPILED, // hidden classes generated by BytecodeCompiler
+    VECTORIZED // SIMD evaluation by VectorKernel, compiled scalar code if Vector API is not available
+}
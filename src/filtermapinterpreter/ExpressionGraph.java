@@ -0,0 +1,363 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Class of hash-consed expression graph. Every distinct subexpression is stored once
+ * as {@code DagNode}, so merging of map-calls, which plugs the same expression into every
+ * ELEMENT node, shares it instead of copying. Not thread-safe.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class ExpressionGraph {
+
+    private final Map<Key, DagNode> nodes = new HashMap<>(); // Table of unique nodes
+    private final List<DagNode> byId = new ArrayList<>(); // Nodes in order of creation
+    private final DagNode element; // The only ELEMENT node of the graph
+
+    /**
+     * Constructor, creates graph with one ELEMENT node
+     */
+    public ExpressionGraph() {
+        element = add(NodeType.ELEMENT, OutputType.INT, "element", null, null);
+    }
+
+    /**
+     * Getter of the ELEMENT node
+     *
+     * @return ELEMENT node of the graph
+     */
+    public DagNode element() {
+        return element;
+    }
+
+    /**
+     * Getter of the NUMBER node
+     *
+     * @param value string value of the number
+     * @return NUMBER node of the graph
+     */
+    public DagNode number(String value) {
+        if (value == null || value.isEmpty())
+            throw new InvalidParameterException("Number cannot be empty!");
+        return add(NodeType.NUMBER, OutputType.INT, value, null, null);
+    }
+
+    /**
+     * Getter of the OPERATION node, checks types of operands
+     *
+     * @param operator binary operator
+     * @param left     left operand
+     * @param right    right operand
+     * @return OPERATION node of the graph
+     * @throws InvalidTypeException if types of operands does not match to operator
+     */
+    public DagNode operation(String operator, DagNode left, DagNode right) throws InvalidTypeException {
+        if (operator == null || left == null || right == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        OutputType operands;
+        OutputType output;
+        if (operator.length() != 1)
+            throw new InvalidTypeException("Unknown operator " + operator);
+        if (ASTreeBuilder.INT_OPERATORS.contains(operator)) {
+            operands = OutputType.INT;
+            output = OutputType.INT;
+        } else if (ASTreeBuilder.COMP_OPERATORS.contains(operator)) {
+            operands = OutputType.INT;
+            output = OutputType.BOOLEAN;
+        } else if (ASTreeBuilder.BOOL_OPERATORS.contains(operator)) {
+            operands = OutputType.BOOLEAN;
+            output = OutputType.BOOLEAN;
+        } else
+            throw new InvalidTypeException("Unknown operator " + operator);
+        if (left.outputType != operands || right.outputType != operands)
+            throw new InvalidTypeException("Wrong type of operands!");
+        return add(NodeType.OPERATION, output, operator, left, right);
+    }
+
+    /**
+     * Getter of the node by its id
+     *
+     * @param id id of the node
+     * @return node with given id
+     */
+    public DagNode get(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Getter of the number of distinct nodes
+     *
+     * @return number of nodes in the graph
+     */
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Adds AST of expression to the graph. Each distinct node of AST is visited once,
+     * so merged trees with shared nodes are added in linear time
+     *
+     * @param root root of the AST
+     * @return node of the graph equal to the AST
+     * @throws InvalidTypeException if AST has wrong types of operands
+     */
+    public DagNode intern(ASTNode root) throws InvalidTypeException {
+        if (root == null || root == ASTNode.NIL)
+            throw new InvalidParameterException("Null pointer on root!");
+        Map<ASTNode, DagNode> interned = new IdentityHashMap<>();
+        for (ASTNode node : root.postOrder()) {
+            DagNode result;
+            switch (node.type) {
+                case ELEMENT:
+                    result = element;
+                    break;
+                case NUMBER:
+                    result = number(node.value);
+                    break;
+                case OPERATION:
+                    if (node.childrenCount() != 2)
+                        throw new InvalidTypeException("There are not 2 operands in binary operation!");
+                    result = operation(node.value, interned.get(node.getChild(0)), interned.get(node.getChild(1)));
+                    break;
+                default:
+                    throw new InvalidTypeException("Unexpected node in expression!");
+            }
+            interned.put(node, result);
+        }
+        return interned.get(root);
+    }
+
+    /**
+     * Copies node of another graph to this one
+     *
+     * @param root node of another graph
+     * @return equal node of this graph
+     */
+    public DagNode importNode(DagNode root) {
+        if (root == null)
+            throw new InvalidParameterException("Null pointer on root!");
+        Map<DagNode, DagNode> copies = new HashMap<>();
+        for (DagNode node : topologicalOrder(root)) {
+            DagNode copy;
+            if (node.type == NodeType.ELEMENT)
+                copy = element;
+            else if (node.type == NodeType.NUMBER)
+                copy = number(node.value);
+            else
+                copy = add(NodeType.OPERATION, node.outputType, node.value, copies.get(node.left), copies.get(node.right));
+            copies.put(node, copy);
+        }
+        return copies.get(root);
+    }
+
+    /**
+     * Replaces ELEMENT node of expression by given one. Each distinct node of expression is
+     * visited once and replacement itself is not visited, so merge cost is linear in size of the call
+     *
+     * @param root        root of the expression
+     * @param replacement node that replaces ELEMENT
+     * @return root of the new expression
+     */
+    public DagNode substitute(DagNode root, DagNode replacement) {
+        if (root == null || replacement == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (replacement == element)
+            return root;
+        Map<DagNode, DagNode> copies = new HashMap<>();
+        for (DagNode node : topologicalOrder(root)) {
+            DagNode copy;
+            if (node.type == NodeType.ELEMENT)
+                copy = replacement;
+            else if (node.type == NodeType.NUMBER)
+                copy = node;
+            else {
+                DagNode left = copies.get(node.left);
+                DagNode right = copies.get(node.right);
+                copy = left == node.left && right == node.right ? node
+                        : add(NodeType.OPERATION, node.outputType, node.value, left, right);
+            }
+            copies.put(node, copy);
+        }
+        return copies.get(root);
+    }
+
+    /**
+     * Collects distinct nodes reachable from given roots in topological order
+     * (operands before operations, i.e. in order of ids)
+     *
+     * @param roots roots of expressions
+     * @return list of distinct nodes sorted by id
+     */
+    public static List<DagNode> topologicalOrder(DagNode... roots) {
+        IdentityHashMap<DagNode, Boolean> visited = new IdentityHashMap<>();
+        ArrayDeque<DagNode> stack = new ArrayDeque<>();
+        for (DagNode root : roots) {
+            if (root != null && visited.put(root, Boolean.TRUE) == null)
+                stack.push(root);
+        }
+        List<DagNode> result = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            DagNode node = stack.pop();
+            result.add(node);
+            if (node.isOperation()) {
+                if (visited.put(node.left, Boolean.TRUE) == null)
+                    stack.push(node.left);
+                if (visited.put(node.right, Boolean.TRUE) == null)
+                    stack.push(node.right);
+            }
+        }
+        result.sort((a, b) -> Integer.compare(a.id, b.id));
+        return result;
+    }
+
+    /**
+     * Counts nodes of expression as a tree: shared subexpression is counted at each use,
+     * as it is printed. Count is saturated at {@code Long.MAX_VALUE}
+     *
+     * @param root root of the expression
+     * @return number of nodes of the expression tree
+     */
+    public static long treeSize(DagNode root) {
+        if (root == null)
+            throw new InvalidParameterException("Null pointer on root!");
+        long[] sizes = new long[root.id + 1];
+        for (DagNode node : topologicalOrder(root)) {
+            long size = 1;
+            if (node.isOperation()) {
+                size += sizes[node.left.id] + sizes[node.right.id];
+                if (size < 0)
+                    size = Long.MAX_VALUE;
+            }
+            sizes[node.id] = size;
+        }
+        return sizes[root.id];
+    }
+
+    /**
+     * Counts nesting depth of expression: length of the longest path from the root to a leaf
+     *
+     * @param root root of the expression
+     * @return number of nodes on the longest path, 1 for ELEMENT or NUMBER
+     */
+    public static int depth(DagNode root) {
+        if (root == null)
+            throw new InvalidParameterException("Null pointer on root!");
+        int[] depths = new int[root.id + 1];
+        for (DagNode node : topologicalOrder(root))
+            depths[node.id] = node.isOperation() ? Math.max(depths[node.left.id], depths[node.right.id]) + 1 : 1;
+        return depths[root.id];
+    }
+
+    /**
+     * Prints expression by case grammar rules. Each distinct node is visited once: text of
+     * repeated subexpression is copied from its first occurrence in the builder
+     *
+     * @param root    root of the expression
+     * @param builder builder to append text to
+     */
+    public static void print(DagNode root, StringBuilder builder) {
+        if (root == null || builder == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        int[] start = new int[root.id + 1];
+        int[] end = new int[root.id + 1];
+        Arrays.fill(start, -1);
+        DagNode[] nodes = new DagNode[16]; // Stack of nodes that are printed now
+        boolean[] printedLeft = new boolean[16]; // Is left operand of each node of the stack printed
+        int size = 0;
+        DagNode node = root;
+        while (true) {
+            // Opens nodes down to the leaf or already printed node
+            while (node.isOperation() && start[node.id] < 0) {
+                if (size == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, size * 2);
+                    printedLeft = Arrays.copyOf(printedLeft, size * 2);
+                }
+                start[node.id] = builder.length();
+                builder.append('(');
+                nodes[size] = node;
+                printedLeft[size++] = false;
+                node = node.left;
+            }
+            if (node.isOperation())
+                builder.append(builder, start[node.id], end[node.id]);
+            else
+                builder.append(node.value);
+            // Closes nodes with both printed operands
+            while (size > 0 && printedLeft[size - 1]) {
+                DagNode closed = nodes[--size];
+                builder.append(')');
+                end[closed.id] = builder.length();
+            }
+            if (size == 0)
+                return;
+            printedLeft[size - 1] = true;
+            builder.append(nodes[size - 1].value);
+            node = nodes[size - 1].right;
+        }
+    }
+
+    /**
+     * Adds node to the graph if there is no equal one
+     *
+     * @param type       type of the node
+     * @param outputType output type of node expression
+     * @param value      string value of the node
+     * @param left       left operand or null
+     * @param right      right operand or null
+     * @return unique node of the graph
+     */
+    private DagNode add(NodeType type, OutputType outputType, String value, DagNode left, DagNode right) {
+        Key key = new Key(type, value, left == null ? -1 : left.id, right == null ? -1 : right.id);
+        DagNode node = nodes.get(key);
+        if (node == null) {
+            node = new DagNode(byId.size(), type, outputType, value, left, right);
+            nodes.put(key, node);
+            byId.add(node);
+        }
+        return node;
+    }
+
+    /**
+     * Helper class, key of the node in hash-consing table
+     */
+    private static final class Key {
+
+        private final NodeType type; // Type of the node
+        private final String value; // String value of the node
+        private final int left; // Id of the left operand or -1
+        private final int right; // Id of the right operand or -1
+
+        private Key(NodeType type, String value, int left, int right) {
+            this.type = type;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return left == key.left && right == key.right && type == key.type && value.equals(key.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, value, left, right);
+        }
+    }
+}
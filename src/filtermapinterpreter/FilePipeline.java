@@ -0,0 +1,114 @@
+package filtermapinterpreter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+
+/**
+ * Class of evaluation of the pipeline from file to file. Files contain little-endian 32-bit integers.
+ * Input is mapped to memory by regions and evaluated by windows: each window is copied to the array,
+ * evaluated by compiled loop of the pipeline and its results are written to the output through
+ * direct buffer. Heap usage depends only on the size of window, not on the size of the files.
+ * Mapped regions of 64 MiB cannot be unmapped explicitly and stay in the address space until their
+ * buffers are collected, so evaluation of a large file may hold several of them; they are backed by
+ * the page cache of the input file, not by the heap.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class FilePipeline {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 16; // Number of elements evaluated at once
+    private static final long REGION_SIZE = 1L << 26; // Number of bytes mapped at once
+    public static final int MAX_WINDOW_SIZE = (int) (REGION_SIZE / Integer.BYTES); // Window is never larger than region
+
+    /**
+     * Constructor, it is a static class
+     */
+    private FilePipeline() {
+    }
+
+    /**
+     * Applies pipeline to the input file and writes results to the output file
+     *
+     * @param pipeline evaluated pipeline
+     * @param input    file of source elements
+     * @param output   file for results, it is created or truncated
+     * @return number of written results
+     * @throws IOException if files cannot be read or written
+     */
+    public static long apply(Pipeline pipeline, Path input, Path output) throws IOException {
+        return apply(pipeline, input, output, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Applies pipeline to the input file and writes results to the output file
+     *
+     * @param pipeline   evaluated pipeline
+     * @param input      file of source elements
+     * @param output     file for results, it is created or truncated
+     * @param windowSize number of elements evaluated at once, in [1, {@link #MAX_WINDOW_SIZE}]
+     * @return number of written results
+     * @throws EOFException if size of the input file is not a multiple of 4 bytes, output file is not changed then
+     * @throws IOException  if files cannot be read or written
+     */
+    public static long apply(Pipeline pipeline, Path input, Path output, int windowSize) throws IOException {
+        if (pipeline == null || input == null || output == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (windowSize <= 0 || windowSize > MAX_WINDOW_SIZE)
+            throw new InvalidParameterException(String.format("Size of window must be in [1, %d]!", MAX_WINDOW_SIZE));
+        try (FileChannel source = FileChannel.open(input, StandardOpenOption.READ)) {
+            // Input is checked before output is truncated, so bad input does not destroy existing output
+            long size = source.size();
+            if (size % Integer.BYTES != 0)
+                throw new EOFException("Size of input file is not a multiple of 4 bytes!");
+            try (FileChannel target = FileChannel.open(output, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                return apply(pipeline, source, size, target, windowSize);
+            }
+        }
+    }
+
+    /**
+     * Helper function, evaluates the input channel by regions and windows and writes results
+     *
+     * @param pipeline   evaluated pipeline
+     * @param source     channel of the input file
+     * @param size       size of the input file, multiple of 4 bytes
+     * @param target     channel of the output file
+     * @param windowSize number of elements evaluated at once
+     * @return number of written results
+     * @throws IOException if files cannot be read or written
+     */
+    private static long apply(Pipeline pipeline, FileChannel source, long size, FileChannel target, int windowSize)
+            throws IOException {
+        int[] elements = new int[windowSize];
+        int[] results = new int[windowSize];
+        ByteBuffer bytes = ByteBuffer.allocateDirect(windowSize * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer ints = bytes.asIntBuffer();
+        long total = 0;
+        for (long position = 0; position < size; position += REGION_SIZE) {
+            MappedByteBuffer region = source.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(REGION_SIZE, size - position));
+            IntBuffer window = region.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            while (window.hasRemaining()) {
+                int length = Math.min(windowSize, window.remaining());
+                window.get(elements, 0, length);
+                int count = pipeline.apply(elements, 0, length, results, 0);
+                ints.clear();
+                ints.put(results, 0, count);
+                bytes.clear().limit(count * Integer.BYTES);
+                while (bytes.hasRemaining())
+                    target.write(bytes);
+                total += count;
+            }
+        }
+        return total;
+    }
+}
@@ -2,7 +2,17 @@ package filtermapinterpreter;
 
 import com.sun.jdi.InvalidTypeException;
 
-import java.util.ArrayList;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -13,9 +23,78 @@ import java.util.Scanner;
  */
 public class FilterMapInterpreter {
 
-    public static void main(String[] args) {
-        Scanner input = new Scanner(System.in);
-        System.out.println(interpret(input.nextLine()));
+    public static void main(String[] args) throws IOException {
+        List<String> options = Arrays.asList(args);
+        boolean optimize = options.contains("--optimize");
+        int limit = options.indexOf("--max-output");
+        long budget = limit >= 0 ? parseBudget(limit + 1 < args.length ? args[limit + 1] : "") : Long.MAX_VALUE;
+        if (budget < 0) {
+            System.err.println("Usage: --max-output <maximum number of chars>, got: "
+                    + (limit + 1 < args.length ? args[limit + 1] : "nothing"));
+            System.exit(1);
+        }
+        int store = options.indexOf("--plans");
+        PlanStore plans = store >= 0 && store + 1 < args.length ? PlanStore.open(Path.of(args[store + 1])) : null;
+        int socket = options.indexOf("--socket");
+        if (socket >= 0 && socket + 1 < args.length) {
+            InterpreterServer server = new InterpreterServer(optimize, plans);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                System.err.println(server.latencyReport());
+                try {
+                    if (plans != null)
+                        plans.close();
+                } catch (IOException e) {
+                    // written records are already in the file
+                }
+            }));
+            server.listen(UnixDomainSocketAddress.of(args[socket + 1]));
+            return;
+        }
+        try {
+            if (options.contains("--server")) {
+                try (InterpreterServer server = new InterpreterServer(optimize, plans)) {
+                    server.serve(new InputStreamReader(System.in), new BufferedWriter(new OutputStreamWriter(System.out)));
+                    System.err.println(server.latencyReport());
+                }
+                return;
+            }
+            if (options.contains("--batch")) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+                try (BatchInterpreter interpreter = new BatchInterpreter(optimize, plans)) {
+                    interpreter.interpret(reader.lines(), System.out::println);
+                }
+                return;
+            }
+            Scanner input = new Scanner(System.in);
+            Writer output = new BufferedWriter(new OutputStreamWriter(System.out));
+            try {
+                interpret(input.nextLine(), optimize, output, budget, plans);
+                output.write(System.lineSeparator());
+            } catch (OutputLimitException e) {
+                output.flush();
+                System.err.println(e.getMessage());
+                System.exit(2);
+            }
+            output.flush();
+        } finally {
+            if (plans != null)
+                plans.close();
+        }
+    }
+
+    /**
+     * Helper function, parses value of "--max-output" option
+     *
+     * @param value text of the option value
+     * @return maximum number of chars or -1 if value is not a non-negative number
+     */
+    private static long parseBudget(String value) {
+        try {
+            return Math.max(Long.parseLong(value), -1);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
@@ -28,41 +107,162 @@ public class FilterMapInterpreter {
      * description of error that happened while parsed
      */
     public static String interpret(String source) {
-        ArrayList<ASTree> callExpressions = new ArrayList<>();
-        boolean hasFilter = false;
-        boolean hasMap = false;
-        String[] calls = new String[0];
-        if (!source.isBlank())
-            calls = source.split("%>%");
-        int counter = 0;
-        for (String call : calls) {
-            counter++;
-            ASTreeBuilder builder = new ASTreeBuilder(call);
-            try {
-                ASTree tree = builder.build();
-                if (tree.getRootType() == NodeType.FILTER_EXPRESSION)
-                    hasFilter = true;
-                if (tree.getRootType() == NodeType.MAP_EXPRESSION)
-                    hasMap = true;
-                callExpressions.add(tree);
-            } catch (InvalidSyntaxException e) {
-                return String.format("SYNTAX ERROR in %d block: %s", counter, e.getMessage());
-            } catch (InvalidTypeException e) {
-                return String.format("TYPE ERROR in %d block: %s", counter, e.getMessage());
-            }
+        return interpret(source, false);
+    }
+
+    /**
+     * Method that interprets given source string to format
+     * "filter{expression}%>%map{expression}" or returns string with
+     * description of error that happened while parsed
+     *
+     * @param source   string that contains expression built by test case grammar
+     * @param optimize simplify expressions by {@code Simplifier} (fold constants, drop "(1=1)" conjuncts etc.)
+     * @return expression formed as "filter{expression}%>%map{expression}" or string with
+     * description of error that happened while parsed
+     */
+    public static String interpret(String source, boolean optimize) {
+        return interpret(source, optimize, null);
+    }
+
+    /**
+     * Method that interprets given source string like {@link #interpret(String, boolean)}, but reads
+     * normalized call-chain from the store of plans or appends it there. If store fails, source is parsed
+     *
+     * @param source   string that contains expression built by test case grammar
+     * @param optimize simplify expressions by {@code Simplifier}
+     * @param plans    store of normalized call-chains or null
+     * @return expression formed as "filter{expression}%>%map{expression}" or string with
+     * description of error that happened while parsed
+     */
+    public static String interpret(String source, boolean optimize, PlanStore plans) {
+        InterpretEvent event = new InterpretEvent();
+        event.begin();
+        long start = Metrics.start();
+        String result;
+        boolean error = false;
+        try {
+            NormalizedChain chain = normalize(source, plans);
+            if (optimize)
+                chain = Simplifier.simplify(chain);
+            result = chain.toString();
+        } catch (InvalidSyntaxException | InvalidTypeException e) {
+            result = e.getMessage();
+            error = true;
         }
-        if (!hasFilter) {
-            callExpressions.add(ASTreeBuilder.buildDefaultFilter());
+        finish(event, start, source, result.length(), error);
+        return result;
+    }
+
+    /**
+     * Method that interprets given source string and streams the result to the output
+     * by {@code ChainPrinter}, without building it as a string
+     *
+     * @param source   string that contains expression built by test case grammar
+     * @param optimize simplify expressions by {@code Simplifier}
+     * @param output   output to append expression formed as "filter{expression}%>%map{expression}"
+     *                 or description of error to
+     * @param budget   maximum number of chars of expression
+     * @return number of written chars
+     * @throws OutputLimitException if expression is longer than budget, nothing is written then
+     * @throws IOException          if output fails
+     */
+    public static long interpret(String source, boolean optimize, Appendable output, long budget) throws IOException {
+        return interpret(source, optimize, output, budget, null);
+    }
+
+    /**
+     * Method that interprets given source string like {@link #interpret(String, boolean, Appendable, long)},
+     * but reads normalized call-chain from the store of plans or appends it there. If store fails, source is parsed
+     *
+     * @param source   string that contains expression built by test case grammar
+     * @param optimize simplify expressions by {@code Simplifier}
+     * @param output   output to append expression formed as "filter{expression}%>%map{expression}"
+     *                 or description of error to
+     * @param budget   maximum number of chars of expression
+     * @param plans    store of normalized call-chains or null
+     * @return number of written chars
+     * @throws OutputLimitException if expression is longer than budget, nothing is written then
+     * @throws IOException          if output fails
+     */
+    public static long interpret(String source, boolean optimize, Appendable output, long budget, PlanStore plans)
+            throws IOException {
+        if (output == null)
+            throw new InvalidParameterException("Null pointer on output!");
+        InterpretEvent event = new InterpretEvent();
+        event.begin();
+        long start = Metrics.start();
+        long length = 0;
+        boolean error = true; // Rejected or failed output is recorded as error as well
+        try {
+            NormalizedChain chain = normalize(source, plans);
+            if (optimize)
+                chain = Simplifier.simplify(chain);
+            length = ChainPrinter.print(chain, output, budget);
+            error = false;
+        } catch (InvalidSyntaxException | InvalidTypeException e) {
+            output.append(e.getMessage());
+            length = e.getMessage().length();
+        } finally {
+            finish(event, start, source, length, error);
         }
-        if (!hasMap) {
-            callExpressions.add(ASTreeBuilder.buildDefaultMap());
+        return length;
+    }
+
+    /**
+     * Records metrics and event of interpreted source
+     *
+     * @param event  event started before interpretation
+     * @param start  result of {@code Metrics.start()} before interpretation
+     * @param source interpreted source
+     * @param length length of the result
+     * @param error  is the result a description of error
+     */
+    private static void finish(InterpretEvent event, long start, String source, long length, boolean error) {
+        Metrics.stop(Metrics.INTERPRET_TIME, start);
+        Metrics.add(Metrics.INTERPRET_REQUESTS, 1);
+        Metrics.add(Metrics.INTERPRET_ERRORS, error ? 1 : 0);
+        Metrics.record(Metrics.OUTPUT_LENGTH, length);
+        if (event.shouldCommit()) {
+            event.sourceLength = source.length();
+            event.outputLength = length;
+            event.error = error;
+            event.commit();
         }
-        try {
-            callExpressions = ASTreeBuilder.rebuildToFilterMap(callExpressions);
-        } catch (InvalidTypeException e) {
-            return String.format("TYPE ERROR: cannot rebuild calls, %s", e.getMessage());
+    }
+
+    /**
+     * Method that parses given source string and rebuilds it to the filter- and map-call.
+     * Messages of thrown exceptions are the same strings that {@code interpret} returns
+     *
+     * @param source string that contains expression built by test case grammar
+     * @return normalized call-chain "filter{expression}%>%map{expression}"
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public static NormalizedChain normalize(String source) throws InvalidSyntaxException, InvalidTypeException {
+        if (source == null)
+            throw new InvalidParameterException("Null pointer on source!");
+        return new ChainParser().append(source).finish();
+    }
+
+    /**
+     * Helper function, normalizes given source by the store of plans if it is given and works
+     *
+     * @param source string that contains expression built by test case grammar
+     * @param plans  store of normalized call-chains or null
+     * @return normalized call-chain "filter{expression}%>%map{expression}"
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    private static NormalizedChain normalize(String source, PlanStore plans) throws InvalidSyntaxException, InvalidTypeException {
+        if (plans != null) {
+            try {
+                return plans.normalize(source);
+            } catch (IOException e) {
+                // Store is only a shortcut, the chain is parsed as usual
+            }
         }
-        return callExpressions.get(0).toString() + "%>%" + callExpressions.get(1).toString();
+        return normalize(source);
     }
 
 }
@@ -0,0 +1,161 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Class of optimizer of conjunctions of filters. Merging of filter-calls builds "(filter1&filter2)"
+ * in chain order, and interpreted filters are short-circuit, so an expensive conjunct that rarely
+ * fails could be evaluated before a cheap one that fails often. Optimizer flattens nested "&" to
+ * the list of conjuncts, estimates cost of each one by number of its nodes and selectivity
+ * (share of passed elements) by sample of the input, and rebuilds conjunction in order of
+ * ascending {@code cost / (1 - selectivity)}, that minimizes expected number of evaluated
+ * nodes per element for independent conjuncts. Expressions have no side effects and never fail,
+ * so any order gives the same results.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class FilterOptimizer {
+
+    private FilterOptimizer() {
+    }
+
+    /**
+     * Reorders conjuncts of the filter of the call-chain by sample of the input
+     *
+     * @param chain  normalized call-chain
+     * @param sample elements of the input, could be empty, then conjuncts are ordered by cost
+     * @return equivalent call-chain with reordered filter in the same graph
+     * @throws InvalidTypeException if filter has wrong types or constants out of integer range
+     */
+    public static NormalizedChain reorder(NormalizedChain chain, int[] sample) throws InvalidTypeException {
+        if (chain == null || sample == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        return new NormalizedChain(chain.getGraph(), reorder(chain.getGraph(), chain.getFilter(), sample), chain.getMap());
+    }
+
+    /**
+     * Reorders conjuncts of the filter expression by sample of the input
+     *
+     * @param graph  graph that contains expression
+     * @param filter root of the expression with boolean output
+     * @param sample elements of the input, could be empty, then conjuncts are ordered by cost
+     * @return equivalent expression with conjuncts in order of ascending rank, left operand first
+     * @throws InvalidTypeException if filter has wrong types or constants out of integer range
+     */
+    public static DagNode reorder(ExpressionGraph graph, DagNode filter, int[] sample) throws InvalidTypeException {
+        if (graph == null || filter == null || sample == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        List<Conjunct> conjuncts = estimate(filter, sample);
+        conjuncts.sort(Comparator.comparingDouble(Conjunct::rank));
+        DagNode result = null;
+        for (Conjunct conjunct : conjuncts)
+            result = result == null ? conjunct.node : graph.operation("&", result, conjunct.node);
+        return result;
+    }
+
+    /**
+     * Estimates expected number of evaluated nodes per element for the filter in its current order
+     *
+     * @param filter root of the expression with boolean output
+     * @param sample elements of the input
+     * @return sum of costs of conjuncts, each one weighted by share of elements that reach it
+     * @throws InvalidTypeException if filter has wrong types or constants out of integer range
+     */
+    public static double expectedCost(DagNode filter, int[] sample) throws InvalidTypeException {
+        if (filter == null || sample == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        double cost = 0;
+        double reached = 1;
+        for (Conjunct conjunct : estimate(filter, sample)) {
+            cost += reached * conjunct.cost;
+            reached *= conjunct.selectivity;
+        }
+        return cost;
+    }
+
+    /**
+     * Flattens nested conjunctions. Repeated conjuncts are kept once, as "x&x" is "x"
+     *
+     * @param filter root of the expression with boolean output
+     * @return conjuncts in order of evaluation
+     */
+    public static List<DagNode> conjuncts(DagNode filter) {
+        if (filter == null)
+            throw new InvalidParameterException("Null pointer on filter expression!");
+        Set<DagNode> conjuncts = new LinkedHashSet<>();
+        List<DagNode> stack = new ArrayList<>();
+        stack.add(filter);
+        while (!stack.isEmpty()) {
+            DagNode node = stack.remove(stack.size() - 1);
+            if (node.isOperation() && node.value.equals("&")) {
+                stack.add(node.right);
+                stack.add(node.left);
+            } else
+                conjuncts.add(node);
+        }
+        return new ArrayList<>(conjuncts);
+    }
+
+    /**
+     * Estimates cost and selectivity of each conjunct. Selectivity is smoothed, so that
+     * conjunct that passed every element of a small sample is not taken as never failing
+     *
+     * @param filter root of the expression with boolean output
+     * @param sample elements of the input
+     * @return estimated conjuncts in order of evaluation
+     * @throws InvalidTypeException if filter has wrong types or constants out of integer range
+     */
+    private static List<Conjunct> estimate(DagNode filter, int[] sample) throws InvalidTypeException {
+        List<Conjunct> result = new ArrayList<>();
+        for (DagNode node : conjuncts(filter)) {
+            IntPredicate predicate = Evaluator.compileFilter(node);
+            int passed = 0;
+            for (int element : sample) {
+                if (predicate.test(element))
+                    passed++;
+            }
+            result.add(new Conjunct(node, ExpressionGraph.treeSize(node), (passed + 1.0) / (sample.length + 2.0)));
+        }
+        return result;
+    }
+
+    /**
+     * Conjunct with its estimates
+     */
+    private static final class Conjunct {
+
+        private final DagNode node; // Root of the conjunct
+        private final double cost; // Number of nodes evaluated for each element that reaches conjunct
+        private final double selectivity; // Estimated share of elements passed by conjunct, in (0, 1)
+
+        /**
+         * Constructor
+         *
+         * @param node        root of the conjunct
+         * @param cost        number of nodes evaluated for each element
+         * @param selectivity estimated share of passed elements
+         */
+        private Conjunct(DagNode node, double cost, double selectivity) {
+            this.node = node;
+            this.cost = cost;
+            this.selectivity = selectivity;
+        }
+
+        /**
+         * Getter of the rank, conjuncts with lower rank are evaluated first
+         *
+         * @return cost per filtered out element
+         */
+        private double rank() {
+            return cost / (1 - selectivity);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package filtermapinterpreter;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of non-negative values, e.g. latencies in nanoseconds. Values are counted
+ * in log-linear buckets: exact below 64, then 32 buckets per power of two, so percentiles are
+ * accurate to about 3% with fixed memory and no allocation per recorded value.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class Histogram {
+
+    private static final int SUB_BITS = 5; // Number of bits of sub-buckets per power of two
+    private static final int LINEAR = 2 << SUB_BITS; // Values below are counted exactly
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * (1 << SUB_BITS); // Number of buckets
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS); // Number of values in each bucket
+
+    /**
+     * Records the value
+     *
+     * @param value value to count, negative values are counted as 0
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucket(Math.max(value, 0)));
+    }
+
+    /**
+     * Getter of the number of recorded values
+     *
+     * @return number of values
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * Getter of the percentile
+     *
+     * @param percent percent of values that are not greater than the result, from 0 to 100
+     * @return upper bound of the bucket with the percentile, 0 if there are no values
+     */
+    public long percentile(double percent) {
+        if (percent < 0 || percent > 100)
+            throw new InvalidParameterException("Percent must be from 0 to 100!");
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += snapshot[i] = counts.get(i);
+        long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+        for (int i = 0; i < BUCKETS; i++) {
+            rank -= snapshot[i];
+            if (rank <= 0)
+                return upperBound(i);
+        }
+        return 0;
+    }
+
+    /**
+     * Removes all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+    }
+
+    /**
+     * Override method. Describes the histogram
+     *
+     * @return string formatted like "count 10, p50 12, p99 45"
+     */
+    @Override
+    public String toString() {
+        return String.format("count %d, p50 %d, p99 %d", count(), percentile(50), percentile(99));
+    }
+
+    /**
+     * Getter of the bucket of the value
+     *
+     * @param value non-negative value
+     * @return index of the bucket
+     */
+    private static int bucket(long value) {
+        if (value < LINEAR)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return LINEAR + ((exponent - SUB_BITS - 1) << SUB_BITS) + sub;
+    }
+
+    /**
+     * Getter of the greatest value of the bucket
+     *
+     * @param bucket index of the bucket
+     * @return upper bound of the bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR)
+            return bucket;
+        int exponent = ((bucket - LINEAR) >> SUB_BITS) + SUB_BITS + 1;
+        long sub = (bucket - LINEAR) & ((1 << SUB_BITS) - 1);
+        return (((1L << SUB_BITS) | sub) + 1 << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,158 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Class of persistent call-chain built by appending calls one by one. Each {@code append} parses
+ * only the new call and substitutes the current map into it, so it takes time proportional to
+ * the size of the call, not of the chain. Chains are immutable: {@code append} returns a new chain
+ * that shares the expression graph with this one, {@code undo} and {@code prefix} return earlier
+ * snapshots without any work. Nodes added by undone calls stay in the graph and are reused
+ * if the same calls are appended again.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class IncrementalChain {
+
+    private final ExpressionGraph graph; // Graph shared by all snapshots of the chain
+    private final IncrementalChain previous; // Chain without the last call, null for the empty chain
+    private final int size; // Number of calls in the chain
+    private final DagNode filter; // Conjunction of filter-calls, null if there are no filters
+    private final DagNode map; // Composition of map-calls
+
+    /**
+     * Constructor
+     *
+     * @param graph    graph shared by all snapshots of the chain
+     * @param previous chain without the last call
+     * @param size     number of calls in the chain
+     * @param filter   conjunction of filter-calls, null if there are no filters
+     * @param map      composition of map-calls
+     */
+    private IncrementalChain(ExpressionGraph graph, IncrementalChain previous, int size, DagNode filter, DagNode map) {
+        this.graph = graph;
+        this.previous = previous;
+        this.size = size;
+        this.filter = filter;
+        this.map = map;
+    }
+
+    /**
+     * Creates the chain without calls
+     *
+     * @return empty chain with its own graph
+     */
+    public static IncrementalChain empty() {
+        ExpressionGraph graph = new ExpressionGraph();
+        return new IncrementalChain(graph, null, 0, null, graph.element());
+    }
+
+    /**
+     * Parses the call and appends it to the chain
+     *
+     * @param call source of one map- or filter-call
+     * @return new chain with the call at the end
+     * @throws InvalidSyntaxException if call has syntax error
+     * @throws InvalidTypeException   if call has type error
+     */
+    public IncrementalChain append(String call) throws InvalidSyntaxException, InvalidTypeException {
+        if (call == null)
+            throw new InvalidParameterException("Null pointer on call!");
+        ASTree tree;
+        try {
+            tree = new ASTreeBuilder(call).build();
+        } catch (InvalidSyntaxException e) {
+            throw new InvalidSyntaxException(String.format("SYNTAX ERROR in %d block: %s", size + 1, e.getMessage()));
+        } catch (InvalidTypeException e) {
+            throw new InvalidTypeException(String.format("TYPE ERROR in %d block: %s", size + 1, e.getMessage()));
+        }
+        return append(tree);
+    }
+
+    /**
+     * Appends the call to the chain
+     *
+     * @param call AST of map- or filter-call
+     * @return new chain with the call at the end
+     * @throws InvalidTypeException if got not map- or filter-call AST
+     */
+    public IncrementalChain append(ASTree call) throws InvalidTypeException {
+        if (call == null)
+            throw new InvalidParameterException("Null pointer on call!");
+        synchronized (graph) {
+            DagNode expression = graph.substitute(graph.intern(call.getRoot()), map);
+            switch (call.getRootType()) {
+                case MAP_EXPRESSION:
+                    return new IncrementalChain(graph, this, size + 1, filter, expression);
+                case FILTER_EXPRESSION:
+                    DagNode combined = filter == null ? expression : graph.operation("&", filter, expression);
+                    return new IncrementalChain(graph, this, size + 1, combined, map);
+                default:
+                    throw new InvalidTypeException("Expected map or filter call!");
+            }
+        }
+    }
+
+    /**
+     * Getter of the chain without the last call
+     *
+     * @return previous snapshot, the empty chain stays empty
+     */
+    public IncrementalChain undo() {
+        return previous == null ? this : previous;
+    }
+
+    /**
+     * Getter of the snapshot with the first calls of the chain
+     *
+     * @param length number of the first calls
+     * @return snapshot of the chain with given number of calls
+     */
+    public IncrementalChain prefix(int length) {
+        if (length < 0 || length > size)
+            throw new InvalidParameterException("Length of prefix is out of chain size!");
+        IncrementalChain chain = this;
+        while (chain.size > length)
+            chain = chain.previous;
+        return chain;
+    }
+
+    /**
+     * Getter of the number of calls
+     *
+     * @return number of appended calls
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Builds normalized call-chain of the snapshot
+     *
+     * @return normalized call-chain, filter is "(1=1)" if there are no filters
+     */
+    public NormalizedChain toNormalizedChain() {
+        synchronized (graph) {
+            try {
+                DagNode result = filter;
+                if (result == null)
+                    result = graph.operation("=", graph.number("1"), graph.number("1"));
+                return new NormalizedChain(graph, result, map);
+            } catch (InvalidTypeException e) {
+                throw new IllegalStateException(e); // default filter is well-typed
+            }
+        }
+    }
+
+    /**
+     * Override method. Builds normalized call-chain
+     *
+     * @return string formatted like "filter{expression}%>%map{expression}"
+     */
+    @Override
+    public String toString() {
+        return toNormalizedChain().toString();
+    }
+}
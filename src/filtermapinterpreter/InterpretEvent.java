@@ -0,0 +1,31 @@
+package filtermapinterpreter;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of {@code FilterMapInterpreter.interpret}: the whole request
+ * from source to printed result or error message.
+ *
+ * @author Taimuraz Tibilov
+ */
+@Name("filtermapinterpreter.Interpret")
+@Label("Interpret Call-Chain")
+@Category("Filter-Map Interpreter")
+@Description("Parsing, merging and printing of one call-chain")
+final class InterpretEvent extends jdk.jfr.Event {
+
+    @Label("Source Length")
+    @DataAmount(DataAmount.BYTES)
+    int sourceLength; // Number of chars in the source
+
+    @Label("Output Length")
+    @DataAmount(DataAmount.BYTES)
+    long outputLength; // Number of chars in the result or the error message
+
+    @Label("Error")
+    boolean error; // Does source have syntax or type error
+}
@@ -0,0 +1,332 @@
+package filtermapinterpreter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.InvalidParameterException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class of resident interpreter of newline-delimited call-chains. Each line of a connection is
+ * answered by one line with the result of {@code FilterMapInterpreter.interpret}, answers are
+ * written in order of requests. Requests are pipelined: the connection is read without waiting
+ * for answers, up to window of requests are interpreted concurrently and answers are written
+ * by a separate thread as soon as they are ready. Latency from reading of request to writing of
+ * its answer is recorded to the histogram of the server.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class InterpreterServer implements AutoCloseable {
+
+    private static final Request END = new Request(null, 0); // Marks the end of connection
+
+    private final ExecutorService executor; // Executor of interpretation tasks
+    private final boolean owned; // Is executor created by this server and must be shut down by it
+    private final int window; // Maximum number of requests in flight per connection
+    private final boolean optimize; // Simplify expressions by Simplifier
+    private final PlanStore plans; // Store of normalized call-chains or null
+    private final Histogram latency = new Histogram(); // Latencies of answered requests
+    private volatile ServerSocketChannel channel = null; // Listening channel, null if server does not listen
+    private volatile boolean closed = false; // Is server closed
+
+    /**
+     * Constructor, uses pool with thread per available processor
+     *
+     * @param optimize simplify expressions by {@code Simplifier}
+     */
+    public InterpreterServer(boolean optimize) {
+        this(optimize, null);
+    }
+
+    /**
+     * Constructor, uses pool with thread per available processor. Store is not closed by {@link #close()}
+     *
+     * @param optimize simplify expressions by {@code Simplifier}
+     * @param plans    store of normalized call-chains, so that known chains are not parsed again, or null
+     */
+    public InterpreterServer(boolean optimize, PlanStore plans) {
+        this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()), true,
+                Runtime.getRuntime().availableProcessors() * 16, optimize, plans);
+    }
+
+    /**
+     * Constructor, given executor is not shut down by {@link #close()}
+     *
+     * @param executor executor of interpretation tasks
+     * @param window   maximum number of requests in flight per connection
+     * @param optimize simplify expressions by {@code Simplifier}
+     */
+    public InterpreterServer(ExecutorService executor, int window, boolean optimize) {
+        this(executor, false, window, optimize, null);
+    }
+
+    /**
+     * Constructor, given executor and store are not closed by {@link #close()}
+     *
+     * @param executor executor of interpretation tasks
+     * @param window   maximum number of requests in flight per connection
+     * @param optimize simplify expressions by {@code Simplifier}
+     * @param plans    store of normalized call-chains, so that known chains are not parsed again, or null
+     */
+    public InterpreterServer(ExecutorService executor, int window, boolean optimize, PlanStore plans) {
+        this(executor, false, window, optimize, plans);
+    }
+
+    private InterpreterServer(ExecutorService executor, boolean owned, int window, boolean optimize, PlanStore plans) {
+        if (executor == null)
+            throw new InvalidParameterException("Null pointer on executor!");
+        if (window <= 0)
+            throw new InvalidParameterException("Size of window must be positive!");
+        this.executor = executor;
+        this.owned = owned;
+        this.window = window;
+        this.optimize = optimize;
+        this.plans = plans;
+    }
+
+    /**
+     * Getter of the latency histogram
+     *
+     * @return latencies in nanoseconds of all answered requests of all connections
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Describes latency of answered requests
+     *
+     * @return string formatted like "Requests: 10, latency p50: 12.3 us, p99: 45.6 us"
+     */
+    public String latencyReport() {
+        return String.format("Requests: %d, latency p50: %.1f us, p99: %.1f us",
+                latency.count(), latency.percentile(50) / 1e3, latency.percentile(99) / 1e3);
+    }
+
+    /**
+     * Answers requests of the connection until the end of input or until the server is closed.
+     * Streams are not closed
+     *
+     * @param input  newline-delimited call-chains
+     * @param output answers, one line per request
+     * @return number of answered requests
+     * @throws IOException if reading or writing fails
+     */
+    public long serve(Reader input, Writer output) throws IOException {
+        if (input == null || output == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        BlockingQueue<Request> queue = new ArrayBlockingQueue<>(window);
+        Answers answers = new Answers(queue, output);
+        Thread writer = new Thread(answers, "interpreter-server-writer");
+        writer.start();
+        try {
+            String line;
+            while (!closed && !answers.failed() && (line = reader.readLine()) != null) {
+                long start = System.nanoTime();
+                String source = line;
+                queue.put(new Request(executor.submit(() -> FilterMapInterpreter.interpret(source, optimize, plans)), start));
+            }
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while serving requests!");
+        } finally {
+            if (writer.isAlive() && !queue.offer(END))
+                writer.interrupt();
+        }
+        answers.rethrow();
+        return answers.count;
+    }
+
+    /**
+     * Listens to the Unix domain socket and serves each accepted connection by its own thread
+     * until the server is closed. Socket file is deleted after that
+     *
+     * @param address address of the socket, its file must not exist
+     * @throws IOException if socket cannot be bound or accept fails
+     */
+    public void listen(UnixDomainSocketAddress address) throws IOException {
+        if (address == null)
+            throw new InvalidParameterException("Null pointer on address!");
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            listen(server, address);
+        }
+    }
+
+    /**
+     * Accepts connections of the bound channel until the server is closed, then deletes socket file
+     *
+     * @param server  bound channel
+     * @param address address of the socket
+     * @throws IOException if accept fails
+     */
+    private void listen(ServerSocketChannel server, UnixDomainSocketAddress address) throws IOException {
+        try {
+            channel = server;
+            while (!closed) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                }
+                Thread connection = new Thread(() -> serve(client), "interpreter-server-connection");
+                connection.setDaemon(true);
+                connection.start();
+            }
+        } finally {
+            channel = null;
+            Files.deleteIfExists(address.getPath());
+        }
+    }
+
+    /**
+     * Serves accepted connection and closes it. Channel is read and written directly, not by streams,
+     * so that reading thread and writing thread do not block each other
+     *
+     * @param client accepted connection
+     */
+    private void serve(SocketChannel client) {
+        try (SocketChannel connection = client) {
+            serve(Channels.newReader(connection, StandardCharsets.UTF_8), Channels.newWriter(connection, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // client disconnected, other connections are served
+        } catch (RuntimeException e) {
+            // e.g. executor is shut down by close() or interpretation failed, other connections are served
+            System.err.println("Connection failed: " + e);
+        }
+    }
+
+    /**
+     * Stops listening and shuts down executor if it was created by this server.
+     * Requests of connections that are served now are not accepted after that
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ServerSocketChannel server = channel;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // channel is closed anyway
+            }
+        }
+        if (owned)
+            executor.shutdown();
+    }
+
+    /**
+     * Request in flight
+     */
+    private static final class Request {
+
+        private final Future<String> answer; // Interpretation task
+        private final long start; // Time of reading of the request in nanoseconds
+
+        /**
+         * Constructor
+         *
+         * @param answer interpretation task
+         * @param start  time of reading of the request in nanoseconds
+         */
+        private Request(Future<String> answer, long start) {
+            this.answer = answer;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Writer of answers of one connection, flushes output when there are no ready requests
+     */
+    private final class Answers implements Runnable {
+
+        private final BlockingQueue<Request> queue; // Requests in order of reading
+        private final Writer output; // Output of the connection
+        private long count = 0; // Number of written answers
+        private volatile Exception error = null; // Error of writing or interpretation, null if there is no error
+
+        /**
+         * Constructor
+         *
+         * @param queue  requests in order of reading
+         * @param output output of the connection
+         */
+        private Answers(BlockingQueue<Request> queue, Writer output) {
+            this.queue = queue;
+            this.output = output;
+        }
+
+        /**
+         * Writes answers until the end of connection. After an error the rest of requests are cancelled
+         */
+        @Override
+        public void run() {
+            try {
+                Request request;
+                while ((request = queue.take()) != END) {
+                    if (error != null) {
+                        request.answer.cancel(true);
+                        continue;
+                    }
+                    try {
+                        output.write(request.answer.get());
+                        output.write('\n');
+                        if (queue.isEmpty())
+                            output.flush();
+                        latency.record(System.nanoTime() - request.start);
+                        count++;
+                    } catch (IOException | ExecutionException e) {
+                        error = e;
+                    }
+                }
+                if (error == null)
+                    output.flush();
+            } catch (InterruptedException | IOException e) {
+                error = e;
+            }
+        }
+
+        /**
+         * Shows has writing failed
+         *
+         * @return true if answers are not written anymore
+         */
+        private boolean failed() {
+            return error != null;
+        }
+
+        /**
+         * Throws error of writing if there was one
+         *
+         * @throws IOException if writing failed
+         */
+        private void rethrow() throws IOException {
+            if (error instanceof IOException)
+                throw (IOException) error;
+            if (error instanceof ExecutionException && error.getCause() instanceof RuntimeException)
+                throw (RuntimeException) error.getCause();
+            if (error != null)
+                throw new IllegalStateException(error);
+        }
+    }
+}
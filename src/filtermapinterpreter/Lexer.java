@@ -0,0 +1,291 @@
+package filtermapinterpreter;
+
+/**
+ * Class of lexer over the source {@code CharSequence}. Lexer holds only the current token:
+ * its type, offsets in the source and value of the number, so it allocates nothing per token.
+ * Keywords are matched as prefixes, like "map" in "mapelement". Numbers are parsed directly
+ * to integer, their text is taken from the source only if it is needed.
+ * Whitespaces are not skipped, they are UNKNOWN tokens.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class Lexer {
+
+    private static final int CACHE_MIN = -128; // The least number with cached text
+    private static final int CACHE_MAX = 1024; // The greatest number with cached text (exclusive)
+    private static final String[] NUMBERS = new String[CACHE_MAX - CACHE_MIN]; // Texts of small numbers
+    private static final String[] OPERATORS = new String[128]; // Texts of operators
+
+    private static final byte OTHER = 0; // Class of chars that are not ASCII tokens
+    private static final byte SINGLE = 1; // Class of one-char tokens: operators (except minus) and brackets
+    private static final byte DIGIT = 2; // Class of ASCII digits
+    private static final byte MINUS = 3; // Class of minus: operator or sign of number
+    private static final byte KEYWORD = 4; // Class of first chars of keywords
+    private static final byte[] CLASSES = new byte[128]; // Classes of ASCII chars
+    private static final TokenType[] SINGLE_TYPES = new TokenType[128]; // Types of one-char tokens
+
+    static {
+        for (int i = CACHE_MIN; i < CACHE_MAX; i++)
+            NUMBERS[i - CACHE_MIN] = String.valueOf(i);
+        for (char operator : AbstractParser.OPERATORS.toCharArray()) {
+            OPERATORS[operator] = String.valueOf(operator);
+            CLASSES[operator] = SINGLE;
+            SINGLE_TYPES[operator] = TokenType.OPERATOR;
+        }
+        CLASSES['-'] = MINUS;
+        for (char digit = '0'; digit <= '9'; digit++)
+            CLASSES[digit] = DIGIT;
+        CLASSES['e'] = CLASSES['f'] = CLASSES['m'] = KEYWORD;
+        CLASSES['('] = CLASSES[')'] = CLASSES['{'] = CLASSES['}'] = SINGLE;
+        SINGLE_TYPES['('] = TokenType.LEFT_PARENTHESIS;
+        SINGLE_TYPES[')'] = TokenType.RIGHT_PARENTHESIS;
+        SINGLE_TYPES['{'] = TokenType.LEFT_BRACE;
+        SINGLE_TYPES['}'] = TokenType.RIGHT_BRACE;
+    }
+
+    private final CharSequence source; // Source to split to tokens
+    private TokenType type; // Type of the current token
+    private int start; // Offset of the first char of the current token
+    private int end; // Offset after the last char of the current token
+    private long number; // Value of the current NUMBER token, saturated out of long range
+    private boolean canonical; // Is text of the current NUMBER the same as String.valueOf(number)
+
+    /**
+     * Constructor, reads the first token
+     *
+     * @param source source to split to tokens. If got null - it is empty
+     */
+    public Lexer(CharSequence source) {
+        this.source = source == null ? "" : source;
+        read(0, false);
+    }
+
+    /**
+     * Getter of the current token type
+     *
+     * @return type of the current token, END if source is over
+     */
+    public TokenType type() {
+        return type;
+    }
+
+    /**
+     * Getter of the current token start
+     *
+     * @return offset of the first char of the current token
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * Getter of the current token end
+     *
+     * @return offset after the last char of the current token
+     */
+    public int end() {
+        return end;
+    }
+
+    /**
+     * Getter of the first char of the current token
+     *
+     * @return first char of the current token or null-char if source is over
+     */
+    public char current() {
+        return type == TokenType.END ? '\0' : source.charAt(start);
+    }
+
+    /**
+     * Shows does value of the current NUMBER token fit to integer
+     *
+     * @return true if number is in integer range
+     */
+    public boolean isInt() {
+        return number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Shows is text of the current NUMBER token the same as decimal string of its value,
+     * e.g. "12" or "-5", but not "007", "-0" or numbers out of long range
+     *
+     * @return true if number text is canonical
+     */
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    /**
+     * Getter of the current NUMBER token value
+     *
+     * @return value of the number, it is valid only if {@link #isInt()}
+     */
+    public int intValue() {
+        return (int) number;
+    }
+
+    /**
+     * Getter of the decimal string of the number, texts of small numbers are constants
+     *
+     * @param value number to print
+     * @return decimal string of the number
+     */
+    static String numberText(int value) {
+        if (value >= CACHE_MIN && value < CACHE_MAX)
+            return NUMBERS[value - CACHE_MIN];
+        return String.valueOf(value);
+    }
+
+    /**
+     * Getter of the current token text. Texts of keywords, operators and small numbers are constants
+     *
+     * @return text of the current token
+     */
+    public String text() {
+        switch (type) {
+            case NUMBER:
+                if (canonical && number >= CACHE_MIN && number < CACHE_MAX)
+                    return NUMBERS[(int) number - CACHE_MIN];
+                break;
+            case ELEMENT:
+                return "element";
+            case FILTER:
+                return "filter";
+            case MAP:
+                return "map";
+            case OPERATOR:
+                return OPERATORS[source.charAt(start)];
+            case END:
+                return "";
+            default:
+                break;
+        }
+        return source.subSequence(start, end).toString();
+    }
+
+    /**
+     * Moves to the next token
+     */
+    public void next() {
+        if (type != TokenType.END)
+            read(end, type == TokenType.NUMBER || type == TokenType.ELEMENT || type == TokenType.RIGHT_PARENTHESIS);
+    }
+
+    /**
+     * Reads token from the given offset. Kind of token is chosen by the class of its first char
+     *
+     * @param offset  offset of the first char of the token
+     * @param operand is previous token an operand, then minus is always operator
+     */
+    private void read(int offset, boolean operand) {
+        start = offset;
+        end = offset + 1;
+        if (offset >= source.length()) {
+            type = TokenType.END;
+            end = offset;
+            return;
+        }
+        char c = source.charAt(offset);
+        switch (c < CLASSES.length ? CLASSES[c] : OTHER) {
+            case SINGLE:
+                type = SINGLE_TYPES[c];
+                return;
+            case DIGIT:
+                readNumber(offset);
+                return;
+            case MINUS:
+                if (!operand && isDigit(offset + 1))
+                    readNumber(offset);
+                else
+                    type = TokenType.OPERATOR;
+                return;
+            case KEYWORD:
+                if (c == 'e' && startsWith("element", offset)) {
+                    type = TokenType.ELEMENT;
+                    end = offset + 7;
+                    return;
+                }
+                if (c == 'f' && startsWith("filter", offset)) {
+                    type = TokenType.FILTER;
+                    end = offset + 6;
+                    return;
+                }
+                if (c == 'm' && startsWith("map", offset)) {
+                    type = TokenType.MAP;
+                    end = offset + 3;
+                    return;
+                }
+                type = TokenType.UNKNOWN;
+                return;
+            default:
+                if (isDigit(c))
+                    readNumber(offset);
+                else
+                    type = TokenType.UNKNOWN;
+        }
+    }
+
+    /**
+     * Reads number from the given offset: optional minus and digits
+     *
+     * @param offset offset of the first char of the number
+     */
+    private void readNumber(int offset) {
+        boolean negative = source.charAt(offset) == '-';
+        int position = negative ? offset + 1 : offset;
+        int first = position;
+        long value = 0;
+        boolean overflow = false;
+        boolean ascii = true;
+        while (isDigit(position)) {
+            char c = source.charAt(position++);
+            int digit = Character.digit(c, 10);
+            ascii &= c <= '9';
+            if (value > (Long.MAX_VALUE - digit) / 10)
+                overflow = true;
+            else
+                value = value * 10 + digit;
+        }
+        type = TokenType.NUMBER;
+        end = position;
+        number = overflow ? (negative ? Long.MIN_VALUE : Long.MAX_VALUE) : negative ? -value : value;
+        canonical = ascii && !overflow && (source.charAt(first) != '0' || position - first == 1 && !negative);
+    }
+
+    /**
+     * Shows is char at the offset a digit
+     *
+     * @param offset offset in the source
+     * @return true if offset is in the source and char is a digit
+     */
+    private boolean isDigit(int offset) {
+        return offset < source.length() && isDigit(source.charAt(offset));
+    }
+
+    /**
+     * Shows is char a digit, like {@code Character.isDigit} with fast path for ASCII
+     *
+     * @param c char to check
+     * @return true if char is a decimal digit
+     */
+    private static boolean isDigit(char c) {
+        return c <= '9' ? c >= '0' : c > 127 && Character.isDigit(c);
+    }
+
+    /**
+     * Shows does source contain the word at the offset
+     *
+     * @param word   expected word
+     * @param offset offset in the source
+     * @return true if source has the word at the offset
+     */
+    private boolean startsWith(String word, int offset) {
+        if (offset + word.length() > source.length())
+            return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (source.charAt(offset + i) != word.charAt(i))
+                return false;
+        }
+        return true;
+    }
+}
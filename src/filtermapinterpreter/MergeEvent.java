@@ -0,0 +1,37 @@
+package filtermapinterpreter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of merging calls into filter- and map-call. Expanded nodes are
+ * nodes of merged expressions counted as a tree: shared subexpressions are counted at each use,
+ * as they are printed, so expansion ratio shows how much merging multiplies the output.
+ *
+ * @author Taimuraz Tibilov
+ */
+@Name("filtermapinterpreter.Merge")
+@Label("Merge Calls")
+@Category("Filter-Map Interpreter")
+@Description("Rebuilding of calls to the form filter{expression}%>%map{expression}")
+final class MergeEvent extends jdk.jfr.Event {
+
+    @Label("Calls")
+    int calls; // Number of merged calls
+
+    @Label("Nodes")
+    long nodes; // Number of distinct nodes of merged expressions
+
+    @Label("Expanded Nodes")
+    long expandedNodes; // Number of nodes of merged expressions counted as a tree
+
+    @Label("Expansion Ratio")
+    double expansionRatio; // Expanded nodes per distinct node
+
+    @Label("Merge Time")
+    @Timespan
+    long mergeTime; // Duration of merging in nanoseconds without parsing between calls, 0 if event duration is merging
+}
@@ -0,0 +1,149 @@
+package filtermapinterpreter;
+
+import java.security.InvalidParameterException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of counters and histograms of the interpreter. Metrics are disabled by default
+ * (or enabled by system property {@code filtermapinterpreter.metrics=true}), then each
+ * instrumented method only reads one volatile flag. Histograms of durations are in nanoseconds.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class Metrics {
+
+    public static final String INTERPRET_REQUESTS = "interpret.requests"; // Counter of interpreted chains
+    public static final String INTERPRET_ERRORS = "interpret.errors"; // Counter of chains with errors
+    public static final String INTERPRET_TIME = "interpret.nanos"; // Histogram of interpretation durations
+    public static final String OUTPUT_LENGTH = "interpret.output.length"; // Histogram of result lengths
+    public static final String PARSE_TIME = "parse.nanos"; // Histogram of call parsing durations
+    public static final String PARSE_NODES = "parse.nodes"; // Histogram of numbers of nodes of parsed calls
+    public static final String PARSE_ERRORS = "parse.errors"; // Counter of calls with errors
+    public static final String MERGE_TIME = "merge.nanos"; // Histogram of merging durations
+    public static final String MERGE_NODES = "merge.nodes"; // Histogram of distinct nodes of merged expressions
+    public static final String MERGE_EXPANSION = "merge.expansion.percent"; // Histogram of expansion ratios in percents
+    public static final String PRINT_TIME = "print.nanos"; // Histogram of printing durations
+    public static final String EVALUATE_TIME = "evaluate.nanos"; // Histogram of evaluation durations
+    public static final String EVALUATE_ELEMENTS = "evaluate.elements"; // Counter of evaluated elements
+    public static final String EVALUATE_RESULTS = "evaluate.results"; // Counter of elements passed filters
+    public static final String PLAN_INSTRUCTIONS = "plan.instructions"; // Histogram of instructions per element of lowered plans
+
+    private static final long NOT_STARTED = Long.MIN_VALUE; // Start time of measures of disabled metrics
+
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>(); // Counters by name
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>(); // Histograms by name
+    private static volatile boolean enabled = Boolean.getBoolean("filtermapinterpreter.metrics"); // Are metrics collected
+
+    private Metrics() {
+    }
+
+    /**
+     * Shows are metrics collected
+     *
+     * @return true if metrics are enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables collection of metrics, collected values are kept
+     *
+     * @param enabled collect metrics or not
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Adds value to the counter if metrics are enabled
+     *
+     * @param name  name of the counter
+     * @param value value to add
+     */
+    public static void add(String name, long value) {
+        if (enabled)
+            counters.computeIfAbsent(name, key -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Records value to the histogram if metrics are enabled
+     *
+     * @param name  name of the histogram
+     * @param value value to record
+     */
+    public static void record(String name, long value) {
+        if (enabled)
+            histogram(name).record(value);
+    }
+
+    /**
+     * Starts measure of duration
+     *
+     * @return current time in nanoseconds, or marker of not started measure if metrics are disabled
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * Records duration of the measure to the histogram if it was started
+     *
+     * @param name  name of the histogram
+     * @param start result of {@link #start()}
+     */
+    static void stop(String name, long start) {
+        if (start != NOT_STARTED)
+            record(name, System.nanoTime() - start);
+    }
+
+    /**
+     * Getter of the counter value
+     *
+     * @param name name of the counter
+     * @return sum of added values, 0 if nothing was added
+     */
+    public static long counter(String name) {
+        if (name == null)
+            throw new InvalidParameterException("Null pointer on name!");
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Getter of the histogram, creates it on the first request
+     *
+     * @param name name of the histogram
+     * @return histogram of recorded values
+     */
+    public static Histogram histogram(String name) {
+        if (name == null)
+            throw new InvalidParameterException("Null pointer on name!");
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Removes all collected values
+     */
+    public static void reset() {
+        counters.clear();
+        histograms.clear();
+    }
+
+    /**
+     * Describes collected metrics, one line per counter or histogram in order of names
+     *
+     * @return lines formatted like "name: value" or "name: count 10, p50 12, p99 45"
+     */
+    public static String report() {
+        Map<String, Object> sorted = new TreeMap<>();
+        counters.forEach((name, counter) -> sorted.put(name, counter.sum()));
+        histograms.forEach(sorted::put);
+        StringBuilder builder = new StringBuilder();
+        sorted.forEach((name, value) -> builder.append(name).append(": ").append(value).append('\n'));
+        return builder.toString();
+    }
+}
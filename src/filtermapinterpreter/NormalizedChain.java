@@ -0,0 +1,202 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.List;
+
+/**
+ * Class of call-chain rebuilt to the form "filter{expression}%>%map{expression}".
+ * Both expressions are nodes of one hash-consed {@code ExpressionGraph}, so subexpressions
+ * shared by the filter and the map (or repeated by merging) are stored once.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class NormalizedChain {
+
+    private final ExpressionGraph graph; // Graph that contains both expressions
+    private final DagNode filter; // Expression of the filter-call
+    private final DagNode map; // Expression of the map-call
+
+    /**
+     * Constructor
+     *
+     * @param graph  graph that contains both expressions
+     * @param filter expression of the filter-call
+     * @param map    expression of the map-call
+     */
+    public NormalizedChain(ExpressionGraph graph, DagNode filter, DagNode map) {
+        if (graph == null || filter == null || map == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (filter.outputType != OutputType.BOOLEAN)
+            throw new InvalidParameterException("Cannot filter by integer value!");
+        if (map.outputType != OutputType.INT)
+            throw new InvalidParameterException("Cannot map by boolean value!");
+        this.graph = graph;
+        this.filter = filter;
+        this.map = map;
+    }
+
+    /**
+     * Rebuilds given map- and filter-calls to the form "filter{expression}%>%map{expression}"
+     * by rules of {@code ASTreeBuilder.rebuildToFilterMap}: ELEMENT of each call is replaced by the
+     * last preceding map expression, filters are combined by "&". If there are no filters,
+     * filter is "(1=1)", if there are no maps, map is "element".
+     *
+     * @param calls map- and filter-calls in order of the chain
+     * @return normalized call-chain
+     * @throws InvalidTypeException if got not map- or filter-call AST
+     */
+    public static NormalizedChain of(List<ASTree> calls) throws InvalidTypeException {
+        if (calls == null)
+            throw new InvalidParameterException("Null pointer on calls!");
+        Builder builder = new Builder();
+        for (ASTree call : calls)
+            builder.add(call);
+        return builder.build();
+    }
+
+    /**
+     * Adds already normalized filter- and map-call to the new graph
+     *
+     * @param filterTree normalized filter-call
+     * @param mapTree    normalized map-call
+     * @return normalized call-chain
+     * @throws InvalidTypeException if calls have wrong types
+     */
+    public static NormalizedChain of(ASTree filterTree, ASTree mapTree) throws InvalidTypeException {
+        if (filterTree == null || mapTree == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (filterTree.getRootType() != NodeType.FILTER_EXPRESSION || mapTree.getRootType() != NodeType.MAP_EXPRESSION)
+            throw new InvalidTypeException("Expected filter and map calls!");
+        ExpressionGraph graph = new ExpressionGraph();
+        return new NormalizedChain(graph, graph.intern(filterTree.getRoot()), graph.intern(mapTree.getRoot()));
+    }
+
+    /**
+     * Getter of the graph
+     *
+     * @return graph that contains both expressions
+     */
+    public ExpressionGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Getter of the filter expression
+     *
+     * @return expression of the filter-call
+     */
+    public DagNode getFilter() {
+        return filter;
+    }
+
+    /**
+     * Getter of the map expression
+     *
+     * @return expression of the map-call
+     */
+    public DagNode getMap() {
+        return map;
+    }
+
+    /**
+     * Copies the chain to the new graph, e.g. to simplify it while this graph is shared
+     *
+     * @return equal normalized call-chain in the new graph
+     */
+    NormalizedChain copy() {
+        ExpressionGraph copy = new ExpressionGraph();
+        return new NormalizedChain(copy, copy.importNode(filter), copy.importNode(map));
+    }
+
+    /**
+     * Override method. Builds normalized call-chain, common subexpressions of
+     * the filter and the map are printed once and copied after that
+     *
+     * @return string formatted like "filter{expression}%>%map{expression}"
+     */
+    @Override
+    public String toString() {
+        PrintEvent event = new PrintEvent();
+        event.begin();
+        long start = Metrics.start();
+        StringBuilder builder = new StringBuilder("filter{");
+        ExpressionGraph.print(filter, builder);
+        builder.append("}%>%map{");
+        ExpressionGraph.print(map, builder);
+        builder.append('}');
+        Metrics.stop(Metrics.PRINT_TIME, start);
+        if (event.shouldCommit()) {
+            event.outputLength = builder.length();
+            event.commit();
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Folds calls into the normalized call-chain one by one, so that parsed calls
+     * could be dropped as soon as they are added
+     */
+    static final class Builder {
+
+        private final ExpressionGraph graph = new ExpressionGraph(); // Graph of the folded calls
+        private DagNode map = graph.element(); // Composition of added map-calls
+        private DagNode filter = null; // Conjunction of added filter-calls, null if there are no filters
+        private int calls = 0; // Number of added calls
+        private final MergeEvent event = new MergeEvent(); // Event of merging of added calls
+        private final boolean measured = event.isEnabled() || Metrics.isEnabled(); // Is duration of merging measured
+        private long mergeTime = 0; // Duration of merging of added calls in nanoseconds, if it is measured
+
+        /**
+         * Adds the next call of the chain: ELEMENT of the call is replaced by the current map,
+         * map-call becomes the new map, filter-call is combined with the current filter by "&"
+         *
+         * @param call map- or filter-call
+         * @throws InvalidTypeException if got not map- or filter-call AST
+         */
+        void add(ASTree call) throws InvalidTypeException {
+            long start = measured ? System.nanoTime() : 0;
+            DagNode expression = graph.substitute(graph.intern(call.getRoot()), map);
+            calls++;
+            switch (call.getRootType()) {
+                case MAP_EXPRESSION:
+                    map = expression;
+                    break;
+                case FILTER_EXPRESSION:
+                    filter = filter == null ? expression : graph.operation("&", filter, expression);
+                    break;
+                default:
+                    throw new InvalidTypeException("Expected map or filter call!");
+            }
+            if (measured)
+                mergeTime += System.nanoTime() - start;
+        }
+
+        /**
+         * Builds normalized call-chain of the added calls, could be called several times
+         *
+         * @return normalized call-chain, filter is "(1=1)" if there are no filters
+         * @throws InvalidTypeException never, default filter is well-typed
+         */
+        NormalizedChain build() throws InvalidTypeException {
+            DagNode result = filter;
+            if (result == null)
+                result = graph.operation("=", graph.number("1"), graph.number("1"));
+            if (measured && (event.shouldCommit() || Metrics.isEnabled())) {
+                long nodes = ExpressionGraph.topologicalOrder(result, map).size();
+                long expanded = ExpressionGraph.treeSize(result) + ExpressionGraph.treeSize(map);
+                Metrics.record(Metrics.MERGE_TIME, mergeTime);
+                Metrics.record(Metrics.MERGE_NODES, nodes);
+                Metrics.record(Metrics.MERGE_EXPANSION, Math.round(100.0 * expanded / nodes));
+                event.calls = calls;
+                event.nodes = nodes;
+                event.expandedNodes = expanded;
+                event.expansionRatio = (double) expanded / nodes;
+                event.mergeTime = mergeTime;
+                event.commit();
+            }
+            return new NormalizedChain(graph, result, map);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package filtermapinterpreter;
+
+import java.io.IOException;
+
+/**
+ * Thrown when printed call-chain would be longer than the output budget. Nothing is written then
+ *
+ * @author Taimuraz Tibilov
+ */
+public class OutputLimitException extends IOException {
+
+    private static final long serialVersionUID = 1L; // Version of serialized form
+
+    private final long length; // Length of the whole output
+
+    /**
+     * Constructor
+     *
+     * @param length length of the whole output, {@code Long.MAX_VALUE} if it overflows long
+     * @param budget maximum allowed length
+     */
+    public OutputLimitException(long length, long budget) {
+        super(String.format("Output of %s chars exceeds budget of %d chars!",
+                length == Long.MAX_VALUE ? "more than " + Long.MAX_VALUE : String.valueOf(length), budget));
+        this.length = length;
+    }
+
+    /**
+     * Getter of the output length
+     *
+     * @return length of the whole output, {@code Long.MAX_VALUE} if it overflows long
+     */
+    public long getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,147 @@
+package filtermapinterpreter;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class of parallel evaluation of the pipeline over large arrays. Input is split into chunks
+ * that are evaluated independently on the fork/join pool, each one to its own range of the
+ * buffer. Then offsets of chunk results are found by prefix-sum of their counts and results
+ * are copied to the output in parallel, so order of elements is kept without any locking.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class ParallelPipeline {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16; // Number of elements evaluated by one task
+
+    private final Pipeline pipeline; // Evaluated pipeline, its functions are pure and thread-safe
+    private final ForkJoinPool pool; // Pool that executes tasks
+    private final int chunkSize; // Number of elements evaluated by one task
+
+    /**
+     * Constructor, uses common pool and default size of chunks
+     *
+     * @param pipeline evaluated pipeline
+     */
+    public ParallelPipeline(Pipeline pipeline) {
+        this(pipeline, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param pipeline  evaluated pipeline
+     * @param pool      pool that executes tasks
+     * @param chunkSize number of elements evaluated by one task
+     */
+    public ParallelPipeline(Pipeline pipeline, ForkJoinPool pool, int chunkSize) {
+        if (pipeline == null || pool == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (chunkSize <= 0)
+            throw new InvalidParameterException("Size of chunk must be positive!");
+        this.pipeline = pipeline;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Getter of the pipeline
+     *
+     * @return evaluated pipeline
+     */
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Applies pipeline to the whole array
+     *
+     * @param input source elements
+     * @return new array of filtered and mapped elements in order of input
+     */
+    public int[] apply(int[] input) {
+        if (input == null)
+            throw new InvalidParameterException("Null pointer on input!");
+        int[] output = new int[input.length];
+        int count = apply(input, 0, input.length, output, 0);
+        return count == output.length ? output : Arrays.copyOf(output, count);
+    }
+
+    /**
+     * Applies pipeline to the part of array and writes results to output array in order of input
+     *
+     * @param input  source elements
+     * @param from   index of the first element (inclusive)
+     * @param to     index of the last element (exclusive)
+     * @param output array for results, must have at least {@code to - from} free places after offset
+     * @param offset index of output to write first result to
+     * @return number of written results
+     */
+    public int apply(int[] input, int from, int to, int[] output, int offset) {
+        if (input == null || output == null)
+            throw new InvalidParameterException("Null pointer on arrays!");
+        if (from < 0 || to > input.length || from > to || offset < 0 || offset + (to - from) > output.length)
+            throw new InvalidParameterException("Range is out of array bounds!");
+        if (to - from <= chunkSize)
+            return pipeline.apply(input, from, to, output, offset);
+        int chunks = (int) (((long) to - from + chunkSize - 1) / chunkSize);
+        int[] buffer = new int[to - from];
+        int[] positions = new int[chunks + 1];
+        pool.invoke(new ChunkTask(input, from, to, buffer, positions, null, 0, 0, chunks));
+        for (int i = 0; i < chunks; i++)
+            positions[i + 1] += positions[i];
+        pool.invoke(new ChunkTask(input, from, to, buffer, positions, output, offset, 0, chunks));
+        return positions[chunks];
+    }
+
+    /**
+     * Task over range of chunks. Without output it evaluates chunks to the buffer and stores
+     * their counts, with output it copies chunk results to positions found by prefix-sum
+     */
+    private final class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L; // Version of serialized form
+        private final int[] input; // Source elements
+        private final int from; // Index of the first element of the first chunk
+        private final int to; // Index of the last element (exclusive)
+        private final int[] buffer; // Results of each chunk at offset of chunk in input
+        private final int[] positions; // Counts of chunks shifted by one, then their offsets in output
+        private final int[] output; // Array for results, null on evaluation phase
+        private final int offset; // Index of output to write first result to
+        private final int first; // Index of the first chunk of task (inclusive)
+        private final int last; // Index of the last chunk of task (exclusive)
+
+        private ChunkTask(int[] input, int from, int to, int[] buffer, int[] positions,
+                          int[] output, int offset, int first, int last) {
+            this.input = input;
+            this.from = from;
+            this.to = to;
+            this.buffer = buffer;
+            this.positions = positions;
+            this.output = output;
+            this.offset = offset;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                invokeAll(new ChunkTask(input, from, to, buffer, positions, output, offset, first, middle),
+                        new ChunkTask(input, from, to, buffer, positions, output, offset, middle, last));
+                return;
+            }
+            int start = (int) Math.min((long) first * chunkSize, to - from);
+            if (output == null) {
+                int end = (int) Math.min((long) start + chunkSize, to - from);
+                positions[first + 1] = pipeline.apply(input, from + start, from + end, buffer, start);
+            } else
+                System.arraycopy(buffer, start, output, offset + positions[first],
+                        positions[first + 1] - positions[first]);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package filtermapinterpreter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of {@code ASTreeBuilder.build}: parsing of one call.
+ *
+ * @author Taimuraz Tibilov
+ */
+@Name("filtermapinterpreter.Parse")
+@Label("Parse Call")
+@Category("Filter-Map Interpreter")
+@Description("Building of abstract syntax tree of one map- or filter-call")
+final class ParseEvent extends jdk.jfr.Event {
+
+    @Label("Call Type")
+    String callType; // "map", "filter" or null if call has error
+
+    @Label("Nodes")
+    int nodes; // Number of nodes of the built tree
+
+    @Label("Error")
+    boolean error; // Does call have syntax or type error
+}
@@ -0,0 +1,632 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.nio.IntBuffer;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Class of executable call-chain in form "filter{expression}%>%map{expression}".
+ * Applies filter and then map to each element of integer array, stream or buffer.
+ * Arithmetic wraps around on overflow in every mode; overflow-checked evaluation is the separate
+ * opt-in API of {@code Evaluator.compileCheckedFilter} and {@code Evaluator.compileCheckedMap}.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class Pipeline {
+
+    private static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector")
+            .isPresent(); // Is Vector API loaded to the JVM, VectorKernel must not be loaded otherwise
+    static final int MAX_RECURSIVE_DEPTH = 1000; // Maximum nesting depth of expressions compiled to bytecode or closures
+    private static final int BUFFER_BLOCK = 1024; // Number of elements of buffers and streams evaluated at once
+
+    private final NormalizedChain chain; // Simplified normalized filter- and map-call
+    private final IntPredicate filter; // Predicate of the filter-call
+    private final IntUnaryOperator map; // Function of the map-call
+    private final PipelineKernel kernel; // Compiled loop or register plan over arrays
+    private final boolean blockStreams; // Are streams evaluated by blocks of the kernel, not by filter and map
+    private final ExecutionMode mode; // Effective mode after fallbacks
+    private final boolean empty; // Is filter false for each element of the declared range
+    private final boolean passThrough; // Is filter true for each element of the declared range and map is element
+    private volatile SelectionKernel selectionKernel = null; // Compiled loops of the stages, null until the first use
+    private volatile boolean selectionCompiled = false; // Was compilation of the stages tried
+
+    /**
+     * Constructor, builds functions of the given normalized call-chain. Calls are compiled
+     * to bytecode if {@code BytecodeCompiler.ENABLED}, otherwise they are interpreted
+     *
+     * @param chain normalized call-chain
+     * @throws InvalidTypeException if calls have constants out of integer range
+     */
+    public Pipeline(NormalizedChain chain) throws InvalidTypeException {
+        this(chain, BytecodeCompiler.ENABLED);
+    }
+
+    /**
+     * Constructor, simplifies given normalized call-chain by {@code Simplifier} and builds its
+     * functions. If compilation of the call fails (e.g. expression is too large), it falls back
+     * to interpretation
+     *
+     * @param chain   normalized call-chain
+     * @param compile compile calls to bytecode or interpret them by {@code Evaluator}
+     * @throws InvalidTypeException if calls have constants out of integer range
+     */
+    public Pipeline(NormalizedChain chain, boolean compile) throws InvalidTypeException {
+        this(chain, compile ? ExecutionMode.COMPILED : ExecutionMode.INTERPRETED);
+    }
+
+    /**
+     * Constructor, simplifies given normalized call-chain by {@code Simplifier} and builds its
+     * functions. If compilation of the call fails (e.g. expression is too large), it falls back
+     * to interpretation. If Vector API is not available, vectorized mode falls back to compiled one.
+     * Interpreted pipeline evaluates arrays and buffers by {@code RegisterPlan}, streams by {@code Evaluator}.
+     * Expressions nested deeper than {@code MAX_RECURSIVE_DEPTH} are interpreted by {@code RegisterPlan} only.
+     *
+     * @param chain normalized call-chain
+     * @param mode  way to evaluate pipeline over arrays
+     * @throws InvalidTypeException if calls have constants out of integer range
+     */
+    public Pipeline(NormalizedChain chain, ExecutionMode mode) throws InvalidTypeException {
+        this(chain, mode, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor for elements of the declared range, elements out of it give undefined results.
+     * If {@code RangeAnalysis} proves that filter is false for each element, pipeline gives no
+     * results without evaluation. If filter is proven to be true, it is replaced by constant,
+     * and if map is element as well, elements are copied to output. Analysis decides
+     * only the filter, arithmetic still wraps around on overflow
+     *
+     * @param chain      normalized call-chain
+     * @param mode       way to evaluate pipeline over arrays
+     * @param minElement minimum of element (inclusive)
+     * @param maxElement maximum of element (inclusive)
+     * @throws InvalidTypeException if calls have constants out of integer range
+     */
+    public Pipeline(NormalizedChain chain, ExecutionMode mode, int minElement, int maxElement) throws InvalidTypeException {
+        if (chain == null || mode == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        chain = Simplifier.simplify(chain);
+        ExpressionGraph graph = chain.getGraph();
+        RangeAnalysis ranges = RangeAnalysis.analyze(minElement, maxElement, chain.getFilter(), chain.getMap());
+        boolean passAll = ranges.isAlwaysTrue(chain.getFilter());
+        empty = ranges.isAlwaysFalse(chain.getFilter());
+        passThrough = passAll && chain.getMap().type == NodeType.ELEMENT;
+        if (empty)
+            chain = new NormalizedChain(graph, graph.operation("=", graph.number("1"), graph.number("0")), chain.getMap());
+        else if (passAll)
+            chain = new NormalizedChain(graph, graph.operation("=", graph.number("1"), graph.number("1")), chain.getMap());
+        this.chain = chain;
+        IntPredicate compiledFilter = null;
+        IntUnaryOperator compiledMap = null;
+        PipelineKernel compiledKernel = null;
+        boolean deep = Math.max(ExpressionGraph.depth(chain.getFilter()), ExpressionGraph.depth(chain.getMap())) > MAX_RECURSIVE_DEPTH;
+        if (mode != ExecutionMode.INTERPRETED && !deep) {
+            try {
+                compiledFilter = BytecodeCompiler.compileFilter(chain.getFilter());
+                compiledMap = BytecodeCompiler.compileMap(chain.getMap());
+                compiledKernel = BytecodeCompiler.compileKernel(chain.getFilter(), chain.getMap());
+            } catch (UnsupportedOperationException ignored) {
+                // falls back to interpretation of the call that could not be compiled
+            }
+        }
+        RegisterPlan plan = null;
+        if (deep) {
+            // Compiler and closures recurse by nesting, so deep expressions are evaluated by plan only
+            plan = RegisterPlan.lower(chain.getFilter(), chain.getMap());
+            RegisterPlan elements = plan;
+            filter = element -> elements.test(0, element);
+            map = element -> elements.map(0, element);
+        } else {
+            filter = compiledFilter != null ? compiledFilter : Evaluator.compileFilter(chain.getFilter());
+            map = compiledMap != null ? compiledMap : Evaluator.compileMap(chain.getMap());
+        }
+        boolean vectorized = false;
+        if (mode == ExecutionMode.VECTORIZED && !deep && VECTOR_API) {
+            try {
+                compiledKernel = VectorKernel.create(chain.getFilter(), chain.getMap(), filter, map);
+                vectorized = true;
+            } catch (LinkageError ignored) {
+                // Vector API cannot be linked, falls back to the compiled loop
+            }
+        }
+        if (compiledKernel == null) {
+            // Interpreted arrays are evaluated by plan, each shared subexpression is computed once per element
+            kernel = plan != null ? plan : RegisterPlan.lower(chain.getFilter(), chain.getMap());
+            this.mode = ExecutionMode.INTERPRETED;
+        } else {
+            kernel = compiledKernel;
+            this.mode = vectorized ? ExecutionMode.VECTORIZED : ExecutionMode.COMPILED;
+        }
+        blockStreams = deep;
+    }
+
+    /**
+     * Constructor, builds functions of the given normalized calls
+     *
+     * @param filterTree normalized filter-call
+     * @param mapTree    normalized map-call
+     * @throws InvalidTypeException if calls have wrong types or constants out of integer range
+     */
+    public Pipeline(ASTree filterTree, ASTree mapTree) throws InvalidTypeException {
+        this(NormalizedChain.of(filterTree, mapTree));
+    }
+
+    /**
+     * Constructor from the result of {@code ASTreeBuilder.rebuildToFilterMap}
+     *
+     * @param calls list of two calls: filter and map
+     * @throws InvalidTypeException if calls have wrong types or constants out of integer range
+     */
+    public Pipeline(List<ASTree> calls) throws InvalidTypeException {
+        this(calls.get(0), calls.get(1));
+    }
+
+    /**
+     * Parses, rebuilds and compiles given call-chain
+     *
+     * @param source string that contains expression built by test case grammar
+     * @return pipeline of the call-chain
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public static Pipeline compile(String source) throws InvalidSyntaxException, InvalidTypeException {
+        return new Pipeline(FilterMapInterpreter.normalize(source));
+    }
+
+    /**
+     * Parses, rebuilds and compiles given call-chain
+     *
+     * @param source  string that contains expression built by test case grammar
+     * @param compile compile calls to bytecode or interpret them by {@code Evaluator}
+     * @return pipeline of the call-chain
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public static Pipeline compile(String source, boolean compile) throws InvalidSyntaxException, InvalidTypeException {
+        return new Pipeline(FilterMapInterpreter.normalize(source), compile);
+    }
+
+    /**
+     * Parses, rebuilds and compiles given call-chain
+     *
+     * @param source string that contains expression built by test case grammar
+     * @param mode   way to evaluate pipeline over arrays
+     * @return pipeline of the call-chain
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public static Pipeline compile(String source, ExecutionMode mode) throws InvalidSyntaxException, InvalidTypeException {
+        return new Pipeline(FilterMapInterpreter.normalize(source), mode);
+    }
+
+    /**
+     * Getter of the normalized call-chain
+     *
+     * @return simplified normalized call-chain
+     */
+    public NormalizedChain getChain() {
+        return chain;
+    }
+
+    /**
+     * Getter of the filter predicate
+     *
+     * @return predicate of the filter-call
+     */
+    public IntPredicate getFilter() {
+        return filter;
+    }
+
+    /**
+     * Getter of the map function
+     *
+     * @return function of the map-call
+     */
+    public IntUnaryOperator getMap() {
+        return map;
+    }
+
+    /**
+     * Getter of the execution mode
+     *
+     * @return mode the pipeline is evaluated in, after fallbacks of compilation and vectorization
+     */
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Applies pipeline to the part of array and writes results to output array.
+     * Places of output after the last result could be overwritten
+     *
+     * @param input  source elements
+     * @param from   index of the first element (inclusive)
+     * @param to     index of the last element (exclusive)
+     * @param output array for results, must have at least {@code to - from} free places after offset
+     * @param offset index of output to write first result to
+     * @return number of written results
+     */
+    public int apply(int[] input, int from, int to, int[] output, int offset) {
+        EvaluateEvent event = new EvaluateEvent();
+        event.begin();
+        long start = Metrics.start();
+        int count = evaluate(input, from, to, output, offset);
+        Metrics.stop(Metrics.EVALUATE_TIME, start);
+        Metrics.add(Metrics.EVALUATE_ELEMENTS, to - from);
+        Metrics.add(Metrics.EVALUATE_RESULTS, count);
+        if (event.shouldCommit()) {
+            event.mode = mode.name();
+            event.elements = to - from;
+            event.results = count;
+            event.commit();
+        }
+        return count;
+    }
+
+    /**
+     * Applies pipeline to the part of array, body of {@link #apply(int[], int, int, int[], int)}
+     * without instrumentation
+     *
+     * @param input  source elements
+     * @param from   index of the first element (inclusive)
+     * @param to     index of the last element (exclusive)
+     * @param output array for results
+     * @param offset index of output to write first result to
+     * @return number of written results
+     */
+    private int evaluate(int[] input, int from, int to, int[] output, int offset) {
+        if (empty)
+            return 0;
+        if (passThrough) {
+            System.arraycopy(input, from, output, offset, to - from);
+            return to - from;
+        }
+        return kernel.apply(input, from, to, output, offset);
+    }
+
+    /**
+     * Applies filter to the part of array and writes indexes of passed elements to the selection vector,
+     * map is not evaluated. Places of selection after the last index could be overwritten
+     *
+     * @param input     source elements
+     * @param from      index of the first element (inclusive)
+     * @param to        index of the last element (exclusive)
+     * @param selection array for indexes of input, must have at least {@code to - from} free places after offset
+     * @param offset    index of selection to write first index to
+     * @return number of written indexes
+     */
+    public int select(int[] input, int from, int to, int[] selection, int offset) {
+        checkRange(input, from, to, selection, offset);
+        if (empty)
+            return 0;
+        SelectionKernel kernel = selectionKernel();
+        if (kernel != null)
+            return kernel.select(input, from, to, selection, offset);
+        IntPredicate filter = this.filter;
+        int count = offset;
+        for (int i = from; i < to; i++) {
+            selection[count] = i;
+            count += filter.test(input[i]) ? 1 : 0;
+        }
+        return count - offset;
+    }
+
+    /**
+     * Applies filter to the part of array, map is not evaluated
+     *
+     * @param input source elements
+     * @param from  index of the first element (inclusive)
+     * @param to    index of the last element (exclusive)
+     * @return new bitmap, bit {@code j % 64} of word {@code j / 64} is set if element {@code input[from + j]} passed
+     */
+    public long[] bitmap(int[] input, int from, int to) {
+        long[] words = new long[to > from ? (to - from + 63) >>> 6 : 0];
+        bitmap(input, from, to, words);
+        return words;
+    }
+
+    /**
+     * Applies filter to the part of array and writes bitmap of passed elements, map is not evaluated.
+     * Words of the bitmap after the last element are not changed
+     *
+     * @param input source elements
+     * @param from  index of the first element (inclusive)
+     * @param to    index of the last element (exclusive)
+     * @param words bitmap, must have at least {@code (to - from + 63) / 64} words. Bit {@code j % 64}
+     *              of word {@code j / 64} is set if element {@code input[from + j]} passed, and cleared otherwise
+     */
+    public void bitmap(int[] input, int from, int to, long[] words) {
+        if (input == null || words == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (from < 0 || from > to || to > input.length)
+            throw new InvalidParameterException("Wrong range of input!");
+        int size = (to - from + 63) >>> 6;
+        if (words.length < size)
+            throw new InvalidParameterException("Bitmap is too small!");
+        Arrays.fill(words, 0, size, 0);
+        if (empty)
+            return;
+        SelectionKernel kernel = selectionKernel();
+        if (kernel != null) {
+            kernel.bitmap(input, from, to, words);
+            return;
+        }
+        IntPredicate filter = this.filter;
+        for (int j = 0; j < to - from; j++)
+            words[j >>> 6] |= (long) (filter.test(input[from + j]) ? 1 : 0) << j;
+    }
+
+    /**
+     * Applies map to selected elements and writes results to output array, filter is not evaluated
+     *
+     * @param input     source elements
+     * @param selection indexes of input, e.g. written by {@link #select(int[], int, int, int[], int)}
+     * @param from      index of the first index of selection (inclusive)
+     * @param to        index of the last index of selection (exclusive)
+     * @param output    array for results, must have at least {@code to - from} free places after offset
+     * @param offset    index of output to write first result to
+     * @return number of written results
+     */
+    public int mapSelected(int[] input, int[] selection, int from, int to, int[] output, int offset) {
+        if (input == null)
+            throw new InvalidParameterException("Null pointer on input!");
+        checkRange(selection, from, to, output, offset);
+        SelectionKernel kernel = selectionKernel();
+        if (kernel != null)
+            return kernel.gather(input, selection, from, to, output, offset);
+        IntUnaryOperator map = this.map;
+        for (int k = from; k < to; k++)
+            output[offset + k - from] = map.applyAsInt(input[selection[k]]);
+        return to - from;
+    }
+
+    /**
+     * Converts bitmap to the selection vector without branches: each position is written,
+     * and number of indexes is increased by its bit
+     *
+     * @param words     bitmap, bit {@code j % 64} of word {@code j / 64} is bit of position j
+     * @param bits      number of positions of the bitmap
+     * @param base      index of position 0, e.g. index of the first element given to {@code bitmap}
+     * @param selection array for indexes, must have at least {@code bits} free places after offset
+     * @param offset    index of selection to write first index to
+     * @return number of written indexes
+     */
+    public static int toSelection(long[] words, int bits, int base, int[] selection, int offset) {
+        if (words == null || selection == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (bits < 0 || words.length < (bits + 63L) >>> 6)
+            throw new InvalidParameterException("Bitmap is too small!");
+        if (offset < 0 || selection.length - offset < bits)
+            throw new InvalidParameterException("Selection is too small!");
+        int count = offset;
+        for (int j = 0; j < bits; j++) {
+            selection[count] = base + j;
+            count += (int) (words[j >>> 6] >>> j) & 1;
+        }
+        return count - offset;
+    }
+
+    /**
+     * Helper function, checks part of source and free space of destination
+     *
+     * @param source      source array
+     * @param from        index of the first element (inclusive)
+     * @param to          index of the last element (exclusive)
+     * @param destination array for results
+     * @param offset      index of destination to write first result to
+     */
+    private static void checkRange(int[] source, int from, int to, int[] destination, int offset) {
+        if (source == null || destination == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (from < 0 || from > to || to > source.length)
+            throw new InvalidParameterException("Wrong range of input!");
+        if (offset < 0 || destination.length - offset < to - from)
+            throw new InvalidParameterException("Output is too small!");
+    }
+
+    /**
+     * Getter of the loops of filter and map stages, compiles them at the first call. Interpreted pipeline
+     * and expressions that could not be compiled are evaluated by blocks of {@code RegisterPlan}
+     *
+     * @return loops of the stages or null if they are evaluated by {@code filter} and {@code map}
+     */
+    private SelectionKernel selectionKernel() {
+        if (!selectionCompiled) {
+            synchronized (this) {
+                if (!selectionCompiled) {
+                    SelectionKernel loops = null;
+                    try {
+                        if (mode != ExecutionMode.INTERPRETED) {
+                            try {
+                                loops = BytecodeCompiler.compileSelectionKernel(chain.getFilter(), chain.getMap());
+                            } catch (UnsupportedOperationException ignored) {
+                                // falls back to the plan
+                            }
+                        }
+                        if (loops == null)
+                            loops = kernel instanceof RegisterPlan ? (RegisterPlan) kernel
+                                    : RegisterPlan.lower(chain.getFilter(), chain.getMap());
+                    } catch (InvalidTypeException ignored) {
+                        // falls back to the loops over filter and map
+                    }
+                    selectionKernel = loops;
+                    selectionCompiled = true;
+                }
+            }
+        }
+        return selectionKernel;
+    }
+
+    /**
+     * Applies pipeline to the whole array
+     *
+     * @param input source elements
+     * @return new array of filtered and mapped elements
+     */
+    public int[] apply(int[] input) {
+        if (input == null)
+            throw new InvalidParameterException("Null pointer on input!");
+        int[] output = new int[input.length];
+        int count = apply(input, 0, input.length, output, 0);
+        return count == output.length ? output : Arrays.copyOf(output, count);
+    }
+
+    /**
+     * Applies pipeline to the stream lazily. Deep expressions are evaluated by blocks of the plan,
+     * so elements are taken from the input by blocks as well
+     *
+     * @param input source stream
+     * @return stream of filtered and mapped elements
+     */
+    public IntStream apply(IntStream input) {
+        if (input == null)
+            throw new InvalidParameterException("Null pointer on input!");
+        if (blockStreams)
+            return StreamSupport.intStream(new Blocks(input.spliterator(), kernel), input.isParallel()).onClose(input::close);
+        return input.filter(filter).map(map);
+    }
+
+    /**
+     * Applies pipeline to remaining elements of the input buffer while output has free space.
+     * Positions of both buffers are moved to the processed elements. Buffers without accessible
+     * arrays are copied by blocks and evaluated like arrays.
+     *
+     * @param input  source buffer
+     * @param output buffer for results
+     * @return number of written results
+     */
+    public int apply(IntBuffer input, IntBuffer output) {
+        if (input == null || output == null)
+            throw new InvalidParameterException("Null pointer on buffers!");
+        if (input.hasArray() && output.hasArray()) {
+            int from = input.arrayOffset() + input.position();
+            int to = from + Math.min(input.remaining(), output.remaining());
+            int offset = output.arrayOffset() + output.position();
+            int count = apply(input.array(), from, to, output.array(), offset);
+            input.position(input.position() + to - from);
+            output.position(output.position() + count);
+            return count;
+        }
+        int[] elements = new int[Math.min(BUFFER_BLOCK, input.remaining())];
+        int[] results = new int[elements.length];
+        int count = 0;
+        while (input.hasRemaining() && output.hasRemaining()) {
+            // Block is not longer than free space of output, so each result has its place
+            int length = Math.min(elements.length, Math.min(input.remaining(), output.remaining()));
+            input.get(elements, 0, length);
+            int written = apply(elements, 0, length, results, 0);
+            output.put(results, 0, written);
+            count += written;
+        }
+        return count;
+    }
+
+    /**
+     * Spliterator of results of blocks of source elements evaluated by the kernel. Source is split
+     * only between blocks, so results keep order of elements
+     */
+    private static final class Blocks implements Spliterator.OfInt, IntConsumer {
+
+        private final Spliterator.OfInt source; // Source elements
+        private final PipelineKernel kernel; // Evaluation loop of the pipeline
+        private final int[] elements = new int[BUFFER_BLOCK]; // Elements of the current block
+        private final int[] results = new int[BUFFER_BLOCK]; // Results of the current block
+        private int length = 0; // Number of elements of the current block
+        private int position = 0; // Index of the next result
+        private int count = 0; // Number of results of the current block
+
+        /**
+         * Constructor
+         *
+         * @param source source elements
+         * @param kernel evaluation loop of the pipeline
+         */
+        private Blocks(Spliterator.OfInt source, PipelineKernel kernel) {
+            this.source = source;
+            this.kernel = kernel;
+        }
+
+        /**
+         * Override method. Adds source element to the current block
+         *
+         * @param element source element
+         */
+        @Override
+        public void accept(int element) {
+            elements[length++] = element;
+        }
+
+        /**
+         * Override method. Passes the next result, evaluates blocks of source until one has results
+         *
+         * @param action consumer of the result
+         * @return false if there are no results anymore
+         */
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            while (position == count) {
+                length = 0;
+                while (length < elements.length && source.tryAdvance(this))
+                    ; // element is added to the block by accept
+                if (length == 0)
+                    return false;
+                count = kernel.apply(elements, 0, length, results, 0);
+                position = 0;
+            }
+            action.accept(results[position++]);
+            return true;
+        }
+
+        /**
+         * Override method. Splits source if there are no results of the current block
+         *
+         * @return spliterator of the prefix of source or null
+         */
+        @Override
+        public Spliterator.OfInt trySplit() {
+            if (position < count)
+                return null;
+            Spliterator.OfInt prefix = source.trySplit();
+            return prefix == null ? null : new Blocks(prefix, kernel);
+        }
+
+        /**
+         * Override method. Results are not more than elements
+         *
+         * @return upper bound of the number of results
+         */
+        @Override
+        public long estimateSize() {
+            return source.estimateSize() + count - position;
+        }
+
+        /**
+         * Override method. Filter drops elements, so only order is kept
+         *
+         * @return characteristics of the results
+         */
+        @Override
+        public int characteristics() {
+            return source.characteristics() & ORDERED;
+        }
+    }
+
+    /**
+     * Override method. Builds normalized call-chain
+     *
+     * @return string formatted like "filter{expression}%>%map{expression}"
+     */
+    @Override
+    public String toString() {
+        return chain.toString();
+    }
+}
@@ -0,0 +1,250 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe cache of interpreted call-chains keyed by source string. For each chain it keeps
+ * normalized call-chain, printed result of {@code FilterMapInterpreter.interpret} and
+ * {@code Pipeline} compiled on the first request. Chains with errors are cached too.
+ * Cache is bounded by number of entries and by total weight (number of chars in sources
+ * and results and number of nodes of graphs of built pipelines), the least recently used
+ * entries are evicted first.
+ * <p>
+ * Normalized chains are shared between callers, so their graphs must not be modified
+ * (e.g. by {@code Simplifier} or {@code new Pipeline(chain)}), use {@link #compile(String)} instead.
+ * Pipelines are built from private copies of the chains, so simplification and analysis
+ * of pipelines do not modify shared graphs.
+ *
+ * @author Taimuraz Tibilov
+ */
+public class PipelineCache {
+
+    private final int maxEntries; // Maximum number of cached chains
+    private final long maxWeight; // Maximum total weight of cached chains
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // Chains in LRU order
+    private long weight = 0; // Total weight of cached chains
+    private long hits = 0; // Number of requests found in the cache
+    private long misses = 0; // Number of requests not found in the cache
+    private long evictions = 0; // Number of evicted chains
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries maximum number of cached chains
+     * @param maxWeight  maximum total weight of cached chains: chars in sources and results and nodes of pipelines
+     */
+    public PipelineCache(int maxEntries, long maxWeight) {
+        if (maxEntries <= 0 || maxWeight <= 0)
+            throw new InvalidParameterException("Bounds of cache must be positive!");
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Interprets given call-chain like {@code FilterMapInterpreter.interpret}
+     *
+     * @param source string that contains expression built by test case grammar
+     * @return expression formed as "filter{expression}%>%map{expression}" or string with
+     * description of error that happened while parsed
+     */
+    public String interpret(String source) {
+        return get(source).result;
+    }
+
+    /**
+     * Normalizes given call-chain like {@code FilterMapInterpreter.normalize}
+     *
+     * @param source string that contains expression built by test case grammar
+     * @return shared normalized call-chain
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public NormalizedChain normalize(String source) throws InvalidSyntaxException, InvalidTypeException {
+        Entry entry = get(source);
+        entry.rethrow();
+        return entry.chain;
+    }
+
+    /**
+     * Compiles given call-chain like {@code Pipeline.compile}. Pipeline is built once per cached chain
+     *
+     * @param source string that contains expression built by test case grammar
+     * @return shared pipeline of the call-chain
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public Pipeline compile(String source) throws InvalidSyntaxException, InvalidTypeException {
+        Entry entry = get(source);
+        entry.rethrow();
+        Pipeline pipeline = entry.pipeline;
+        if (pipeline != null)
+            return pipeline;
+        synchronized (entry) {
+            pipeline = entry.pipeline;
+            if (pipeline != null)
+                return pipeline;
+            pipeline = new Pipeline(entry.chain.copy());
+            entry.pipeline = pipeline;
+        }
+        synchronized (this) {
+            if (entries.get(source) == entry) {
+                long nodes = pipeline.getChain().getGraph().size();
+                entry.weight += nodes;
+                weight += nodes;
+                evict();
+            }
+        }
+        return pipeline;
+    }
+
+    /**
+     * Getter of the number of requests found in the cache
+     *
+     * @return number of hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Getter of the number of requests not found in the cache
+     *
+     * @return number of misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Getter of the number of evicted chains
+     *
+     * @return number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Getter of the number of cached chains
+     *
+     * @return size of the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Getter of the total weight of cached chains
+     *
+     * @return number of chars in sources and results and nodes of built pipelines of cached chains
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * Removes all cached chains, counters are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Finds cached entry of the chain or normalizes the chain and caches it.
+     * Normalization is done outside of the lock, so concurrent misses of the same
+     * chain could normalize it twice, but only one entry is kept
+     *
+     * @param source string that contains expression built by test case grammar
+     * @return entry of the chain
+     */
+    private Entry get(String source) {
+        if (source == null)
+            throw new InvalidParameterException("Null pointer on source!");
+        synchronized (this) {
+            Entry entry = entries.get(source);
+            if (entry != null) {
+                hits++;
+                return entry;
+            }
+            misses++;
+        }
+        Entry created = new Entry(source);
+        synchronized (this) {
+            Entry entry = entries.get(source);
+            if (entry != null)
+                return entry;
+            if (created.weight > maxWeight)
+                return created;
+            entries.put(source, created);
+            weight += created.weight;
+            evict();
+            return created;
+        }
+    }
+
+    /**
+     * Evicts the least recently used chains while cache is out of its bounds, must be called under the lock
+     */
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            weight -= eldest.weight;
+            evictions++;
+        }
+    }
+
+    /**
+     * Cached call-chain
+     */
+    private static final class Entry {
+
+        private final NormalizedChain chain; // Normalized call-chain, null if source has error
+        private final String result; // Printed call-chain or description of the error
+        private final Exception error; // Error of the source, null if there is no error
+        private long weight; // Number of chars in source and result and nodes of the pipeline, changed under lock of the cache
+        private volatile Pipeline pipeline; // Pipeline of the copy of the call-chain, built on the first request
+
+        /**
+         * Constructor, normalizes and prints call-chain
+         *
+         * @param source string that contains expression built by test case grammar
+         */
+        private Entry(String source) {
+            NormalizedChain chain = null;
+            Exception error = null;
+            String result;
+            try {
+                chain = FilterMapInterpreter.normalize(source);
+                result = chain.toString();
+            } catch (InvalidSyntaxException | InvalidTypeException e) {
+                error = e;
+                result = e.getMessage();
+            }
+            this.chain = chain;
+            this.result = result;
+            this.error = error;
+            weight = (long) source.length() + result.length();
+        }
+
+        /**
+         * Throws error of the source if it has one
+         *
+         * @throws InvalidSyntaxException if source has syntax error
+         * @throws InvalidTypeException   if source has type error
+         */
+        private void rethrow() throws InvalidSyntaxException, InvalidTypeException {
+            if (error instanceof InvalidSyntaxException)
+                throw new InvalidSyntaxException(error.getMessage());
+            if (error != null)
+                throw new InvalidTypeException(error.getMessage());
+        }
+    }
+}
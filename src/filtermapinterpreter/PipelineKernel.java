@@ -0,0 +1,23 @@
+package filtermapinterpreter;
+
+/**
+ * Evaluation loop of the pipeline generated by {@code BytecodeCompiler}.
+ * Filter and map expressions are inlined into the loop, so there are no virtual calls per element.
+ *
+ * @author Taimuraz Tibilov
+ */
+interface PipelineKernel {
+
+    /**
+     * Applies pipeline to the part of array and writes results to output array.
+     * Places of output after the last result could be overwritten
+     *
+     * @param input  source elements
+     * @param from   index of the first element (inclusive)
+     * @param to     index of the last element (exclusive)
+     * @param output array for results, must have at least {@code to - from} free places after offset
+     * @param offset index of output to write first result to
+     * @return number of written results
+     */
+    int apply(int[] input, int from, int to, int[] output, int offset);
+}
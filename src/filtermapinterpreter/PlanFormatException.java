@@ -0,0 +1,22 @@
+package filtermapinterpreter;
+
+import java.io.IOException;
+
+/**
+ * Thrown when binary plan or plan store has unsupported version or is corrupted
+ *
+ * @author Taimuraz Tibilov
+ */
+public class PlanFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L; // Version of serialized form
+
+    /**
+     * Constructor
+     *
+     * @param message description of the error
+     */
+    public PlanFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,326 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of normalized call-chains keyed by source string, so that restarted
+ * interpreter does not parse and merge known chains again. Plans are written by {@code ChainCodec}.
+ * File is memory-mapped, opening reads only headers of records to build the index, sources,
+ * checksums and plans are read on request. Format of version 1:
+ * <pre>
+ * "FMPS" version:int record*
+ * record = length:int hash:long sourceLength:int source:utf8 plan crc:int
+ * </pre>
+ * Length counts bytes after itself, hash is FNV-1a of the source and crc is CRC32 of bytes
+ * from hash to plan. If a source is written twice, the last record is used. Index keeps the last record
+ * of each hash, records of other sources with the same hash are found by scan. Truncated record
+ * at the end of file (e.g. after crash while writing) is dropped on opening, corrupted record
+ * is found on request and replaced by {@link #normalize(String)}.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class PlanStore implements Closeable {
+
+    public static final int VERSION = 1; // Version of written stores
+    private static final int MAGIC = 0x464D5053; // "FMPS"
+    private static final int HEADER = 8; // Bytes of magic and version
+    private static final int OVERHEAD = 16; // Bytes of hash, source length and crc of each record
+
+    private final FileChannel channel; // Channel of the store file
+    private final HashMap<Long, Integer> index = new HashMap<>(); // Positions of records by hashes of sources
+    private MappedByteBuffer mapped; // Mapped part of the file, may not contain the last records
+    private int end; // Length of valid part of the file
+    private long hits = 0; // Number of requests found in the store
+    private long misses = 0; // Number of requests not found in the store
+
+    private PlanStore(FileChannel channel, MappedByteBuffer mapped, int end) {
+        this.channel = channel;
+        this.mapped = mapped;
+        this.end = end;
+    }
+
+    /**
+     * Opens the store, creates the file if it does not exist
+     *
+     * @param path path to the file of the store
+     * @return opened store
+     * @throws PlanFormatException if file is not a store or has other version
+     * @throws IOException         if file cannot be opened
+     */
+    public static PlanStore open(Path path) throws IOException {
+        if (path == null)
+            throw new InvalidParameterException("Null pointer on path!");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new PlanFormatException("Plan store is larger than 2 GB!");
+            if (size == 0) {
+                write(channel, ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).flip(), 0);
+                size = HEADER;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER || mapped.getInt(0) != MAGIC)
+                throw new PlanFormatException("Not a plan store!");
+            if (mapped.getInt(4) != VERSION)
+                throw new PlanFormatException(String.format("Unsupported plan store version %d!", mapped.getInt(4)));
+            PlanStore store = new PlanStore(channel, mapped, HEADER);
+            store.scan();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Helper function, builds the index by headers of records and drops truncated record
+     *
+     * @throws IOException if file cannot be truncated
+     */
+    private void scan() throws IOException {
+        int size = mapped.limit();
+        int position = HEADER;
+        while (size - position >= Integer.BYTES) {
+            int length = mapped.getInt(position);
+            if (length < OVERHEAD || length > size - position - Integer.BYTES)
+                break;
+            index.put(mapped.getLong(position + Integer.BYTES), position);
+            position += Integer.BYTES + length;
+        }
+        end = position;
+        if (end < size) {
+            channel.truncate(end);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        }
+    }
+
+    /**
+     * Reads normalized call-chain of the source
+     *
+     * @param source string that contains expression built by test case grammar
+     * @return normalized call-chain in the new graph or null if source is not in the store
+     * @throws PlanFormatException if record of the source is corrupted
+     * @throws IOException         if file cannot be mapped
+     */
+    public NormalizedChain get(String source) throws IOException {
+        if (source == null)
+            throw new InvalidParameterException("Null pointer on source!");
+        return get(hash(source), source);
+    }
+
+    /**
+     * Reads normalized call-chain of the source by the given hash of it
+     *
+     * @param hash   hash of the source
+     * @param source string that contains expression built by test case grammar
+     * @return normalized call-chain in the new graph or null if source is not in the store
+     * @throws PlanFormatException if record of the source is corrupted
+     * @throws IOException         if file cannot be mapped
+     */
+    synchronized NormalizedChain get(long hash, String source) throws IOException {
+        Integer position = index.get(hash);
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        if (position != null && !matches(position, bytes))
+            position = find(hash, bytes);
+        if (position == null) {
+            misses++;
+            return null;
+        }
+        int length = mapped.getInt(position);
+        CRC32 crc = new CRC32();
+        crc.update(mapped.slice(position + Integer.BYTES, length - Integer.BYTES));
+        if ((int) crc.getValue() != mapped.getInt(position + length))
+            throw new PlanFormatException("Corrupted plan store record!");
+        int plan = position + Integer.BYTES + Long.BYTES + Integer.BYTES + bytes.length;
+        NormalizedChain chain = ChainCodec.decode(mapped.slice(plan, position + length - plan));
+        hits++;
+        return chain;
+    }
+
+    /**
+     * Helper function, checks that the record contains the source, maps written records if needed
+     *
+     * @param position position of the record
+     * @param source   source in UTF-8
+     * @return does the record contain the source
+     * @throws IOException if file cannot be mapped
+     */
+    private boolean matches(int position, byte[] source) throws IOException {
+        if (position >= mapped.limit())
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        int length = mapped.getInt(position);
+        int offset = position + Integer.BYTES + Long.BYTES;
+        return mapped.getInt(offset) == source.length && length >= OVERHEAD + source.length
+                && mapped.slice(offset + Integer.BYTES, source.length).equals(ByteBuffer.wrap(source));
+    }
+
+    /**
+     * Helper function, finds the last record of the source among records of all sources with
+     * the same hash. Index keeps only the last record of each hash, so sources with colliding
+     * hashes are found by scan of the file
+     *
+     * @param hash   hash of the source
+     * @param source source in UTF-8
+     * @return position of the record or null if source is not in the store
+     * @throws IOException if file cannot be mapped
+     */
+    private Integer find(long hash, byte[] source) throws IOException {
+        if (mapped.limit() < end)
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        Integer found = null;
+        for (int position = HEADER; position < end; position += Integer.BYTES + mapped.getInt(position)) {
+            if (mapped.getLong(position + Integer.BYTES) == hash && matches(position, source))
+                found = position;
+        }
+        return found;
+    }
+
+    /**
+     * Appends normalized call-chain of the source to the store
+     *
+     * @param source string that contains expression built by test case grammar
+     * @param chain  normalized call-chain of the source
+     * @throws IOException if file cannot be written or store would be larger than 2 GB
+     */
+    public void put(String source, NormalizedChain chain) throws IOException {
+        if (source == null || chain == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        put(hash(source), source, chain);
+    }
+
+    /**
+     * Appends normalized call-chain of the source to the store by the given hash of it
+     *
+     * @param hash   hash of the source
+     * @param source string that contains expression built by test case grammar
+     * @param chain  normalized call-chain of the source
+     * @throws IOException if file cannot be written or store would be larger than 2 GB
+     */
+    synchronized void put(long hash, String source, NormalizedChain chain) throws IOException {
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        byte[] plan = ChainCodec.encode(chain);
+        long length = (long) OVERHEAD + bytes.length + plan.length;
+        if (end + Integer.BYTES + length > Integer.MAX_VALUE)
+            throw new IOException("Plan store is full!");
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + (int) length);
+        record.putInt((int) length).putLong(hash).putInt(bytes.length).put(bytes).put(plan);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, record.position() - Integer.BYTES);
+        record.putInt((int) crc.getValue()).flip();
+        write(channel, record, end);
+        index.put(hash, end);
+        end += record.limit();
+    }
+
+    /**
+     * Normalizes given call-chain like {@code FilterMapInterpreter.normalize}: reads it from the store
+     * or parses and appends it. Corrupted record is replaced by the new one
+     *
+     * @param source string that contains expression built by test case grammar
+     * @return normalized call-chain in the new graph
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     * @throws IOException            if file cannot be read or written
+     */
+    public NormalizedChain normalize(String source) throws InvalidSyntaxException, InvalidTypeException, IOException {
+        NormalizedChain chain;
+        try {
+            chain = get(source);
+        } catch (PlanFormatException e) {
+            chain = null;
+        }
+        if (chain != null)
+            return chain;
+        chain = FilterMapInterpreter.normalize(source);
+        put(source, chain);
+        return chain;
+    }
+
+    /**
+     * Getter of number of requests found in the store
+     *
+     * @return number of hits of {@link #get(String)}
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Getter of number of requests not found in the store
+     *
+     * @return number of misses of {@link #get(String)}
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Getter of number of stored sources
+     *
+     * @return number of distinct hashes of stored sources, sources with colliding hashes are counted once
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Getter of length of the file
+     *
+     * @return length of valid part of the file in bytes
+     */
+    public synchronized long length() {
+        return end;
+    }
+
+    /**
+     * Closes the file, written records are already in it
+     *
+     * @throws IOException if file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Helper function, writes whole buffer to the channel
+     *
+     * @param channel  channel of the file
+     * @param buffer   bytes to write
+     * @param position position in the file
+     * @throws IOException if file cannot be written
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    /**
+     * Helper function, hashes the source by 64-bit FNV-1a of its chars
+     *
+     * @param source source string
+     * @return hash of the source
+     */
+    static long hash(String source) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < source.length(); i++) {
+            hash ^= source.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
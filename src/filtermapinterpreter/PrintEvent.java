@@ -0,0 +1,23 @@
+package filtermapinterpreter;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of printing normalized call-chain.
+ *
+ * @author Taimuraz Tibilov
+ */
+@Name("filtermapinterpreter.Print")
+@Label("Print Call-Chain")
+@Category("Filter-Map Interpreter")
+@Description("Printing of normalized call-chain filter{expression}%>%map{expression}")
+final class PrintEvent extends jdk.jfr.Event {
+
+    @Label("Output Length")
+    @DataAmount(DataAmount.BYTES)
+    long outputLength; // Number of printed chars
+}
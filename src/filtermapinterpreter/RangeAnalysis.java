@@ -0,0 +1,356 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Class of interval analysis of expressions. Given the declared range of element, it bounds
+ * value of each node of expression graph twice:
+ * <ul>
+ *     <li>as it is evaluated by default, with {@code int} arithmetic that wraps around on overflow.
+ *     Subexpression that could overflow is bounded by the whole {@code int} range. These bounds
+ *     decide filters that are always true or always false, e.g. "((element*0)>1)";</li>
+ *     <li>as exact integer, without overflow. These bounds select arithmetic of each subexpression:
+ *     {@code int} if its value always fits to {@code int}, {@code long} if it fits to {@code long},
+ *     and checked one otherwise.</li>
+ * </ul>
+ * Boolean nodes are bounded by [0, 1], where 1 is true. {@code Pipeline} uses only the first bounds,
+ * exact ones are used by the separate opt-in {@code Evaluator.compileCheckedFilter} and
+ * {@code Evaluator.compileCheckedMap}.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class RangeAnalysis {
+
+    /**
+     * Arithmetic that evaluates subexpression exactly
+     */
+    public enum Arithmetic {
+        INT, // value fits to int, so wrapping int arithmetic gives the exact value
+        LONG, // value fits to long, so wrapping long arithmetic gives the exact value
+        CHECKED // value could overflow long, so each operation is checked
+    }
+
+    private final int minElement; // Declared minimum of element
+    private final int maxElement; // Declared maximum of element
+    private final long[] min; // Lower bounds of wrapped values by node id
+    private final long[] max; // Upper bounds of wrapped values by node id
+    private final long[] exactMin; // Lower bounds of exact values by node id
+    private final long[] exactMax; // Upper bounds of exact values by node id
+    private final boolean[] bounded; // Does exact value of node fit to long, by node id
+    private final boolean[] analyzed; // Is node reachable from the analyzed roots, by node id
+
+    /**
+     * Constructor, analyzes given expressions
+     *
+     * @param minElement declared minimum of element
+     * @param maxElement declared maximum of element
+     * @param roots      roots of expressions of one graph
+     * @throws InvalidTypeException if expressions have constants out of integer range
+     */
+    private RangeAnalysis(int minElement, int maxElement, DagNode[] roots) throws InvalidTypeException {
+        this.minElement = minElement;
+        this.maxElement = maxElement;
+        int size = 0;
+        for (DagNode root : roots)
+            size = Math.max(size, root.id + 1);
+        min = new long[size];
+        max = new long[size];
+        exactMin = new long[size];
+        exactMax = new long[size];
+        bounded = new boolean[size];
+        analyzed = new boolean[size];
+        for (DagNode node : ExpressionGraph.topologicalOrder(roots))
+            analyze(node);
+    }
+
+    /**
+     * Analyzes expressions for elements of the whole {@code int} range
+     *
+     * @param roots roots of expressions of one graph
+     * @return bounds of each node reachable from roots
+     * @throws InvalidTypeException if expressions have constants out of integer range
+     */
+    public static RangeAnalysis analyze(DagNode... roots) throws InvalidTypeException {
+        return analyze(Integer.MIN_VALUE, Integer.MAX_VALUE, roots);
+    }
+
+    /**
+     * Analyzes expressions for elements of the declared range
+     *
+     * @param minElement minimum of element (inclusive)
+     * @param maxElement maximum of element (inclusive)
+     * @param roots      roots of expressions of one graph
+     * @return bounds of each node reachable from roots
+     * @throws InvalidTypeException if expressions have constants out of integer range
+     */
+    public static RangeAnalysis analyze(int minElement, int maxElement, DagNode... roots) throws InvalidTypeException {
+        if (roots == null || roots.length == 0)
+            throw new InvalidParameterException("Expected at least one expression!");
+        for (DagNode root : roots) {
+            if (root == null)
+                throw new InvalidParameterException("Null pointer on expression!");
+        }
+        if (minElement > maxElement)
+            throw new InvalidParameterException("Range of element is empty!");
+        return new RangeAnalysis(minElement, maxElement, roots);
+    }
+
+    /**
+     * Getter of the declared minimum of element
+     *
+     * @return minimum of element (inclusive)
+     */
+    public int getMinElement() {
+        return minElement;
+    }
+
+    /**
+     * Getter of the declared maximum of element
+     *
+     * @return maximum of element (inclusive)
+     */
+    public int getMaxElement() {
+        return maxElement;
+    }
+
+    /**
+     * Getter of the lower bound of node value, as it is evaluated with wrapping {@code int} arithmetic
+     *
+     * @param node analyzed node
+     * @return minimum of node value, 0 or 1 for boolean node
+     */
+    public long min(DagNode node) {
+        return min[index(node)];
+    }
+
+    /**
+     * Getter of the upper bound of node value, as it is evaluated with wrapping {@code int} arithmetic
+     *
+     * @param node analyzed node
+     * @return maximum of node value, 0 or 1 for boolean node
+     */
+    public long max(DagNode node) {
+        return max[index(node)];
+    }
+
+    /**
+     * Shows is filter true for each element of the declared range
+     *
+     * @param node analyzed boolean node
+     * @return true if filter is proven to pass every element
+     */
+    public boolean isAlwaysTrue(DagNode node) {
+        return node.outputType == OutputType.BOOLEAN && min(node) == 1;
+    }
+
+    /**
+     * Shows is filter false for each element of the declared range
+     *
+     * @param node analyzed boolean node
+     * @return true if filter is proven to pass no element
+     */
+    public boolean isAlwaysFalse(DagNode node) {
+        return node.outputType == OutputType.BOOLEAN && max(node) == 0;
+    }
+
+    /**
+     * Selects arithmetic that evaluates integer node exactly
+     *
+     * @param node analyzed node
+     * @return the narrowest arithmetic without overflow, {@code INT} for boolean node
+     */
+    public Arithmetic arithmetic(DagNode node) {
+        int index = index(node);
+        if (node.outputType != OutputType.INT)
+            return Arithmetic.INT;
+        if (!bounded[index])
+            return Arithmetic.CHECKED;
+        if (exactMin[index] < Integer.MIN_VALUE || exactMax[index] > Integer.MAX_VALUE)
+            return Arithmetic.LONG;
+        return Arithmetic.INT;
+    }
+
+    /**
+     * Helper function, checks that node was analyzed
+     *
+     * @param node node of expression
+     * @return id of the node
+     */
+    private int index(DagNode node) {
+        if (node == null)
+            throw new InvalidParameterException("Null pointer on node!");
+        if (node.id >= analyzed.length || !analyzed[node.id])
+            throw new InvalidParameterException("Node is not reachable from analyzed expressions!");
+        return node.id;
+    }
+
+    /**
+     * Bounds the node, its operands are already bounded
+     *
+     * @param node node of expression
+     * @throws InvalidTypeException if node is a constant out of integer range
+     */
+    private void analyze(DagNode node) throws InvalidTypeException {
+        int id = node.id;
+        analyzed[id] = true;
+        bounded[id] = true;
+        switch (node.type) {
+            case ELEMENT:
+                set(id, minElement, maxElement);
+                return;
+            case NUMBER:
+                int value = Evaluator.parseConstant(node);
+                set(id, value, value);
+                return;
+            default:
+                break;
+        }
+        int a = node.left.id;
+        int b = node.right.id;
+        switch (node.value) {
+            case "+":
+            case "-":
+            case "*":
+                // Wrapped operands fit to int, so exact operation on them fits to long
+                long[] bounds = arithmetic(node.value, min[a], max[a], min[b], max[b]);
+                if (a == b)
+                    square(node.value, bounds);
+                if (bounds[0] < Integer.MIN_VALUE || bounds[1] > Integer.MAX_VALUE) {
+                    min[id] = Integer.MIN_VALUE;
+                    max[id] = Integer.MAX_VALUE;
+                } else {
+                    min[id] = bounds[0];
+                    max[id] = bounds[1];
+                }
+                exact(node);
+                return;
+            case "&":
+                set(id, min[a] & min[b], max[a] & max[b]);
+                return;
+            case "|":
+                set(id, min[a] | min[b], max[a] | max[b]);
+                return;
+            default:
+                int result = compare(node.value, min[a], max[a], min[b], max[b]);
+                set(id, result == 1 ? 1 : 0, result == 0 ? 0 : 1);
+        }
+    }
+
+    /**
+     * Bounds exact value of arithmetic node, its operands are already bounded
+     *
+     * @param node OPERATION node with operator "+", "-" or "*"
+     */
+    private void exact(DagNode node) {
+        int id = node.id;
+        int a = node.left.id;
+        int b = node.right.id;
+        boolean zero = node.value.equals("*") && (isZero(a) || isZero(b));
+        if (zero) {
+            exactMin[id] = 0;
+            exactMax[id] = 0;
+        } else if (!bounded[a] || !bounded[b])
+            bounded[id] = false;
+        else {
+            try {
+                long[] bounds = arithmetic(node.value, exactMin[a], exactMax[a], exactMin[b], exactMax[b]);
+                if (a == b)
+                    square(node.value, bounds);
+                exactMin[id] = bounds[0];
+                exactMax[id] = bounds[1];
+            } catch (ArithmeticException e) {
+                bounded[id] = false;
+            }
+        }
+    }
+
+    /**
+     * Helper function, sets both wrapped and exact bounds of node
+     *
+     * @param id  id of the node
+     * @param min lower bound
+     * @param max upper bound
+     */
+    private void set(int id, long min, long max) {
+        this.min[id] = min;
+        this.max[id] = max;
+        exactMin[id] = min;
+        exactMax[id] = max;
+    }
+
+    /**
+     * Helper function, shows is exact value of node always 0
+     *
+     * @param id id of the node
+     * @return true if node is bounded by [0, 0]
+     */
+    private boolean isZero(int id) {
+        return bounded[id] && exactMin[id] == 0 && exactMax[id] == 0;
+    }
+
+    /**
+     * Bounds result of arithmetic operation
+     *
+     * @param operator "+", "-" or "*"
+     * @param minA     lower bound of the left operand
+     * @param maxA     upper bound of the left operand
+     * @param minB     lower bound of the right operand
+     * @param maxB     upper bound of the right operand
+     * @return lower and upper bounds of the result
+     * @throws ArithmeticException if result could overflow long
+     */
+    private static long[] arithmetic(String operator, long minA, long maxA, long minB, long maxB) {
+        switch (operator) {
+            case "+":
+                return new long[]{Math.addExact(minA, minB), Math.addExact(maxA, maxB)};
+            case "-":
+                return new long[]{Math.subtractExact(minA, maxB), Math.subtractExact(maxA, minB)};
+            default:
+                long first = Math.multiplyExact(minA, minB);
+                long second = Math.multiplyExact(minA, maxB);
+                long third = Math.multiplyExact(maxA, minB);
+                long fourth = Math.multiplyExact(maxA, maxB);
+                return new long[]{Math.min(Math.min(first, second), Math.min(third, fourth)),
+                        Math.max(Math.max(first, second), Math.max(third, fourth))};
+        }
+    }
+
+    /**
+     * Refines bounds of operation with the same operands: "x-x" is 0 and "x*x" is not negative
+     *
+     * @param operator "+", "-" or "*"
+     * @param bounds   lower and upper bounds of the result with independent operands, refined in place
+     */
+    private static void square(String operator, long[] bounds) {
+        if (operator.equals("-")) {
+            bounds[0] = 0;
+            bounds[1] = 0;
+        } else if (operator.equals("*"))
+            bounds[0] = Math.max(bounds[0], 0);
+    }
+
+    /**
+     * Decides comparison of bounded operands
+     *
+     * @param operator "<", ">" or "="
+     * @param minA     lower bound of the left operand
+     * @param maxA     upper bound of the left operand
+     * @param minB     lower bound of the right operand
+     * @param maxB     upper bound of the right operand
+     * @return 1 if comparison is always true, 0 if it is always false, -1 if it is not decided
+     */
+    private static int compare(String operator, long minA, long maxA, long minB, long maxB) {
+        switch (operator) {
+            case "<":
+                return maxA < minB ? 1 : minA >= maxB ? 0 : -1;
+            case ">":
+                return minA > maxB ? 1 : maxA <= minB ? 0 : -1;
+            default:
+                if (minA == maxA && minB == maxB && minA == minB)
+                    return 1;
+                return maxA < minB || maxB < minA ? 0 : -1;
+        }
+    }
+}
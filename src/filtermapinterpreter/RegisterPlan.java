@@ -0,0 +1,542 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Linear evaluation plan of filter and map expressions: three-address instructions over
+ * {@code int} registers, like "r3 = r1 * r2". Expressions are lowered from the expression graph,
+ * so each distinct subexpression is one instruction, computed once per element and shared by
+ * all filters and maps that use it. Register 0 holds element, constants are loaded to their
+ * registers once per evaluation, not per element. Register of a value is reused by the next
+ * instructions after the last use of the value, so the number of registers is bounded by the
+ * number of values live at once, not by the size of expressions.
+ * Input is evaluated by blocks: each instruction is executed for the whole block, operands before
+ * operations, then results of each map are selected by its filter. Filter and map stages of the first
+ * chain execute only instructions of their expressions. Single elements (e.g. by predicates of pipelines) are
+ * evaluated by one pass over instructions with registers of the thread. Logical operators are not
+ * short-circuit, so evaluation has no branches except the loops. Plan is immutable and thread-safe.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class RegisterPlan implements PipelineKernel, SelectionKernel {
+
+    private static final int BLOCK = 1024; // Number of elements computed by each instruction at once
+    private static final String OPERATORS = "+-*&|<>="; // Operators by opcode
+
+    private final byte[] opcodes; // Opcodes of instructions, indexes of OPERATORS
+    private final int[] targets; // Registers of results of instructions
+    private final int[] lefts; // Registers of left operands of instructions
+    private final int[] rights; // Registers of right operands of instructions
+    private final int[] constantRegisters; // Registers of constants
+    private final int[] constants; // Values of constants
+    private final int[] filters; // Registers of filters by chain index
+    private final int[] maps; // Registers of maps by chain index
+    private final int registers; // Number of registers
+    private final int nodes; // Number of distinct nodes of expressions
+    private final int[] filterInstructions; // Positions of instructions of the first filter
+    private final int[] mapInstructions; // Positions of instructions of the first map
+    private final ThreadLocal<int[]> values; // Registers of single element evaluation by thread, constants are loaded
+
+    /**
+     * Constructor, lowers expressions of one graph
+     *
+     * @param filters roots of filters by chain index
+     * @param maps    roots of maps by chain index
+     * @throws InvalidTypeException if expressions have constants out of integer range
+     */
+    private RegisterPlan(DagNode[] filters, DagNode[] maps) throws InvalidTypeException {
+        DagNode[] roots = Arrays.copyOf(filters, filters.length + maps.length);
+        System.arraycopy(maps, 0, roots, filters.length, maps.length);
+        List<DagNode> order = ExpressionGraph.topologicalOrder(roots);
+        nodes = order.size();
+        int size = order.isEmpty() ? 0 : order.get(nodes - 1).id + 1;
+
+        // Position of the last instruction that reads each node, roots are read after all of them
+        int[] positions = new int[size];
+        int[] lastUses = new int[size];
+        int operations = 0;
+        int constantCount = 0;
+        for (DagNode node : order) {
+            if (node.isOperation()) {
+                positions[node.id] = operations;
+                lastUses[node.left.id] = operations;
+                lastUses[node.right.id] = operations;
+                operations++;
+            } else if (node.type == NodeType.NUMBER)
+                constantCount++;
+        }
+        for (DagNode root : roots)
+            lastUses[root.id] = Integer.MAX_VALUE;
+
+        opcodes = new byte[operations];
+        targets = new int[operations];
+        lefts = new int[operations];
+        rights = new int[operations];
+        constantRegisters = new int[constantCount];
+        constants = new int[constantCount];
+        int[] registerOf = new int[size];
+        ArrayDeque<Integer> free = new ArrayDeque<>(); // Registers of values after their last use
+        int count = 1; // Register 0 is element
+        int constant = 0;
+        for (DagNode node : order) {
+            if (node.type == NodeType.ELEMENT)
+                registerOf[node.id] = 0;
+            else if (node.type == NodeType.NUMBER) {
+                registerOf[node.id] = count;
+                constantRegisters[constant] = count++;
+                constants[constant++] = Evaluator.parseConstant(node);
+            } else {
+                int i = positions[node.id];
+                opcodes[i] = (byte) OPERATORS.indexOf(node.value.charAt(0));
+                lefts[i] = registerOf[node.left.id];
+                rights[i] = registerOf[node.right.id];
+                // Operands read at their last use are freed before the result is allocated: result is
+                // written after operands of the same element are read, so it could take their register
+                release(node.left, i, lastUses, registerOf, free);
+                if (node.right != node.left)
+                    release(node.right, i, lastUses, registerOf, free);
+                registerOf[node.id] = free.isEmpty() ? count++ : free.pop();
+                targets[i] = registerOf[node.id];
+            }
+        }
+        registers = count;
+        this.filters = new int[filters.length];
+        this.maps = new int[maps.length];
+        for (int i = 0; i < filters.length; i++) {
+            this.filters[i] = registerOf[filters[i].id];
+            this.maps[i] = registerOf[maps[i].id];
+        }
+        filterInstructions = filters.length == 0 ? new int[0] : instructions(filters[0], positions);
+        mapInstructions = maps.length == 0 ? new int[0] : instructions(maps[0], positions);
+        values = ThreadLocal.withInitial(() -> {
+            int[] registers = new int[this.registers];
+            for (int i = 0; i < constants.length; i++)
+                registers[constantRegisters[i]] = constants[i];
+            return registers;
+        });
+        Metrics.record(Metrics.PLAN_INSTRUCTIONS, operations);
+    }
+
+    /**
+     * Helper function, finds instructions of the expression. Registers of its values are not reused
+     * before their last uses by other instructions, so the expression could be evaluated by its
+     * instructions only
+     *
+     * @param root      root of the expression
+     * @param positions positions of instructions by node id
+     * @return positions of instructions of the expression in order of execution
+     */
+    private static int[] instructions(DagNode root, int[] positions) {
+        return ExpressionGraph.topologicalOrder(root).stream().filter(DagNode::isOperation)
+                .mapToInt(node -> positions[node.id]).sorted().toArray();
+    }
+
+    /**
+     * Lowers filter and map expressions of one chain
+     *
+     * @param filter root of the filter expression
+     * @param map    root of the map expression, of the same graph
+     * @return plan of the chain
+     * @throws InvalidTypeException if expressions have wrong types or constants out of integer range
+     */
+    public static RegisterPlan lower(DagNode filter, DagNode map) throws InvalidTypeException {
+        return lower(new DagNode[]{filter}, new DagNode[]{map});
+    }
+
+    /**
+     * Lowers filter and map expressions of many chains into one plan, subexpressions are shared by chains
+     *
+     * @param filters roots of filters by chain index
+     * @param maps    roots of maps by chain index, of the same graph
+     * @return plan of the chains
+     * @throws InvalidTypeException if expressions have wrong types or constants out of integer range
+     */
+    public static RegisterPlan lower(DagNode[] filters, DagNode[] maps) throws InvalidTypeException {
+        if (filters == null || maps == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (filters.length != maps.length)
+            throw new InvalidParameterException("Expected map for each filter!");
+        for (int i = 0; i < filters.length; i++) {
+            if (filters[i] == null || maps[i] == null)
+                throw new InvalidParameterException("Null pointer on expression!");
+            if (filters[i].outputType != OutputType.BOOLEAN || maps[i].outputType != OutputType.INT)
+                throw new InvalidTypeException("Expected boolean filter and integer map!");
+        }
+        return new RegisterPlan(filters, maps);
+    }
+
+    /**
+     * Getter of the number of instructions executed per element
+     *
+     * @return number of distinct operations of all expressions
+     */
+    public int instructionCount() {
+        return opcodes.length;
+    }
+
+    /**
+     * Getter of the number of registers
+     *
+     * @return number of registers: element, constants and values live at once
+     */
+    public int registerCount() {
+        return registers;
+    }
+
+    /**
+     * Getter of the number of distinct nodes of lowered expressions
+     *
+     * @return number of distinct operations, constants and element
+     */
+    public int nodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Getter of the number of lowered chains
+     *
+     * @return number of chains
+     */
+    public int size() {
+        return filters.length;
+    }
+
+    /**
+     * Applies the first chain to the part of array and writes results to output array
+     *
+     * @param input  source elements
+     * @param from   index of the first element (inclusive)
+     * @param to     index of the last element (exclusive)
+     * @param output array for results, must have at least {@code to - from} free places after offset.
+     *               Places after the last result could be overwritten
+     * @param offset index of output to write first result to
+     * @return number of written results
+     */
+    @Override
+    public int apply(int[] input, int from, int to, int[] output, int offset) {
+        if (input == null || output == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (from < 0 || from > to || to > input.length)
+            throw new InvalidParameterException("Wrong range of input!");
+        if (filters.length == 0)
+            throw new InvalidParameterException("Plan has no chains!");
+        if (offset < 0 || output.length - offset < to - from)
+            throw new InvalidParameterException("Output is too small!");
+        return evaluate(input, from, to, new int[][]{output}, new int[]{offset})[0] - offset;
+    }
+
+    /**
+     * Applies all chains to the part of array
+     *
+     * @param input   source elements
+     * @param from    index of the first element (inclusive)
+     * @param to      index of the last element (exclusive)
+     * @param outputs arrays for results by chain index, each one must have at least {@code to - from} places.
+     *                Places after the last result could be overwritten
+     * @return numbers of written results by chain index
+     */
+    public int[] apply(int[] input, int from, int to, int[][] outputs) {
+        if (input == null || outputs == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (from < 0 || from > to || to > input.length)
+            throw new InvalidParameterException("Wrong range of input!");
+        if (outputs.length != filters.length)
+            throw new InvalidParameterException("Expected output for each chain!");
+        for (int[] output : outputs) {
+            if (output == null || output.length < to - from)
+                throw new InvalidParameterException("Output is too small!");
+        }
+        return evaluate(input, from, to, outputs, new int[outputs.length]);
+    }
+
+    /**
+     * Writes indexes of elements that pass the first filter to the selection vector, map is not evaluated.
+     * Places of selection after the last index could be overwritten
+     *
+     * @param input     source elements
+     * @param from      index of the first element (inclusive)
+     * @param to        index of the last element (exclusive)
+     * @param selection array for indexes of input, must have at least {@code to - from} free places after offset
+     * @param offset    index of selection to write first index to
+     * @return number of written indexes
+     */
+    @Override
+    public int select(int[] input, int from, int to, int[] selection, int offset) {
+        int[][] columns = columns(to - from);
+        int[] filter = columns[filters[0]];
+        int count = offset;
+        for (int start = from; start < to; start += BLOCK) {
+            int length = Math.min(BLOCK, to - start);
+            System.arraycopy(input, start, columns[0], 0, length);
+            execute(filterInstructions, columns, length);
+            for (int i = 0; i < length; i++) {
+                selection[count] = start + i;
+                count += filter[i];
+            }
+        }
+        return count - offset;
+    }
+
+    /**
+     * Sets bits of elements that pass the first filter, map is not evaluated. Bits are or-ed to the words
+     *
+     * @param input source elements
+     * @param from  index of the first element (inclusive)
+     * @param to    index of the last element (exclusive)
+     * @param words bitmap, must have at least {@code (to - from + 63) / 64} words
+     */
+    @Override
+    public void bitmap(int[] input, int from, int to, long[] words) {
+        int[][] columns = columns(to - from);
+        int[] filter = columns[filters[0]];
+        for (int start = from; start < to; start += BLOCK) {
+            int length = Math.min(BLOCK, to - start);
+            System.arraycopy(input, start, columns[0], 0, length);
+            execute(filterInstructions, columns, length);
+            for (int i = 0, j = start - from; i < length; i++, j++)
+                words[j >>> 6] |= (long) filter[i] << j;
+        }
+    }
+
+    /**
+     * Applies the first map to selected elements, filter is not evaluated
+     *
+     * @param input     source elements
+     * @param selection indexes of input
+     * @param from      index of the first index of selection (inclusive)
+     * @param to        index of the last index of selection (exclusive)
+     * @param output    array for results, must have at least {@code to - from} free places after offset
+     * @param offset    index of output to write first result to
+     * @return number of written results
+     */
+    @Override
+    public int gather(int[] input, int[] selection, int from, int to, int[] output, int offset) {
+        int[][] columns = columns(to - from);
+        int[] element = columns[0];
+        for (int start = from; start < to; start += BLOCK) {
+            int length = Math.min(BLOCK, to - start);
+            for (int i = 0; i < length; i++)
+                element[i] = input[selection[start + i]];
+            execute(mapInstructions, columns, length);
+            System.arraycopy(columns[maps[0]], 0, output, offset + start - from, length);
+        }
+        return to - from;
+    }
+
+    /**
+     * Evaluates filter of the chain for one element, e.g. for streams of elements
+     *
+     * @param chain   chain index
+     * @param element element
+     * @return does element pass the filter
+     */
+    public boolean test(int chain, int element) {
+        return evaluate(element)[filters[chain]] != 0;
+    }
+
+    /**
+     * Evaluates map of the chain for one element, e.g. for streams of elements
+     *
+     * @param chain   chain index
+     * @param element element
+     * @return new value of the element
+     */
+    public int map(int chain, int element) {
+        return evaluate(element)[maps[chain]];
+    }
+
+    /**
+     * Override method. Lists instructions of the plan
+     *
+     * @return instructions like "r3 = r1 * r2" line by line, then registers of filters and maps
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("r0 = element\n");
+        for (int i = 0; i < constants.length; i++)
+            builder.append('r').append(constantRegisters[i]).append(" = ").append(constants[i]).append('\n');
+        for (int i = 0; i < opcodes.length; i++) {
+            builder.append('r').append(targets[i]).append(" = r").append(lefts[i]).append(' ')
+                    .append(OPERATORS.charAt(opcodes[i])).append(" r").append(rights[i]).append('\n');
+        }
+        for (int i = 0; i < filters.length; i++)
+            builder.append("select r").append(maps[i]).append(" where r").append(filters[i]).append('\n');
+        return builder.toString();
+    }
+
+    /**
+     * Releases register of the operand if it is read for the last time
+     *
+     * @param operand    operand of the instruction
+     * @param position   position of the instruction
+     * @param lastUses   positions of the last reads by node id
+     * @param registerOf registers by node id
+     * @param free       free registers
+     */
+    private static void release(DagNode operand, int position, int[] lastUses, int[] registerOf,
+                                ArrayDeque<Integer> free) {
+        if (operand.isOperation() && lastUses[operand.id] == position)
+            free.push(registerOf[operand.id]);
+    }
+
+    /**
+     * Applies all chains to the part of array block by block
+     *
+     * @param input   source elements
+     * @param from    index of the first element (inclusive)
+     * @param to      index of the last element (exclusive)
+     * @param outputs arrays for results by chain index
+     * @param counts  indexes of outputs to write first results to, they are moved by written results
+     * @return indexes of outputs after the last results
+     */
+    private int[] evaluate(int[] input, int from, int to, int[][] outputs, int[] counts) {
+        int[][] columns = columns(to - from);
+        for (int start = from; start < to; start += BLOCK) {
+            int length = Math.min(BLOCK, to - start);
+            System.arraycopy(input, start, columns[0], 0, length);
+            for (int i = 0; i < opcodes.length; i++)
+                compute(opcodes[i], columns[lefts[i]], columns[rights[i]], columns[targets[i]], length);
+            for (int q = 0; q < filters.length; q++)
+                counts[q] = select(columns[filters[q]], columns[maps[q]], length, outputs[q], counts[q]);
+        }
+        return counts;
+    }
+
+    /**
+     * Allocates columns of registers for blocks of the part of input and loads constants to them
+     *
+     * @param size number of elements of the part
+     * @return column of each register
+     */
+    private int[][] columns(int size) {
+        int[][] columns = new int[registers][Math.min(BLOCK, size)];
+        for (int i = 0; i < constants.length; i++)
+            Arrays.fill(columns[constantRegisters[i]], constants[i]);
+        return columns;
+    }
+
+    /**
+     * Executes given instructions over the block
+     *
+     * @param instructions positions of instructions in order of execution
+     * @param columns      column of each register
+     * @param length       number of elements of the block
+     */
+    private void execute(int[] instructions, int[][] columns, int length) {
+        for (int i : instructions)
+            compute(opcodes[i], columns[lefts[i]], columns[rights[i]], columns[targets[i]], length);
+    }
+
+    /**
+     * Executes all instructions for one element in registers of the current thread
+     *
+     * @param element element
+     * @return registers after the last instruction, they are overwritten by the next evaluation of the thread
+     */
+    private int[] evaluate(int element) {
+        int[] registers = values.get();
+        registers[0] = element;
+        for (int i = 0; i < opcodes.length; i++)
+            registers[targets[i]] = compute(opcodes[i], registers[lefts[i]], registers[rights[i]]);
+        return registers;
+    }
+
+    /**
+     * Computes instruction for one element, like {@link #compute(byte, int[], int[], int[], int)}
+     *
+     * @param opcode opcode of the instruction
+     * @param a      left operand
+     * @param b      right operand
+     * @return result of the instruction
+     */
+    private static int compute(byte opcode, int a, int b) {
+        switch (OPERATORS.charAt(opcode)) {
+            case '+':
+                return a + b;
+            case '-':
+                return a - b;
+            case '*':
+                return a * b;
+            case '&':
+                return a & b;
+            case '|':
+                return a | b;
+            case '<':
+                return a < b ? 1 : 0;
+            case '>':
+                return a > b ? 1 : 0;
+            default:
+                return a == b ? 1 : 0;
+        }
+    }
+
+    /**
+     * Computes instruction over the block
+     *
+     * @param opcode opcode of the instruction
+     * @param a      column of the left operand
+     * @param b      column of the right operand
+     * @param result column of the result, it could be a column of an operand
+     * @param length number of elements of the block
+     */
+    private static void compute(byte opcode, int[] a, int[] b, int[] result, int length) {
+        switch (OPERATORS.charAt(opcode)) {
+            case '+':
+                for (int i = 0; i < length; i++)
+                    result[i] = a[i] + b[i];
+                break;
+            case '-':
+                for (int i = 0; i < length; i++)
+                    result[i] = a[i] - b[i];
+                break;
+            case '*':
+                for (int i = 0; i < length; i++)
+                    result[i] = a[i] * b[i];
+                break;
+            case '&':
+                for (int i = 0; i < length; i++)
+                    result[i] = a[i] & b[i];
+                break;
+            case '|':
+                for (int i = 0; i < length; i++)
+                    result[i] = a[i] | b[i];
+                break;
+            case '<': // sign bit of ((long) a - b)
+                for (int i = 0; i < length; i++)
+                    result[i] = (int) (((long) a[i] - b[i]) >>> 63);
+                break;
+            case '>':
+                for (int i = 0; i < length; i++)
+                    result[i] = (int) (((long) b[i] - a[i]) >>> 63);
+                break;
+            default: // x = a ^ b; ((x | -x) >>> 31) ^ 1
+                for (int i = 0; i < length; i++) {
+                    int x = a[i] ^ b[i];
+                    result[i] = ((x | -x) >>> 31) ^ 1;
+                }
+        }
+    }
+
+    /**
+     * Writes map results of elements that passed the filter, without branches
+     *
+     * @param filter column of the filter, 1 or 0
+     * @param map    column of the map
+     * @param length number of elements of the block
+     * @param output array for results, it has place for each element
+     * @param count  index of output to write the next result to
+     * @return index of output after the last result
+     */
+    private static int select(int[] filter, int[] map, int length, int[] output, int count) {
+        for (int i = 0; i < length; i++) {
+            output[count] = map[i];
+            count += filter[i];
+        }
+        return count;
+    }
+}
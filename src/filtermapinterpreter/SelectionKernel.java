@@ -0,0 +1,48 @@
+package filtermapinterpreter;
+
+/**
+ * Evaluation loops of the filter stage without materializing mapped values, and of the map stage
+ * over selected positions, generated by {@code BytecodeCompiler} or evaluated by blocks of
+ * {@code RegisterPlan}. Loops have no branches except their conditions.
+ *
+ * @author Taimuraz Tibilov
+ */
+interface SelectionKernel {
+
+    /**
+     * Writes indexes of elements that pass the filter to the selection vector.
+     * Places of selection after the last index could be overwritten
+     *
+     * @param input     source elements
+     * @param from      index of the first element (inclusive)
+     * @param to        index of the last element (exclusive)
+     * @param selection array for indexes of input, must have at least {@code to - from} free places after offset
+     * @param offset    index of selection to write first index to
+     * @return number of written indexes
+     */
+    int select(int[] input, int from, int to, int[] selection, int offset);
+
+    /**
+     * Sets bits of elements that pass the filter: bit {@code j % 64} of word {@code j / 64}
+     * for element {@code input[from + j]}. Bits are or-ed to the words, they must be cleared before
+     *
+     * @param input source elements
+     * @param from  index of the first element (inclusive)
+     * @param to    index of the last element (exclusive)
+     * @param words bitmap, must have at least {@code (to - from + 63) / 64} words
+     */
+    void bitmap(int[] input, int from, int to, long[] words);
+
+    /**
+     * Maps selected elements and writes results to output array
+     *
+     * @param input     source elements
+     * @param selection indexes of input
+     * @param from      index of the first index of selection (inclusive)
+     * @param to        index of the last index of selection (exclusive)
+     * @param output    array for results, must have at least {@code to - from} free places after offset
+     * @param offset    index of output to write first result to
+     * @return number of written results
+     */
+    int gather(int[] input, int[] selection, int from, int to, int[] output, int offset);
+}
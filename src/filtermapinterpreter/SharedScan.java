@@ -0,0 +1,151 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class of shared evaluation of many normalized call-chains over the same input in one pass.
+ * Added chains are simplified into one {@code ExpressionGraph}, so subexpression that is equal
+ * in several chains (e.g. "(element+4)") is one node, and it is lowered by {@code RegisterPlan}
+ * to one instruction computed once per element.
+ * Shared scan is not thread-safe while chains are added, {@code apply} could be called concurrently.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class SharedScan {
+
+    private final ExpressionGraph graph = new ExpressionGraph(); // Graph of all added chains
+    private final List<DagNode> filters = new ArrayList<>(); // Simplified filters by chain index
+    private final List<DagNode> maps = new ArrayList<>(); // Simplified maps by chain index
+    private long separateNodes = 0; // Sum of numbers of distinct nodes of each chain
+    private volatile RegisterPlan plan = null; // Plan of added chains, null if chains were added after it
+
+    /**
+     * Adds normalized call-chain to the scan
+     *
+     * @param chain normalized call-chain
+     * @return index of the chain: index of its results in {@link #apply(int[], int, int, int[][])}
+     * @throws InvalidTypeException if chain has wrong types or constants out of integer range
+     */
+    public int add(NormalizedChain chain) throws InvalidTypeException {
+        if (chain == null)
+            throw new InvalidParameterException("Null pointer on chain!");
+        DagNode filter = Simplifier.simplify(graph, graph.importNode(chain.getFilter()));
+        DagNode map = Simplifier.simplify(graph, graph.importNode(chain.getMap()));
+        if (filter.outputType != OutputType.BOOLEAN || map.outputType != OutputType.INT)
+            throw new InvalidTypeException("Expected boolean filter and integer map!");
+        for (DagNode node : ExpressionGraph.topologicalOrder(filter, map)) {
+            if (node.type == NodeType.NUMBER)
+                Evaluator.parseConstant(node);
+        }
+        separateNodes += ExpressionGraph.topologicalOrder(filter, map).size();
+        filters.add(filter);
+        maps.add(map);
+        plan = null;
+        return filters.size() - 1;
+    }
+
+    /**
+     * Parses, rebuilds and adds call-chain to the scan
+     *
+     * @param source string that contains expression built by test case grammar
+     * @return index of the chain
+     * @throws InvalidSyntaxException if source has syntax error
+     * @throws InvalidTypeException   if source has type error
+     */
+    public int add(String source) throws InvalidSyntaxException, InvalidTypeException {
+        return add(FilterMapInterpreter.normalize(source));
+    }
+
+    /**
+     * Getter of the number of added chains
+     *
+     * @return number of chains
+     */
+    public int size() {
+        return filters.size();
+    }
+
+    /**
+     * Getter of the number of nodes computed per element
+     *
+     * @return number of distinct nodes of all chains
+     */
+    public int nodeCount() {
+        return plan().nodeCount();
+    }
+
+    /**
+     * Getter of the number of instructions executed per element
+     *
+     * @return number of distinct operations of all chains
+     */
+    public int instructionCount() {
+        return plan().instructionCount();
+    }
+
+    /**
+     * Getter of the number of nodes that would be computed per element if chains were evaluated separately
+     *
+     * @return sum of numbers of distinct nodes of each chain
+     */
+    public long separateNodeCount() {
+        return separateNodes;
+    }
+
+    /**
+     * Applies all chains to the part of array
+     *
+     * @param input   source elements
+     * @param from    index of the first element (inclusive)
+     * @param to      index of the last element (exclusive)
+     * @param outputs arrays for results by chain index, each one must have at least {@code to - from} places.
+     *                Places after the last result could be overwritten
+     * @return numbers of written results by chain index
+     */
+    public int[] apply(int[] input, int from, int to, int[][] outputs) {
+        if (input == null || outputs == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        if (from < 0 || from > to || to > input.length)
+            throw new InvalidParameterException("Wrong range of input!");
+        return plan().apply(input, from, to, outputs);
+    }
+
+    /**
+     * Applies all chains to the whole array
+     *
+     * @param input source elements
+     * @return new arrays of filtered and mapped elements by chain index
+     */
+    public int[][] apply(int[] input) {
+        if (input == null)
+            throw new InvalidParameterException("Null pointer on input!");
+        int[][] outputs = new int[size()][input.length];
+        int[] counts = apply(input, 0, input.length, outputs);
+        for (int i = 0; i < outputs.length; i++)
+            outputs[i] = Arrays.copyOf(outputs[i], counts[i]);
+        return outputs;
+    }
+
+    /**
+     * Getter of the plan of added chains, lowers chains if they were added
+     *
+     * @return plan of added chains
+     */
+    private RegisterPlan plan() {
+        RegisterPlan result = plan;
+        if (result == null) {
+            try {
+                result = RegisterPlan.lower(filters.toArray(new DagNode[0]), maps.toArray(new DagNode[0]));
+            } catch (InvalidTypeException e) {
+                throw new IllegalStateException(e); // types and constants are checked when chains are added
+            }
+            plan = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,245 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.security.InvalidParameterException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class of optimizer pass over normalized expressions. Folds constant subexpressions,
+ * applies identities ("x*1", "x+0", "x*0", "x-x", "x&true", "x|false", ...) and joins
+ * constants of nested sums and products. Boolean constants are represented as
+ * "(1=1)" (true) and "(1=0)" (false). Integer arithmetic wraps around like in evaluation.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class Simplifier {
+
+    private final ExpressionGraph graph; // Graph of simplified expressions
+    private final DagNode trueNode; // Constant "(1=1)"
+    private final DagNode falseNode; // Constant "(1=0)"
+    private final Map<DagNode, DagNode> simplified = new HashMap<>(); // Already simplified nodes
+
+    /**
+     * Constructor
+     *
+     * @param graph graph of simplified expressions
+     * @throws InvalidTypeException never, constants are well-typed
+     */
+    private Simplifier(ExpressionGraph graph) throws InvalidTypeException {
+        this.graph = graph;
+        trueNode = graph.operation("=", graph.number("1"), graph.number("1"));
+        falseNode = graph.operation("=", graph.number("1"), graph.number("0"));
+    }
+
+    /**
+     * Simplifies filter and map expressions of the call-chain. Nodes shared by them are simplified once
+     *
+     * @param chain normalized call-chain
+     * @return equivalent call-chain with simplified expressions in the same graph
+     * @throws InvalidTypeException if expressions have wrong types
+     */
+    public static NormalizedChain simplify(NormalizedChain chain) throws InvalidTypeException {
+        if (chain == null)
+            throw new InvalidParameterException("Null pointer on chain!");
+        Simplifier simplifier = new Simplifier(chain.getGraph());
+        DagNode filter = simplifier.simplify(chain.getFilter());
+        DagNode map = simplifier.simplify(chain.getMap());
+        return new NormalizedChain(chain.getGraph(), filter, map);
+    }
+
+    /**
+     * Simplifies the expression
+     *
+     * @param graph graph that contains expression
+     * @param root  root of the expression
+     * @return equivalent simplified expression in the same graph
+     * @throws InvalidTypeException if expression has wrong types
+     */
+    public static DagNode simplify(ExpressionGraph graph, DagNode root) throws InvalidTypeException {
+        if (graph == null || root == null)
+            throw new InvalidParameterException("Parameters cannot be a null!");
+        return new Simplifier(graph).simplify(root);
+    }
+
+    /**
+     * Simplifies each distinct node of the expression once, operands before operations
+     *
+     * @param root root of the expression
+     * @return equivalent simplified expression
+     * @throws InvalidTypeException if expression has wrong types
+     */
+    private DagNode simplify(DagNode root) throws InvalidTypeException {
+        for (DagNode node : ExpressionGraph.topologicalOrder(root)) {
+            if (simplified.containsKey(node))
+                continue;
+            DagNode result = node;
+            if (node.isOperation())
+                result = operation(node.value, simplified.get(node.left), simplified.get(node.right));
+            simplified.put(node, result);
+        }
+        return simplified.get(root);
+    }
+
+    /**
+     * Builds simplified operation with already simplified operands
+     *
+     * @param operator binary operator
+     * @param left     simplified left operand
+     * @param right    simplified right operand
+     * @return simplified operation
+     * @throws InvalidTypeException if operands have wrong types
+     */
+    private DagNode operation(String operator, DagNode left, DagNode right) throws InvalidTypeException {
+        switch (operator) {
+            case "+":
+            case "-":
+                return sum(operator, left, right);
+            case "*":
+                return product(left, right);
+            case "&":
+                if (left == falseNode || right == falseNode)
+                    return falseNode;
+                if (left == trueNode || left == right)
+                    return right;
+                if (right == trueNode)
+                    return left;
+                break;
+            case "|":
+                if (left == trueNode || right == trueNode)
+                    return trueNode;
+                if (left == falseNode || left == right)
+                    return right;
+                if (right == falseNode)
+                    return left;
+                break;
+            default:
+                return comparison(operator, left, right);
+        }
+        return graph.operation(operator, left, right);
+    }
+
+    /**
+     * Builds simplified sum or difference: "c1+c2", "x+0", "0+x", "x-0", "x-x", "(x+c1)-c2"
+     *
+     * @param operator "+" or "-"
+     * @param left     simplified left operand
+     * @param right    simplified right operand
+     * @return simplified operation
+     * @throws InvalidTypeException if operands have wrong types
+     */
+    private DagNode sum(String operator, DagNode left, DagNode right) throws InvalidTypeException {
+        boolean plus = operator.equals("+");
+        if (isConstant(left) && isConstant(right))
+            return constant(plus ? value(left) + value(right) : value(left) - value(right));
+        if (isConstant(right, 0))
+            return left;
+        if (plus && isConstant(left, 0))
+            return right;
+        if (!plus && left == right)
+            return constant(0);
+        if (isConstant(right) && left.isOperation() && isConstant(left.right)
+                && (left.value.equals("+") || left.value.equals("-"))) {
+            int first = left.value.equals("+") ? value(left.right) : -value(left.right);
+            int offset = plus ? first + value(right) : first - value(right);
+            if (offset == 0)
+                return left.left;
+            if (offset < 0 && offset != Integer.MIN_VALUE)
+                return graph.operation("-", left.left, constant(-offset));
+            return graph.operation("+", left.left, constant(offset));
+        }
+        return graph.operation(operator, left, right);
+    }
+
+    /**
+     * Builds simplified product: "c1*c2", "x*1", "1*x", "x*0", "0*x", "(x*c1)*c2"
+     *
+     * @param left  simplified left operand
+     * @param right simplified right operand
+     * @return simplified operation
+     * @throws InvalidTypeException if operands have wrong types
+     */
+    private DagNode product(DagNode left, DagNode right) throws InvalidTypeException {
+        if (isConstant(left) && isConstant(right))
+            return constant(value(left) * value(right));
+        if (isConstant(left, 0) || isConstant(right, 0))
+            return constant(0);
+        if (isConstant(right, 1))
+            return left;
+        if (isConstant(left, 1))
+            return right;
+        if (isConstant(right) && left.isOperation() && left.value.equals("*") && isConstant(left.right))
+            return product(left.left, constant(value(left.right) * value(right)));
+        return graph.operation("*", left, right);
+    }
+
+    /**
+     * Builds simplified comparison: both constants or "x=x", "x<x", "x>x"
+     *
+     * @param operator "<", ">" or "="
+     * @param left     simplified left operand
+     * @param right    simplified right operand
+     * @return simplified operation
+     * @throws InvalidTypeException if operands have wrong types
+     */
+    private DagNode comparison(String operator, DagNode left, DagNode right) throws InvalidTypeException {
+        if (isConstant(left) && isConstant(right)) {
+            int a = value(left);
+            int b = value(right);
+            boolean result = operator.equals("<") ? a < b : operator.equals(">") ? a > b : a == b;
+            return result ? trueNode : falseNode;
+        }
+        if (left == right)
+            return operator.equals("=") ? trueNode : falseNode;
+        return graph.operation(operator, left, right);
+    }
+
+    /**
+     * Shows is node a number that fits to integer
+     *
+     * @param node node of expression
+     * @return true if node is integer constant
+     */
+    private static boolean isConstant(DagNode node) {
+        if (node.type != NodeType.NUMBER)
+            return false;
+        try {
+            Integer.parseInt(node.value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Shows is node an integer constant with given value
+     *
+     * @param node  node of expression
+     * @param value expected value
+     * @return true if node is constant equal to value
+     */
+    private static boolean isConstant(DagNode node, int value) {
+        return isConstant(node) && value(node) == value;
+    }
+
+    /**
+     * Getter of the constant value
+     *
+     * @param node integer constant
+     * @return value of the constant
+     */
+    private static int value(DagNode node) {
+        return Integer.parseInt(node.value);
+    }
+
+    /**
+     * Getter of the NUMBER node
+     *
+     * @param value value of the number
+     * @return NUMBER node of the graph
+     */
+    private DagNode constant(int value) {
+        return graph.number(String.valueOf(value));
+    }
+}
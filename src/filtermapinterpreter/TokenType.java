@@ -0,0 +1,20 @@
+package filtermapinterpreter;
+
+/**
+ * Represents types of tokens produced by {@code Lexer}
+ *
+ * @author Taimuraz Tibilov
+ */
+public enum TokenType {
+    NUMBER, // [0-9]+ | -[0-9]+, minus is a part of number only if previous token is not an operand
+    ELEMENT, // "element"
+    OPERATOR, // "*" | "+" | "-" | "<" | ">" | "=" | "&" | "|"
+    FILTER, // "filter"
+    MAP, // "map"
+    LEFT_PARENTHESIS, // "("
+    RIGHT_PARENTHESIS, // ")"
+    LEFT_BRACE, // "{"
+    RIGHT_BRACE, // "}"
+    UNKNOWN, // any other character
+    END // end of source
+}
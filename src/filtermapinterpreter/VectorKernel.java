@@ -0,0 +1,229 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Evaluation loop of the pipeline by Vector API ({@code jdk.incubator.vector}).
+ * Input is processed by blocks: each distinct OPERATION node of the filter and map
+ * expressions is one lane-wise pass over the block that writes to its own register array.
+ * Boolean values are stored as 0 or -1. Filter result is converted to the mask and selected
+ * lanes of the map register are compacted to the output. Elements that do not fill
+ * the whole vector are evaluated by scalar functions.
+ * <p>
+ * The class must be loaded only if {@code jdk.incubator.vector} module is loaded to the JVM
+ * (it is checked by {@code Pipeline}), since JVM could be started without
+ * {@code --add-modules jdk.incubator.vector}.
+ *
+ * @author Taimuraz Tibilov
+ */
+final class VectorKernel implements PipelineKernel {
+
+    private static final int BLOCK = 1024; // Number of elements evaluated by one pass of each operation
+    private static final int ELEMENT = -1; // Operand that is the element, constants are encoded as -2 - index
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED; // Shape of vectors
+
+    private final char[] operators; // Operator of each instruction
+    private final int[] left; // Left operand of each instruction: register, ELEMENT or encoded constant
+    private final int[] right; // Right operand of each instruction: register, ELEMENT or encoded constant
+    private final int[][] constants; // Blocks filled by values of constants
+    private final int filter; // Operand of the filter result
+    private final int map; // Operand of the map result
+    private final IntPredicate scalarFilter; // Filter for elements after the last full vector
+    private final IntUnaryOperator scalarMap; // Map for elements after the last full vector
+
+    /**
+     * Lowers filter and map expressions to the lane-wise instructions
+     *
+     * @param filter       root of the filter expression
+     * @param map          root of the map expression
+     * @param scalarFilter filter for elements after the last full vector
+     * @param scalarMap    map for elements after the last full vector
+     * @return evaluation loop of the pipeline
+     * @throws InvalidTypeException if expressions have constants out of integer range
+     */
+    static PipelineKernel create(DagNode filter, DagNode map, IntPredicate scalarFilter, IntUnaryOperator scalarMap)
+            throws InvalidTypeException {
+        return new VectorKernel(filter, map, scalarFilter, scalarMap);
+    }
+
+    private VectorKernel(DagNode filter, DagNode map, IntPredicate scalarFilter, IntUnaryOperator scalarMap)
+            throws InvalidTypeException {
+        List<DagNode> nodes = ExpressionGraph.topologicalOrder(filter, map);
+        Map<DagNode, Integer> operands = new HashMap<>();
+        List<int[]> constantBlocks = new ArrayList<>();
+        int count = 0;
+        for (DagNode node : nodes) {
+            if (node.isOperation()) {
+                operands.put(node, count++);
+            } else if (node.type == NodeType.NUMBER) {
+                int[] block = new int[BLOCK];
+                Arrays.fill(block, Evaluator.parseConstant(node));
+                operands.put(node, -2 - constantBlocks.size());
+                constantBlocks.add(block);
+            } else
+                operands.put(node, ELEMENT);
+        }
+        operators = new char[count];
+        left = new int[count];
+        right = new int[count];
+        for (DagNode node : nodes) {
+            if (!node.isOperation())
+                continue;
+            int register = operands.get(node);
+            operators[register] = node.value.charAt(0);
+            left[register] = operands.get(node.left);
+            right[register] = operands.get(node.right);
+        }
+        constants = constantBlocks.toArray(new int[0][]);
+        this.filter = operands.get(filter);
+        this.map = operands.get(map);
+        this.scalarFilter = scalarFilter;
+        this.scalarMap = scalarMap;
+    }
+
+    @Override
+    public int apply(int[] input, int from, int to, int[] output, int offset) {
+        int[][] registers = new int[operators.length][BLOCK];
+        int count = offset;
+        int vectorEnd = to - (to - from) % SPECIES.length();
+        for (int block = from; block < vectorEnd; block += BLOCK) {
+            int size = Math.min(BLOCK, vectorEnd - block);
+            for (int i = 0; i < operators.length; i++) {
+                int[] a = array(left[i], registers, input);
+                int[] b = array(right[i], registers, input);
+                execute(operators[i], a, left[i] == ELEMENT ? block : 0, b, right[i] == ELEMENT ? block : 0,
+                        registers[i], size);
+            }
+            count = compact(array(filter, registers, input), filter == ELEMENT ? block : 0,
+                    array(map, registers, input), map == ELEMENT ? block : 0, size, output, count);
+        }
+        for (int i = vectorEnd; i < to; i++) {
+            int element = input[i];
+            if (scalarFilter.test(element))
+                output[count++] = scalarMap.applyAsInt(element);
+        }
+        return count - offset;
+    }
+
+    /**
+     * Getter of the array with values of operand
+     *
+     * @param operand   register, ELEMENT or encoded constant
+     * @param registers registers of the block
+     * @param input     source elements
+     * @return register, input or block of constant
+     */
+    private int[] array(int operand, int[][] registers, int[] input) {
+        if (operand == ELEMENT)
+            return input;
+        if (operand < 0)
+            return constants[-2 - operand];
+        return registers[operand];
+    }
+
+    /**
+     * Executes one instruction over the block. Each operator has its own loop,
+     * so that vectors are not merged between branches and stay in registers
+     *
+     * @param operator operator of the instruction
+     * @param a        values of the left operand
+     * @param aBase    index of the first value of the block in a
+     * @param b        values of the right operand
+     * @param bBase    index of the first value of the block in b
+     * @param result   register for the result
+     * @param size     number of elements in block, multiple of vector length
+     */
+    private static void execute(char operator, int[] a, int aBase, int[] b, int bBase, int[] result, int size) {
+        int length = SPECIES.length();
+        IntVector zero = IntVector.zero(SPECIES);
+        switch (operator) {
+            case '+':
+                for (int i = 0; i < size; i += length)
+                    IntVector.fromArray(SPECIES, a, aBase + i).add(IntVector.fromArray(SPECIES, b, bBase + i))
+                            .intoArray(result, i);
+                break;
+            case '-':
+                for (int i = 0; i < size; i += length)
+                    IntVector.fromArray(SPECIES, a, aBase + i).sub(IntVector.fromArray(SPECIES, b, bBase + i))
+                            .intoArray(result, i);
+                break;
+            case '*':
+                for (int i = 0; i < size; i += length)
+                    IntVector.fromArray(SPECIES, a, aBase + i).mul(IntVector.fromArray(SPECIES, b, bBase + i))
+                            .intoArray(result, i);
+                break;
+            case '&':
+                for (int i = 0; i < size; i += length)
+                    IntVector.fromArray(SPECIES, a, aBase + i).and(IntVector.fromArray(SPECIES, b, bBase + i))
+                            .intoArray(result, i);
+                break;
+            case '|':
+                for (int i = 0; i < size; i += length)
+                    IntVector.fromArray(SPECIES, a, aBase + i).or(IntVector.fromArray(SPECIES, b, bBase + i))
+                            .intoArray(result, i);
+                break;
+            case '<':
+                for (int i = 0; i < size; i += length)
+                    zero.blend(-1, IntVector.fromArray(SPECIES, a, aBase + i)
+                            .compare(VectorOperators.LT, IntVector.fromArray(SPECIES, b, bBase + i)))
+                            .intoArray(result, i);
+                break;
+            case '>':
+                for (int i = 0; i < size; i += length)
+                    zero.blend(-1, IntVector.fromArray(SPECIES, a, aBase + i)
+                            .compare(VectorOperators.GT, IntVector.fromArray(SPECIES, b, bBase + i)))
+                            .intoArray(result, i);
+                break;
+            default:
+                for (int i = 0; i < size; i += length)
+                    zero.blend(-1, IntVector.fromArray(SPECIES, a, aBase + i)
+                            .compare(VectorOperators.EQ, IntVector.fromArray(SPECIES, b, bBase + i)))
+                            .intoArray(result, i);
+                break;
+        }
+    }
+
+    /**
+     * Writes mapped values of elements passing the filter to the output
+     *
+     * @param filter     values of the filter (0 or -1)
+     * @param filterBase index of the first value of the block in filter
+     * @param map        values of the map
+     * @param mapBase    index of the first value of the block in map
+     * @param size       number of elements in block, multiple of vector length
+     * @param output     array for results
+     * @param count      index of output to write next result to
+     * @return index of output after the last written result
+     */
+    private static int compact(int[] filter, int filterBase, int[] map, int mapBase, int size, int[] output, int count) {
+        int length = SPECIES.length();
+        long full = length == 64 ? -1L : (1L << length) - 1;
+        for (int i = 0; i < size; i += length) {
+            VectorMask<Integer> mask = IntVector.fromArray(SPECIES, filter, filterBase + i).compare(VectorOperators.NE, 0);
+            long bits = mask.toLong();
+            if (bits == full) {
+                IntVector.fromArray(SPECIES, map, mapBase + i).intoArray(output, count);
+                count += length;
+                continue;
+            }
+            while (bits != 0) {
+                output[count++] = map[mapBase + i + Long.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        return count;
+    }
+}
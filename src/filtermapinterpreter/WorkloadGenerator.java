@@ -0,0 +1,362 @@
+package filtermapinterpreter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of grammar-valid call-chains and of integer datasets for stress tests and benchmarks.
+ * Shape of chains is given by number of calls, percent of map-calls, nesting depth of each call
+ * expression, range of constants and fan-out: number of "element" leaves of each call expression.
+ * Each call expression uses element, so merged expression grows linearly with number of calls
+ * if fan-out is 1, and exponentially as a tree (but not as a graph) if it is larger.
+ * Generator with the same parameters and seed produces the same chain and the same elements.
+ * Chains are written call by call, so they could be streamed to files and parsers of any size.
+ *
+ * @author Taimuraz Tibilov
+ */
+public final class WorkloadGenerator {
+
+    private static final String INT_OPERATORS = "+-*"; // Operators of call expressions
+    private static final String COMP_OPERATORS = "<>"; // Operators of filter comparisons
+    private static final int BUFFER_SIZE = 1 << 16; // Number of bytes of elements written at once
+
+    private final long seed; // Seed of calls and elements
+    private final int calls; // Number of calls of the chain
+    private final int mapPercent; // Percent of map-calls, the rest are filter-calls
+    private final int depth; // Nesting depth of each call expression
+    private final int minConstant; // Minimum of constants (inclusive)
+    private final int maxConstant; // Maximum of constants (inclusive)
+    private final int fanOut; // Number of "element" leaves of each call expression
+    private final int minElement; // Minimum of dataset elements (inclusive)
+    private final int maxElement; // Maximum of dataset elements (inclusive)
+
+    /**
+     * Constructor, parameters are checked by the builder
+     *
+     * @param builder builder with parameters of the generator
+     */
+    private WorkloadGenerator(Builder builder) {
+        seed = builder.seed;
+        calls = builder.calls;
+        mapPercent = builder.mapPercent;
+        depth = builder.depth;
+        minConstant = builder.minConstant;
+        maxConstant = builder.maxConstant;
+        fanOut = builder.fanOut;
+        minElement = builder.minElement;
+        maxElement = builder.maxElement;
+    }
+
+    /**
+     * Creates builder of the generator with default parameters: 10 calls, 50% of map-calls,
+     * depth 2, constants in [-100, 100], fan-out 1 and elements in [-1000, 1000]
+     *
+     * @param seed seed of calls and elements
+     * @return builder of the generator
+     */
+    public static Builder builder(long seed) {
+        return new Builder(seed);
+    }
+
+    /**
+     * Generates calls of the chain
+     *
+     * @return sources of calls in order of the chain
+     */
+    public List<String> calls() {
+        Random random = new Random(seed);
+        List<String> result = new ArrayList<>(calls);
+        StringBuilder call = new StringBuilder();
+        for (int i = 0; i < calls; i++) {
+            call.setLength(0);
+            call(random, call);
+            result.add(call.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Generates the chain
+     *
+     * @return source of the chain, calls are joined by "%>%"
+     */
+    public String chain() {
+        StringBuilder chain = new StringBuilder();
+        try {
+            write(chain);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder does not throw
+        }
+        return chain.toString();
+    }
+
+    /**
+     * Writes the chain to the output call by call, the whole chain is never held in memory
+     *
+     * @param output output to append source of the chain to
+     * @return number of written chars
+     * @throws IOException if output fails
+     */
+    public long write(Appendable output) throws IOException {
+        if (output == null)
+            throw new InvalidParameterException("Null pointer on output!");
+        Random random = new Random(seed);
+        StringBuilder call = new StringBuilder();
+        long length = 0;
+        for (int i = 0; i < calls; i++) {
+            call.setLength(0);
+            if (i > 0)
+                call.append("%>%");
+            call(random, call);
+            output.append(call);
+            length += call.length();
+        }
+        return length;
+    }
+
+    /**
+     * Generates elements of the dataset
+     *
+     * @param size number of elements
+     * @return elements in the range of the generator
+     */
+    public int[] elements(int size) {
+        if (size < 0)
+            throw new InvalidParameterException("Size cannot be negative!");
+        Random random = elementRandom();
+        int[] elements = new int[size];
+        for (int i = 0; i < size; i++)
+            elements[i] = element(random);
+        return elements;
+    }
+
+    /**
+     * Writes elements of the dataset to the channel as little-endian 32-bit integers, the format of
+     * {@code FilePipeline}. The first elements are the same as {@link #elements(int)} returns
+     *
+     * @param channel channel to write elements to, it is not closed
+     * @param count   number of elements
+     * @return number of written bytes
+     * @throws IOException if channel fails
+     */
+    public long writeElements(WritableByteChannel channel, long count) throws IOException {
+        if (channel == null)
+            throw new InvalidParameterException("Null pointer on channel!");
+        if (count < 0)
+            throw new InvalidParameterException("Count cannot be negative!");
+        Random random = elementRandom();
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (long written = 0; written < count; ) {
+            bytes.clear();
+            while (bytes.hasRemaining() && written < count) {
+                bytes.putInt(element(random));
+                written++;
+            }
+            bytes.flip();
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        }
+        return count * Integer.BYTES;
+    }
+
+    /**
+     * Appends the next call of the chain
+     *
+     * @param random generator of the chain
+     * @param output builder to append call to
+     */
+    private void call(Random random, StringBuilder output) {
+        if (random.nextInt(100) < mapPercent) {
+            output.append("map{");
+            expression(random, depth, fanOut, output);
+            output.append('}');
+        } else {
+            output.append("filter{(");
+            expression(random, depth, fanOut, output);
+            output.append(COMP_OPERATORS.charAt(random.nextInt(COMP_OPERATORS.length())));
+            output.append(constant(random)).append(")}");
+        }
+    }
+
+    /**
+     * Appends integer expression: the left operand is nested to the full depth,
+     * the right one is a constant or just deep enough for its part of "element" leaves
+     *
+     * @param random generator of the chain
+     * @param depth  nesting depth of the expression
+     * @param fanOut number of "element" leaves, at most 2^depth
+     * @param output builder to append expression to
+     */
+    private void expression(Random random, int depth, int fanOut, StringBuilder output) {
+        if (depth == 0) {
+            output.append("element");
+            return;
+        }
+        int right = fanOut / 2; // Leaves of the right operand
+        char operator = INT_OPERATORS.charAt(random.nextInt(INT_OPERATORS.length()));
+        output.append('(');
+        expression(random, depth - 1, fanOut - right, output);
+        if (right == 0) {
+            int constant = constant(random);
+            // Multiplier is never 0, otherwise the rest of chain would be folded to constants
+            output.append(operator == '*' && constant == 0 ? '+' : operator).append(constant);
+        } else {
+            output.append(operator);
+            expression(random, 32 - Integer.numberOfLeadingZeros(right - 1), right, output);
+        }
+        output.append(')');
+    }
+
+    /**
+     * Generates constant of the chain
+     *
+     * @param random generator of the chain
+     * @return constant in the range of the generator
+     */
+    private int constant(Random random) {
+        return (int) random.nextLong(minConstant, maxConstant + 1L);
+    }
+
+    /**
+     * Creates generator of elements, it is independent of the generator of the chain
+     *
+     * @return generator of elements
+     */
+    private Random elementRandom() {
+        return new Random(~seed);
+    }
+
+    /**
+     * Generates element of the dataset
+     *
+     * @param random generator of elements
+     * @return element in the range of the generator
+     */
+    private int element(Random random) {
+        return (int) random.nextLong(minElement, maxElement + 1L);
+    }
+
+    /**
+     * Builder of the generator
+     */
+    public static final class Builder {
+
+        private final long seed; // Seed of calls and elements
+        private int calls = 10; // Number of calls of the chain
+        private int mapPercent = 50; // Percent of map-calls
+        private int depth = 2; // Nesting depth of each call expression
+        private int minConstant = -100; // Minimum of constants (inclusive)
+        private int maxConstant = 100; // Maximum of constants (inclusive)
+        private int fanOut = 1; // Number of "element" leaves of each call expression
+        private int minElement = -1000; // Minimum of dataset elements (inclusive)
+        private int maxElement = 1000; // Maximum of dataset elements (inclusive)
+
+        /**
+         * Constructor
+         *
+         * @param seed seed of calls and elements
+         */
+        private Builder(long seed) {
+            this.seed = seed;
+        }
+
+        /**
+         * Sets length of the chain
+         *
+         * @param calls number of calls, not negative
+         * @return this builder
+         */
+        public Builder calls(int calls) {
+            if (calls < 0)
+                throw new InvalidParameterException("Number of calls cannot be negative!");
+            this.calls = calls;
+            return this;
+        }
+
+        /**
+         * Sets mix of calls
+         *
+         * @param mapPercent percent of map-calls in [0, 100], the rest are filter-calls
+         * @return this builder
+         */
+        public Builder mapPercent(int mapPercent) {
+            if (mapPercent < 0 || mapPercent > 100)
+                throw new InvalidParameterException("Percent of map-calls must be in [0, 100]!");
+            this.mapPercent = mapPercent;
+            return this;
+        }
+
+        /**
+         * Sets nesting depth of call expressions. Filter-call compares expression of this depth with constant
+         *
+         * @param depth number of nested operations, in [0, 30]
+         * @return this builder
+         */
+        public Builder depth(int depth) {
+            if (depth < 0 || depth > 30)
+                throw new InvalidParameterException("Depth must be in [0, 30]!");
+            this.depth = depth;
+            return this;
+        }
+
+        /**
+         * Sets range of constants
+         *
+         * @param min minimum of constants (inclusive)
+         * @param max maximum of constants (inclusive)
+         * @return this builder
+         */
+        public Builder constants(int min, int max) {
+            if (min > max)
+                throw new InvalidParameterException("Range of constants is empty!");
+            minConstant = min;
+            maxConstant = max;
+            return this;
+        }
+
+        /**
+         * Sets number of "element" leaves of each call expression, must fit to the depth when generator is built
+         *
+         * @param fanOut number of leaves, at least 1
+         * @return this builder
+         */
+        public Builder fanOut(int fanOut) {
+            if (fanOut < 1)
+                throw new InvalidParameterException("Fan-out must be positive!");
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        /**
+         * Sets range of dataset elements
+         *
+         * @param min minimum of elements (inclusive)
+         * @param max maximum of elements (inclusive)
+         * @return this builder
+         */
+        public Builder elements(int min, int max) {
+            if (min > max)
+                throw new InvalidParameterException("Range of elements is empty!");
+            minElement = min;
+            maxElement = max;
+            return this;
+        }
+
+        /**
+         * Builds the generator
+         *
+         * @return generator with parameters of the builder
+         */
+        public WorkloadGenerator build() {
+            if (fanOut > 1 << depth)
+                throw new InvalidParameterException("Fan-out cannot be larger than 2^depth!");
+            return new WorkloadGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ASTreeBuilderTest {
+
+    private static final int DEPTH = 200000; // Nesting depth far beyond the thread stack
+
+    @Test
+    void deepNestingTest() throws Exception {
+        // Left-nested expression "((((element+1)+1)...)+1)"
+        String left = String.join("", Collections.nCopies(DEPTH, "(")) + "element"
+                + String.join("", Collections.nCopies(DEPTH, "+1)"));
+        ASTree tree = new ASTreeBuilder("map{" + left + "}").build();
+        assertEquals("map{" + left + "}", tree.toString());
+        assertEquals(2 * DEPTH + 1, tree.getRoot().postOrder().size());
+
+        // Right-nested expression "(1-(1-...(1-element)))" inside filter
+        String right = String.join("", Collections.nCopies(DEPTH, "(1-")) + "element"
+                + String.join("", Collections.nCopies(DEPTH, ")"));
+        String source = "filter{(" + right + ">0)}%>%map{" + left + "}";
+        assertEquals("filter{(" + right + ">0)}%>%map{" + left + "}", FilterMapInterpreter.interpret(source));
+
+        // Errors deep inside
+        String unclosed = "map{" + left.substring(0, left.length() - 1) + "}";
+        assertEquals("SYNTAX ERROR in 1 block: Expected closing bracket ')'!", FilterMapInterpreter.interpret(unclosed));
+        String wrongType = "map{" + left.replace("(element+1)", "(element<1)") + "}";
+        assertEquals("TYPE ERROR in 1 block: Wrong type of operands!", FilterMapInterpreter.interpret(wrongType));
+    }
+
+    @Test
+    void postOrderTest() throws Exception {
+        ASTree tree = new ASTreeBuilder("map{((element*2)-(3+element))}").build();
+        StringBuilder order = new StringBuilder();
+        for (ASTNode node : tree.getRoot().postOrder())
+            order.append(node.value).append(' ');
+        assertEquals("element 2 * 3 element + - ", order.toString());
+    }
+}
@@ -0,0 +1,53 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchInterpreterTest {
+
+    @Test
+    void interpretCollectionTest() {
+        List<String> sources = List.of(
+                "filter{(element>10)}%>%filter{(element<20)}",
+                "map{(element+1)}%>%filter{(element>1)}%>%map{(element+1)}",
+                "map(element+1)",
+                "filter{(1+2)}",
+                "");
+        List<String> expected = sources.stream().map(FilterMapInterpreter::interpret).collect(Collectors.toList());
+        try (BatchInterpreter interpreter = new BatchInterpreter(false)) {
+            assertEquals(expected, interpreter.interpret(sources));
+        }
+        try (BatchInterpreter interpreter = new BatchInterpreter(true)) {
+            assertEquals("filter{(1=1)}%>%map{element}", interpreter.interpret(List.of("filter{(2>1)}")).get(0));
+        }
+    }
+
+    @Test
+    void interpretStreamTest() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (BatchInterpreter interpreter = new BatchInterpreter(executor, 4, false)) {
+            List<String> results = new ArrayList<>();
+            interpreter.interpret(IntStream.range(0, 1000).mapToObj(i -> i % 7 == 0
+                    ? String.format("map{(element*%d}", i)
+                    : String.format("map{(element*%d)}%%>%%filter{(element>%d)}", i, i)), results::add);
+            assertEquals(1000, results.size());
+            for (int i = 0; i < 1000; i++) {
+                String expected = i % 7 == 0
+                        ? FilterMapInterpreter.interpret(String.format("map{(element*%d}", i))
+                        : String.format("filter{((element*%d)>%d)}%%>%%map{(element*%d)}", i, i, i);
+                assertEquals(expected, results.get(i));
+            }
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
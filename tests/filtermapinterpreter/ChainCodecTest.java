@@ -0,0 +1,89 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidParameterException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChainCodecTest {
+
+    @Test
+    void roundTripTest() throws Exception {
+        String[] sources = {
+                "filter{(element>10)}%>%filter{(element<20)}",
+                "map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}",
+                "filter{((element*-3)=007)}%>%map{(element-99999999999999999999)}",
+                "map{(element-9223372036854775808)}",
+                "map{(element+\u0663)}%>%filter{(element>-\u0661\u0662)}",
+                "filter{(1=0)}"
+        };
+        for (String source : sources) {
+            NormalizedChain chain = FilterMapInterpreter.normalize(source);
+            byte[] plan = ChainCodec.encode(chain);
+            ByteBuffer buffer = ByteBuffer.wrap(plan);
+            assertEquals(chain.toString(), ChainCodec.decode(buffer).toString(), source);
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    void randomChainsTest() throws Exception {
+        Random random = new Random(5);
+        for (int q = 0; q < 200; q++) {
+            String source = WorkloadGenerator.builder(q).calls(random.nextInt(8) + 1).depth(random.nextInt(4) + 1)
+                    .constants(-1000, 1000).mapPercent(random.nextInt(101)).build().chain();
+            NormalizedChain chain = FilterMapInterpreter.normalize(source);
+            NormalizedChain decoded = ChainCodec.decode(ByteBuffer.wrap(ChainCodec.encode(chain)));
+            assertEquals(chain.toString(), decoded.toString(), source);
+            assertTrue(decoded.getGraph().size() <= chain.getGraph().size(), source);
+        }
+    }
+
+    @Test
+    void compactTest() throws Exception {
+        // Plan is linear in the number of distinct nodes, it is smaller than the source and much smaller than the result
+        String source = WorkloadGenerator.builder(11).calls(3000).depth(3).mapPercent(80).constants(-3, 3).build().chain();
+        NormalizedChain chain = FilterMapInterpreter.normalize(source);
+        byte[] plan = ChainCodec.encode(chain);
+        assertTrue(plan.length < 4 * chain.getGraph().size());
+        assertTrue(2L * plan.length < source.length());
+        assertTrue(ChainPrinter.length(chain) > 100L * plan.length);
+        NormalizedChain decoded = ChainCodec.decode(ByteBuffer.wrap(plan));
+        assertEquals(ChainPrinter.length(chain), ChainPrinter.length(decoded));
+    }
+
+    @Test
+    void errorsTest() throws Exception {
+        assertThrows(InvalidParameterException.class, () -> ChainCodec.encode(null));
+        assertThrows(InvalidParameterException.class, () -> ChainCodec.decode(null));
+        byte[] plan = ChainCodec.encode(FilterMapInterpreter.normalize("map{(element+10)}%>%filter{(element>10)}"));
+
+        byte[] version = plan.clone();
+        version[3] = 2;
+        PlanFormatException e = assertThrows(PlanFormatException.class, () -> ChainCodec.decode(ByteBuffer.wrap(version)));
+        assertEquals("Unsupported plan version 2!", e.getMessage());
+        byte[] magic = plan.clone();
+        magic[0] = 'X';
+        assertThrows(PlanFormatException.class, () -> ChainCodec.decode(ByteBuffer.wrap(magic)));
+        for (int length = 0; length < plan.length; length++) {
+            ByteBuffer truncated = ByteBuffer.wrap(plan, 0, length);
+            assertThrows(PlanFormatException.class, () -> ChainCodec.decode(truncated));
+        }
+
+        // Any corruption gives PlanFormatException or well-typed chain
+        Random random = new Random(3);
+        for (int q = 0; q < 2000; q++) {
+            byte[] corrupted = plan.clone();
+            corrupted[4 + random.nextInt(plan.length - 4)] = (byte) random.nextInt(256);
+            try {
+                NormalizedChain chain = ChainCodec.decode(ByteBuffer.wrap(corrupted));
+                assertEquals(OutputType.BOOLEAN, chain.getFilter().outputType);
+            } catch (PlanFormatException ignored) {
+                // expected for most corruptions
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChainParserTest {
+
+    @Test
+    void parseReaderTest() throws Exception {
+        String source = "map{(element+1)}%>%filter{(element>10)}%>%map{(element*element)}%>%filter{(element<1000)}";
+        String expected = FilterMapInterpreter.interpret(source);
+        assertEquals(expected, ChainParser.parse(new StringReader(source)).toString());
+
+        // Separators split between parts of the source
+        for (int size = 1; size < 8; size++) {
+            ChainParser parser = new ChainParser();
+            for (int i = 0; i < source.length(); i += size)
+                parser.append(source.substring(i, Math.min(source.length(), i + size)));
+            assertEquals(expected, parser.finish().toString());
+        }
+
+        // Channel in UTF-8
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, ChainParser.parse(Channels.newChannel(new ByteArrayInputStream(bytes))).toString());
+    }
+
+    @Test
+    void longChainTest() throws Exception {
+        // Source is read by small parts, merged map has one node per call
+        String source = String.join("%>%", Collections.nCopies(100000, "map{(element+1)}"));
+        Reader reader = new StringReader(source);
+        NormalizedChain chain = ChainParser.parse(reader);
+        assertEquals(100002, ExpressionGraph.topologicalOrder(chain.getMap()).size());
+        assertArrayEquals(new int[]{100000}, new Pipeline(chain).apply(new int[]{0}));
+    }
+
+    @Test
+    void blocksTest() {
+        // Empty blocks at the end are ignored like by String.split
+        assertEquals("filter{(1=1)}%>%map{1}", FilterMapInterpreter.interpret("map{1}%>%%>%"));
+        assertEquals("filter{(1=1)}%>%map{element}", FilterMapInterpreter.interpret("%>%%>%"));
+        assertEquals("filter{(1=1)}%>%map{element}", FilterMapInterpreter.interpret(" \t "));
+
+        // Other empty or blank blocks are errors
+        assertEquals("SYNTAX ERROR in 2 block: Cannot match to any call-expression!",
+                FilterMapInterpreter.interpret("map{1}%>%%>%map{2}"));
+        assertEquals("SYNTAX ERROR in 1 block: Cannot match to any call-expression!",
+                FilterMapInterpreter.interpret(" %>%"));
+        assertEquals("SYNTAX ERROR in 2 block: Cannot match to any call-expression!",
+                FilterMapInterpreter.interpret("map{1}%>%>%"));
+
+        // The first error is reported
+        assertEquals("TYPE ERROR in 2 block: Wrong type of operands!",
+                FilterMapInterpreter.interpret("map{1}%>%map{(1&2)}%>%map{(1}"));
+        assertThrows(InvalidTypeException.class, () -> FilterMapInterpreter.normalize("filter{1}"));
+        assertThrows(IllegalStateException.class, () -> {
+            ChainParser parser = new ChainParser();
+            parser.finish();
+            parser.append("map{1}");
+        });
+    }
+}
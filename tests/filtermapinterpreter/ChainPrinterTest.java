@@ -0,0 +1,104 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChainPrinterTest {
+
+    private static final String[] SOURCES = {
+            "",
+            "filter{(element>10)}%>%filter{(element<20)}",
+            "map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}",
+            "filter{((element>-5)|(element<-100))}%>%map{((element-1)*-1)}",
+            "map{(element+\u0663)}%>%filter{(element>-\u0661\u0662)}"
+    };
+
+    @Test
+    void printTest() throws Exception {
+        for (String source : SOURCES) {
+            NormalizedChain chain = FilterMapInterpreter.normalize(source);
+            String expected = chain.toString();
+            assertEquals(expected.length(), ChainPrinter.length(chain));
+
+            StringBuilder builder = new StringBuilder();
+            assertEquals(expected.length(), ChainPrinter.print(chain, builder, Long.MAX_VALUE));
+            assertEquals(expected, builder.toString());
+
+            StringWriter writer = new StringWriter();
+            ChainPrinter.print(chain, writer, expected.length());
+            assertEquals(expected, writer.toString());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            long written = ChainPrinter.print(chain, Channels.newChannel(bytes), expected.length());
+            assertEquals(expected, bytes.toString(StandardCharsets.UTF_8));
+            assertEquals(bytes.size(), written);
+        }
+    }
+
+    @Test
+    void largeOutputTest() throws Exception {
+        // Output is longer than the buffer, shared subexpressions are written at each use
+        NormalizedChain chain = FilterMapInterpreter.normalize(
+                String.join("%>%", Collections.nCopies(14, "map{((element*element)-17)}")));
+        String expected = chain.toString();
+        assertTrue(expected.length() > 100000);
+        StringWriter writer = new StringWriter();
+        assertEquals(expected.length(), ChainPrinter.print(chain, writer, Long.MAX_VALUE));
+        assertEquals(expected, writer.toString());
+
+        Random random = new Random(3);
+        StringBuilder source = new StringBuilder("map{element}");
+        for (int i = 0; i < 200; i++) {
+            int constant = random.nextInt(2000) - 1000;
+            if (random.nextBoolean())
+                source.append("%>%map{(element+").append(constant).append(")}");
+            else
+                source.append("%>%filter{(element>").append(random.nextBoolean() ? "element" : constant).append(")}");
+        }
+        chain = FilterMapInterpreter.normalize(source.toString());
+        StringBuilder builder = new StringBuilder();
+        ChainPrinter.print(chain, builder, Long.MAX_VALUE);
+        assertEquals(chain.toString(), builder.toString());
+    }
+
+    @Test
+    void budgetTest() throws Exception {
+        NormalizedChain chain = FilterMapInterpreter.normalize(SOURCES[2]);
+        long length = ChainPrinter.length(chain);
+        StringBuilder builder = new StringBuilder();
+        OutputLimitException e = assertThrows(OutputLimitException.class, () -> ChainPrinter.print(chain, builder, length - 1));
+        assertEquals(length, e.getLength());
+        assertEquals(0, builder.length());
+
+        // Doubling chain of 80 calls has more than 2^80 chars, it is rejected without traversal
+        NormalizedChain huge = FilterMapInterpreter.normalize(
+                String.join("%>%", Collections.nCopies(80, "map{(element*element)}")));
+        assertEquals(Long.MAX_VALUE, ChainPrinter.length(huge));
+        e = assertThrows(OutputLimitException.class, () -> ChainPrinter.print(huge, builder, 1 << 20));
+        assertEquals(Long.MAX_VALUE, e.getLength());
+        assertEquals(0, builder.length());
+    }
+
+    @Test
+    void interpretTest() throws Exception {
+        String[] sources = {SOURCES[2], "map{(element+1}", "filter{(element+1)}"};
+        for (String source : sources) {
+            for (boolean optimize : new boolean[]{false, true}) {
+                StringWriter writer = new StringWriter();
+                String expected = FilterMapInterpreter.interpret(source, optimize);
+                assertEquals(expected.length(), FilterMapInterpreter.interpret(source, optimize, writer, Long.MAX_VALUE));
+                assertEquals(expected, writer.toString());
+            }
+        }
+        assertThrows(OutputLimitException.class,
+                () -> FilterMapInterpreter.interpret(SOURCES[2], false, new StringBuilder(), 10));
+    }
+}
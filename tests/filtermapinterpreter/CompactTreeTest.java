@@ -0,0 +1,151 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactTreeTest {
+
+    private static final String ALPHABET = "(){}-+*<>=&|0123456789elmapfitr x"; // Chars inserted by mutations
+    private static final int[] INPUT = {-1000, -17, -3, -1, 0, 1, 2, 3, 5, 42, 99, 1000, Integer.MAX_VALUE};
+
+    @Test
+    void parseTest() throws Exception {
+        String[] calls = {"map{element}", "filter{(element>10)}", "map{(007+-0)}", "filter{((element*element)=(-5+element))}",
+                "map{(element+99999999999)}", "filter{((element<1)|(element>2))}"};
+        for (String call : calls) {
+            CompactTree tree = CompactTree.parse(call);
+            assertEquals(new ASTreeBuilder(call).build().toString(), tree.toString());
+            assertEquals(call, tree.toString());
+        }
+        assertEquals(1, CompactTree.parse("map{element}").size());
+        assertEquals(NodeType.FILTER_EXPRESSION, CompactTree.parse("filter{(1<2)}").getRootType());
+    }
+
+    @Test
+    void errorsTest() {
+        String[] calls = {"", "map", "map{", "map{element", "map{element}}", "map{(element+1}", "map{(element<1)}",
+                "filter{element}", "map{((element>1)+1)}", "map{(1 2)}", "map{(1(2)}", "filter{(element)}", "mop{1}"};
+        for (String call : calls) {
+            Exception expected = assertThrows(Exception.class, () -> new ASTreeBuilder(call).build());
+            Exception actual = assertThrows(Exception.class, () -> CompactTree.parse(call));
+            assertEquals(expected.getClass(), actual.getClass(), call);
+            assertEquals(expected.getMessage(), actual.getMessage(), call);
+        }
+    }
+
+    @Test
+    void chainTest() throws Exception {
+        List<CompactTree> calls = new ArrayList<>();
+        assertEquals(FilterMapInterpreter.interpret(""), CompactChain.of(calls).toString());
+        String source = "map{(element+4)}%>%filter{(element>2)}%>%map{(element*element)}%>%filter{(element<100)}";
+        for (String call : source.split("%>%"))
+            calls.add(CompactTree.parse(call));
+        CompactChain chain = CompactChain.of(calls);
+        assertEquals(FilterMapInterpreter.interpret(source), chain.toString());
+        assertArrayEquals(Pipeline.compile(source).apply(INPUT), chain.apply(INPUT));
+
+        // Map is stored once however many calls use it
+        assertEquals(6, chain.getMap().size());
+
+        // Constants out of integer range are rejected only if they are used
+        CompactChain unused = CompactChain.of(Arrays.asList(CompactTree.parse("map{(element+99999999999)}"),
+                CompactTree.parse("map{7}")));
+        assertArrayEquals(new int[]{7, 7}, unused.apply(new int[]{1, 2}));
+        CompactChain used = CompactChain.of(Collections.singletonList(CompactTree.parse("map{(element+99999999999)}")));
+        InvalidTypeException e = assertThrows(InvalidTypeException.class, () -> used.apply(INPUT));
+        assertEquals("Constant 99999999999 is out of integer range!", e.getMessage());
+    }
+
+    @Test
+    void deepNestingTest() throws Exception {
+        String left = String.join("", Collections.nCopies(200000, "(")) + "element"
+                + String.join("", Collections.nCopies(200000, "+1)"));
+        CompactTree tree = CompactTree.parse("map{" + left + "}");
+        assertEquals("map{" + left + "}", tree.toString());
+        assertEquals(400001, tree.size());
+        assertEquals(200005, tree.evaluate(5, new int[tree.size()]));
+    }
+
+    @Test
+    void randomTest() throws Exception {
+        Random random = new Random(14);
+        for (int i = 0; i < 3000; i++) {
+            List<String> sources = new ArrayList<>();
+            int count = 1 + random.nextInt(3);
+            for (int j = 0; j < count; j++)
+                sources.add(mutate(random, (random.nextBoolean() ? "map{" : "filter{") + expression(random, 0) + "}"));
+            List<CompactTree> calls = new ArrayList<>();
+            for (String source : sources) {
+                String expected;
+                try {
+                    expected = new ASTreeBuilder(source).build().toString();
+                } catch (InvalidSyntaxException | InvalidTypeException e) {
+                    expected = e.getMessage();
+                }
+                String actual;
+                try {
+                    CompactTree tree = CompactTree.parse(source);
+                    calls.add(tree);
+                    actual = tree.toString();
+                } catch (InvalidSyntaxException | InvalidTypeException e) {
+                    actual = e.getMessage();
+                }
+                assertEquals(expected, actual, source);
+            }
+            if (calls.size() < sources.size())
+                continue;
+            String source = String.join("%>%", sources);
+            CompactChain chain = CompactChain.of(calls);
+            assertEquals(FilterMapInterpreter.interpret(source), chain.toString(), source);
+            assertArrayEquals(Pipeline.compile(source).apply(INPUT), chain.apply(INPUT), source);
+        }
+    }
+
+    /**
+     * Generates random well-formed expression
+     *
+     * @param random generator
+     * @param depth  depth of the expression
+     * @return text of expression
+     */
+    private static String expression(Random random, int depth) {
+        int kind = random.nextInt(depth > 3 ? 2 : 5);
+        if (kind == 0)
+            return "element";
+        if (kind == 1)
+            return String.valueOf(random.nextInt(200) - 100);
+        return "(" + expression(random, depth + 1) + "+-*<>=&|".charAt(random.nextInt(8)) + expression(random, depth + 1) + ")";
+    }
+
+    /**
+     * Deletes, inserts or replaces a few random chars
+     *
+     * @param random generator
+     * @param source text to mutate
+     * @return mutated text
+     */
+    private static String mutate(Random random, String source) {
+        StringBuilder builder = new StringBuilder(source);
+        int mutations = random.nextInt(3);
+        for (int i = 0; i < mutations; i++) {
+            int position = random.nextInt(builder.length() + 1);
+            char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            int kind = random.nextInt(3);
+            if (kind == 0 && position < builder.length())
+                builder.deleteCharAt(position);
+            else if (kind == 1)
+                builder.insert(position, c);
+            else if (position < builder.length())
+                builder.setCharAt(position, c);
+        }
+        return builder.toString();
+    }
+}
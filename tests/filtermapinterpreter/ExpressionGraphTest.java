@@ -0,0 +1,75 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpressionGraphTest {
+
+    @Test
+    void hashConsingTest() throws Exception {
+        ExpressionGraph graph = new ExpressionGraph();
+        DagNode sum = graph.operation("+", graph.element(), graph.number("4"));
+        assertSame(sum, graph.operation("+", graph.element(), graph.number("4")));
+        assertNotSame(sum, graph.operation("+", graph.number("4"), graph.element()));
+        assertSame(sum, graph.get(sum.id));
+
+        // Children are created before parents
+        DagNode product = graph.operation("*", sum, sum);
+        assertTrue(product.left.id < product.id);
+        assertEquals("((element+4)*(element+4))", product.toString());
+        assertEquals(4, ExpressionGraph.topologicalOrder(product).size());
+
+        // Type checks
+        assertThrows(InvalidTypeException.class, () -> graph.operation("&", sum, sum));
+        assertThrows(InvalidTypeException.class, () -> graph.operation("/", sum, sum));
+    }
+
+    @Test
+    void substituteTest() throws Exception {
+        ExpressionGraph graph = new ExpressionGraph();
+        DagNode square = graph.operation("*", graph.element(), graph.element());
+        DagNode replacement = graph.operation("-", graph.element(), graph.number("1"));
+        DagNode result = graph.substitute(square, replacement);
+        assertEquals("((element-1)*(element-1))", result.toString());
+        assertSame(result.left, result.right);
+        assertSame(square, graph.substitute(square, graph.element()));
+
+        // Copy to another graph
+        ExpressionGraph other = new ExpressionGraph();
+        DagNode copy = other.importNode(result);
+        assertEquals(result.toString(), copy.toString());
+        assertSame(copy, other.importNode(result));
+    }
+
+    @Test
+    void linearMergeTest() throws Exception {
+        // Printed map has 2^40 ELEMENT nodes, but graph has one node per call
+        String source = String.join("%>%", Collections.nCopies(40, "map{(element*element)}"));
+        NormalizedChain chain = FilterMapInterpreter.normalize(source);
+        assertEquals(40, chain.getMap().id - chain.getGraph().element().id);
+        assertTrue(chain.getGraph().size() < 50);
+        assertEquals(41, ExpressionGraph.topologicalOrder(chain.getMap()).size());
+
+        // Evaluation of shared subexpressions: 3^(2^40) mod 2^32 = 1
+        Pipeline pipeline = new Pipeline(chain);
+        assertArrayEquals(new int[]{1, 0, 1}, pipeline.apply(new int[]{3, 0, -1}));
+    }
+
+    @Test
+    void normalizeTest() throws Exception {
+        // Identity map-call after another map-call
+        assertEquals("filter{(1=1)}%>%map{(element+1)}",
+                FilterMapInterpreter.interpret("map{(element+1)}%>%map{element}"));
+        assertEquals("filter{((element+1)>1)}%>%map{(element+1)}",
+                FilterMapInterpreter.interpret("map{(element+1)}%>%filter{(element>1)}%>%map{element}"));
+
+        // Filter and map share subexpression
+        NormalizedChain chain = FilterMapInterpreter.normalize("map{(element*2)}%>%filter{(element>3)}%>%map{(element+1)}");
+        assertEquals("filter{((element*2)>3)}%>%map{((element*2)+1)}", chain.toString());
+        assertSame(chain.getFilter().left, chain.getMap().left);
+    }
+}
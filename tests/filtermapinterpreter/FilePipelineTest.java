@@ -0,0 +1,68 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilePipelineTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void applyFileTest() throws Exception {
+        int[] input = new Random(17).ints(10007, -100, 100).toArray();
+        Path source = directory.resolve("input.bin");
+        Path target = directory.resolve("output.bin");
+        write(source, input);
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Pipeline pipeline = Pipeline.compile("map{(element*3)}%>%filter{(element>0)}%>%map{(element-1)}", mode);
+            int[] expected = pipeline.apply(input);
+            for (int windowSize : new int[]{1, 100, 4096, 20000}) {
+                assertEquals(expected.length, FilePipeline.apply(pipeline, source, target, windowSize));
+                assertArrayEquals(expected, read(target));
+            }
+        }
+
+        // Empty file
+        write(source, new int[0]);
+        assertEquals(0, FilePipeline.apply(Pipeline.compile(""), source, target));
+        assertEquals(0, Files.size(target));
+
+        // Partial element, existing output is not truncated
+        write(target, new int[]{1, 2});
+        Files.write(source, new byte[]{1, 2, 3});
+        assertThrows(EOFException.class, () -> FilePipeline.apply(Pipeline.compile(""), source, target));
+        assertArrayEquals(new int[]{1, 2}, read(target));
+
+        // Window size out of range, its bytes would overflow int
+        write(source, input);
+        assertThrows(InvalidParameterException.class, () -> FilePipeline.apply(Pipeline.compile(""), source, target, 0));
+        assertThrows(InvalidParameterException.class,
+                () -> FilePipeline.apply(Pipeline.compile(""), source, target, FilePipeline.MAX_WINDOW_SIZE + 1));
+        assertThrows(InvalidParameterException.class,
+                () -> FilePipeline.apply(Pipeline.compile(""), source, target, Integer.MAX_VALUE));
+    }
+
+    private static void write(Path path, int[] elements) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(elements.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(elements);
+        Files.write(path, buffer.array());
+    }
+
+    private static int[] read(Path path) throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        int[] elements = new int[buffer.remaining() / Integer.BYTES];
+        buffer.asIntBuffer().get(elements);
+        return elements;
+    }
+}
@@ -0,0 +1,62 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterOptimizerTest {
+
+    private static final String EXPENSIVE = "filter{((((element*element)+(element*3))-(element*7))>-100)}"; // Rarely fails
+    private static final String CHEAP = "filter{(element<10)}"; // Fails for most of skewed elements
+
+    @Test
+    void reorderTest() throws Exception {
+        int[] sample = skewed(1000, 1);
+        NormalizedChain chain = FilterMapInterpreter.normalize(EXPENSIVE + "%>%" + CHEAP + "%>%map{(element*2)}");
+        NormalizedChain reordered = FilterOptimizer.reorder(chain, sample);
+        assertEquals("filter{((element<10)&((((element*element)+(element*3))-(element*7))>-100))}%>%map{(element*2)}",
+                reordered.toString());
+        assertTrue(FilterOptimizer.expectedCost(reordered.getFilter(), sample)
+                < FilterOptimizer.expectedCost(chain.getFilter(), sample) / 3);
+
+        // Same results for any input
+        Pipeline before = new Pipeline(chain, ExecutionMode.INTERPRETED);
+        Pipeline after = new Pipeline(reordered, ExecutionMode.INTERPRETED);
+        int[] input = new Random(2).ints(10000, -1000, 1000).toArray();
+        assertArrayEquals(before.apply(input), after.apply(input));
+    }
+
+    @Test
+    void orderByCostTest() throws Exception {
+        NormalizedChain chain = FilterMapInterpreter.normalize(
+                "filter{((element*element)>element)}%>%filter{(element>0)}%>%filter{(element>0)}");
+        assertEquals(2, FilterOptimizer.conjuncts(chain.getFilter()).size());
+        // Empty sample: conjuncts are equally selective, cheaper one goes first
+        assertEquals("filter{((element>0)&((element*element)>element))}%>%map{element}",
+                FilterOptimizer.reorder(chain, new int[0]).toString());
+    }
+
+    @Test
+    void singleConjunctTest() throws Exception {
+        NormalizedChain chain = FilterMapInterpreter.normalize("filter{((element>0)|(element<-5))}");
+        assertSame(chain.getFilter(), FilterOptimizer.reorder(chain, new int[]{1, 2, 3}).getFilter());
+        assertEquals(1, FilterOptimizer.conjuncts(chain.getFilter()).size());
+    }
+
+    /**
+     * Generates elements, most of them are large and positive
+     *
+     * @param size number of elements
+     * @param seed seed of elements
+     * @return elements, 95% of them are in range [100, 1000), the rest are in range [-1000, 100)
+     */
+    private static int[] skewed(int size, long seed) {
+        Random random = new Random(seed);
+        int[] elements = new int[size];
+        for (int i = 0; i < size; i++)
+            elements[i] = random.nextInt(100) < 95 ? 100 + random.nextInt(900) : random.nextInt(1100) - 1000;
+        return elements;
+    }
+}
@@ -0,0 +1,50 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalChainTest {
+
+    @Test
+    void appendTest() throws Exception {
+        String[] calls = {"map{(element+4)}", "filter{(element>2)}", "map{(element*element)}", "filter{(element<100)}"};
+        IncrementalChain chain = IncrementalChain.empty();
+        assertEquals(FilterMapInterpreter.interpret(""), chain.toString());
+        StringBuilder source = new StringBuilder();
+        for (String call : calls) {
+            chain = chain.append(call);
+            if (source.length() > 0)
+                source.append("%>%");
+            source.append(call);
+            assertEquals(FilterMapInterpreter.interpret(source.toString()), chain.toString());
+        }
+        assertEquals(4, chain.size());
+
+        // Errors are numbered by position of the call
+        IncrementalChain last = chain;
+        InvalidSyntaxException e = assertThrows(InvalidSyntaxException.class, () -> last.append("map{(element+1}"));
+        assertEquals("SYNTAX ERROR in 5 block: Expected closing bracket ')'!", e.getMessage());
+        assertEquals(4, last.size());
+    }
+
+    @Test
+    void undoAndPrefixTest() throws Exception {
+        IncrementalChain empty = IncrementalChain.empty();
+        IncrementalChain first = empty.append("map{(element+1)}");
+        IncrementalChain second = first.append("filter{(element>0)}");
+        assertSame(first, second.undo());
+        assertSame(empty, second.prefix(0));
+        assertSame(empty, empty.undo());
+        assertThrows(InvalidParameterException.class, () -> second.prefix(3));
+
+        // Branches share the graph and do not affect each other
+        IncrementalChain branch = first.append("map{(element*2)}");
+        assertEquals("filter{((element+1)>0)}%>%map{(element+1)}", second.toString());
+        assertEquals("filter{(1=1)}%>%map{((element+1)*2)}", branch.toString());
+        assertSame(second.toNormalizedChain().getGraph(), branch.toNormalizedChain().getGraph());
+        assertSame(second.toNormalizedChain().getMap(), branch.toNormalizedChain().getMap().left);
+    }
+}
@@ -0,0 +1,133 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterpreterServerTest {
+
+    private static final String[] SOURCES = {
+            "map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}",
+            "filter{(element>0)}%>%filter{(element<0)}%>%map{(element*element)}",
+            "map{(element+1}",
+            "filter{(element+1)}",
+            "",
+            "filter{(element>10)}%>%filter{(element<20)}"
+    };
+
+    @Test
+    void serveTest() throws Exception {
+        StringBuilder input = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String source = SOURCES[i % SOURCES.length].replace("10", String.valueOf(i));
+            input.append(source).append('\n');
+            expected.add(FilterMapInterpreter.interpret(source));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (InterpreterServer server = new InterpreterServer(executor, 8, false)) {
+            StringWriter output = new StringWriter();
+            assertEquals(1000, server.serve(new StringReader(input.toString()), output));
+            assertEquals(String.join("\n", expected) + "\n", output.toString());
+            assertEquals(1000, server.getLatency().count());
+            assertTrue(server.getLatency().percentile(50) <= server.getLatency().percentile(99));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void socketTest(@TempDir Path directory) throws Exception {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("interpreter.sock"));
+        try (InterpreterServer server = new InterpreterServer(false)) {
+            Thread listener = new Thread(() -> {
+                try {
+                    server.listen(address);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            listener.start();
+
+            // All requests are sent before any answer is read
+            try (SocketChannel client = connect(address)) {
+                StringBuilder requests = new StringBuilder();
+                for (String source : SOURCES)
+                    requests.append(source).append('\n');
+                client.write(ByteBuffer.wrap(requests.toString().getBytes(StandardCharsets.UTF_8)));
+                client.shutdownOutput();
+                BufferedReader answers = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+                for (String source : SOURCES)
+                    assertEquals(FilterMapInterpreter.interpret(source), answers.readLine());
+                assertNull(answers.readLine());
+            }
+            server.close();
+            listener.join();
+            assertFalse(Files.exists(address.getPath()));
+        }
+    }
+
+    @Test
+    void closedTest() throws Exception {
+        // Requests are not submitted to the executor that is shut down by close()
+        InterpreterServer server = new InterpreterServer(false);
+        server.close();
+        StringWriter output = new StringWriter();
+        assertEquals(0, server.serve(new StringReader(SOURCES[0] + "\n" + SOURCES[1] + "\n"), output));
+        assertEquals("", output.toString());
+    }
+
+    @Test
+    void histogramTest() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.percentile(50));
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000L);
+        assertEquals(1000, histogram.count());
+        assertEquals(500000, histogram.percentile(50), 500000 * 0.04);
+        assertEquals(990000, histogram.percentile(99), 990000 * 0.04);
+        histogram.reset();
+        histogram.record(10);
+        assertEquals(10, histogram.percentile(100));
+    }
+
+    /**
+     * Connects to the socket, waits until server listens to it
+     *
+     * @param address address of the socket
+     * @return connected channel
+     * @throws Exception if server does not listen for a second
+     */
+    private static SocketChannel connect(UnixDomainSocketAddress address) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            SocketChannel client = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                client.connect(address);
+                return client;
+            } catch (IOException e) {
+                client.close();
+                if (attempt == 100)
+                    throw e;
+                Thread.sleep(10);
+            }
+        }
+    }
+}
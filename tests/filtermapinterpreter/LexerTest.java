@@ -0,0 +1,77 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexerTest {
+
+    @Test
+    void tokensTest() {
+        Lexer lexer = new Lexer("map{((element-5)*-12)}");
+        List<TokenType> types = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        while (lexer.type() != TokenType.END) {
+            types.add(lexer.type());
+            texts.add(lexer.text());
+            lexer.next();
+        }
+        assertEquals(List.of(TokenType.MAP, TokenType.LEFT_BRACE, TokenType.LEFT_PARENTHESIS,
+                TokenType.LEFT_PARENTHESIS, TokenType.ELEMENT, TokenType.OPERATOR, TokenType.NUMBER,
+                TokenType.RIGHT_PARENTHESIS, TokenType.OPERATOR, TokenType.NUMBER, TokenType.RIGHT_PARENTHESIS,
+                TokenType.RIGHT_BRACE), types);
+        assertEquals(List.of("map", "{", "(", "(", "element", "-", "5", ")", "*", "-12", ")", "}"), texts);
+
+        // Spans of tokens
+        lexer = new Lexer("filter{x}");
+        assertEquals(0, lexer.start());
+        assertEquals(6, lexer.end());
+        lexer.next();
+        lexer.next();
+        assertEquals(TokenType.UNKNOWN, lexer.type());
+        assertEquals('x', lexer.current());
+        assertEquals(8, lexer.end());
+
+        // Empty source
+        lexer = new Lexer(null);
+        assertEquals(TokenType.END, lexer.type());
+        lexer.next();
+        assertEquals(TokenType.END, lexer.type());
+        assertEquals('\0', lexer.current());
+    }
+
+    @Test
+    void numbersTest() {
+        Lexer lexer = new Lexer("2147483647");
+        assertTrue(lexer.isInt());
+        assertEquals(Integer.MAX_VALUE, lexer.intValue());
+
+        lexer = new Lexer("-2147483648");
+        assertTrue(lexer.isInt());
+        assertEquals(Integer.MIN_VALUE, lexer.intValue());
+
+        lexer = new Lexer("2147483648");
+        assertFalse(lexer.isInt());
+        lexer = new Lexer("-99999999999999999999999");
+        assertFalse(lexer.isInt());
+        assertEquals("-99999999999999999999999", lexer.text());
+
+        // Text is kept as in source
+        assertEquals("007", new Lexer("007").text());
+        assertEquals("-0", new Lexer("-0").text());
+        assertSame(new Lexer("42").text(), new Lexer("42").text());
+
+        // Minus after operand is operator
+        lexer = new Lexer("1-2");
+        lexer.next();
+        assertEquals(TokenType.OPERATOR, lexer.type());
+        lexer = new Lexer("--2");
+        assertEquals(TokenType.OPERATOR, lexer.type());
+        lexer.next();
+        assertEquals(TokenType.NUMBER, lexer.type());
+        assertEquals(-2, lexer.intValue());
+    }
+}
@@ -0,0 +1,124 @@
+package filtermapinterpreter;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @AfterEach
+    void disable() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    void disabledTest() {
+        Metrics.reset();
+        FilterMapInterpreter.interpret("filter{(element>10)}%>%map{(element*element)}");
+        assertEquals(0, Metrics.counter(Metrics.INTERPRET_REQUESTS));
+        assertEquals(0, Metrics.histogram(Metrics.INTERPRET_TIME).count());
+    }
+
+    @Test
+    void interpretTest() {
+        Metrics.reset();
+        Metrics.setEnabled(true);
+        FilterMapInterpreter.interpret("map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}");
+        FilterMapInterpreter.interpret("map{(element+1}");
+        assertEquals(2, Metrics.counter(Metrics.INTERPRET_REQUESTS));
+        assertEquals(1, Metrics.counter(Metrics.INTERPRET_ERRORS));
+        assertEquals(1, Metrics.counter(Metrics.PARSE_ERRORS));
+        assertEquals(2, Metrics.histogram(Metrics.INTERPRET_TIME).count());
+        assertEquals(3, Metrics.histogram(Metrics.PARSE_NODES).count());
+        assertEquals(3, Metrics.histogram(Metrics.PARSE_NODES).percentile(100));
+        assertEquals(1, Metrics.histogram(Metrics.MERGE_NODES).count());
+        // filter{((element+10)>10)}%>%map{((element+10)*(element+10))}: 5 distinct nodes, 12 printed
+        assertEquals(240, Metrics.histogram(Metrics.MERGE_EXPANSION).percentile(100), 240 * 0.04);
+        assertEquals(1, Metrics.histogram(Metrics.PRINT_TIME).count());
+        assertTrue(Metrics.report().contains(Metrics.INTERPRET_REQUESTS + ": 2\n"));
+    }
+
+    @Test
+    void outputLimitTest() throws Exception {
+        Metrics.reset();
+        Metrics.setEnabled(true);
+        StringBuilder output = new StringBuilder();
+        assertThrows(OutputLimitException.class, () -> FilterMapInterpreter.interpret("filter{(element>10)}", false, output, 5));
+        FilterMapInterpreter.interpret("filter{(element>10)}", false, output, Long.MAX_VALUE);
+        assertEquals(2, Metrics.counter(Metrics.INTERPRET_REQUESTS));
+        assertEquals(1, Metrics.counter(Metrics.INTERPRET_ERRORS));
+        assertEquals(2, Metrics.histogram(Metrics.INTERPRET_TIME).count());
+    }
+
+    @Test
+    void evaluateTest() throws Exception {
+        Pipeline pipeline = Pipeline.compile("filter{(element>10)}%>%map{(element*element)}");
+        Metrics.reset();
+        Metrics.setEnabled(true);
+        assertArrayEquals(new int[]{121, 144}, pipeline.apply(new int[]{5, 11, 12, 10}));
+        assertEquals(4, Metrics.counter(Metrics.EVALUATE_ELEMENTS));
+        assertEquals(2, Metrics.counter(Metrics.EVALUATE_RESULTS));
+        assertEquals(1, Metrics.histogram(Metrics.EVALUATE_TIME).count());
+    }
+
+    @Test
+    void rebuildTest() throws Exception {
+        ArrayList<ASTree> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            calls.add(new ASTreeBuilder("map{(element*element)}").build());
+        Metrics.reset();
+        Metrics.setEnabled(true);
+        ASTreeBuilder.rebuildToFilterMap(calls);
+        assertEquals(1, Metrics.histogram(Metrics.MERGE_NODES).count());
+        // Each call is shared by both operands of the next one: 2 elements and 3 operators, 15 printed nodes
+        assertEquals(5, Metrics.histogram(Metrics.MERGE_NODES).percentile(100));
+        assertEquals(300, Metrics.histogram(Metrics.MERGE_EXPANSION).percentile(100), 300 * 0.04);
+    }
+
+    @Test
+    void treeSizeTest() throws Exception {
+        NormalizedChain chain = FilterMapInterpreter.normalize(
+                "map{(element*element)}%>%map{(element*element)}%>%map{(element*element)}");
+        assertEquals(15, ExpressionGraph.treeSize(chain.getMap()));
+        assertEquals(4, ExpressionGraph.topologicalOrder(chain.getMap()).size());
+    }
+
+    @Test
+    void recordingTest(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("interpreter.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"Interpret", "Parse", "Merge", "Print", "Evaluate"})
+                recording.enable("filtermapinterpreter." + name).withoutThreshold();
+            recording.start();
+            Pipeline pipeline = Pipeline.compile("filter{(element>10)}", false);
+            FilterMapInterpreter.interpret("map{(element+10)}%>%filter{(element>10)}");
+            pipeline.apply(new int[]{1, 20});
+            recording.stop();
+            recording.dump(file);
+        }
+        Map<String, RecordedEvent> events = new HashMap<>();
+        // The last event of each type is kept, events are recorded by one thread in order
+        for (RecordedEvent event : RecordingFile.readAllEvents(file))
+            events.put(event.getEventType().getName(), event);
+        RecordedEvent interpret = events.get("filtermapinterpreter.Interpret");
+        assertNotNull(interpret);
+        assertFalse(interpret.getBoolean("error"));
+        assertEquals("filter", events.get("filtermapinterpreter.Parse").getString("callType"));
+        assertEquals(2, events.get("filtermapinterpreter.Merge").getInt("calls"));
+        assertNotNull(events.get("filtermapinterpreter.Print"));
+        RecordedEvent evaluate = events.get("filtermapinterpreter.Evaluate");
+        assertEquals("INTERPRETED", evaluate.getString("mode"));
+        assertEquals(1, evaluate.getInt("results"));
+    }
+}
@@ -0,0 +1,53 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelPipelineTest {
+
+    @Test
+    void parallelMatchesSequentialTest() throws Exception {
+        String[] chains = {
+                "",
+                "filter{(element>0)}",
+                "filter{(element<element)}",
+                "map{(element*3)}%>%filter{((element>100)|(element<-1000))}%>%map{(element-1)}"
+        };
+        int[] input = new Random(5).ints(100003, -2000, 2000).toArray();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String chain : chains) {
+                for (ExecutionMode mode : ExecutionMode.values()) {
+                    Pipeline pipeline = Pipeline.compile(chain, mode);
+                    int[] expected = pipeline.apply(input);
+                    for (int chunkSize : new int[]{1, 1000, 4096, 200000}) {
+                        ParallelPipeline parallel = new ParallelPipeline(pipeline, pool, chunkSize);
+                        assertArrayEquals(expected, parallel.apply(input), chain);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void applyRangeTest() throws Exception {
+        ParallelPipeline parallel = new ParallelPipeline(Pipeline.compile("filter{(element>2)}%>%map{(element*10)}"),
+                ForkJoinPool.commonPool(), 2);
+        int[] input = {5, 1, 3, 2, 4, 0, 7, 9};
+        int[] output = {-1, -1, -1, -1, -1, -1, -1, -1};
+        assertEquals(3, parallel.apply(input, 1, 7, output, 2));
+        assertArrayEquals(new int[]{-1, -1, 30, 40, 70}, Arrays.copyOf(output, 5));
+
+        assertThrows(InvalidParameterException.class, () -> parallel.apply(input, 0, 8, output, 1));
+        assertThrows(InvalidParameterException.class,
+                () -> new ParallelPipeline(parallel.getPipeline(), ForkJoinPool.commonPool(), 0));
+    }
+}
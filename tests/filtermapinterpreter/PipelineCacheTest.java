@@ -0,0 +1,92 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineCacheTest {
+
+    @Test
+    void interpretTest() throws Exception {
+        PipelineCache cache = new PipelineCache(10, 1000);
+        String source = "map{(element+1)}%>%filter{(element>1)}";
+        assertEquals(FilterMapInterpreter.interpret(source), cache.interpret(source));
+        assertEquals(FilterMapInterpreter.interpret(source), cache.interpret(source));
+        assertSame(cache.normalize(source), cache.normalize(source));
+        int nodes = cache.normalize(source).getGraph().size();
+        assertSame(cache.compile(source), cache.compile(source));
+        assertArrayEquals(new int[]{2, 3}, cache.compile(source).apply(new int[]{0, 1, 2}));
+
+        // Pipeline is built on the copy, so the shared graph does not grow, and its nodes are weighted
+        Pipeline pipeline = cache.compile(source);
+        assertNotSame(cache.normalize(source).getGraph(), pipeline.getChain().getGraph());
+        assertEquals(nodes, cache.normalize(source).getGraph().size());
+        assertEquals(source.length() + cache.interpret(source).length() + pipeline.getChain().getGraph().size(),
+                cache.weight());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(11, cache.getHitCount());
+
+        // Errors are cached with the same messages
+        assertEquals("SYNTAX ERROR in 1 block: Expected opening bracket '{'!",
+                cache.interpret("map(element+1)"));
+        assertEquals(FilterMapInterpreter.interpret("filter{(1+2)}"), cache.interpret("filter{(1+2)}"));
+        InvalidTypeException e = assertThrows(InvalidTypeException.class, () -> cache.compile("filter{(1+2)}"));
+        assertEquals(cache.interpret("filter{(1+2)}"), e.getMessage());
+        assertThrows(InvalidSyntaxException.class, () -> cache.normalize("map(element+1)"));
+    }
+
+    @Test
+    void evictionTest() {
+        PipelineCache cache = new PipelineCache(2, 1000);
+        cache.interpret("filter{(element>1)}");
+        cache.interpret("filter{(element>2)}");
+        cache.interpret("filter{(element>1)}");
+        cache.interpret("filter{(element>3)}");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        // Least recently used chain was evicted
+        cache.interpret("filter{(element>1)}");
+        assertEquals(2, cache.getHitCount());
+        cache.interpret("filter{(element>2)}");
+        assertEquals(4, cache.getMissCount());
+
+        // Weight bound
+        PipelineCache small = new PipelineCache(100, 80);
+        small.interpret("filter{(element>1)}");
+        small.interpret("filter{(element>2)}");
+        assertEquals(1, small.size());
+        assertTrue(small.weight() <= 80);
+        small.interpret(String.join("%>%", Collections.nCopies(10, "map{(element+1)}")));
+        assertEquals(1, small.size());
+    }
+
+    @Test
+    void concurrentTest() throws Exception {
+        PipelineCache cache = new PipelineCache(8, 100000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String source = String.format("map{(element*%d)}%%>%%filter{(element>%d)}", i % 16, i % 3);
+                results.add(executor.submit(() -> cache.compile(source).toString()));
+            }
+            for (int i = 0; i < 1000; i++) {
+                Pipeline expected = Pipeline.compile(String.format("map{(element*%d)}%%>%%filter{(element>%d)}", i % 16, i % 3));
+                assertEquals(expected.toString(), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1000, cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.size() <= 8);
+    }
+}
@@ -0,0 +1,268 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineTest {
+
+    @Test
+    void applyArrayTest() throws Exception {
+        int[] input = {-3, -2, -1, 0, 1, 2, 3, 4};
+
+        // Default calls
+        Pipeline pipeline = Pipeline.compile("");
+        assertArrayEquals(input, pipeline.apply(input));
+
+        // Only filter
+        pipeline = Pipeline.compile("filter{(element>0)}");
+        assertArrayEquals(new int[]{1, 2, 3, 4}, pipeline.apply(input));
+
+        // Only map
+        pipeline = Pipeline.compile("map{(element*element)}");
+        assertArrayEquals(new int[]{9, 4, 1, 0, 1, 4, 9, 16}, pipeline.apply(input));
+
+        // Merged maps and filters
+        pipeline = Pipeline.compile("map{(element+4)}%>%map{(element*4)}%>%filter{(element>2)}");
+        assertArrayEquals(new int[]{4, 8, 12, 16, 20, 24, 28, 32}, pipeline.apply(input));
+
+        pipeline = Pipeline.compile("filter{((element<0)|(element=4))}%>%map{(1-element)}%>%filter{(element>2)}");
+        assertArrayEquals(new int[]{4, 3}, pipeline.apply(input));
+
+        pipeline = Pipeline.compile("filter{((element>-2)&(element<2))}%>%map{-7}");
+        assertArrayEquals(new int[]{-7, -7, -7}, pipeline.apply(input));
+    }
+
+    @Test
+    void applyStreamAndBufferTest() throws Exception {
+        Pipeline pipeline = Pipeline.compile("filter{(element>1)}%>%map{(element-1)}");
+        int[] input = {1, 2, 3, 4};
+        assertArrayEquals(new int[]{1, 2, 3}, pipeline.apply(IntStream.of(input)).toArray());
+
+        // Heap buffers
+        IntBuffer in = IntBuffer.wrap(input);
+        IntBuffer out = IntBuffer.allocate(4);
+        assertEquals(3, pipeline.apply(in, out));
+        assertFalse(in.hasRemaining());
+        assertEquals(3, out.position());
+
+        // Read-only buffer without accessible array, output limited by its capacity
+        in = IntBuffer.wrap(input).asReadOnlyBuffer();
+        out = IntBuffer.allocate(2);
+        assertEquals(2, pipeline.apply(in, out));
+        assertEquals(1, in.remaining());
+        assertArrayEquals(new int[]{1, 2}, out.array());
+    }
+
+    @Test
+    void compiledMatchesInterpretedTest() throws Exception {
+        String[] chains = {
+                "filter{(element>0)}",
+                "map{(element*-3)}%>%filter{((element<7)|(element=300))}%>%map{(element-2147483647)}",
+                "filter{(((element>-100000)&(element<100000))|(0>element))}%>%map{((element*element)+40000)}",
+                "map{(1000000*element)}%>%filter{((element=0)|((element>-5)&(element<5)))}"
+        };
+        int[] input = new Random(7).ints(10000).toArray();
+        input[0] = Integer.MIN_VALUE;
+        input[1] = Integer.MAX_VALUE;
+        input[2] = 0;
+        for (String chain : chains) {
+            int[] interpreted = Pipeline.compile(chain, false).apply(input);
+            int[] compiled = Pipeline.compile(chain, true).apply(input);
+            assertArrayEquals(interpreted, compiled, chain);
+        }
+    }
+
+    @Test
+    void vectorizedMatchesInterpretedTest() throws Exception {
+        String[] chains = {
+                "filter{(element>0)}",
+                "map{7}",
+                "filter{(element<element)}",
+                "map{(element*-3)}%>%filter{((element<7)|(element=300))}%>%map{(element-2147483647)}",
+                "filter{(((element>-100000)&(element<100000))|(0>element))}%>%map{((element*element)+40000)}",
+                "map{(element*element)}%>%filter{((element>3)&(5<7))}%>%map{(1-element)}"
+        };
+        Random random = new Random(11);
+        for (int size : new int[]{0, 1, 15, 1023, 1024, 5003}) {
+            int[] input = random.ints(size, -10, 10).toArray();
+            for (String chain : chains) {
+                int[] interpreted = Pipeline.compile(chain, ExecutionMode.INTERPRETED).apply(input);
+                int[] vectorized = Pipeline.compile(chain, ExecutionMode.VECTORIZED).apply(input);
+                assertArrayEquals(interpreted, vectorized, chain);
+            }
+        }
+    }
+
+    @Test
+    void vectorizedWithoutModuleTest() throws Exception {
+        // JVM without jdk.incubator.vector falls back to the compiled loop instead of failing to link
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        String classPath = Path.of(Pipeline.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                + File.pathSeparator
+                + Path.of(WithoutVectorApi.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Process process = new ProcessBuilder(java.toString(), "-cp", classPath, WithoutVectorApi.class.getName())
+                .redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes()).trim();
+        assertEquals(0, process.waitFor(), output);
+        assertEquals("COMPILED [4, 9]", output);
+    }
+
+    /**
+     * Program run by JVM without Vector API module
+     */
+    static final class WithoutVectorApi {
+
+        public static void main(String[] args) throws Exception {
+            Pipeline pipeline = Pipeline.compile("filter{(element>1)}%>%map{(element*element)}", ExecutionMode.VECTORIZED);
+            System.out.println(pipeline.getMode() + " " + Arrays.toString(pipeline.apply(new int[]{1, 2, 3})));
+        }
+    }
+
+    @Test
+    void selectionMatchesApplyTest() throws Exception {
+        String[] chains = {
+                "",
+                "filter{(element<element)}",
+                "filter{((element>-3)&(element<4))}%>%map{(element*element)}",
+                "map{(element*-3)}%>%filter{((element<7)|(element=300))}%>%map{(element-2147483647)}",
+                "map{(element*element)}%>%filter{((element>3)&(5<7))}%>%map{(1-element)}"
+        };
+        Random random = new Random(13);
+        for (int size : new int[]{0, 1, 63, 64, 65, 1000}) {
+            int[] input = random.ints(size + 10, -10, 10).toArray();
+            for (String chain : chains) {
+                for (ExecutionMode mode : ExecutionMode.values()) {
+                    Pipeline pipeline = Pipeline.compile(chain, mode);
+                    int[] expected = new int[size];
+                    int count = pipeline.apply(input, 5, size + 5, expected, 0);
+
+                    // Selection vector, then map of selected elements
+                    int[] selection = new int[size + 2];
+                    assertEquals(count, pipeline.select(input, 5, size + 5, selection, 2));
+                    for (int i = 0; i < count; i++)
+                        assertTrue(pipeline.getFilter().test(input[selection[i + 2]]), chain);
+                    int[] output = new int[count + 1];
+                    assertEquals(count, pipeline.mapSelected(input, selection, 2, count + 2, output, 1));
+                    for (int i = 0; i < count; i++)
+                        assertEquals(expected[i], output[i + 1], chain);
+
+                    // Bitmap is cleared before filter, then converted to the same selection
+                    long[] words = new long[(size + 63) / 64 + 1];
+                    Arrays.fill(words, -1);
+                    pipeline.bitmap(input, 5, size + 5, words);
+                    assertArrayEquals(pipeline.bitmap(input, 5, size + 5), Arrays.copyOf(words, (size + 63) / 64));
+                    int[] converted = new int[size];
+                    assertEquals(count, Pipeline.toSelection(words, size, 5, converted, 0));
+                    assertArrayEquals(Arrays.copyOfRange(selection, 2, count + 2), Arrays.copyOf(converted, count));
+                    for (int j = size; j < 64 * ((size + 63) / 64); j++)
+                        assertEquals(0, (words[j / 64] >>> j) & 1);
+                }
+            }
+        }
+        Pipeline pipeline = Pipeline.compile("filter{(element>0)}");
+        assertThrows(InvalidParameterException.class, () -> pipeline.select(new int[4], 0, 4, new int[3], 0));
+        assertThrows(InvalidParameterException.class, () -> pipeline.bitmap(new int[65], 0, 65, new long[1]));
+        assertThrows(InvalidParameterException.class, () -> Pipeline.toSelection(new long[1], 65, 0, new int[65], 0));
+    }
+
+    @Test
+    void compilationFallbackTest() throws Exception {
+        // Merged expression has 2^16 ELEMENT leaves and does not fit to one JVM method
+        String chain = String.join("%>%", Collections.nCopies(16, "map{((element+element)-1)}"));
+        int[] input = {0, 1, 2, -3};
+        assertArrayEquals(Pipeline.compile(chain, false).apply(input), Pipeline.compile(chain, true).apply(input));
+    }
+
+    @Test
+    void largeLoopFallbackTest() throws Exception {
+        // Expression fits to one JVM method but not to 16-bit jump offsets of the compiled loops
+        String chain = "map{" + sum(1, 6000) + "}";
+        NormalizedChain normalized = FilterMapInterpreter.normalize(chain);
+        assertEquals("Loop is too large to compile!", assertThrows(UnsupportedOperationException.class,
+                () -> BytecodeCompiler.compileKernel(normalized.getFilter(), normalized.getMap())).getMessage());
+        assertEquals("Loop is too large to compile!", assertThrows(UnsupportedOperationException.class,
+                () -> BytecodeCompiler.compileSelectionKernel(normalized.getFilter(), normalized.getMap())).getMessage());
+        int[] input = {0, 1, 2, -3};
+        int[] expected = new Pipeline(normalized, ExecutionMode.INTERPRETED).apply(input);
+        assertArrayEquals(new int[]{0, 18003000, 36006000, -54009000}, expected);
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Pipeline pipeline = new Pipeline(normalized, mode);
+            assertArrayEquals(expected, pipeline.apply(input));
+            int[] selection = new int[input.length];
+            assertEquals(input.length, pipeline.select(input, 0, input.length, selection, 0));
+            int[] output = new int[input.length];
+            assertEquals(input.length, pipeline.mapSelected(input, selection, 0, input.length, output, 0));
+            assertArrayEquals(expected, output);
+        }
+    }
+
+    /**
+     * Builds balanced sum of (element*k) for k in [from, to]
+     *
+     * @param from first multiplier
+     * @param to   last multiplier
+     * @return expression by test case grammar
+     */
+    private static String sum(int from, int to) {
+        if (from == to)
+            return "(element*" + from + ")";
+        int middle = (from + to) / 2;
+        return "(" + sum(from, middle) + "+" + sum(middle + 1, to) + ")";
+    }
+
+    @Test
+    void deepChainTest() throws Exception {
+        // Expression is nested too deep for recursive compiler and closures, so it is evaluated by plan
+        String chain = String.join("%>%", Collections.nCopies(20000, "map{((element*element)+1)}"))
+                + "%>%filter{(element>3)}";
+        NormalizedChain normalized = FilterMapInterpreter.normalize(chain);
+        int[] input = {-1, 0, 1, 2, 5};
+        int[] expected = new int[input.length];
+        int count = 0;
+        for (int element : input) {
+            int value = element;
+            for (int i = 0; i < 20000; i++)
+                value = value * value + 1;
+            if (value > 3)
+                expected[count++] = value;
+        }
+        expected = Arrays.copyOf(expected, count);
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Pipeline pipeline = new Pipeline(normalized, mode);
+            assertEquals(ExecutionMode.INTERPRETED, pipeline.getMode());
+            assertArrayEquals(expected, pipeline.apply(input));
+            assertArrayEquals(expected, pipeline.apply(IntStream.of(input)).toArray());
+            assertArrayEquals(expected, pipeline.apply(IntStream.of(input).parallel()).toArray());
+            assertEquals(5000, pipeline.apply(IntStream.iterate(0, element -> element + 1)).limit(5000).count());
+
+            // Stages and buffers without array are evaluated by blocks of the plan
+            int[] selection = new int[input.length];
+            assertEquals(count, pipeline.select(input, 0, input.length, selection, 0));
+            assertArrayEquals(new long[]{0b10101}, pipeline.bitmap(input, 0, input.length));
+            int[] output = new int[count];
+            assertEquals(count, pipeline.mapSelected(input, selection, 0, count, output, 0));
+            assertArrayEquals(expected, output);
+            IntBuffer results = IntBuffer.allocate(input.length);
+            assertEquals(count, pipeline.apply(IntBuffer.wrap(input).asReadOnlyBuffer(), results));
+            assertArrayEquals(expected, Arrays.copyOf(results.array(), count));
+        }
+    }
+
+    @Test
+    void compileErrorTest() {
+        assertThrows(InvalidSyntaxException.class, () -> Pipeline.compile("map{(1*)}"));
+        assertThrows(InvalidTypeException.class, () -> Pipeline.compile("filter{(1+2)}"));
+        assertThrows(InvalidTypeException.class, () -> Pipeline.compile("map{(element+99999999999)}"));
+    }
+}
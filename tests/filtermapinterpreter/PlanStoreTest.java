@@ -0,0 +1,190 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanStoreTest {
+
+    private static final String[] SOURCES = {
+            "map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}",
+            "filter{(element>0)}%>%filter{(element<0)}%>%map{(element*element)}",
+            "filter{(element>10)}%>%filter{(element<20)}",
+            "map{(element-1)}%>%map{(element*element)}%>%map{(element*element)}",
+            "map{(element+\u0663)}%>%filter{(element>\u0661\u0660)}"
+    };
+
+    @Test
+    void reopenTest(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("plans.bin");
+        try (PlanStore store = PlanStore.open(path)) {
+            for (String source : SOURCES)
+                assertEquals(FilterMapInterpreter.normalize(source).toString(), store.normalize(source).toString());
+            assertEquals(SOURCES.length, store.size());
+            assertEquals(SOURCES.length, store.getMissCount());
+            // Written records are read without reopening
+            assertEquals(FilterMapInterpreter.normalize(SOURCES[0]).toString(), store.get(SOURCES[0]).toString());
+            assertEquals(1, store.getHitCount());
+            assertNull(store.get("filter{(element>11)}"));
+        }
+        long length = Files.size(path);
+        try (PlanStore store = PlanStore.open(path)) {
+            assertEquals(SOURCES.length, store.size());
+            for (String source : SOURCES)
+                assertEquals(FilterMapInterpreter.normalize(source).toString(), store.normalize(source).toString());
+            assertEquals(SOURCES.length, store.getHitCount());
+            assertEquals(0, store.getMissCount());
+            assertEquals(length, store.length());
+        }
+        assertEquals(length, Files.size(path));
+    }
+
+    @Test
+    void errorsInSourceTest(@TempDir Path directory) throws Exception {
+        try (PlanStore store = PlanStore.open(directory.resolve("plans.bin"))) {
+            assertThrows(InvalidSyntaxException.class, () -> store.normalize("map{(element+1}"));
+            assertThrows(com.sun.jdi.InvalidTypeException.class, () -> store.normalize("filter{(element+1)}"));
+            assertEquals(0, store.size());
+            assertThrows(InvalidParameterException.class, () -> store.get(null));
+            assertThrows(InvalidParameterException.class, () -> store.put("", null));
+        }
+        assertThrows(InvalidParameterException.class, () -> PlanStore.open(null));
+    }
+
+    @Test
+    void truncatedTest(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("plans.bin");
+        long[] ends = new long[SOURCES.length];
+        try (PlanStore store = PlanStore.open(path)) {
+            for (int i = 0; i < SOURCES.length; i++) {
+                store.normalize(SOURCES[i]);
+                ends[i] = store.length();
+            }
+        }
+        // Crash while writing the last record
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(ends[SOURCES.length - 1] - 3);
+        }
+        try (PlanStore store = PlanStore.open(path)) {
+            assertEquals(SOURCES.length - 1, store.size());
+            assertEquals(ends[SOURCES.length - 2], store.length());
+            assertNull(store.get(SOURCES[SOURCES.length - 1]));
+            assertNotNull(store.get(SOURCES[0]));
+            store.normalize(SOURCES[SOURCES.length - 1]);
+            assertEquals(ends[SOURCES.length - 1], store.length());
+        }
+        try (PlanStore store = PlanStore.open(path)) {
+            assertEquals(SOURCES.length, store.size());
+        }
+    }
+
+    @Test
+    void corruptedTest(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("plans.bin");
+        long start;
+        try (PlanStore store = PlanStore.open(path)) {
+            start = store.length();
+            store.normalize(SOURCES[0]);
+        }
+        // Last byte of the plan is changed, so the record has wrong checksum
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, channel.size() - 5);
+            b.put(0, (byte) (b.get(0) ^ 1));
+            channel.write(b.flip(), channel.size() - 5);
+        }
+        try (PlanStore store = PlanStore.open(path)) {
+            assertThrows(PlanFormatException.class, () -> store.get(SOURCES[0]));
+            assertEquals(FilterMapInterpreter.interpret(SOURCES[0]), FilterMapInterpreter.interpret(SOURCES[0], false, store));
+            assertNotNull(store.get(SOURCES[0]));
+            assertTrue(store.length() > 2 * (start - 8));
+        }
+
+        Path other = directory.resolve("other.bin");
+        Files.write(other, new byte[]{'F', 'M', 'P', 'S', 0, 0, 0, 2});
+        PlanFormatException e = assertThrows(PlanFormatException.class, () -> PlanStore.open(other));
+        assertEquals("Unsupported plan store version 2!", e.getMessage());
+        Files.write(other, "filter{(element>0)}".getBytes());
+        assertThrows(PlanFormatException.class, () -> PlanStore.open(other));
+    }
+
+    @Test
+    void collisionTest(@TempDir Path directory) throws Exception {
+        // Second source is written with the hash of the first one, as if their hashes collided
+        String first = SOURCES[0];
+        String second = SOURCES[1];
+        long hash = PlanStore.hash(first);
+        Path path = directory.resolve("plans.bin");
+        try (PlanStore store = PlanStore.open(path)) {
+            store.put(first, FilterMapInterpreter.normalize(first));
+            store.put(hash, second, FilterMapInterpreter.normalize(second));
+            assertEquals(FilterMapInterpreter.interpret(first), store.get(first).toString());
+            assertEquals(FilterMapInterpreter.interpret(second), store.get(hash, second).toString());
+        }
+        try (PlanStore store = PlanStore.open(path)) {
+            long length = store.length();
+            assertEquals(FilterMapInterpreter.interpret(first), store.normalize(first).toString());
+            assertEquals(FilterMapInterpreter.interpret(second), store.get(hash, second).toString());
+            assertEquals(length, store.length());
+            assertEquals(0, store.getMissCount());
+        }
+    }
+
+    @Test
+    void batchAndStreamTest(@TempDir Path directory) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (PlanStore store = PlanStore.open(directory.resolve("plans.bin"));
+             BatchInterpreter interpreter = new BatchInterpreter(executor, 4, false, store)) {
+            List<String> expected = new ArrayList<>();
+            for (String source : SOURCES)
+                expected.add(FilterMapInterpreter.interpret(source));
+            assertEquals(expected, interpreter.interpret(Arrays.asList(SOURCES)));
+            assertEquals(SOURCES.length, store.size());
+            StringBuilder output = new StringBuilder();
+            FilterMapInterpreter.interpret(SOURCES[0], false, output, Long.MAX_VALUE, store);
+            assertEquals(expected.get(0), output.toString());
+            assertEquals(1, store.getHitCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void serverTest(@TempDir Path directory) throws Exception {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            String source = SOURCES[i % SOURCES.length].replace("10", String.valueOf(i % 20));
+            input.append(source).append('\n');
+            expected.append(FilterMapInterpreter.interpret(source, true)).append('\n');
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (PlanStore store = PlanStore.open(directory.resolve("plans.bin"));
+             InterpreterServer server = new InterpreterServer(executor, 8, true, store)) {
+            for (int round = 0; round < 2; round++) {
+                StringWriter output = new StringWriter();
+                assertEquals(200, server.serve(new StringReader(input.toString()), output));
+                assertEquals(expected.toString(), output.toString());
+            }
+            assertTrue(store.size() <= 80);
+            assertTrue(store.getHitCount() >= 200);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
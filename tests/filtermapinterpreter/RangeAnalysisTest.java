@@ -0,0 +1,135 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RangeAnalysisTest {
+
+    @Test
+    void boundsTest() throws Exception {
+        ExpressionGraph graph = new ExpressionGraph();
+        DagNode square = graph.operation("*", graph.element(), graph.element());
+        DagNode shifted = graph.operation("-", square, graph.number("5"));
+        RangeAnalysis ranges = RangeAnalysis.analyze(-3, 10, shifted);
+        assertEquals(0, ranges.min(square));
+        assertEquals(100, ranges.max(square));
+        assertEquals(-5, ranges.min(shifted));
+        assertEquals(95, ranges.max(shifted));
+
+        DagNode difference = graph.operation("-", graph.element(), graph.element());
+        assertEquals(0, RangeAnalysis.analyze(-3, 10, difference).max(difference));
+
+        // Wrapped value of overflowing subexpression could be any integer
+        ranges = RangeAnalysis.analyze(shifted);
+        assertEquals(Integer.MIN_VALUE, ranges.min(square));
+        assertEquals(Integer.MAX_VALUE, ranges.max(shifted));
+        assertThrows(java.security.InvalidParameterException.class, () -> RangeAnalysis.analyze(square).min(shifted));
+    }
+
+    @Test
+    void decideTest() throws Exception {
+        assertDecided("filter{((element*0)>1)}", Integer.MIN_VALUE, Integer.MAX_VALUE, false);
+        assertDecided("filter{((element>-5)|(element<1))}", 0, 1000, true);
+        assertDecided("filter{((element*element)>-1)}", -46340, 46340, true);
+        assertDecided("filter{((element+1)>0)}", 0, 1000, true);
+        assertDecided("filter{((element<50)&(element>100))}", 0, 100, false);
+        assertDecided("filter{(element=7)}", 7, 7, true);
+        assertDecided("filter{(element=7)}", 8, 100, false);
+
+        // Not decided: overflow of square wraps to negative values
+        NormalizedChain chain = FilterMapInterpreter.normalize("filter{((element*element)>-1)}");
+        RangeAnalysis ranges = RangeAnalysis.analyze(chain.getFilter());
+        assertFalse(ranges.isAlwaysTrue(chain.getFilter()));
+        assertFalse(ranges.isAlwaysFalse(chain.getFilter()));
+    }
+
+    @Test
+    void arithmeticTest() throws Exception {
+        ExpressionGraph graph = new ExpressionGraph();
+        DagNode square = graph.operation("*", graph.element(), graph.element());
+        DagNode fourth = graph.operation("*", square, square);
+        DagNode zero = graph.operation("*", fourth, graph.number("0"));
+        RangeAnalysis ranges = RangeAnalysis.analyze(-1000, 1000, zero);
+        assertEquals(RangeAnalysis.Arithmetic.INT, ranges.arithmetic(square));
+        assertEquals(RangeAnalysis.Arithmetic.LONG, ranges.arithmetic(fourth));
+        ranges = RangeAnalysis.analyze(zero);
+        assertEquals(RangeAnalysis.Arithmetic.LONG, ranges.arithmetic(square));
+        assertEquals(RangeAnalysis.Arithmetic.CHECKED, ranges.arithmetic(fourth));
+        assertEquals(RangeAnalysis.Arithmetic.INT, ranges.arithmetic(zero));
+    }
+
+    @Test
+    void checkedEvaluationTest() throws Exception {
+        NormalizedChain chain = FilterMapInterpreter.normalize(
+                "filter{((element*element)>1000000)}%>%map{(((element*element)*element)-element)}");
+        RangeAnalysis ranges = RangeAnalysis.analyze(chain.getFilter(), chain.getMap());
+        IntPredicate filter = Evaluator.compileCheckedFilter(chain.getFilter(), ranges);
+        IntUnaryOperator map = Evaluator.compileCheckedMap(chain.getMap(), ranges);
+
+        // Square of 65536 wraps to 0 in int, but it is compared exactly
+        assertFalse(Evaluator.compileFilter(chain.getFilter()).test(65536));
+        assertTrue(filter.test(65536));
+        assertTrue(filter.test(-2000000000));
+        assertFalse(filter.test(1000));
+        assertEquals(999999000, map.applyAsInt(1000));
+        assertEquals(-999999000, map.applyAsInt(-1000));
+        assertThrows(ArithmeticException.class, () -> map.applyAsInt(2000));
+
+        // Same results as wrapping evaluation where nothing overflows
+        IntUnaryOperator wrapping = Evaluator.compileMap(chain.getMap());
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            int element = random.nextInt(2001) - 1000;
+            assertEquals(wrapping.applyAsInt(element), map.applyAsInt(element));
+        }
+
+        // Exact value of operand overflows long
+        chain = FilterMapInterpreter.normalize(
+                "filter{((((element*element)*(element*element))*((element*element)*element))>0)}");
+        ranges = RangeAnalysis.analyze(chain.getFilter());
+        IntPredicate overflowing = Evaluator.compileCheckedFilter(chain.getFilter(), ranges);
+        assertTrue(overflowing.test(100));
+        assertFalse(overflowing.test(-100));
+        assertThrows(ArithmeticException.class, () -> overflowing.test(1000000));
+    }
+
+    @Test
+    void pipelineTest() throws Exception {
+        int[] input = {-5, 0, 5, 50, 500};
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Pipeline empty = new Pipeline(FilterMapInterpreter.normalize("filter{(element>1000)}%>%map{(element*2)}"), mode, -1000, 1000);
+            assertEquals("filter{(1=0)}%>%map{(element*2)}", empty.toString());
+            assertArrayEquals(new int[0], empty.apply(input));
+
+            Pipeline all = new Pipeline(FilterMapInterpreter.normalize("filter{((element*element)>-1)}%>%map{(element+1)}"), mode, -1000, 1000);
+            assertEquals("filter{(1=1)}%>%map{(element+1)}", all.toString());
+            assertArrayEquals(new int[]{-4, 1, 6, 51, 501}, all.apply(input));
+
+            Pipeline copy = new Pipeline(FilterMapInterpreter.normalize("filter{(element<1001)}"), mode, -1000, 1000);
+            int[] output = {7, 7, 7, 7, 7, 7, 7};
+            assertEquals(3, copy.apply(input, 1, 4, output, 2));
+            assertArrayEquals(new int[]{7, 7, 0, 5, 50, 7, 7}, output);
+        }
+    }
+
+    /**
+     * Checks that filter is decided for elements of the range
+     *
+     * @param source     filter-call
+     * @param minElement minimum of element
+     * @param maxElement maximum of element
+     * @param expected   expected value of the filter
+     * @throws Exception if call has syntax or type error
+     */
+    private static void assertDecided(String source, int minElement, int maxElement, boolean expected) throws Exception {
+        DagNode filter = FilterMapInterpreter.normalize(source).getFilter();
+        RangeAnalysis ranges = RangeAnalysis.analyze(minElement, maxElement, filter);
+        assertEquals(expected, ranges.isAlwaysTrue(filter), source);
+        assertEquals(!expected, ranges.isAlwaysFalse(filter), source);
+    }
+}
@@ -0,0 +1,114 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegisterPlanTest {
+
+    @Test
+    void lowerTest() throws Exception {
+        // "(element+4)" is used twice by the map and once more by the filter, but computed once
+        NormalizedChain chain = FilterMapInterpreter.normalize("map{(element+4)}%>%map{(element*element)}%>%filter{(element>10)}");
+        assertEquals("filter{(((element+4)*(element+4))>10)}%>%map{((element+4)*(element+4))}", chain.toString());
+        RegisterPlan plan = RegisterPlan.lower(chain.getFilter(), chain.getMap());
+        assertEquals(3, plan.instructionCount());
+        assertEquals(6, plan.nodeCount());
+        assertEquals("r0 = element\n"
+                + "r1 = 4\n"
+                + "r3 = 10\n"
+                + "r2 = r0 + r1\n"
+                + "r2 = r2 * r2\n"
+                + "r4 = r2 > r3\n"
+                + "select r2 where r4\n", plan.toString());
+        int[] input = {-10, -5, 0, 5};
+        int[] output = new int[5];
+        assertEquals(3, plan.apply(input, 0, 4, output, 1));
+        assertArrayEquals(new int[]{0, 36, 16, 81}, Arrays.copyOf(output, 4));
+        assertFalse(plan.test(0, -5));
+        assertTrue(plan.test(0, 5));
+        assertEquals(1, plan.map(0, -5));
+        assertEquals(81, plan.map(0, 5));
+    }
+
+    @Test
+    void randomChainsTest() throws Exception {
+        Random random = new Random(17);
+        int[] input = random.ints(3000, -300, 300).toArray();
+        for (int q = 0; q < 200; q++) {
+            String source = WorkloadGenerator.builder(q).calls(random.nextInt(6) + 1).depth(random.nextInt(3) + 1)
+                    .fanOut(1).constants(-5, 5).mapPercent(random.nextInt(101)).build().chain();
+            NormalizedChain chain = FilterMapInterpreter.normalize(source);
+            RegisterPlan plan = RegisterPlan.lower(chain.getFilter(), chain.getMap());
+            IntPredicate filter = Evaluator.compileFilter(chain.getFilter());
+            IntUnaryOperator map = Evaluator.compileMap(chain.getMap());
+            int[] output = new int[3000];
+            int count = plan.apply(input, 7, 2900, output, 0);
+            int expected = 0;
+            for (int i = 7; i < 2900; i++) {
+                if (filter.test(input[i]))
+                    assertEquals(map.applyAsInt(input[i]), output[expected++], source);
+            }
+            assertEquals(expected, count, source);
+
+            // Stages by blocks and single elements by one pass give the same results
+            int[] selection = new int[3000];
+            assertEquals(expected, plan.select(input, 7, 2900, selection, 1), source);
+            long[] words = new long[(2900 - 7 + 63) / 64];
+            plan.bitmap(input, 7, 2900, words);
+            int[] selected = new int[2900 - 7];
+            assertEquals(expected, Pipeline.toSelection(words, 2900 - 7, 7, selected, 0), source);
+            assertArrayEquals(Arrays.copyOfRange(selection, 1, expected + 1), Arrays.copyOf(selected, expected), source);
+            int[] mapped = new int[expected];
+            assertEquals(expected, plan.gather(input, selected, 0, expected, mapped, 0), source);
+            assertArrayEquals(Arrays.copyOf(output, expected), mapped, source);
+            for (int i = 7; i < 2900; i += 97) {
+                assertEquals(filter.test(input[i]), plan.test(0, input[i]), source);
+                assertEquals(map.applyAsInt(input[i]), plan.map(0, input[i]), source);
+            }
+            assertTrue(plan.instructionCount() <= ExpressionGraph.treeSize(chain.getFilter())
+                    + ExpressionGraph.treeSize(chain.getMap()));
+        }
+    }
+
+    @Test
+    void deepChainTest() throws Exception {
+        // Lowering and evaluation do not recurse, and registers are reused along the chain
+        WorkloadGenerator generator = WorkloadGenerator.builder(3).calls(20000).depth(3).mapPercent(80)
+                .constants(-3, 3).elements(-50, 50).build();
+        NormalizedChain chain = FilterMapInterpreter.normalize(generator.chain());
+        RegisterPlan plan = RegisterPlan.lower(chain.getFilter(), chain.getMap());
+        assertTrue(plan.instructionCount() > 40000);
+        assertTrue(plan.registerCount() - 8 < 100); // element, 7 constants and live values
+
+        // Chain is applied call by call
+        int[] expected = generator.elements(1000);
+        for (String call : generator.calls())
+            expected = new Pipeline(FilterMapInterpreter.normalize(call), ExecutionMode.INTERPRETED).apply(expected);
+        int[] output = new int[1000];
+        int count = plan.apply(generator.elements(1000), 0, 1000, output, 0);
+        assertArrayEquals(expected, Arrays.copyOf(output, count));
+    }
+
+    @Test
+    void errorsTest() throws Exception {
+        ExpressionGraph graph = new ExpressionGraph();
+        DagNode filter = graph.operation(">", graph.element(), graph.number("0"));
+        DagNode map = graph.operation("+", graph.element(), graph.number("1"));
+        assertThrows(InvalidTypeException.class, () -> RegisterPlan.lower(map, map));
+        assertThrows(InvalidTypeException.class, () -> RegisterPlan.lower(filter, graph.number("99999999999")));
+        assertThrows(InvalidParameterException.class, () -> RegisterPlan.lower(new DagNode[]{filter}, new DagNode[0]));
+        RegisterPlan plan = RegisterPlan.lower(filter, map);
+        assertThrows(InvalidParameterException.class, () -> plan.apply(new int[4], 0, 4, new int[3], 0));
+        assertThrows(InvalidParameterException.class, () -> plan.apply(new int[4], 2, 5, new int[3], 0));
+        assertThrows(InvalidParameterException.class, () -> plan.apply(new int[4], 0, 4, new int[2][4]));
+        assertEquals(0, plan.apply(new int[0], 0, 0, new int[0], 0));
+    }
+}
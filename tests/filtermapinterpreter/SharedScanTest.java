@@ -0,0 +1,102 @@
+package filtermapinterpreter;
+
+import com.sun.jdi.InvalidTypeException;
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedScanTest {
+
+    @Test
+    void applyTest() throws Exception {
+        SharedScan scan = new SharedScan();
+        assertEquals(0, scan.add("map{(element+4)}%>%filter{(element>10)}"));
+        assertEquals(1, scan.add("map{(element+4)}%>%map{(element*element)}"));
+        assertEquals(2, scan.add("filter{((element+4)<0)}%>%map{(element+4)}"));
+        assertEquals(3, scan.add(""));
+        int[] input = {-10, -5, 0, 5, 6, 7, 100};
+        int[][] results = scan.apply(input);
+        assertArrayEquals(new int[]{11, 104}, results[0]);
+        assertArrayEquals(new int[]{36, 1, 16, 81, 100, 121, 10816}, results[1]);
+        assertArrayEquals(new int[]{-6, -1}, results[2]);
+        assertArrayEquals(input, results[3]);
+        // "(element+4)" is computed once for all chains
+        assertTrue(scan.nodeCount() < scan.separateNodeCount());
+        assertTrue(scan.instructionCount() < scan.nodeCount());
+    }
+
+    @Test
+    void randomChainsTest() throws Exception {
+        Random random = new Random(5);
+        SharedScan scan = new SharedScan();
+        List<Pipeline> pipelines = new ArrayList<>();
+        for (int q = 0; q < 40; q++) {
+            String source = chain(random);
+            scan.add(source);
+            pipelines.add(Pipeline.compile(source, ExecutionMode.INTERPRETED));
+        }
+        // Parts of input that are not multiples of the block
+        int[] input = random.ints(5000, -300, 300).toArray();
+        int[][] outputs = new int[40][4000];
+        int[] counts = scan.apply(input, 17, 4017, outputs);
+        for (int q = 0; q < 40; q++) {
+            int[] expected = new int[4000];
+            int count = pipelines.get(q).apply(input, 17, 4017, expected, 0);
+            assertEquals(count, counts[q]);
+            for (int i = 0; i < count; i++)
+                assertEquals(expected[i], outputs[q][i]);
+        }
+
+        // Chains added after scan are included in the next one
+        int index = scan.add("filter{(element=0)}");
+        assertEquals(40, index);
+        assertEquals(41, scan.apply(new int[]{0, 1}).length);
+        assertArrayEquals(new int[]{0}, scan.apply(new int[]{0, 1})[40]);
+    }
+
+    @Test
+    void identicalChainsTest() throws Exception {
+        SharedScan scan = new SharedScan();
+        scan.add("map{(element*3)}%>%filter{(element>0)}");
+        int nodes = scan.nodeCount();
+        scan.add("map{(element*3)}%>%filter{(element>0)}");
+        scan.add("map{((element*3)*1)}%>%filter{(element>0)}");
+        assertEquals(nodes, scan.nodeCount());
+        assertEquals(3 * nodes, scan.separateNodeCount());
+    }
+
+    @Test
+    void errorsTest() throws Exception {
+        SharedScan scan = new SharedScan();
+        assertThrows(InvalidTypeException.class, () -> scan.add("map{(element+99999999999)}"));
+        assertThrows(InvalidSyntaxException.class, () -> scan.add("map{(element+1}"));
+        scan.add("map{(element+1)}");
+        assertThrows(InvalidParameterException.class, () -> scan.apply(new int[4], 0, 4, new int[1][3]));
+        assertThrows(InvalidParameterException.class, () -> scan.apply(new int[4], 0, 4, new int[2][4]));
+        assertEquals(0, scan.apply(new int[0])[0].length);
+    }
+
+    /**
+     * Generates chain of calls with small constants, so that chains share subexpressions
+     *
+     * @param random generator of calls
+     * @return source of the chain
+     */
+    private static String chain(Random random) {
+        List<String> calls = new ArrayList<>();
+        int size = random.nextInt(5) + 1;
+        for (int i = 0; i < size; i++) {
+            String operand = random.nextInt(4) == 0 ? "element" : String.valueOf(random.nextInt(5));
+            if (random.nextBoolean())
+                calls.add("map{(element" + "+-*".charAt(random.nextInt(3)) + operand + ")}");
+            else
+                calls.add("filter{(element" + "<>=".charAt(random.nextInt(3)) + operand + ")}");
+        }
+        return String.join("%>%", calls);
+    }
+}
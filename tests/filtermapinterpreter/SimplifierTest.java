@@ -0,0 +1,69 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimplifierTest {
+
+    @Test
+    void interpretOptimizedTest() {
+        // Default calls
+        assertEquals("filter{(1=1)}%>%map{element}", FilterMapInterpreter.interpret("", true));
+
+        // Tautological conjuncts
+        String actual = FilterMapInterpreter.interpret("filter{(element>2)}%>%filter{(element<4)}%>%filter{(3<4)}", true);
+        assertEquals("filter{((element>2)&(element<4))}%>%map{element}", actual);
+
+        actual = FilterMapInterpreter.interpret("filter{((element>2)|(1>2))}%>%filter{(element=element)}", true);
+        assertEquals("filter{(element>2)}%>%map{element}", actual);
+
+        // Contradictions
+        actual = FilterMapInterpreter.interpret("filter{((element>2)&(element<element))}%>%map{(element*2)}", true);
+        assertEquals("filter{(1=0)}%>%map{(element*2)}", actual);
+
+        // Identities
+        actual = FilterMapInterpreter.interpret("map{(element*1)}%>%map{(0+element)}%>%map{(element-0)}", true);
+        assertEquals("filter{(1=1)}%>%map{element}", actual);
+
+        actual = FilterMapInterpreter.interpret("map{((element*0)+(element-element))}%>%filter{(element>-1)}", true);
+        assertEquals("filter{(1=1)}%>%map{0}", actual);
+
+        // Constant folding and joining of constants
+        actual = FilterMapInterpreter.interpret("map{((2*3)-(10*element))}%>%map{(element+-6)}", true);
+        assertEquals("filter{(1=1)}%>%map{((6-(10*element))+-6)}", actual);
+
+        actual = FilterMapInterpreter.interpret("map{(element+4)}%>%map{(element+9)}%>%map{(element-20)}", true);
+        assertEquals("filter{(1=1)}%>%map{(element-7)}", actual);
+
+        actual = FilterMapInterpreter.interpret("map{(element*4)}%>%map{(element*-2)}%>%filter{(element<(1-1))}", true);
+        assertEquals("filter{((element*-8)<0)}%>%map{(element*-8)}", actual);
+    }
+
+    @Test
+    void equivalenceTest() throws Exception {
+        String[] chains = {
+                "map{((element*1)+(3*4))}%>%filter{(((element-12)>0)&(2<3))}%>%map{(element-0)}",
+                "filter{((element=element)|(element>5))}%>%map{((element+2147483647)+1)}",
+                "map{(element*65536)}%>%map{(element*65536)}%>%filter{((1=0)|(element=0))}",
+                "map{(element-5)}%>%map{(element-2147483647)}%>%filter{((element<0)&((0*element)<1))}"
+        };
+        int[] input = new Random(3).ints(2000).toArray();
+        for (String source : chains) {
+            NormalizedChain chain = FilterMapInterpreter.normalize(source);
+            NormalizedChain simplified = Simplifier.simplify(chain);
+            IntPredicate filter = Evaluator.compileFilter(chain.getFilter());
+            IntUnaryOperator map = Evaluator.compileMap(chain.getMap());
+            IntPredicate simplifiedFilter = Evaluator.compileFilter(simplified.getFilter());
+            IntUnaryOperator simplifiedMap = Evaluator.compileMap(simplified.getMap());
+            for (int element : input) {
+                assertEquals(filter.test(element), simplifiedFilter.test(element), source);
+                assertEquals(map.applyAsInt(element), simplifiedMap.applyAsInt(element), source);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package filtermapinterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadGeneratorTest {
+
+    @Test
+    void shapeTest() throws Exception {
+        for (int depth = 0; depth <= 5; depth++) {
+            for (int fanOut = 1; fanOut <= 1 << depth; fanOut++) {
+                WorkloadGenerator generator = WorkloadGenerator.builder(depth * 100L + fanOut)
+                        .calls(20).depth(depth).fanOut(fanOut).constants(-5, 5).build();
+                for (String call : generator.calls()) {
+                    assertEquals(fanOut, count(call, "element"), call);
+                    ASTree tree = new ASTreeBuilder(call).build();
+                    assertEquals(call, tree.toString());
+                    Matcher constants = Pattern.compile("-?\\d+").matcher(call);
+                    while (constants.find())
+                        assertTrue(Math.abs(Integer.parseInt(constants.group())) <= 5, call);
+                    assertFalse(call.contains("*0)"), call);
+                }
+            }
+        }
+
+        // Mix of calls
+        List<String> calls = WorkloadGenerator.builder(1).calls(100).mapPercent(100).build().calls();
+        assertTrue(calls.stream().allMatch(call -> call.startsWith("map{")));
+        calls = WorkloadGenerator.builder(1).calls(100).mapPercent(0).build().calls();
+        assertTrue(calls.stream().allMatch(call -> call.startsWith("filter{")));
+        calls = WorkloadGenerator.builder(1).calls(1000).mapPercent(30).build().calls();
+        long maps = calls.stream().filter(call -> call.startsWith("map{")).count();
+        assertTrue(maps > 200 && maps < 400);
+    }
+
+    @Test
+    void reproducibilityTest() throws Exception {
+        WorkloadGenerator generator = WorkloadGenerator.builder(42).calls(50).depth(4).fanOut(3).build();
+        String chain = generator.chain();
+        assertEquals(chain, WorkloadGenerator.builder(42).calls(50).depth(4).fanOut(3).build().chain());
+        assertNotEquals(chain, WorkloadGenerator.builder(43).calls(50).depth(4).fanOut(3).build().chain());
+        assertEquals(chain, String.join("%>%", generator.calls()));
+        StringBuilder written = new StringBuilder();
+        assertEquals(chain.length(), generator.write(written));
+        assertEquals(chain, written.toString());
+
+        int[] elements = WorkloadGenerator.builder(42).elements(-3, 3).build().elements(1000);
+        assertArrayEquals(elements, WorkloadGenerator.builder(42).elements(-3, 3).build().elements(1000));
+        for (int element : elements)
+            assertTrue(element >= -3 && element <= 3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WorkloadGenerator extreme = WorkloadGenerator.builder(42).elements(Integer.MIN_VALUE, Integer.MAX_VALUE).build();
+        assertEquals(40000, extreme.writeElements(Channels.newChannel(bytes), 10000));
+        int[] decoded = new int[10000];
+        ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(decoded);
+        assertArrayEquals(extreme.elements(10000), decoded);
+    }
+
+    @Test
+    void mergeStressTest() throws Exception {
+        // Chains merged as trees by ASTree.mergeTo and as graph by ChainParser print the same
+        for (int fanOut = 1; fanOut <= 2; fanOut++) {
+            WorkloadGenerator generator = WorkloadGenerator.builder(fanOut).calls(fanOut == 1 ? 400 : 12)
+                    .depth(3).fanOut(fanOut).mapPercent(60).build();
+            ArrayList<ASTree> trees = new ArrayList<>();
+            for (String call : generator.calls())
+                trees.add(new ASTreeBuilder(call).build());
+            List<ASTree> merged = ASTreeBuilder.rebuildToFilterMap(trees);
+            NormalizedChain chain = FilterMapInterpreter.normalize(generator.chain());
+            assertEquals(merged.get(0) + "%>%" + merged.get(1), chain.toString());
+        }
+
+        // Large chain is parsed as stream, each filter repeats the map before it, so output is much longer
+        WorkloadGenerator generator = WorkloadGenerator.builder(7).calls(20000).depth(3).mapPercent(80).build();
+        String source = generator.chain();
+        assertTrue(source.length() > 300000);
+        NormalizedChain chain = ChainParser.parse(new StringReader(source));
+        assertEquals(ChainPrinter.length(FilterMapInterpreter.normalize(source)), ChainPrinter.length(chain));
+        assertTrue(ChainPrinter.length(chain) > 100L * source.length());
+
+        // Long chain is evaluated the same way in each mode
+        generator = WorkloadGenerator.builder(7).calls(1000).depth(3).mapPercent(80)
+                .constants(-3, 3).elements(-50, 50).build();
+        chain = ChainParser.parse(new StringReader(generator.chain()));
+        int[] input = generator.elements(4096);
+        int[] expected = new Pipeline(chain, ExecutionMode.INTERPRETED).apply(input);
+        assertArrayEquals(expected, new Pipeline(chain, ExecutionMode.COMPILED).apply(input));
+    }
+
+    @Test
+    void errorsTest() {
+        assertThrows(InvalidParameterException.class, () -> WorkloadGenerator.builder(1).calls(-1));
+        assertThrows(InvalidParameterException.class, () -> WorkloadGenerator.builder(1).mapPercent(101));
+        assertThrows(InvalidParameterException.class, () -> WorkloadGenerator.builder(1).depth(31));
+        assertThrows(InvalidParameterException.class, () -> WorkloadGenerator.builder(1).constants(1, 0));
+        assertThrows(InvalidParameterException.class, () -> WorkloadGenerator.builder(1).fanOut(0));
+        assertThrows(InvalidParameterException.class, () -> WorkloadGenerator.builder(1).depth(2).fanOut(5).build());
+        assertEquals("", WorkloadGenerator.builder(1).calls(0).build().chain());
+    }
+
+    /**
+     * Counts occurrences of the word
+     *
+     * @param string string to search in
+     * @param word   searched word
+     * @return number of occurrences
+     */
+    private static int count(String string, String word) {
+        int count = 0;
+        for (int i = string.indexOf(word); i >= 0; i = string.indexOf(word, i + 1))
+            count++;
+        return count;
+    }
+}